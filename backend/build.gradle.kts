@@ -0,0 +1,20 @@
+// Local stand-in for the audio backend (/ws contract used by PhoneStreamService).
+// Run with: ./gradlew :backend:run --args="--port 8000"
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+application {
+    mainClass.set("com.example.backend.BackendServer")
+}
+
+dependencies {
+    implementation("org.java-websocket:Java-WebSocket:1.5.7")
+    implementation("org.json:json:20231013")
+    testImplementation(libs.junit)
+}
@@ -0,0 +1,305 @@
+package com.example.backend;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the audio backend at /ws.
+ *
+ * Speaks the same contract as the real service: protocol 2 sessions
+ * (hello / welcome / cumulative ack, sequenced {@link WireFrame}s, several per
+ * message allowed) and legacy bare-PCM clients. Each session is scored by a
+ * {@link Scorer} on a worker pool sized to the cores, and alerts go back on
+ * the same socket as
+ *
+ *   {"type":"alert","event":{"level","message","rolling":{alarm,gunshot,explosion,vocal},...}}
+ *
+ * Clock pings ({"type":"ping","t1":N}) are answered at once with
+ * {"type":"pong","t1":N,"t2":received,"t3":sent} on {@link System#nanoTime()},
+ * so the phone can estimate the offset between the two clocks.
+ *
+ * Ingest throughput and alert latency (frame arrival → alert sent) are
+ * reported per session every {@code --report-secs}. A session whose phone
+ * hasn't reconnected within {@code --session-idle-secs} of its last
+ * connection closing is dropped, so load tests don't accumulate them.
+ *
+ * Archived audio that doesn't need to be live comes in over HTTP instead, on
+ * {@code --upload-port} (see {@link UploadServer}).
+ */
+public class BackendServer extends WebSocketServer {
+
+    static final int ACK_EVERY_FRAMES = 10;
+    static final long ACK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    static final long EVICT_CHECK_SECS = 10;
+
+    private final ExecutorService workers;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicLong evictedSessions = new AtomicLong();
+    private volatile long sessionIdleNanos = TimeUnit.MINUTES.toNanos(5);
+    private final long startNanos = System.nanoTime();
+    private ScheduledExecutorService reporter;
+    private ScheduledExecutorService evictor;
+    private volatile UploadServer uploads;   // optional
+
+    /** Per-connection state, stored as the socket attachment. */
+    private static final class Conn {
+        Session session;
+    }
+
+    public BackendServer(InetSocketAddress address, int workerThreads) {
+        super(address);
+        AtomicInteger n = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "scorer-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        setReuseAddr(true);
+        setTcpNoDelay(true);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 8000;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int reportSecs = 10;
+        int uploadPort = -1;
+        int sessionIdleSecs = 300;
+        String uploadDir = "uploads";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--workers": workers = Integer.parseInt(args[++i]); break;
+                case "--report-secs": reportSecs = Integer.parseInt(args[++i]); break;
+                case "--upload-port": uploadPort = Integer.parseInt(args[++i]); break;
+                case "--upload-dir": uploadDir = args[++i]; break;
+                case "--session-idle-secs": sessionIdleSecs = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Usage: BackendServer [--port N] [--workers N] [--report-secs N]"
+                            + " [--upload-port N (default port+1, 0 = off)] [--upload-dir DIR]"
+                            + " [--session-idle-secs N]");
+                    System.exit(2);
+            }
+        }
+        BackendServer server = new BackendServer(new InetSocketAddress(port), workers);
+        server.setSessionIdleTimeout(sessionIdleSecs, TimeUnit.SECONDS);
+        if (uploadPort < 0) uploadPort = port + 1;
+        if (uploadPort > 0) {
+            server.uploads = new UploadServer(new InetSocketAddress(uploadPort), new File(uploadDir));
+            server.uploads.start();
+        }
+        server.startReporting(reportSecs);
+        server.start();
+        System.out.println("Backend stand-in listening on ws://0.0.0.0:" + port + "/ws with "
+                + workers + " scorer threads"
+                + (uploadPort > 0 ? ", uploads on http://0.0.0.0:" + uploadPort + "/upload" : ""));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.report();
+            try {
+                server.stop(1000);
+            } catch (InterruptedException ignored) {
+            }
+        }));
+    }
+
+    public void startReporting(int seconds) {
+        if (seconds <= 0) return;
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(this::report, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /** How long a session outlives its last connection, waiting for the phone to resume it. */
+    public void setSessionIdleTimeout(long time, TimeUnit unit) {
+        sessionIdleNanos = unit.toNanos(time);
+    }
+
+    /** Drops sessions nobody has been connected to for the idle timeout. */
+    void evictIdleSessions() {
+        long now = System.nanoTime();
+        long idle = sessionIdleNanos;
+        for (String id : sessions.keySet()) {
+            // atomic per key against a hello resuming the same session
+            sessions.computeIfPresent(id, (k, s) -> {
+                if (!s.idleFor(idle, now)) return s;
+                evictedSessions.incrementAndGet();
+                return null;
+            });
+        }
+    }
+
+    public void report() {
+        double secs = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("[backend] t=%.0fs conns=%d sessions=%d (evicted %d) ingest=%.2f MB/s%n",
+                secs, openConnections.get(), sessions.size(), evictedSessions.get(),
+                totalBytes.get() / 1e6 / secs);
+        for (Session s : sessions.values()) {
+            double age = (System.nanoTime() - s.createdNanos) / 1e9;
+            System.out.println("  " + s.report(age));
+        }
+        UploadServer u = uploads;
+        if (u != null) System.out.println(u.report());
+    }
+
+    public Session session(String id) {
+        return sessions.get(id);
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    public long totalBytes() {
+        return totalBytes.get();
+    }
+
+    // ---- WebSocketServer ----
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        String path = handshake.getResourceDescriptor();
+        if (path == null || !path.startsWith("/ws")) {
+            conn.close(1008, "Unknown path " + path);
+            return;
+        }
+        conn.setAttachment(new Conn());
+        openConnections.incrementAndGet();
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        Conn c = conn.getAttachment();
+        if (c != null) {
+            openConnections.decrementAndGet();
+            if (c.session != null) c.session.detach();
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String text) {
+        long received = System.nanoTime();
+        Conn c = conn.getAttachment();
+        if (c == null) return;
+        JSONObject root;
+        try {
+            root = new JSONObject(text);
+        } catch (JSONException e) {
+            System.err.println("Bad JSON from " + conn.getRemoteSocketAddress() + ": " + text);
+            return;
+        }
+
+        String type = root.optString("type", "");
+        if ("ping".equals(type)) {
+            JSONObject pong = new JSONObject()
+                    .put("type", "pong")
+                    .put("t1", root.optLong("t1"))
+                    .put("t2", received);
+            conn.send(pong.put("t3", System.nanoTime()).toString());
+        } else if ("hello".equals(type)) {
+            String id = root.optString("session", "");
+            if (id.isEmpty()) id = UUID.randomUUID().toString();
+            if (c.session != null) c.session.detach();   // a second hello on this socket
+            // attach inside compute, so an eviction of this id can't slip in between
+            int[] next = new int[1];
+            Session s = sessions.compute(id, (k, old) -> {
+                Session session = old != null ? old : new Session(k, false, workers);
+                next[0] = session.attach(conn);
+                return session;
+            });
+            c.session = s;
+            // phones that coalesce say so; the frame parsing below handles either way
+            JSONObject coalesce = root.optJSONObject("coalesce");
+            s.coalesceDelayMs = coalesce != null ? coalesce.optLong("max_delay_ms", 0) : 0;
+            conn.send(new JSONObject()
+                    .put("type", "welcome")
+                    .put("session", id)
+                    .put("next_seq", next[0])
+                    .toString());
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        Conn c = conn.getAttachment();
+        if (c == null) return;
+        long now = System.nanoTime();
+        byte[] buf = new byte[message.remaining()];
+        message.get(buf);
+        totalBytes.addAndGet(buf.length);
+
+        if (c.session == null) {
+            // no hello: protocol-1 phone streaming bare PCM
+            String id = "legacy-" + UUID.randomUUID();
+            c.session = new Session(id, true, workers);
+            c.session.attach(conn);
+            sessions.put(id, c.session);
+        }
+        Session s = c.session;
+        s.messages.incrementAndGet();
+        if (s.legacy) {
+            s.acceptRaw(buf, now);
+            return;
+        }
+
+        boolean ackDue = false;
+        try {
+            for (int at = 0; at < buf.length; ) {
+                WireFrame f = WireFrame.parse(buf, at);
+                ackDue |= s.accept(f, now, ACK_EVERY_FRAMES, ACK_INTERVAL_NANOS);
+                at = f.end();
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Session " + s.id + ": " + e.getMessage());
+        }
+        if (ackDue) {
+            // cumulative: covers every frame of this message
+            conn.send("{\"type\":\"ack\",\"seq\":" + (s.nextSeq() - 1) + "}");
+        }
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        System.err.println("WS error" + (conn != null ? " on " + conn.getRemoteSocketAddress() : "")
+                + ": " + ex);
+    }
+
+    @Override
+    public void onStart() {
+        setConnectionLostTimeout(30);
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        evictor.scheduleAtFixedRate(this::evictIdleSessions, EVICT_CHECK_SECS, EVICT_CHECK_SECS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop(int timeout) throws InterruptedException {
+        super.stop(timeout);
+        workers.shutdown();
+        if (reporter != null) reporter.shutdownNow();
+        if (evictor != null) evictor.shutdownNow();
+        if (uploads != null) uploads.stop();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.backend;
+
+import java.util.Arrays;
+
+/**
+ * Latency samples (nanoseconds) with percentiles over the most recent
+ * {@code capacity} values. Thread-safe.
+ */
+public final class LatencyStats {
+
+    private final long[] samples;
+    private long count = 0;
+    private long max = 0;
+    private long sum = 0;
+
+    public LatencyStats(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void add(long nanos) {
+        samples[(int) (count % samples.length)] = nanos;
+        count++;
+        sum += nanos;
+        if (nanos > max) max = nanos;
+    }
+
+    public synchronized long count() {
+        return count;
+    }
+
+    public synchronized double meanMs() {
+        return count == 0 ? 0 : sum / 1e6 / count;
+    }
+
+    public synchronized double maxMs() {
+        return max / 1e6;
+    }
+
+    /** @param p percentile in [0, 100] over the retained window */
+    public synchronized double percentileMs(double p) {
+        int n = (int) Math.min(count, samples.length);
+        if (n == 0) return 0;
+        long[] sorted = Arrays.copyOf(samples, n);
+        Arrays.sort(sorted);
+        int idx = (int) Math.ceil(p / 100.0 * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, idx))] / 1e6;
+    }
+}
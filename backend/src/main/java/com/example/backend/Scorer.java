@@ -0,0 +1,180 @@
+package com.example.backend;
+
+/**
+ * Simple streaming DSP scorer for 16 kHz 16-bit mono PCM.
+ *
+ * Audio is cut into fixed analysis windows. Per window it computes
+ * loudness, crest factor (peak/RMS), onset strength (max energy jump between
+ * 10 ms blocks), low-frequency energy ratio, zero-crossing rate and a
+ * Goertzel tonality measure over common alarm frequencies, and maps them to
+ * per-class scores in [0, 1]:
+ *
+ *   alarm      sustained narrow-band tone
+ *   gunshot    sharp, loud, broadband impulse
+ *   explosion  loud impulse dominated by low frequencies
+ *   vocal      speech-like ZCR and envelope, not tonal
+ *
+ * Rolling scores cover the last {@code rollingWindows} windows: mean for the
+ * sustained classes (alarm, vocal), max for the impulsive ones.
+ *
+ * Not thread-safe; each session drives its own scorer from its lane.
+ */
+public final class Scorer {
+
+    public static final String[] CLASSES = {"alarm", "gunshot", "explosion", "vocal"};
+    public static final int ALARM = 0;
+    public static final int GUNSHOT = 1;
+    public static final int EXPLOSION = 2;
+    public static final int VOCAL = 3;
+
+    public static final int SAMPLE_RATE = 16000;
+
+    private static final double[] TONES_HZ = {520, 960, 1000, 2000, 2400, 3000, 3150, 3500};
+    private static final int BLOCK = SAMPLE_RATE / 100;  // 10 ms
+    private static final double SILENCE_RMS = 0.003;      // about -50 dBFS
+    private static final double LOWPASS_ALPHA = 1 - Math.exp(-2 * Math.PI * 250 / SAMPLE_RATE);
+
+    public interface WindowListener {
+        /** Called after each analysis window with the updated rolling scores. */
+        void onWindow(double[] rolling);
+    }
+
+    private final int windowSamples;
+    private final int rollingWindows;
+    private final double[] window;
+    private final double[] goertzelCoeff;
+    private int filled = 0;
+    private int pendingByte = -1;
+
+    private final double[][] history;
+    private int historyCount = 0;
+    private final double[] rolling = new double[CLASSES.length];
+    private final double[] current = new double[CLASSES.length];
+    private double lowState = 0;
+
+    public Scorer(int windowSamples, int rollingWindows) {
+        this.windowSamples = windowSamples;
+        this.rollingWindows = rollingWindows;
+        this.window = new double[windowSamples];
+        this.history = new double[rollingWindows][CLASSES.length];
+        this.goertzelCoeff = new double[TONES_HZ.length];
+        for (int i = 0; i < TONES_HZ.length; i++) {
+            goertzelCoeff[i] = 2 * Math.cos(2 * Math.PI * TONES_HZ[i] / SAMPLE_RATE);
+        }
+    }
+
+    /** Half-second windows, rolling over the last two seconds. */
+    public Scorer() {
+        this(SAMPLE_RATE / 2, 4);
+    }
+
+    public void accept(byte[] pcm, int off, int len, WindowListener listener) {
+        int end = off + len;
+        int i = off;
+        if (pendingByte >= 0 && i < end) {
+            addSample((short) ((pcm[i] << 8) | pendingByte), listener);
+            pendingByte = -1;
+            i++;
+        }
+        for (; i + 1 < end; i += 2) {
+            // little-endian, as produced by AudioRecord
+            addSample((short) ((pcm[i + 1] << 8) | (pcm[i] & 0xFF)), listener);
+        }
+        if (i < end) {
+            pendingByte = pcm[i] & 0xFF;
+        }
+    }
+
+    public double[] rolling() {
+        return rolling.clone();
+    }
+
+    private void addSample(short s, WindowListener listener) {
+        window[filled++] = s / 32768.0;
+        if (filled == windowSamples) {
+            analyze();
+            filled = 0;
+            if (listener != null) listener.onWindow(rolling);
+        }
+    }
+
+    private void analyze() {
+        int n = windowSamples;
+        double energy = 0;
+        double peak = 0;
+        double lowEnergy = 0;
+        int crossings = 0;
+        double maxBlockJump = 0;
+        double prevBlock = -1;
+        double blockEnergy = 0;
+
+        for (int i = 0; i < n; i++) {
+            double x = window[i];
+            double e = x * x;
+            energy += e;
+            blockEnergy += e;
+            double a = Math.abs(x);
+            if (a > peak) peak = a;
+            lowState += LOWPASS_ALPHA * (x - lowState);
+            lowEnergy += lowState * lowState;
+            if (i > 0 && (x >= 0) != (window[i - 1] >= 0)) crossings++;
+            if ((i + 1) % BLOCK == 0) {
+                if (prevBlock >= 0) {
+                    double jump = blockEnergy / (prevBlock + 1e-9);
+                    if (jump > maxBlockJump) maxBlockJump = jump;
+                }
+                prevBlock = blockEnergy;
+                blockEnergy = 0;
+            }
+        }
+
+        double rms = Math.sqrt(energy / n);
+        if (rms < SILENCE_RMS) {
+            java.util.Arrays.fill(current, 0);
+        } else {
+            double crest = peak / rms;
+            double lowRatio = lowEnergy / energy;
+            double zcr = crossings / (double) n;
+            double onset = Math.log10(1 + maxBlockJump);   // ~0 steady, >2 for sharp onsets
+
+            double tonal = 0;
+            for (double c : goertzelCoeff) {
+                double s1 = 0, s2 = 0;
+                for (int i = 0; i < n; i++) {
+                    double s0 = window[i] + c * s1 - s2;
+                    s2 = s1;
+                    s1 = s0;
+                }
+                double power = s1 * s1 + s2 * s2 - c * s1 * s2;
+                // 1.0 for a pure tone at this frequency
+                tonal = Math.max(tonal, power / (n / 2.0 * energy));
+            }
+
+            double loud = clamp((20 * Math.log10(rms) + 50) / 40);   // -50..-10 dBFS
+            double impulse = clamp((crest - 4) / 8) * clamp((onset - 1) / 2);
+
+            current[ALARM] = clamp((tonal - 0.2) / 0.5) * loud;
+            current[GUNSHOT] = impulse * clamp((0.6 - lowRatio) / 0.4) * loud;
+            current[EXPLOSION] = clamp((crest - 3) / 6) * clamp((lowRatio - 0.4) / 0.4) * loud;
+            current[VOCAL] = (1 - clamp((tonal - 0.2) / 0.5))
+                    * clamp(1 - Math.abs(zcr - 0.08) / 0.08)
+                    * clamp((crest - 1.5) / 2) * (1 - impulse) * loud;
+        }
+
+        System.arraycopy(current, 0, history[historyCount % rollingWindows], 0, CLASSES.length);
+        historyCount++;
+        int k = Math.min(historyCount, rollingWindows);
+        for (int c = 0; c < CLASSES.length; c++) {
+            double acc = 0;
+            for (int w = 0; w < k; w++) {
+                double v = history[w][c];
+                acc = (c == ALARM || c == VOCAL) ? acc + v : Math.max(acc, v);
+            }
+            rolling[c] = (c == ALARM || c == VOCAL) ? acc / k : acc;
+        }
+    }
+
+    private static double clamp(double v) {
+        return v < 0 ? 0 : (v > 1 ? 1 : v);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.backend;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one at a time, in submission order, on a shared pool.
+ *
+ * Each session gets a lane so its scorer state is only touched by one thread
+ * at a time, while many sessions share a worker pool sized to the cores.
+ */
+final class SerialLane implements Executor {
+
+    private final Executor pool;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private boolean running = false;
+
+    SerialLane(Executor pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (tasks) {
+            tasks.addLast(task);
+            if (running) return;
+            running = true;
+        }
+        pool.execute(this::drain);
+    }
+
+    int backlog() {
+        synchronized (tasks) {
+            return tasks.size();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable next;
+            synchronized (tasks) {
+                next = tasks.pollFirst();
+                if (next == null) {
+                    running = false;
+                    return;
+                }
+            }
+            try {
+                next.run();
+            } catch (RuntimeException e) {
+                System.err.println("SerialLane task failed: " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.backend;
+
+import org.java_websocket.WebSocket;
+import org.json.JSONObject;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One phone's stream. Outlives individual WebSocket connections so a
+ * reconnecting phone resumes at {@link #nextSeq()} with its rolling scores
+ * intact.
+ *
+ * Sequence bookkeeping runs on whichever socket thread delivers the frame
+ * (synchronized here); scoring runs on the session's {@link SerialLane}.
+ */
+final class Session {
+
+    static final double WARNING_THRESHOLD = 0.6;
+    static final double EMERGENCY_THRESHOLD = 0.8;
+    static final long ALERT_COOLDOWN_MS = 5_000;
+
+    final String id;
+    final boolean legacy;
+    final long createdNanos = System.nanoTime();
+    private final SerialLane lane;
+    private final Scorer scorer = new Scorer();
+    // Backfill (audio the watch spooled through an outage) arrives interleaved
+    // with live frames; its own scorer keeps the two timelines' rolling windows apart.
+    private final Scorer backfillScorer = new Scorer();
+
+    private volatile WebSocket conn;
+    private int nextSeq = 0;
+    private int framesSinceAck = 0;
+    private long lastAckNanos = 0;
+    private long attachNanos = 0;   // 0 once the first frame after attach has arrived
+    private int openConnections = 0;
+    private long idleSinceNanos = 0;   // when the last open connection closed; 0 while one is open
+
+    // stats
+    final AtomicLong frames = new AtomicLong();
+    final AtomicLong bytes = new AtomicLong();
+    final AtomicLong duplicates = new AtomicLong();
+    final AtomicLong gapFrames = new AtomicLong();
+    final AtomicLong concealed = new AtomicLong();
+    final AtomicLong backfill = new AtomicLong();
+    final AtomicLong alerts = new AtomicLong();
+    final AtomicLong connections = new AtomicLong();
+    final AtomicLong messages = new AtomicLong();
+    volatile long coalesceDelayMs = 0;   // announced in the hello; 0 = one frame per message
+    final LatencyStats alertLatency = new LatencyStats(1024);
+    final LatencyStats firstFrameLatency = new LatencyStats(1024);   // hello → first new frame
+    private long lastAlertMs = 0;   // lane only
+    private long lastBackfillAlertMs = 0;   // lane only
+
+    Session(String id, boolean legacy, Executor pool) {
+        this.id = id;
+        this.legacy = legacy;
+        this.lane = new SerialLane(pool);
+    }
+
+    synchronized int attach(WebSocket conn) {
+        this.conn = conn;
+        connections.incrementAndGet();
+        openConnections++;
+        idleSinceNanos = 0;
+        attachNanos = System.nanoTime();
+        return nextSeq;
+    }
+
+    /** One of this session's connections closed. */
+    synchronized void detach() {
+        if (openConnections > 0 && --openConnections == 0) {
+            idleSinceNanos = System.nanoTime();
+        }
+    }
+
+    /** True if no connection has been open for at least {@code idleNanos}. */
+    synchronized boolean idleFor(long idleNanos, long nowNanos) {
+        return openConnections == 0 && idleSinceNanos != 0 && nowNanos - idleSinceNanos >= idleNanos;
+    }
+
+    synchronized int nextSeq() {
+        return nextSeq;
+    }
+
+    int laneBacklog() {
+        return lane.backlog();
+    }
+
+    /**
+     * Accepts one frame in stream order. The first new frame after each attach
+     * is acked straight away, so the phone can time its stream start-up.
+     *
+     * @return true if a cumulative ack is due
+     */
+    synchronized boolean accept(WireFrame f, long arrivalNanos, int ackEvery, long ackIntervalNanos) {
+        if (f.seq - nextSeq < 0) {
+            duplicates.incrementAndGet();
+            return false;
+        }
+        if (f.seq != nextSeq) {
+            gapFrames.addAndGet(f.seq - nextSeq);
+        }
+        nextSeq = f.seq + 1;
+        if ((f.flags & WireFrame.FLAG_CONCEALED) != 0) concealed.incrementAndGet();
+        boolean late = (f.flags & WireFrame.FLAG_BACKFILL) != 0;
+        if (late) backfill.incrementAndGet();
+        score(f.buf, f.payloadOffset, f.payloadLength, f.timestampMs, f.seq, arrivalNanos, late);
+
+        framesSinceAck++;
+        if (attachNanos != 0) {
+            firstFrameLatency.add(arrivalNanos - attachNanos);
+            attachNanos = 0;
+            framesSinceAck = 0;
+            lastAckNanos = arrivalNanos;
+            return true;
+        }
+        if (framesSinceAck >= ackEvery || arrivalNanos - lastAckNanos >= ackIntervalNanos) {
+            framesSinceAck = 0;
+            lastAckNanos = arrivalNanos;
+            return true;
+        }
+        return false;
+    }
+
+    /** Legacy (protocol 1) phones: bare PCM, no sequence numbers. */
+    void acceptRaw(byte[] pcm, long arrivalNanos) {
+        score(pcm, 0, pcm.length, System.currentTimeMillis(), -1, arrivalNanos, false);
+    }
+
+    private void score(byte[] buf, int off, int len, long frameTsMs, int seq, long arrivalNanos, boolean late) {
+        frames.incrementAndGet();
+        bytes.addAndGet(len);
+        Scorer s = late ? backfillScorer : scorer;
+        lane.execute(() -> s.accept(buf, off, len,
+                rolling -> maybeAlert(rolling, frameTsMs, seq, arrivalNanos, late)));
+    }
+
+    /** @param late scored from backfill: reported as such, and kept out of the latency stats */
+    private void maybeAlert(double[] rolling, long frameTsMs, int seq, long arrivalNanos, boolean late) {
+        int top = 0;
+        for (int c = 1; c < Scorer.VOCAL; c++) {
+            if (rolling[c] > rolling[top]) top = c;
+        }
+        double score = rolling[top];
+        if (score < WARNING_THRESHOLD) return;
+
+        long now = System.currentTimeMillis();
+        if (late) {
+            if (now - lastBackfillAlertMs < ALERT_COOLDOWN_MS) return;
+            lastBackfillAlertMs = now;
+        } else {
+            if (now - lastAlertMs < ALERT_COOLDOWN_MS) return;
+            lastAlertMs = now;
+        }
+
+        String level = score >= EMERGENCY_THRESHOLD ? "emergency" : "warning";
+        JSONObject scores = new JSONObject();
+        for (int c = 0; c < Scorer.CLASSES.length; c++) {
+            scores.put(Scorer.CLASSES[c], Math.round(rolling[c] * 1000) / 1000.0);
+        }
+        JSONObject event = new JSONObject()
+                .put("level", level)
+                .put("message", "Possible " + Scorer.CLASSES[top] + " detected")
+                .put("rolling", scores)
+                .put("session", id)
+                .put("trigger_seq", seq)
+                .put("frame_ts", frameTsMs)
+                .put("server_ts", now)
+                .put("backfill", late);
+        JSONObject root = new JSONObject().put("type", "alert").put("event", event);
+
+        WebSocket c = conn;
+        if (c != null && c.isOpen()) {
+            c.send(root.toString());
+            alerts.incrementAndGet();
+            if (!late) alertLatency.add(System.nanoTime() - arrivalNanos);
+        }
+    }
+
+    String report(double seconds) {
+        double kbps = bytes.get() * 8 / 1000.0 / Math.max(seconds, 1e-3);
+        return String.format(
+                "%s%s frames=%d %.1f kbit/s frames/msg=%.1f (batch<=%dms) dup=%d gap=%d concealed=%d backfill=%d conns=%d alerts=%d "
+                        + "alert_lat p50=%.1fms p99=%.1fms max=%.1fms first_frame p50=%.1fms backlog=%d",
+                id.length() > 8 ? id.substring(0, 8) : id, legacy ? "(legacy)" : "",
+                frames.get(), kbps, frames.get() / (double) Math.max(1, messages.get()), coalesceDelayMs,
+                duplicates.get(), gapFrames.get(), concealed.get(), backfill.get(),
+                connections.get(), alerts.get(),
+                alertLatency.percentileMs(50), alertLatency.percentileMs(99), alertLatency.maxMs(),
+                firstFrameLatency.percentileMs(50), lane.backlog());
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.backend;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Bulk upload of archived audio at /upload, next to the live /ws stream.
+ *
+ *   GET /upload/DEVICE/SEGMENT              → {"offset":N}
+ *   PUT /upload/DEVICE/SEGMENT?offset=N     body: PCM from byte N, Content-Encoding: deflate
+ *                                           → {"offset":M}, or 409 {"offset":N'} if N is stale
+ *
+ * Offsets count uncompressed PCM bytes. Inflated bytes are appended to
+ * DIR/DEVICE/SEGMENT as they arrive, so an upload cut off halfway still leaves
+ * a valid prefix and the phone resumes from the file length. Uploads of one
+ * device are not expected to race; appends are serialized per server anyway.
+ */
+public class UploadServer {
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9._-]{1,128}");
+
+    private final HttpServer http;
+    private final ExecutorService pool;
+    private final File dir;
+    private final Object appendLock = new Object();
+    private final long startNanos = System.nanoTime();
+
+    final AtomicLong uploads = new AtomicLong();
+    final AtomicLong interrupted = new AtomicLong();
+    final AtomicLong wireBytes = new AtomicLong();   // compressed, as received
+    final AtomicLong rawBytes = new AtomicLong();    // after inflating
+
+    public UploadServer(InetSocketAddress address, File dir) throws IOException {
+        this.dir = dir;
+        this.http = HttpServer.create(address, 0);
+        this.pool = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "upload");
+            t.setDaemon(true);
+            return t;
+        });
+        http.setExecutor(pool);
+        http.createContext("/upload/", this::handle);
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    public void stop() {
+        http.stop(0);
+        pool.shutdownNow();
+    }
+
+    public int port() {
+        return http.getAddress().getPort();
+    }
+
+    /** Where DEVICE's SEGMENT is stored. */
+    File file(String device, String segment) {
+        return new File(new File(dir, device), segment);
+    }
+
+    public String report() {
+        double secs = (System.nanoTime() - startNanos) / 1e9;
+        return String.format("[upload] parts=%d interrupted=%d raw=%.1f MB wire=%.1f MB (%.0f%%) %.2f MB/s",
+                uploads.get(), interrupted.get(), rawBytes.get() / 1e6, wireBytes.get() / 1e6,
+                100.0 * wireBytes.get() / Math.max(1, rawBytes.get()), wireBytes.get() / 1e6 / secs);
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            String[] parts = ex.getRequestURI().getPath().substring("/upload/".length()).split("/");
+            if (parts.length != 2 || !NAME.matcher(parts[0]).matches() || !NAME.matcher(parts[1]).matches()) {
+                reply(ex, 404, new JSONObject().put("error", "expected /upload/DEVICE/SEGMENT"));
+                return;
+            }
+            File target = file(parts[0], parts[1]);
+            if ("GET".equals(ex.getRequestMethod())) {
+                reply(ex, 200, new JSONObject().put("offset", target.length()));
+            } else if ("PUT".equals(ex.getRequestMethod())) {
+                put(ex, target);
+            } else {
+                reply(ex, 405, new JSONObject().put("error", "GET or PUT"));
+            }
+        } finally {
+            ex.close();
+        }
+    }
+
+    private void put(HttpExchange ex, File target) throws IOException {
+        long offset = queryOffset(ex.getRequestURI().getQuery());
+        boolean deflated = "deflate".equalsIgnoreCase(ex.getRequestHeaders().getFirst("Content-Encoding"));
+        synchronized (appendLock) {
+            if (offset != target.length()) {
+                // rare (the phone GETs the offset first); drain so the client sees the reply
+                drain(ex.getRequestBody());
+                reply(ex, 409, new JSONObject().put("offset", target.length()));
+                return;
+            }
+            //noinspection ResultOfMethodCallIgnored
+            target.getParentFile().mkdirs();
+            CountingInputStream wire = new CountingInputStream(ex.getRequestBody());
+            InputStream body = deflated ? new InflaterInputStream(wire) : wire;
+            long written = 0;
+            try (OutputStream out = new FileOutputStream(target, true)) {
+                byte[] buf = new byte[64 * 1024];
+                int n;
+                while ((n = body.read(buf)) > 0) {
+                    out.write(buf, 0, n);
+                    written += n;
+                }
+            } catch (IOException e) {
+                // the phone went away mid-part; what was inflated so far is kept
+                interrupted.incrementAndGet();
+                return;
+            } finally {
+                rawBytes.addAndGet(written);
+                wireBytes.addAndGet(wire.count);
+            }
+            uploads.incrementAndGet();
+            reply(ex, 200, new JSONObject().put("offset", target.length()));
+        }
+    }
+
+    private static void drain(InputStream in) {
+        byte[] buf = new byte[8192];
+        try {
+            while (in.read(buf) > 0) {
+                // discard
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static long queryOffset(String query) {
+        if (query != null) {
+            for (String kv : query.split("&")) {
+                if (kv.startsWith("offset=")) {
+                    try {
+                        return Long.parseLong(kv.substring("offset=".length()));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static void reply(HttpExchange ex, int code, JSONObject body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static final class CountingInputStream extends java.io.FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.backend;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary frame of protocol 2, as sent by the phone over /ws.
+ *
+ *   [0..3]   stream sequence number
+ *   [4..5]   flags
+ *   [6..7]   reserved
+ *   [8..15]  timestamp of the first sample, ms
+ *   [16..19] payload length
+ *   [20..]   16-bit mono PCM
+ *
+ * A WebSocket message may carry several frames back to back.
+ * Must stay in sync with com.example.mobile.WireFrame.
+ */
+public final class WireFrame {
+
+    public static final int HEADER_SIZE = 20;
+    public static final int FLAG_CONCEALED = 1;
+    public static final int FLAG_BACKFILL = 2;   // late audio from the watch's spool, timestamped at capture
+
+    public final int seq;
+    public final int flags;
+    public final long timestampMs;
+    public final byte[] buf;
+    public final int payloadOffset;
+    public final int payloadLength;
+
+    private WireFrame(int seq, int flags, long timestampMs, byte[] buf, int payloadOffset, int payloadLength) {
+        this.seq = seq;
+        this.flags = flags;
+        this.timestampMs = timestampMs;
+        this.buf = buf;
+        this.payloadOffset = payloadOffset;
+        this.payloadLength = payloadLength;
+    }
+
+    public static byte[] encode(int seq, int flags, long timestampMs, byte[] pcm, int off, int len) {
+        byte[] out = new byte[HEADER_SIZE + len];
+        writeHeader(out, 0, seq, flags, timestampMs, len);
+        System.arraycopy(pcm, off, out, HEADER_SIZE, len);
+        return out;
+    }
+
+    public static void writeHeader(byte[] out, int at, int seq, int flags, long timestampMs, int len) {
+        ByteBuffer.wrap(out, at, HEADER_SIZE)
+                .order(ByteOrder.BIG_ENDIAN)
+                .putInt(seq)
+                .putShort((short) flags)
+                .putShort((short) 0)
+                .putLong(timestampMs)
+                .putInt(len);
+    }
+
+    /** Reads the frame starting at {@code at}; the payload is not copied. */
+    public static WireFrame parse(byte[] buf, int at) {
+        if (at + HEADER_SIZE > buf.length) {
+            throw new IllegalArgumentException("Truncated wire header at " + at);
+        }
+        ByteBuffer bb = ByteBuffer.wrap(buf, at, HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        int seq = bb.getInt();
+        int flags = bb.getShort() & 0xFFFF;
+        bb.getShort();
+        long ts = bb.getLong();
+        int len = bb.getInt();
+        if (len < 0 || at + HEADER_SIZE + len > buf.length) {
+            throw new IllegalArgumentException("Truncated wire frame at " + at);
+        }
+        return new WireFrame(seq, flags, ts, buf, at + HEADER_SIZE, len);
+    }
+
+    public int end() {
+        return payloadOffset + payloadLength;
+    }
+}
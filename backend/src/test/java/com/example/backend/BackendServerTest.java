@@ -0,0 +1,172 @@
+package com.example.backend;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BackendServerTest {
+
+    private BackendServer server;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new BackendServer(new InetSocketAddress("127.0.0.1", port), 2);
+        server.start();
+        Thread.sleep(200);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(500);
+    }
+
+    private static final class Client extends WebSocketClient {
+        final BlockingQueue<JSONObject> inbox = new LinkedBlockingQueue<>();
+
+        Client(int port) throws Exception {
+            super(new URI("ws://127.0.0.1:" + port + "/ws"));
+        }
+
+        @Override public void onOpen(ServerHandshake h) { }
+        @Override public void onMessage(String m) { inbox.add(new JSONObject(m)); }
+        @Override public void onClose(int code, String reason, boolean remote) { }
+        @Override public void onError(Exception ex) { }
+
+        JSONObject next(String type) throws InterruptedException {
+            while (true) {
+                JSONObject m = inbox.poll(5, TimeUnit.SECONDS);
+                assertNotNull("timed out waiting for " + type, m);
+                if (type.equals(m.optString("type"))) return m;
+            }
+        }
+
+        JSONObject hello(String session) throws InterruptedException {
+            send(new JSONObject().put("type", "hello").put("proto", 2)
+                    .put("session", session).put("last_acked", -1).toString());
+            return next("welcome");
+        }
+    }
+
+    private static byte[] frames(int firstSeq, int count, int payload) {
+        byte[] msg = new byte[count * (WireFrame.HEADER_SIZE + payload)];
+        for (int i = 0; i < count; i++) {
+            WireFrame.writeHeader(msg, i * (WireFrame.HEADER_SIZE + payload), firstSeq + i, 0, 0, payload);
+        }
+        return msg;
+    }
+
+    @Test
+    public void resumesSessionAndAcksCoalescedFrames() throws Exception {
+        Client a = new Client(port);
+        assertTrue(a.connectBlocking(5, TimeUnit.SECONDS));
+        assertEquals(0, a.hello("s1").getInt("next_seq"));
+
+        a.send(frames(0, 12, 640));   // 12 frames in one message
+        assertEquals(11, a.next("ack").getInt("seq"));
+        a.closeBlocking();
+
+        Client b = new Client(port);
+        assertTrue(b.connectBlocking(5, TimeUnit.SECONDS));
+        assertEquals(12, b.hello("s1").getInt("next_seq"));
+
+        b.send(frames(10, 5, 640));   // 10, 11 are duplicates
+        assertEquals(14, b.next("ack").getInt("seq"));   // first new frame after resume: acked at once
+        Thread.sleep(300);
+        b.send(frames(15, 1, 640));
+        assertEquals(15, b.next("ack").getInt("seq"));
+        b.closeBlocking();
+
+        Session s = server.session("s1");
+        assertEquals(16, s.frames.get());
+        assertEquals(2, s.duplicates.get());
+        assertEquals(0, s.gapFrames.get());
+        assertEquals(2, s.connections.get());
+        assertEquals(2, s.firstFrameLatency.count());
+        assertEquals(3, s.messages.get());
+    }
+
+    @Test
+    public void answersClockPings() throws Exception {
+        Client c = new Client(port);
+        assertTrue(c.connectBlocking(5, TimeUnit.SECONDS));
+        long t1 = System.nanoTime();
+        c.send(new JSONObject().put("type", "ping").put("t1", t1).toString());
+        JSONObject pong = c.next("pong");
+        long t4 = System.nanoTime();
+        assertEquals(t1, pong.getLong("t1"));
+        // same JVM, same clock: the server's stamps fall inside the round trip
+        assertTrue(t1 <= pong.getLong("t2"));
+        assertTrue(pong.getLong("t2") <= pong.getLong("t3"));
+        assertTrue(pong.getLong("t3") <= t4);
+    }
+
+    @Test
+    public void pushesAlertForLoudTone() throws Exception {
+        Client c = new Client(port);
+        assertTrue(c.connectBlocking(5, TimeUnit.SECONDS));
+        c.hello("tone");
+
+        int payload = 3200;   // 100 ms
+        byte[] pcm = new byte[payload];
+        for (int seq = 0; seq < 20; seq++) {
+            for (int i = 0; i < payload / 2; i++) {
+                int n = seq * payload / 2 + i;
+                short v = (short) (16000 * Math.sin(2 * Math.PI * 3000 * n / 16000.0));
+                pcm[2 * i] = (byte) v;
+                pcm[2 * i + 1] = (byte) (v >> 8);
+            }
+            c.send(WireFrame.encode(seq, 0, seq * 100L, pcm, 0, payload));
+        }
+
+        JSONObject event = c.next("alert").getJSONObject("event");
+        assertTrue(event.getJSONObject("rolling").getDouble("alarm") >= Session.WARNING_THRESHOLD);
+        assertEquals("tone", event.getString("session"));
+        c.closeBlocking();
+        assertEquals(1, server.session("tone").alertLatency.count());
+    }
+
+    @Test
+    public void evictsSessionsLongAfterTheirLastConnectionCloses() throws Exception {
+        server.setSessionIdleTimeout(200, TimeUnit.MILLISECONDS);
+        Client gone = new Client(port);
+        assertTrue(gone.connectBlocking(5, TimeUnit.SECONDS));
+        gone.hello("gone");
+        Client live = new Client(port);
+        assertTrue(live.connectBlocking(5, TimeUnit.SECONDS));
+        live.hello("live");
+        gone.closeBlocking();
+
+        Thread.sleep(50);
+        server.evictIdleSessions();
+        assertNotNull("a phone gets time to reconnect", server.session("gone"));
+
+        Thread.sleep(300);
+        server.evictIdleSessions();
+        assertNull(server.session("gone"));
+        assertNotNull("connected sessions stay", server.session("live"));
+        assertEquals(1, server.sessionCount());
+
+        // a phone coming back after eviction starts a fresh session
+        Client back = new Client(port);
+        assertTrue(back.connectBlocking(5, TimeUnit.SECONDS));
+        assertEquals(0, back.hello("gone").getInt("next_seq"));
+        back.closeBlocking();
+        live.closeBlocking();
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.backend;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ScorerTest {
+
+    private static final int SR = Scorer.SAMPLE_RATE;
+
+    private static byte[] pcm(double[] samples) {
+        byte[] out = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            short s = (short) Math.max(-32768, Math.min(32767, Math.round(samples[i] * 32767)));
+            out[2 * i] = (byte) s;
+            out[2 * i + 1] = (byte) (s >> 8);
+        }
+        return out;
+    }
+
+    private static double[] score(double[] samples) {
+        Scorer scorer = new Scorer();
+        byte[] bytes = pcm(samples);
+        // feed in odd-sized chunks to exercise sample reassembly
+        for (int off = 0; off < bytes.length; off += 641) {
+            scorer.accept(bytes, off, Math.min(641, bytes.length - off), null);
+        }
+        return scorer.rolling();
+    }
+
+    @Test
+    public void silenceScoresNothing() {
+        double[] r = score(new double[SR * 2]);
+        for (double v : r) assertEquals(0, v, 1e-9);
+    }
+
+    @Test
+    public void sustainedToneLooksLikeAlarm() {
+        double[] x = new double[SR * 2];
+        for (int i = 0; i < x.length; i++) x[i] = 0.5 * Math.sin(2 * Math.PI * 3000 * i / SR);
+        double[] r = score(x);
+        assertTrue("alarm=" + r[Scorer.ALARM], r[Scorer.ALARM] > 0.8);
+        assertTrue(r[Scorer.GUNSHOT] < 0.2);
+    }
+
+    @Test
+    public void sharpBroadbandImpulseLooksLikeGunshot() {
+        Random rnd = new Random(1);
+        double[] x = new double[SR * 2];
+        for (int i = 0; i < x.length; i++) x[i] = 0.005 * rnd.nextGaussian();
+        int at = SR / 2 + 1234;
+        for (int i = 0; i < 800; i++) {
+            x[at + i] += 0.9 * Math.exp(-i / 120.0) * rnd.nextGaussian();
+        }
+        double[] r = score(x);
+        assertTrue("gunshot=" + r[Scorer.GUNSHOT], r[Scorer.GUNSHOT] > 0.6);
+        assertTrue(r[Scorer.ALARM] < 0.2);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.backend;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.*;
+
+public class UploadServerTest {
+
+    private File dir;
+    private UploadServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("uploads").toFile();
+        server = new UploadServer(new InetSocketAddress("127.0.0.1", 0), dir);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        deleteRecursively(dir);
+    }
+
+    private static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) deleteRecursively(c);
+        }
+        f.delete();
+    }
+
+    private URL url(String pathAndQuery) throws IOException {
+        return new URL("http://127.0.0.1:" + server.port() + pathAndQuery);
+    }
+
+    private JSONObject get(String path) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) url(path).openConnection();
+        assertEquals(200, c.getResponseCode());
+        return new JSONObject(read(c.getInputStream()));
+    }
+
+    /** PUTs {@code pcm} deflated; returns the status code and the body. */
+    private Object[] put(String path, byte[] pcm) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) url(path).openConnection();
+        c.setRequestMethod("PUT");
+        c.setDoOutput(true);
+        c.setChunkedStreamingMode(8192);
+        c.setRequestProperty("Content-Encoding", "deflate");
+        try (OutputStream out = new DeflaterOutputStream(c.getOutputStream(), new Deflater(Deflater.BEST_SPEED))) {
+            out.write(pcm);
+        }
+        int code = c.getResponseCode();
+        InputStream in = code < 400 ? c.getInputStream() : c.getErrorStream();
+        return new Object[]{code, new JSONObject(read(in))};
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void partsAppendAtTheCommittedOffset() throws Exception {
+        byte[] pcm = new byte[300_000];
+        new Random(1).nextBytes(pcm);
+        String path = "/upload/phone-1/seg-1000.pcm";
+        assertEquals(0, get(path).getLong("offset"));
+
+        Object[] r = put(path + "?offset=0", Arrays.copyOfRange(pcm, 0, 200_000));
+        assertEquals(200, r[0]);
+        assertEquals(200_000, ((JSONObject) r[1]).getLong("offset"));
+
+        // a retry of the first part (its reply was lost) is refused with the real offset
+        r = put(path + "?offset=0", Arrays.copyOfRange(pcm, 0, 200_000));
+        assertEquals(409, r[0]);
+        assertEquals(200_000, ((JSONObject) r[1]).getLong("offset"));
+
+        r = put(path + "?offset=200000", Arrays.copyOfRange(pcm, 200_000, pcm.length));
+        assertEquals(200, r[0]);
+        assertArrayEquals(pcm, Files.readAllBytes(server.file("phone-1", "seg-1000.pcm").toPath()));
+        assertEquals(2, server.uploads.get());
+        assertEquals(300_000, server.rawBytes.get());
+    }
+
+    @Test
+    public void rejectsPathsOutsideTheUploadDir() throws Exception {
+        HttpURLConnection c = (HttpURLConnection) url("/upload/phone-1/..%2F..%2Fetc").openConnection();
+        assertEquals(404, c.getResponseCode());
+        c = (HttpURLConnection) url("/upload/only-one-part").openConnection();
+        assertEquals(404, c.getResponseCode());
+    }
+}
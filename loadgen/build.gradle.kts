@@ -0,0 +1,24 @@
+// Headless load generator: N simulated PhoneStreamService clients against /ws.
+// Run with: ./gradlew :loadgen:run --args="--url ws://localhost:8000/ws --ramp 100:30,1000:60"
+// Replay a phone capture: ./gradlew :loadgen:run --args="replay --capture field.wcap --speed 10"
+// Coalesced vs one message per chunk: add --coalesce-ms 100 and compare messages_per_s / process_cpu_pct
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+application {
+    mainClass.set("com.example.loadgen.LoadGenerator")
+}
+
+dependencies {
+    // wire format and latency stats shared with the backend stand-in
+    implementation(project(":backend"))
+    implementation("com.squareup.okhttp3:okhttp:4.12.0")
+    implementation("org.json:json:20231013")
+    testImplementation(libs.junit)
+}
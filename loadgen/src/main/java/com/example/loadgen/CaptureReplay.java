@@ -0,0 +1,243 @@
+package com.example.loadgen;
+
+import com.example.backend.BackendServer;
+import com.example.backend.LatencyStats;
+import com.example.backend.WireFrame;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * Replays a phone capture (.wcap) straight to a backend, as one or more
+ * protocol-2 sessions, at 1x, Nx or maximum speed.
+ *
+ * Each recorded /audio_chunk keeps its original size and (scaled)
+ * inter-arrival time; the watch header is stripped and the PCM sent as one
+ * WireFrame per chunk, in capture order. Each session maps the file itself,
+ * so several sessions replaying the same capture share the page cache.
+ *
+ * Run with: LoadGenerator replay --capture field.wcap [--speed 1|N|max]
+ */
+final class CaptureReplay {
+
+    static final class Options {
+        String url = "ws://127.0.0.1:8000/ws";
+        File capture;
+        double speed = 1;        // Double.POSITIVE_INFINITY = as fast as possible
+        int sessions = 1;
+        boolean embeddedBackend = false;
+    }
+
+    // Watch frame header (com.example.mobile.AudioFrame)
+    private static final byte WATCH_MAGIC = 0x57;
+    private static final byte WATCH_VERSION = 1;
+    private static final int WATCH_HEADER_SIZE = 16;
+
+    private final Options opts;
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder acks = new LongAdder();
+    private final LongAdder alerts = new LongAdder();
+    private final LatencyStats lag = new LatencyStats(100_000);
+
+    CaptureReplay(Options opts) {
+        this.opts = opts;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options o = parse(args);
+        BackendServer embedded = null;
+        if (o.embeddedBackend) {
+            URI uri = new URI(o.url);
+            embedded = new BackendServer(new InetSocketAddress(uri.getHost(), uri.getPort()),
+                    Runtime.getRuntime().availableProcessors());
+            embedded.start();
+            Thread.sleep(300);
+        }
+        try {
+            System.out.println(new CaptureReplay(o).run().toString(2));
+        } finally {
+            if (embedded != null) embedded.stop(1000);
+        }
+    }
+
+    static Options parse(String[] args) {
+        Options o = new Options();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url": o.url = args[++i]; break;
+                case "--capture": o.capture = new File(args[++i]); break;
+                case "--speed": {
+                    String s = args[++i];
+                    o.speed = "max".equals(s) ? Double.POSITIVE_INFINITY : Double.parseDouble(s);
+                    break;
+                }
+                case "--sessions": o.sessions = Integer.parseInt(args[++i]); break;
+                case "--embedded-backend": o.embeddedBackend = true; break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i] + "\n"
+                            + "Usage: LoadGenerator replay --capture file.wcap [--url ws://host:port/ws]\n"
+                            + "  [--speed 1|N|max] [--sessions N] [--embedded-backend]");
+            }
+        }
+        if (o.capture == null) {
+            throw new IllegalArgumentException("--capture is required");
+        }
+        if (!(o.speed > 0)) {
+            throw new IllegalArgumentException("--speed must be > 0 or max");
+        }
+        return o;
+    }
+
+    JSONObject run() throws Exception {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .build();
+        System.out.printf("Replay: %s -> %s, %s, %d session(s)%n", opts.capture, opts.url,
+                Double.isInfinite(opts.speed) ? "max speed" : opts.speed + "x", opts.sessions);
+
+        List<Thread> threads = new ArrayList<>();
+        List<Exception> errors = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < opts.sessions; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    replaySession(client);
+                } catch (Exception e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            }, "replay-" + i);
+            t.start();
+            threads.add(t);
+        }
+        for (Thread t : threads) t.join();
+        double secs = (System.nanoTime() - start) / 1e9;
+
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+        return new JSONObject()
+                .put("sessions", opts.sessions)
+                .put("speed", Double.isInfinite(opts.speed) ? "max" : String.valueOf(opts.speed))
+                .put("duration_s", secs)
+                .put("frames", frames.sum())
+                .put("bytes", bytes.sum())
+                .put("frames_per_s", frames.sum() / secs)
+                .put("acks", acks.sum())
+                .put("alerts", alerts.sum())
+                .put("schedule_lag_p99_ms", lag.percentileMs(99))
+                .put("schedule_lag_max_ms", lag.maxMs());
+    }
+
+    private void replaySession(OkHttpClient client) throws Exception {
+        Session session = new Session();
+        WebSocket ws = client.newWebSocket(new Request.Builder().url(opts.url).build(), session);
+        if (!session.welcomed.await(10, TimeUnit.SECONDS)) {
+            ws.cancel();
+            throw new IllegalStateException("no welcome from " + opts.url);
+        }
+
+        boolean paced = !Double.isInfinite(opts.speed);
+        int seq = session.nextSeq;
+        try (CaptureReader reader = new CaptureReader(opts.capture)) {
+            long t0 = System.nanoTime();
+            long first = -1;
+            while (reader.next()) {
+                if (first < 0) first = reader.arrivalNanos();
+                if (paced) {
+                    long due = t0 + (long) ((reader.arrivalNanos() - first) / opts.speed);
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    lag.add(-wait);
+                }
+
+                ByteBuffer payload = reader.payload();
+                if (payload.remaining() >= WATCH_HEADER_SIZE
+                        && payload.get(0) == WATCH_MAGIC && payload.get(1) == WATCH_VERSION) {
+                    payload.position(WATCH_HEADER_SIZE);
+                }
+                int len = payload.remaining();
+                byte[] message = new byte[WireFrame.HEADER_SIZE + len];
+                WireFrame.writeHeader(message, 0, seq++, 0, System.currentTimeMillis(), len);
+                payload.get(message, WireFrame.HEADER_SIZE, len);
+                // OkHttp queues up to 16 MiB; at max speed, wait for it to drain
+                while (ws.queueSize() > 4 * 1024 * 1024) {
+                    LockSupport.parkNanos(1_000_000);
+                }
+                if (!ws.send(ByteString.of(message))) {
+                    throw new IllegalStateException("connection lost during replay");
+                }
+                frames.increment();
+                bytes.add(message.length);
+            }
+        }
+        while (ws.queueSize() > 0) {
+            LockSupport.parkNanos(1_000_000);
+        }
+        ws.close(1000, "replay done");
+    }
+
+    private final class Session extends WebSocketListener {
+        final String id = UUID.randomUUID().toString();
+        final CountDownLatch welcomed = new CountDownLatch(1);
+        volatile int nextSeq;
+
+        @Override
+        public void onOpen(WebSocket ws, Response response) {
+            ws.send(new JSONObject()
+                    .put("type", "hello")
+                    .put("proto", 2)
+                    .put("session", id)
+                    .put("last_acked", -1)
+                    .toString());
+        }
+
+        @Override
+        public void onMessage(WebSocket ws, String text) {
+            JSONObject root = new JSONObject(text);
+            switch (root.optString("type")) {
+                case "welcome":
+                    nextSeq = root.optInt("next_seq", 0);
+                    welcomed.countDown();
+                    break;
+                case "ack":
+                    acks.increment();
+                    break;
+                case "alert":
+                    alerts.increment();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket ws, int code, String reason) {
+            ws.close(1000, null);
+        }
+    }
+}
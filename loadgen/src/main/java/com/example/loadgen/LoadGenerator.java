@@ -0,0 +1,226 @@
+package com.example.loadgen;
+
+import com.example.backend.BackendServer;
+
+import com.sun.management.OperatingSystemMXBean;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * Simulates many PhoneStreamService clients against one backend node.
+ *
+ * Uses OkHttp, the same client stack as the phone. Each simulated phone
+ * opens a protocol-2 session and streams PCM chunks at the watch's cadence
+ * (default 1280 bytes = 40 ms, a typical AudioRecord.getMinBufferSize at
+ * 16 kHz mono), optionally skipping silent chunks, and injects periodic
+ * alarm tones so alert round-trip time can be measured.
+ *
+ * Sessions follow a ramp profile; per-interval and summary results go to the
+ * console and to the {@code --out} files (.json and/or .csv) for comparing
+ * runs.
+ *
+ * {@code replay ...} as the first argument replays a phone capture instead
+ * (see {@link CaptureReplay}).
+ */
+public final class LoadGenerator {
+
+    static final class Options {
+        String url = "ws://127.0.0.1:8000/ws";
+        String ramp = "100:30,100:60";
+        int chunkBytes = 1280;
+        double activity = 0.3;
+        boolean gate = false;
+        long coalesceMs = 0;
+        double eventEverySecs = 20;
+        int reportSecs = 5;
+        int schedulerThreads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        List<File> out = new ArrayList<>();
+        boolean embeddedBackend = false;
+        long seed = 42;
+
+        JSONObject toJson() {
+            return new JSONObject()
+                    .put("url", url)
+                    .put("ramp", ramp)
+                    .put("chunk_bytes", chunkBytes)
+                    .put("activity", activity)
+                    .put("silence_gating", gate)
+                    .put("coalesce_ms", coalesceMs)
+                    .put("event_every_s", eventEverySecs)
+                    .put("scheduler_threads", schedulerThreads)
+                    .put("embedded_backend", embeddedBackend);
+        }
+    }
+
+    private final Options opts;
+    private final LoadStats stats = new LoadStats();
+    private final List<SimulatedPhone> phones = new ArrayList<>();
+    private final List<ScheduledFuture<?>> ticks = new ArrayList<>();
+
+    LoadGenerator(Options opts) {
+        this.opts = opts;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "replay".equals(args[0])) {
+            CaptureReplay.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        Options o = parse(args);
+        BackendServer embedded = null;
+        if (o.embeddedBackend) {
+            URI uri = new URI(o.url);
+            embedded = new BackendServer(new InetSocketAddress(uri.getHost(), uri.getPort()),
+                    Runtime.getRuntime().availableProcessors());
+            embedded.start();
+            Thread.sleep(300);
+        }
+        try {
+            JSONObject summary = new LoadGenerator(o).run();
+            System.out.println(summary.toString(2));
+        } finally {
+            if (embedded != null) embedded.stop(1000);
+        }
+    }
+
+    static Options parse(String[] args) {
+        Options o = new Options();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url": o.url = args[++i]; break;
+                case "--sessions": {
+                    // shorthand: ramp to N over 10 s, then hold for 60 s
+                    o.ramp = args[++i] + ":10," + args[i] + ":60";
+                    break;
+                }
+                case "--ramp": o.ramp = args[++i]; break;
+                case "--chunk-bytes": o.chunkBytes = Integer.parseInt(args[++i]); break;
+                case "--activity": o.activity = Double.parseDouble(args[++i]); break;
+                case "--gate-silence": o.gate = true; break;
+                case "--coalesce-ms": o.coalesceMs = Long.parseLong(args[++i]); break;
+                case "--event-every-secs": o.eventEverySecs = Double.parseDouble(args[++i]); break;
+                case "--report-secs": o.reportSecs = Integer.parseInt(args[++i]); break;
+                case "--threads": o.schedulerThreads = Integer.parseInt(args[++i]); break;
+                case "--out":
+                    for (String f : args[++i].split(",")) o.out.add(new File(f));
+                    break;
+                case "--embedded-backend": o.embeddedBackend = true; break;
+                case "--seed": o.seed = Long.parseLong(args[++i]); break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i] + "\n"
+                            + "Usage: LoadGenerator [--url ws://host:port/ws] [--sessions N | --ramp n:secs,...]\n"
+                            + "  [--chunk-bytes B] [--activity 0..1] [--gate-silence] [--coalesce-ms D]\n"
+                            + "  [--event-every-secs S]\n"
+                            + "  [--report-secs S] [--threads N] [--out results.json,results.csv]\n"
+                            + "  [--embedded-backend] [--seed N]");
+            }
+        }
+        return o;
+    }
+
+    JSONObject run() throws Exception {
+        RampProfile ramp = RampProfile.parse(opts.ramp);
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Integer.MAX_VALUE);
+        dispatcher.setMaxRequestsPerHost(Integer.MAX_VALUE);
+        OkHttpClient client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .build();
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(opts.schedulerThreads, r -> {
+            Thread t = new Thread(r, "phone-ticker");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+
+        PcmSource probe = new PcmSource(opts.chunkBytes, 0, 0, 0);
+        long chunkMicros = probe.chunkMicros();
+        long eventEveryChunks = opts.eventEverySecs <= 0 ? 0
+                : Math.round(opts.eventEverySecs * 1_000_000 / chunkMicros);
+        Random phase = new Random(opts.seed);
+
+        System.out.printf("Load: %s, ramp %s (%d s, peak %d sessions), %d B chunks every %.1f ms%n",
+                opts.url, opts.ramp, ramp.durationMs() / 1000, ramp.maxTarget(),
+                opts.chunkBytes, chunkMicros / 1000.0);
+
+        // process CPU: the simulated phones' framing and writes, plus an embedded backend
+        OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long cpuStart = os.getProcessCpuTime();
+        long start = System.nanoTime();
+        stats.start(start);
+        long nextReport = start + TimeUnit.SECONDS.toNanos(opts.reportSecs);
+        long durationNanos = TimeUnit.MILLISECONDS.toNanos(ramp.durationMs());
+
+        while (true) {
+            long now = System.nanoTime();
+            long elapsedMs = (now - start) / 1_000_000;
+            if (now - start >= durationNanos) break;
+
+            int target = ramp.targetAt(elapsedMs);
+            while (phones.size() < target) {
+                PcmSource src = new PcmSource(opts.chunkBytes, opts.activity, eventEveryChunks,
+                        opts.seed + phones.size());
+                SimulatedPhone p = new SimulatedPhone(client, opts.url, src, opts.gate,
+                        opts.coalesceMs, stats);
+                p.connect();
+                phones.add(p);
+                ticks.add(scheduler.scheduleAtFixedRate(p::tick,
+                        phase.nextInt((int) chunkMicros), chunkMicros, TimeUnit.MICROSECONDS));
+            }
+            while (phones.size() > target) {
+                int last = phones.size() - 1;
+                ticks.remove(last).cancel(false);
+                phones.remove(last).stop();
+            }
+
+            if (now >= nextReport) {
+                report(now, elapsedMs, target);
+                nextReport += TimeUnit.SECONDS.toNanos(opts.reportSecs);
+            }
+            Thread.sleep(100);
+        }
+
+        long end = System.nanoTime();
+        report(end, (end - start) / 1_000_000, ramp.targetAt(ramp.durationMs()));
+        for (ScheduledFuture<?> f : ticks) f.cancel(false);
+        for (SimulatedPhone p : phones) p.stop();
+        scheduler.shutdownNow();
+
+        JSONObject summary = stats.summary((end - start) / 1e9);
+        summary.put("process_cpu_pct",
+                Math.round((os.getProcessCpuTime() - cpuStart) * 1000.0 / (end - start)) / 10.0);
+        for (File f : opts.out) {
+            stats.write(f, opts.toJson(), summary);
+            System.out.println("Wrote " + f);
+        }
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        return summary;
+    }
+
+    private void report(long now, long elapsedMs, int target) {
+        JSONObject row = stats.snapshot(now, elapsedMs, target);
+        System.out.printf("[load] t=%5.0fs sessions=%d/%d %8.0f frames/s %6.2f MB/s alerts=%d "
+                        + "rtt p50=%.0fms p99=%.0fms fail=%d drop=%d%n",
+                row.getDouble("t_s"), row.getInt("streaming_sessions"), target,
+                row.getDouble("frames_per_s"), row.getDouble("mbytes_per_s"), row.getLong("alerts"),
+                row.getDouble("alert_rtt_p50_ms"), row.getDouble("alert_rtt_p99_ms"),
+                row.getLong("connect_failures"), row.getLong("disconnects"));
+    }
+}
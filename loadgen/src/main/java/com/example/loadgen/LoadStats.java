@@ -0,0 +1,130 @@
+package com.example.loadgen;
+
+import com.example.backend.LatencyStats;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counters shared by all simulated phones, plus per-interval snapshots for the report. */
+final class LoadStats {
+
+    final LongAdder framesSent = new LongAdder();
+    final LongAdder framesGated = new LongAdder();
+    final LongAdder messagesSent = new LongAdder();
+    final LongAdder bytesSent = new LongAdder();
+    final LongAdder acks = new LongAdder();
+    final LongAdder alerts = new LongAdder();
+    final LongAdder unexpectedAlerts = new LongAdder();
+    final LongAdder missedEvents = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+    final AtomicInteger streaming = new AtomicInteger();
+    final LatencyStats alertRtt = new LatencyStats(100_000);
+    final LatencyStats connectTime = new LatencyStats(100_000);
+
+    private final List<JSONObject> intervals = new ArrayList<>();
+    private long lastFrames, lastMessages, lastBytes, lastAlerts, lastNanos;
+    private LatencyStats intervalRtt = new LatencyStats(10_000);
+
+    void recordAlertRtt(long nanos) {
+        alertRtt.add(nanos);
+        synchronized (this) {
+            intervalRtt.add(nanos);
+        }
+    }
+
+    synchronized void start(long nowNanos) {
+        lastNanos = nowNanos;
+    }
+
+    /** Closes the current interval and returns it. */
+    synchronized JSONObject snapshot(long nowNanos, long elapsedMs, int targetSessions) {
+        double secs = Math.max(1e-3, (nowNanos - lastNanos) / 1e9);
+        long frames = framesSent.sum();
+        long messages = messagesSent.sum();
+        long bytes = bytesSent.sum();
+        long alertCount = alerts.sum();
+
+        JSONObject row = new JSONObject()
+                .put("t_s", elapsedMs / 1000.0)
+                .put("target_sessions", targetSessions)
+                .put("streaming_sessions", streaming.get())
+                .put("frames_per_s", round((frames - lastFrames) / secs))
+                .put("messages_per_s", round((messages - lastMessages) / secs))
+                .put("mbytes_per_s", round((bytes - lastBytes) / secs / 1e6))
+                .put("alerts", alertCount - lastAlerts)
+                .put("alert_rtt_p50_ms", round(intervalRtt.percentileMs(50)))
+                .put("alert_rtt_p99_ms", round(intervalRtt.percentileMs(99)))
+                .put("connect_failures", connectFailures.sum())
+                .put("disconnects", disconnects.sum());
+        intervals.add(row);
+
+        lastFrames = frames;
+        lastMessages = messages;
+        lastBytes = bytes;
+        lastAlerts = alertCount;
+        lastNanos = nowNanos;
+        intervalRtt = new LatencyStats(10_000);
+        return row;
+    }
+
+    JSONObject summary(double seconds) {
+        return new JSONObject()
+                .put("duration_s", round(seconds))
+                .put("frames_sent", framesSent.sum())
+                .put("frames_gated", framesGated.sum())
+                .put("messages_sent", messagesSent.sum())
+                .put("messages_per_s", round(messagesSent.sum() / seconds))
+                .put("bytes_sent", bytesSent.sum())
+                .put("mbytes_per_s", round(bytesSent.sum() / seconds / 1e6))
+                .put("acks", acks.sum())
+                .put("alerts", alerts.sum())
+                .put("unexpected_alerts", unexpectedAlerts.sum())
+                .put("missed_events", missedEvents.sum())
+                .put("alert_rtt_count", alertRtt.count())
+                .put("alert_rtt_p50_ms", round(alertRtt.percentileMs(50)))
+                .put("alert_rtt_p90_ms", round(alertRtt.percentileMs(90)))
+                .put("alert_rtt_p99_ms", round(alertRtt.percentileMs(99)))
+                .put("alert_rtt_max_ms", round(alertRtt.maxMs()))
+                .put("connect_p50_ms", round(connectTime.percentileMs(50)))
+                .put("connect_p99_ms", round(connectTime.percentileMs(99)))
+                .put("connect_failures", connectFailures.sum())
+                .put("disconnects", disconnects.sum());
+    }
+
+    /** Writes JSON (config, summary, intervals) or CSV (one row per interval) by file extension. */
+    synchronized void write(File file, JSONObject config, JSONObject summary) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            if (file.getName().endsWith(".csv")) {
+                if (intervals.isEmpty()) return;
+                List<String> cols = new ArrayList<>(intervals.get(0).keySet());
+                cols.sort(null);
+                out.println(String.join(",", cols));
+                for (JSONObject row : intervals) {
+                    List<String> vals = new ArrayList<>();
+                    for (String c : cols) vals.add(String.valueOf(row.opt(c)));
+                    out.println(String.join(",", vals));
+                }
+            } else {
+                out.println(new JSONObject()
+                        .put("config", config)
+                        .put("summary", summary)
+                        .put("intervals", new JSONArray(intervals))
+                        .toString(2));
+            }
+        }
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 100) / 100.0;
+    }
+}
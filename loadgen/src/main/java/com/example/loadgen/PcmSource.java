@@ -0,0 +1,99 @@
+package com.example.loadgen;
+
+import java.util.Random;
+
+/**
+ * Synthetic watch audio at the phone's real cadence.
+ *
+ * Produces little-endian 16 kHz mono PCM in chunks of {@code chunkBytes}
+ * (what AudioRecord.getMinBufferSize returns on the watch), as low-level
+ * background noise with optional speech-like activity bursts and periodic
+ * alarm-tone "events" that should make the backend alert.
+ *
+ * Signals come from one-second tables shared by all sources, so thousands of
+ * simulated phones cost little more than the memcpy.
+ */
+final class PcmSource {
+
+    static final int SAMPLE_RATE = 16000;
+
+    private static final float[] NOISE = new float[SAMPLE_RATE];
+    private static final float[] SPEECH = new float[SAMPLE_RATE];
+    private static final float[] TONE = new float[SAMPLE_RATE];
+
+    static {
+        Random rnd = new Random(7);
+        for (int i = 0; i < SAMPLE_RATE; i++) {
+            NOISE[i] = (float) (0.002 * rnd.nextGaussian());
+            // 180 Hz voiced carrier, 4 Hz syllable envelope; both periodic in 1 s
+            double env = 0.5 + 0.5 * Math.sin(2 * Math.PI * 4 * i / SAMPLE_RATE);
+            SPEECH[i] = (float) (0.1 * env * Math.sin(2 * Math.PI * 180 * i / SAMPLE_RATE)
+                    * (1 + 0.3 * rnd.nextGaussian()));
+            TONE[i] = (float) (0.5 * Math.sin(2 * Math.PI * 3000 * i / SAMPLE_RATE));
+        }
+    }
+
+    private final int chunkBytes;
+    private final double activity;
+    private final long eventEveryChunks;
+    private final int eventChunks;
+    private final Random rnd;
+    private final int noiseOffset;
+    private long chunkIndex;
+    private int activeLeft = 0;
+    private long sampleIndex = 0;
+
+    /**
+     * @param activity         fraction of chunks with speech-like energy (0..1)
+     * @param eventEveryChunks start an alarm event every N chunks (0 = never)
+     */
+    PcmSource(int chunkBytes, double activity, long eventEveryChunks, long seed) {
+        this.chunkBytes = chunkBytes;
+        this.activity = activity;
+        this.eventEveryChunks = eventEveryChunks;
+        this.eventChunks = (int) Math.ceil(1.5 * SAMPLE_RATE * 2 / chunkBytes);   // 1.5 s
+        this.rnd = new Random(seed);
+        this.noiseOffset = rnd.nextInt(SAMPLE_RATE);
+        // stagger the sessions' event phase
+        this.chunkIndex = eventEveryChunks > 0 ? rnd.nextInt((int) Math.min(eventEveryChunks, Integer.MAX_VALUE)) : 0;
+    }
+
+    int chunkBytes() {
+        return chunkBytes;
+    }
+
+    long chunkMicros() {
+        return chunkBytes / 2 * 1_000_000L / SAMPLE_RATE;
+    }
+
+    /** True if the chunk about to be produced starts an alarm event. */
+    boolean eventStartsNext() {
+        return eventEveryChunks > 0 && chunkIndex % eventEveryChunks == 0;
+    }
+
+    /**
+     * Fills {@code out} with the next chunk.
+     *
+     * @return false if the chunk is silence (a gating sender may skip it)
+     */
+    boolean next(byte[] out) {
+        boolean inEvent = eventEveryChunks > 0 && chunkIndex % eventEveryChunks < eventChunks;
+        if (activeLeft == 0 && rnd.nextDouble() < activity / 10) {
+            activeLeft = 10 + rnd.nextInt(20);
+        }
+        boolean speech = activeLeft > 0;
+        if (speech) activeLeft--;
+
+        for (int i = 0; i < chunkBytes / 2; i++, sampleIndex++) {
+            int t = (int) (sampleIndex % SAMPLE_RATE);
+            float x = NOISE[(t + noiseOffset) % SAMPLE_RATE];
+            if (speech) x += SPEECH[t];
+            if (inEvent) x += TONE[t];
+            int v = Math.max(-32768, Math.min(32767, Math.round(x * 32767)));
+            out[2 * i] = (byte) v;
+            out[2 * i + 1] = (byte) (v >> 8);
+        }
+        chunkIndex++;
+        return speech || inEvent;
+    }
+}
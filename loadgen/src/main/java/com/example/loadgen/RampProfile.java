@@ -0,0 +1,55 @@
+package com.example.loadgen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Target session count over time, as a list of linear stages.
+ *
+ * Spec: {@code "target:seconds,target:seconds,..."}; each stage ramps
+ * linearly from the previous stage's target to its own over its duration,
+ * e.g. {@code "100:30,1000:60,1000:120"} ramps to 100 in 30 s, to 1000 over
+ * the next minute, then holds for two minutes.
+ */
+final class RampProfile {
+
+    private final List<int[]> stages = new ArrayList<>();  // {target, millis}
+
+    static RampProfile parse(String spec) {
+        RampProfile p = new RampProfile();
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split(":");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Bad ramp stage '" + part + "', want target:seconds");
+            }
+            p.stages.add(new int[]{Integer.parseInt(kv[0]), (int) (Double.parseDouble(kv[1]) * 1000)});
+        }
+        if (p.stages.isEmpty()) throw new IllegalArgumentException("Empty ramp");
+        return p;
+    }
+
+    long durationMs() {
+        long total = 0;
+        for (int[] s : stages) total += s[1];
+        return total;
+    }
+
+    int maxTarget() {
+        int max = 0;
+        for (int[] s : stages) max = Math.max(max, s[0]);
+        return max;
+    }
+
+    int targetAt(long elapsedMs) {
+        int from = 0;
+        long t = elapsedMs;
+        for (int[] s : stages) {
+            if (t < s[1]) {
+                return (int) Math.round(from + (s[0] - from) * (t / (double) s[1]));
+            }
+            t -= s[1];
+            from = s[0];
+        }
+        return from;
+    }
+}
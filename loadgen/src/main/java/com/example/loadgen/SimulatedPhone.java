@@ -0,0 +1,212 @@
+package com.example.loadgen;
+
+import com.example.backend.WireFrame;
+
+import org.json.JSONObject;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * One simulated PhoneStreamService: a protocol-2 session on its own
+ * WebSocket, fed one chunk per {@link #tick()} at the watch's cadence.
+ *
+ * Alert round-trip time is measured from the moment the first chunk of an
+ * alarm event is sent to the first alert that comes back for the session.
+ *
+ * With {@code coalesceFrames > 1} frames are packed like the phone's
+ * FrameCoalescer: a message goes out when it holds that many chunks (the max
+ * delay at the chunk cadence) or its oldest chunk has waited the max delay,
+ * whichever comes first, and at once when gating cuts the audio off, so the
+ * tail of an event never waits for the next active frame. Both limits are
+ * announced in the hello.
+ *
+ * The scheduler thread (tick) and OkHttp's reader thread (welcome, close)
+ * both touch the sequence and batch state, so those are guarded by this.
+ */
+final class SimulatedPhone extends WebSocketListener {
+
+    private static final long RECONNECT_DELAY_NANOS = 1_000_000_000L;
+
+    private final OkHttpClient client;
+    private final String url;
+    private final PcmSource source;
+    private final boolean gateSilence;
+    private final LoadStats stats;
+    private final String sessionId = UUID.randomUUID().toString();
+    private final byte[] chunk;
+    private final int coalesceFrames;
+    private final long coalesceDelayMs;
+    private final byte[] batch;
+    private int batchFrames = 0;         // guarded by this
+    private long batchStartNanos;        // guarded by this; when the first frame went in
+
+    private volatile WebSocket webSocket;
+    private final AtomicBoolean streaming = new AtomicBoolean(false);
+    private volatile boolean connecting = false;
+    private volatile boolean stopped = false;
+    private long connectStartNanos;      // guarded by this
+    private long lastFailureNanos;       // guarded by this
+    private int nextSeq = 0;             // guarded by this
+    private volatile long pendingEventNanos = 0;
+
+    SimulatedPhone(OkHttpClient client, String url, PcmSource source, boolean gateSilence,
+                   long coalesceDelayMs, LoadStats stats) {
+        this.client = client;
+        this.url = url;
+        this.source = source;
+        this.gateSilence = gateSilence;
+        this.stats = stats;
+        this.chunk = new byte[source.chunkBytes()];
+        this.coalesceDelayMs = coalesceDelayMs;
+        this.coalesceFrames = (int) Math.max(1, coalesceDelayMs * 1000 / source.chunkMicros());
+        this.batch = new byte[coalesceFrames * (WireFrame.HEADER_SIZE + chunk.length)];
+    }
+
+    synchronized void connect() {
+        connecting = true;
+        connectStartNanos = System.nanoTime();
+        webSocket = client.newWebSocket(new Request.Builder().url(url).build(), this);
+    }
+
+    void stop() {
+        stopped = true;
+        WebSocket ws = webSocket;
+        if (ws != null) ws.close(1000, "load test done");
+        if (streaming.compareAndSet(true, false)) {
+            stats.streaming.decrementAndGet();
+        }
+    }
+
+    /** Produces and sends the next chunk; called at the chunk cadence from the scheduler. */
+    synchronized void tick() {
+        if (stopped) return;
+        if (!streaming.get()) {
+            if (!connecting && System.nanoTime() - lastFailureNanos > RECONNECT_DELAY_NANOS) {
+                connect();
+            }
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (batchFrames > 0 && now - batchStartNanos >= coalesceDelayMs * 1_000_000L) {
+            flush();
+        }
+        boolean eventStart = source.eventStartsNext();
+        boolean active = source.next(chunk);
+        if (gateSilence && !active) {
+            stats.framesGated.increment();
+            flush();   // nothing follows for a while: don't sit on the tail
+            return;
+        }
+        if (eventStart) {
+            if (pendingEventNanos != 0) {
+                // previous event never got an alert
+                stats.missedEvents.increment();
+            }
+            pendingEventNanos = System.nanoTime();
+        }
+        if (batchFrames == 0) batchStartNanos = now;
+        int at = batchFrames * (WireFrame.HEADER_SIZE + chunk.length);
+        WireFrame.writeHeader(batch, at, nextSeq++, 0, System.currentTimeMillis(), chunk.length);
+        System.arraycopy(chunk, 0, batch, at + WireFrame.HEADER_SIZE, chunk.length);
+        if (++batchFrames >= coalesceFrames) {
+            flush();
+        }
+    }
+
+    /** Sends the frames batched so far, if any; called from tick, under this. */
+    private void flush() {
+        if (batchFrames == 0) return;
+        int length = batchFrames * (WireFrame.HEADER_SIZE + chunk.length);
+        if (webSocket.send(ByteString.of(batch, 0, length))) {
+            stats.framesSent.add(batchFrames);
+            stats.messagesSent.increment();
+            stats.bytesSent.add(length);
+        }
+        batchFrames = 0;
+    }
+
+    @Override
+    public void onOpen(WebSocket ws, Response response) {
+        JSONObject hello;
+        synchronized (this) {
+            stats.connectTime.add(System.nanoTime() - connectStartNanos);
+            hello = new JSONObject()
+                    .put("type", "hello")
+                    .put("proto", 2)
+                    .put("session", sessionId)
+                    .put("last_acked", nextSeq - 1);
+        }
+        if (coalesceFrames > 1) {
+            hello.put("coalesce", new JSONObject()
+                    .put("max_bytes", batch.length)
+                    .put("max_delay_ms", coalesceDelayMs));
+        }
+        ws.send(hello.toString());
+    }
+
+    @Override
+    public void onMessage(WebSocket ws, String text) {
+        JSONObject root = new JSONObject(text);
+        switch (root.optString("type")) {
+            case "welcome":
+                // load runs don't retransmit; just continue from where the server is
+                synchronized (this) {
+                    nextSeq = root.optInt("next_seq", 0);
+                    batchFrames = 0;
+                }
+                connecting = false;
+                if (!stopped && streaming.compareAndSet(false, true)) {
+                    stats.streaming.incrementAndGet();
+                }
+                break;
+            case "ack":
+                stats.acks.increment();
+                break;
+            case "alert":
+                stats.alerts.increment();
+                long started = pendingEventNanos;
+                if (started != 0) {
+                    stats.recordAlertRtt(System.nanoTime() - started);
+                    pendingEventNanos = 0;
+                } else {
+                    stats.unexpectedAlerts.increment();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onClosing(WebSocket ws, int code, String reason) {
+        ws.close(1000, null);
+        markDown(false);
+    }
+
+    @Override
+    public void onFailure(WebSocket ws, Throwable t, Response response) {
+        markDown(true);
+    }
+
+    private void markDown(boolean failure) {
+        if (streaming.compareAndSet(true, false)) {
+            stats.streaming.decrementAndGet();
+            if (!stopped) stats.disconnects.increment();
+        } else if (failure && !stopped) {
+            stats.connectFailures.increment();
+        }
+        connecting = false;
+        synchronized (this) {
+            lastFailureNanos = System.nanoTime();
+        }
+    }
+}
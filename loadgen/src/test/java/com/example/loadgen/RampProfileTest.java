@@ -0,0 +1,34 @@
+package com.example.loadgen;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RampProfileTest {
+
+    @Test
+    public void rampsLinearlyBetweenStages() {
+        RampProfile p = RampProfile.parse("100:10, 1000:20,1000:30");
+        assertEquals(60_000, p.durationMs());
+        assertEquals(1000, p.maxTarget());
+        assertEquals(0, p.targetAt(0));
+        assertEquals(50, p.targetAt(5_000));
+        assertEquals(100, p.targetAt(10_000));
+        assertEquals(550, p.targetAt(20_000));
+        assertEquals(1000, p.targetAt(45_000));
+        assertEquals(1000, p.targetAt(99_000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedStage() {
+        RampProfile.parse("100");
+    }
+
+    @Test
+    public void pcmCadenceMatchesChunkSize() {
+        PcmSource src = new PcmSource(1280, 0, 0, 1);
+        assertEquals(40_000, src.chunkMicros());
+        byte[] chunk = new byte[1280];
+        assertFalse("pure background noise is gateable", src.next(chunk));
+    }
+}
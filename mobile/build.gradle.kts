@@ -31,6 +31,16 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        // pipeline classes log through android.util.Log; make it a no-op on the JVM
+        unitTests.isReturnDefaultValues = true
+        // SoakTest is configured with -Dsoak.* on the Gradle command line; hand those to the test JVM
+        unitTests.all { test ->
+            System.getProperties().stringPropertyNames()
+                .filter { it.startsWith("soak.") }
+                .forEach { test.systemProperty(it, System.getProperty(it)) }
+        }
+    }
 }
 
 dependencies {
@@ -43,4 +53,7 @@ dependencies {
     implementation("com.google.android.material:material:1.11.0")
     implementation("com.google.android.gms:play-services-wearable:18.2.0")
     implementation("com.squareup.okhttp3:okhttp:4.12.0")
+    testImplementation("com.squareup.okhttp3:mockwebserver:4.12.0")
+    // the android.jar stub of org.json throws on the JVM
+    testImplementation("org.json:json:20231013")
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package com.example.mobile;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+/**
+ * One alert, from the backend or (when {@link #local}) from the phone itself.
+ *
+ * This is what gets stored in {@link AlertStore}, shown as a notification
+ * and forwarded to the watch. Server alerts look like:
+ *
+ *   {"type":"alert","event":{"level":"emergency","message":...,
+ *    "rolling":{"alarm":..,"gunshot":..,"explosion":..,"vocal":..},
+ *    "session":..,"server_ts":..}}
+ */
+public final class AlertEvent {
+
+    public static final int LEVEL_ALERT = 0;       // unknown / unspecified
+    public static final int LEVEL_WARNING = 1;
+    public static final int LEVEL_EMERGENCY = 2;
+    public static final int LEVEL_COUNT = 3;
+
+    /** Score vector order; matches the backend's rolling scores. */
+    public static final String[] CLASSES = {"alarm", "gunshot", "explosion", "vocal"};
+
+    public final long timestampMs;
+    public final int level;
+    public final float[] scores;
+    public final String session;
+    public final String message;
+    public final boolean local;
+
+    public AlertEvent(long timestampMs, int level, float[] scores, String session,
+                      String message, boolean local) {
+        this.timestampMs = timestampMs;
+        this.level = level;
+        this.scores = scores;
+        this.session = session;
+        this.message = message;
+        this.local = local;
+    }
+
+    /** Parses a server {"type":"alert"} message, or returns null for anything else. */
+    public static AlertEvent fromServer(JSONObject root, long receivedMs) {
+        if (!"alert".equals(root.optString("type", ""))) return null;
+        JSONObject event = root.optJSONObject("event");
+        if (event == null) return null;
+
+        JSONObject rolling = event.optJSONObject("rolling");
+        float[] scores = new float[CLASSES.length];
+        for (int c = 0; c < CLASSES.length; c++) {
+            scores[c] = rolling != null ? (float) rolling.optDouble(CLASSES[c], 0) : 0f;
+        }
+        return new AlertEvent(
+                event.optLong("server_ts", receivedMs),
+                parseLevel(event.optString("level", "alert")),
+                scores,
+                event.optString("session", ""),
+                event.optString("message", ""),
+                false);
+    }
+
+    public static int parseLevel(String level) {
+        switch (level.toLowerCase(Locale.ROOT)) {
+            case "warning": return LEVEL_WARNING;
+            case "emergency": return LEVEL_EMERGENCY;
+            default: return LEVEL_ALERT;
+        }
+    }
+
+    public static String levelName(int level) {
+        switch (level) {
+            case LEVEL_WARNING: return "warning";
+            case LEVEL_EMERGENCY: return "emergency";
+            default: return "alert";
+        }
+    }
+
+    /** Same shape as a server alert, so the watch handles both alike. */
+    public JSONObject toJson() throws JSONException {
+        JSONObject rolling = new JSONObject();
+        for (int c = 0; c < CLASSES.length; c++) {
+            rolling.put(CLASSES[c], scores[c]);
+        }
+        JSONObject event = new JSONObject()
+                .put("level", levelName(level))
+                .put("message", message)
+                .put("rolling", rolling)
+                .put("session", session)
+                .put("server_ts", timestampMs)
+                .put("local", local);
+        return new JSONObject().put("type", "alert").put("event", event);
+    }
+
+    /** "alarm=0.91 | gunshot=0.02 | explosion=0.00 | vocal=0.10" */
+    public String summary() {
+        return String.format(Locale.ROOT,
+                "alarm=%.2f | gunshot=%.2f | explosion=%.2f | vocal=%.2f",
+                scores[0], scores[1], scores[2], scores[3]);
+    }
+
+    @Override
+    public String toString() {
+        return levelName(level) + (local ? " (local) " : " ") + timestampMs + " " + message
+                + " [" + summary() + "]";
+    }
+}
@@ -0,0 +1,383 @@
+package com.example.mobile;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only alert history with an in-memory index.
+ *
+ * On disk (alerts.log, big-endian): an 8-byte header ("WALG", version),
+ * then one record per alert:
+ *
+ *   short length (of what follows), long timestampMs, byte level, byte flags,
+ *   float[4] scores, short n + session (UTF-8), short n + message (UTF-8)
+ *
+ * The index holds (timestamp, file offset) for every record, sorted by time,
+ * plus one such index per level, so a time/level window is two binary
+ * searches and only the page being shown is read back from the file.
+ *
+ * {@link #append} only encodes, indexes and enqueues; a writer thread writes
+ * whatever has queued up in one go and forces it to disk. Records still in
+ * the queue are served from memory, so queries see an alert immediately.
+ * A failed write is retried from the same offset, with anything queued since
+ * behind it, so the log never has a hole. A torn last record (crash
+ * mid-write) is cut off when the log is opened.
+ */
+public class AlertStore {
+
+    private static final String TAG = "AlertStore";
+
+    private static final int MAGIC = 0x57414C47;  // "WALG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_TEXT_BYTES = 1024;
+    private static final byte FLAG_LOCAL = 1;
+    private static final String FILE_NAME = "alerts.log";
+    private static final int MIN_BODY = 8 + 1 + 1 + 4 * 4 + 2 + 2;
+    private static final long RETRY_MS = 5000;
+
+    private static final Map<String, AlertStore> OPEN = new HashMap<>();
+
+    /** Sorted (time, offset) pairs; appends in time order are O(1). */
+    static final class TimeIndex {
+        long[] times = new long[256];
+        long[] offsets = new long[256];
+        int size;
+
+        void add(long t, long offset) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            int at = size;
+            // alerts arrive nearly in order; shift the few that don't
+            while (at > 0 && times[at - 1] > t) {
+                times[at] = times[at - 1];
+                offsets[at] = offsets[at - 1];
+                at--;
+            }
+            times[at] = t;
+            offsets[at] = offset;
+            size++;
+        }
+
+        /** First position with time >= t. */
+        int lowerBound(long t) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (times[mid] < t) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    private static final class Pending {
+        final long offset;
+        final ByteBuffer record;
+
+        Pending(long offset, ByteBuffer record) {
+            this.offset = offset;
+            this.record = record;
+        }
+    }
+
+    private static final Pending STOP = new Pending(-1, null);
+
+    private final File file;
+    private final FileChannel channel;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    // guarded by this
+    private final TimeIndex all = new TimeIndex();
+    private final TimeIndex[] byLevel = new TimeIndex[AlertEvent.LEVEL_COUNT];
+    private final Map<Long, AlertEvent> unwritten = new HashMap<>();
+    private long endOffset;
+
+    /** Shared store for {@code dir}, opened on first use (service and activity both use it). */
+    public static AlertStore open(File dir) throws IOException {
+        synchronized (OPEN) {
+            String key = dir.getAbsolutePath();
+            AlertStore store = OPEN.get(key);
+            if (store == null) {
+                store = new AlertStore(dir);
+                OPEN.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    AlertStore(File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        for (int l = 0; l < byLevel.length; l++) {
+            byLevel[l] = new TimeIndex();
+        }
+        file = new File(dir, FILE_NAME);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        load();
+        writer = new Thread(this::writerLoop, "AlertStoreWriter");
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+    }
+
+    /** Indexes and queues one alert; never blocks on I/O. */
+    public void append(AlertEvent event) {
+        ByteBuffer record = encode(event);
+        synchronized (this) {
+            long offset = endOffset;
+            endOffset += record.remaining();
+            index(event.timestampMs, event.level, offset);
+            unwritten.put(offset, event);
+            queue.add(new Pending(offset, record));
+        }
+    }
+
+    /**
+     * Alerts with {@code fromMs <= timestamp < toMs}, newest first, skipping
+     * {@code skip} and returning at most {@code limit}.
+     *
+     * @param level an AlertEvent.LEVEL_*, or -1 for any level
+     */
+    public List<AlertEvent> query(long fromMs, long toMs, int level, int skip, int limit)
+            throws IOException {
+        long[] offsets;
+        synchronized (this) {
+            TimeIndex idx = level < 0 ? all : byLevel[level];
+            int lo = idx.lowerBound(fromMs);
+            int hi = idx.lowerBound(toMs);
+            int start = hi - 1 - skip;
+            int n = Math.max(0, Math.min(limit, start - lo + 1));
+            offsets = new long[n];
+            for (int i = 0; i < n; i++) {
+                offsets[i] = idx.offsets[start - i];
+            }
+        }
+
+        List<AlertEvent> out = new ArrayList<>(offsets.length);
+        for (long off : offsets) {
+            AlertEvent e;
+            synchronized (this) {
+                e = unwritten.get(off);
+            }
+            out.add(e != null ? e : read(off));
+        }
+        return out;
+    }
+
+    /** Number of alerts in the window, for paging. */
+    public synchronized int count(long fromMs, long toMs, int level) {
+        TimeIndex idx = level < 0 ? all : byLevel[level];
+        return idx.lowerBound(toMs) - idx.lowerBound(fromMs);
+    }
+
+    public synchronized int size() {
+        return all.size;
+    }
+
+    /** Writes what is queued and closes the file. */
+    public void close() {
+        synchronized (OPEN) {
+            OPEN.values().remove(this);
+        }
+        try {
+            queue.put(STOP);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Close failed", e);
+        }
+    }
+
+    // ---- encoding ----
+
+    static ByteBuffer encode(AlertEvent e) {
+        byte[] session = truncate(e.session);
+        byte[] message = truncate(e.message);
+        int body = 8 + 1 + 1 + 4 * 4 + 2 + session.length + 2 + message.length;
+        ByteBuffer bb = ByteBuffer.allocate(2 + body);
+        bb.putShort((short) body)
+                .putLong(e.timestampMs)
+                .put((byte) e.level)
+                .put(e.local ? FLAG_LOCAL : 0);
+        for (int c = 0; c < 4; c++) {
+            bb.putFloat(c < e.scores.length ? e.scores[c] : 0f);
+        }
+        bb.putShort((short) session.length).put(session);
+        bb.putShort((short) message.length).put(message);
+        bb.flip();
+        return bb;
+    }
+
+    static AlertEvent decode(ByteBuffer bb) {
+        long ts = bb.getLong();
+        int level = bb.get();
+        boolean local = (bb.get() & FLAG_LOCAL) != 0;
+        float[] scores = new float[4];
+        for (int c = 0; c < 4; c++) {
+            scores[c] = bb.getFloat();
+        }
+        byte[] session = new byte[bb.getShort()];
+        bb.get(session);
+        byte[] message = new byte[bb.getShort()];
+        bb.get(message);
+        return new AlertEvent(ts, level, scores,
+                new String(session, StandardCharsets.UTF_8),
+                new String(message, StandardCharsets.UTF_8), local);
+    }
+
+    private static byte[] truncate(String s) {
+        byte[] b = (s != null ? s : "").getBytes(StandardCharsets.UTF_8);
+        return b.length <= MAX_TEXT_BYTES ? b : Arrays.copyOf(b, MAX_TEXT_BYTES);
+    }
+
+    private AlertEvent read(long offset) throws IOException {
+        ByteBuffer len = ByteBuffer.allocate(2);
+        readFully(len, offset);
+        ByteBuffer body = ByteBuffer.allocate(len.getShort(0) & 0xFFFF);
+        readFully(body, offset + 2);
+        body.flip();
+        return decode(body);
+    }
+
+    private void readFully(ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            if (channel.read(dst, position + dst.position()) < 0) {
+                throw new IOException("Alert log truncated at " + position);
+            }
+        }
+    }
+
+    private void index(long ts, int level, long offset) {
+        all.add(ts, offset);
+        byLevel[Math.max(0, Math.min(level, byLevel.length - 1))].add(ts, offset);
+    }
+
+    /** Rebuilds the index from the file, cutting off a torn last record. */
+    private void load() throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            endOffset = HEADER_SIZE;
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not an alert log: " + file);
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        long bufStart = HEADER_SIZE;
+        long pos = HEADER_SIZE;
+        buf.limit(0);
+        while (true) {
+            int at = (int) (pos - bufStart);
+            if (buf.limit() - at < 2 || buf.limit() - at < 2 + (buf.getShort(at) & 0xFFFF)) {
+                // refill from pos
+                buf.clear();
+                bufStart = pos;
+                while (buf.hasRemaining() && channel.read(buf, bufStart + buf.position()) > 0) {
+                    // keep reading
+                }
+                buf.flip();
+                at = 0;
+                if (buf.limit() < 2 || buf.limit() < 2 + (buf.getShort(0) & 0xFFFF)) {
+                    break;   // end of file, or torn record
+                }
+            }
+            int body = buf.getShort(at) & 0xFFFF;
+            if (body < MIN_BODY) {
+                break;   // not a record (e.g. zeros a failed write left behind): treat as torn
+            }
+            long ts = buf.getLong(at + 2);
+            int level = buf.get(at + 10);
+            index(ts, level, pos);
+            pos += 2 + body;
+        }
+        if (pos < size) {
+            Log.w(TAG, "Dropping " + (size - pos) + " bytes after the last valid record of " + file);
+            channel.truncate(pos);
+        }
+        endOffset = pos;
+    }
+
+    // ---- writer thread ----
+
+    private void writerLoop() {
+        List<Pending> batch = new ArrayList<>();   // non-empty between iterations only after a failed write
+        boolean stop = false;
+        while (!stop) {
+            try {
+                if (batch.isEmpty()) {
+                    batch.add(queue.take());
+                } else {
+                    Pending next = queue.poll(RETRY_MS, TimeUnit.MILLISECONDS);
+                    if (next != null) batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch);
+            if (batch.get(batch.size() - 1) == STOP) {
+                batch.remove(batch.size() - 1);
+                stop = true;
+            }
+            if (batch.isEmpty()) continue;
+
+            try {
+                long position = batch.get(0).offset;
+                ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = batch.get(i).record;
+                }
+                channel.position(position);
+                long remaining = 0;
+                for (ByteBuffer b : buffers) remaining += b.remaining();
+                while (remaining > 0) {
+                    remaining -= channel.write(buffers);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // Keep the batch (still queryable from memory) and write it again from
+                // its own offset next time; later records must not land past a hole.
+                // If we are stopping, the log just ends before it.
+                Log.e(TAG, "Alert write failed, will retry " + batch.size() + " records", e);
+                for (Pending p : batch) {
+                    p.record.rewind();
+                }
+                continue;
+            }
+            synchronized (this) {
+                for (Pending p : batch) {
+                    unwritten.remove(p.offset);
+                }
+            }
+            batch.clear();
+        }
+    }
+}
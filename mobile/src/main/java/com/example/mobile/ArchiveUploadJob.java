@@ -0,0 +1,103 @@
+package com.example.mobile;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Debug;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Runs {@link ArchiveUploader} over the archive PhoneStreamService writes,
+ * only while the phone is charging and on an unmetered network. Hourly; a run
+ * that is stopped (charger pulled, Wi-Fi lost) or fails is rescheduled with
+ * the system's backoff and resumes where the server's copy ends.
+ */
+public class ArchiveUploadJob extends JobService {
+
+    private static final String TAG = "ArchiveUploadJob";
+    private static final int JOB_ID = 4401;
+    private static final long PERIOD_MS = TimeUnit.HOURS.toMillis(1);
+
+    // Upload endpoint of the backend stand-in (emulator -> host), next to its /ws port
+    private static final String UPLOAD_URL = "http://10.0.2.2:8001/upload";
+
+    private volatile ArchiveUploader uploader;
+    private volatile boolean stopped;
+
+    /**
+     * Schedules the periodic upload unless it already is. Never throws: the
+     * archive is kept either way, and the upload is only a convenience.
+     */
+    static void schedule(Context context) {
+        JobScheduler js = context.getSystemService(JobScheduler.class);
+        if (js == null) return;
+        try {
+            if (js.getPendingJob(JOB_ID) != null) return;
+            JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, ArchiveUploadJob.class))
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                    .setRequiresCharging(true)
+                    .setPeriodic(PERIOD_MS)
+                    .build();
+            if (js.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+                Log.w(TAG, "Could not schedule archive upload");
+            }
+        } catch (RuntimeException e) {
+            // e.g. SecurityException for a missing permission, or too many jobs
+            Log.w(TAG, "Could not schedule archive upload", e);
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        stopped = false;
+        uploader = null;
+        File filesDir = getFilesDir();
+        // everything that touches the disk happens on the worker, never on the main thread
+        Thread worker = new Thread(() -> {
+            File stateDir = new File(filesDir, "upload-state");
+            String deviceId;
+            try {
+                deviceId = ArchiveUploader.deviceId(stateDir);
+            } catch (IOException e) {
+                Log.e(TAG, "No device id, skipping upload", e);
+                jobFinished(params, false);
+                return;
+            }
+            // a part is a few MB at up to the idle rate: allow for a slow link
+            OkHttpClient client = new OkHttpClient.Builder()
+                    .writeTimeout(60, TimeUnit.SECONDS)
+                    .readTimeout(60, TimeUnit.SECONDS)
+                    .build();
+            ArchiveUploader up = new ArchiveUploader(client, UPLOAD_URL, deviceId,
+                    new File(filesDir, "archive"), stateDir, new ArchiveUploader.Config(),
+                    PhoneStreamService::isWatchStreaming, Debug::threadCpuTimeNanos);
+            uploader = up;
+            if (stopped) up.cancel();   // onStopJob came before the uploader existed
+            boolean done = up.runOnce();
+            Log.d(TAG, (done ? "Archive upload complete: " : "Archive upload paused: ") + up.summary());
+            client.dispatcher().executorService().shutdown();
+            client.connectionPool().evictAll();
+            jobFinished(params, !done);
+        }, "ArchiveUpload");
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopped = true;
+        ArchiveUploader up = uploader;
+        if (up != null) up.cancel();
+        return true;   // try again later
+    }
+}
@@ -0,0 +1,344 @@
+package com.example.mobile;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.zip.Deflater;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.DeflaterSink;
+import okio.ForwardingSink;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * Bulk upload of closed {@link AudioArchive} segments to the backend's
+ * /upload endpoint, for audio that never needed to go over the live socket.
+ *
+ * Each segment goes up in parts of {@link Config#partBytes}: one streaming PUT
+ * per part, read from the segment's FileChannel and deflated (BEST_SPEED) on
+ * the way into the request body, so neither the part nor its compressed form
+ * is ever held in memory. Offsets are in uncompressed PCM bytes; before each
+ * segment the server is asked how far it got, so an upload cut off by a lost
+ * network or a stopped job resumes where the server's copy ends.
+ *
+ * Reading is paced: {@link Config#idleBytesPerSec} normally, the much lower
+ * {@link Config#liveBytesPerSec} while the live stream is up, so bulk traffic
+ * doesn't queue ahead of real-time frames on the same radio.
+ *
+ * Finished segments are remembered by an empty {@code NAME.done} file in the
+ * state directory (pruned once the archive has deleted the segment).
+ * {@link #runOnce} blocks, and runs on the caller's thread; its CPU time is
+ * what {@link #cpuMsPerAudioHour()} reports.
+ */
+public class ArchiveUploader {
+
+    private static final String TAG = "ArchiveUploader";
+    private static final MediaType PCM = MediaType.get("application/octet-stream");
+    private static final String DONE_SUFFIX = ".done";
+    private static final int READ_BYTES = 64 * 1024;
+    private static final long AUDIO_HOUR_BYTES = AudioArchive.BYTES_PER_MS * 3_600_000L;
+
+    public static final class Config {
+        /** Uncompressed bytes per PUT: ~2 min of audio, a large body but a small loss on interruption. */
+        public long partBytes = 4L * 1024 * 1024;
+        public long idleBytesPerSec = 2L * 1024 * 1024;
+        public long liveBytesPerSec = 64L * 1024;
+    }
+
+    private final OkHttpClient client;
+    private final String baseUrl;
+    private final String deviceId;
+    private final File archiveDir;
+    private final File stateDir;
+    private final Config config;
+    private final BooleanSupplier live;
+    private final LongSupplier threadCpuNanos;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BYTES);
+
+    private volatile boolean cancelled = false;
+    private volatile Call currentCall;
+    private long nextReadNanos = 0;
+
+    // stats, over every runOnce of this instance
+    private volatile long rawBytes = 0;     // committed by the server
+    private volatile long wireBytes = 0;    // compressed bytes written to the socket
+    private volatile long segmentsDone = 0;
+    private volatile long parts = 0;
+    private volatile long resumes = 0;      // segments picked up part-way
+    private volatile long cpuNanos = 0;
+    private volatile long wallNanos = 0;
+
+    /**
+     * @param baseUrl        e.g. http://host:8001/upload
+     * @param live           true while the live stream is up (slows the upload down)
+     * @param threadCpuNanos CPU time of the calling thread (Debug::threadCpuTimeNanos on a phone)
+     */
+    public ArchiveUploader(OkHttpClient client, String baseUrl, String deviceId, File archiveDir,
+                           File stateDir, Config config, BooleanSupplier live, LongSupplier threadCpuNanos) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.deviceId = deviceId;
+        this.archiveDir = archiveDir;
+        this.stateDir = stateDir;
+        this.config = config;
+        this.live = live;
+        this.threadCpuNanos = threadCpuNanos;
+    }
+
+    /** This phone's id under /upload, created in {@code stateDir} on first use. */
+    public static String deviceId(File stateDir) throws IOException {
+        File f = new File(stateDir, "device-id");
+        if (f.exists()) {
+            return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8).trim();
+        }
+        if (!stateDir.exists() && !stateDir.mkdirs()) {
+            throw new IOException("Cannot create " + stateDir);
+        }
+        String id = "phone-" + UUID.randomUUID();
+        Files.write(f.toPath(), id.getBytes(StandardCharsets.UTF_8));
+        return id;
+    }
+
+    /**
+     * Uploads every closed segment not uploaded yet.
+     *
+     * @return true if nothing is left; false if cancelled or the network failed
+     * (call again later, it resumes)
+     */
+    public boolean runOnce() {
+        long wall0 = System.nanoTime();
+        long cpu0 = threadCpuNanos.getAsLong();
+        try {
+            if (!stateDir.exists() && !stateDir.mkdirs()) {
+                Log.e(TAG, "Cannot create " + stateDir);
+                return false;
+            }
+            List<File> closed = AudioArchive.closedSegments(archiveDir);
+            pruneDoneMarkers(closed);
+            for (File segment : closed) {
+                if (cancelled) return false;
+                if (new File(stateDir, segment.getName() + DONE_SUFFIX).exists()) continue;
+                upload(segment);
+            }
+            return true;
+        } catch (IOException e) {
+            if (!cancelled) Log.w(TAG, "Upload interrupted, will resume: " + e.getMessage());
+            return false;
+        } finally {
+            cpuNanos += threadCpuNanos.getAsLong() - cpu0;
+            wallNanos += System.nanoTime() - wall0;
+        }
+    }
+
+    /**
+     * Stops a running {@link #runOnce} (from any thread) and any later one;
+     * the server keeps what it has.
+     */
+    public void cancel() {
+        cancelled = true;
+        Call call = currentCall;
+        if (call != null) call.cancel();
+    }
+
+    private void upload(File segment) throws IOException {
+        long size = segment.length();
+        long offset = serverOffset(segment);
+        if (offset > 0 && offset < size) resumes++;
+        while (offset < size) {
+            if (cancelled) throw new InterruptedIOException("cancelled");
+            long len = Math.min(config.partBytes, size - offset);
+            long committed = putPart(segment, offset, len);
+            if (committed <= offset) {
+                throw new IOException("No progress on " + segment.getName() + " at " + offset);
+            }
+            rawBytes += committed - offset;
+            parts++;
+            offset = committed;   // short of offset + len if the part was cut off
+        }
+        if (!new File(stateDir, segment.getName() + DONE_SUFFIX).createNewFile()) {
+            Log.w(TAG, "Could not mark " + segment.getName() + " uploaded");
+        }
+        segmentsDone++;
+    }
+
+    private String url(File segment) {
+        return baseUrl + "/" + deviceId + "/" + segment.getName();
+    }
+
+    private long serverOffset(File segment) throws IOException {
+        return offsetOf(execute(new Request.Builder().url(url(segment)).get().build()));
+    }
+
+    /** @return the server's offset after the part (its current offset on a 409) */
+    private long putPart(File segment, long offset, long len) throws IOException {
+        Request request = new Request.Builder()
+                .url(url(segment) + "?offset=" + offset)
+                .header("Content-Encoding", "deflate")
+                .put(new PartBody(segment, offset, len))
+                .build();
+        return offsetOf(execute(request));
+    }
+
+    private Response execute(Request request) throws IOException {
+        Call call = client.newCall(request);
+        currentCall = call;
+        if (cancelled) call.cancel();
+        return call.execute();
+    }
+
+    private static long offsetOf(Response response) throws IOException {
+        try (Response r = response; ResponseBody body = r.body()) {
+            if (!r.isSuccessful() && r.code() != 409) {
+                throw new IOException("HTTP " + r.code() + " from " + r.request().url());
+            }
+            return new JSONObject(body != null ? body.string() : "").getLong("offset");
+        } catch (JSONException e) {
+            throw new IOException("Bad upload reply: " + e.getMessage());
+        }
+    }
+
+    private void pruneDoneMarkers(List<File> closed) {
+        Set<String> existing = new HashSet<>();
+        for (File f : closed) existing.add(f.getName() + DONE_SUFFIX);
+        File[] markers = stateDir.listFiles((d, name) -> name.endsWith(DONE_SUFFIX));
+        if (markers == null) return;
+        for (File m : markers) {
+            if (!existing.contains(m.getName()) && !m.delete()) {
+                Log.w(TAG, "Could not delete " + m);
+            }
+        }
+    }
+
+    /** Sleeps as needed to keep reads at the current rate. */
+    private void pace(int bytes) throws InterruptedIOException {
+        long rate = live.getAsBoolean() ? config.liveBytesPerSec : config.idleBytesPerSec;
+        long now = System.nanoTime();
+        nextReadNanos = Math.max(nextReadNanos, now) + bytes * 1_000_000_000L / rate;
+        long wait = nextReadNanos - now;
+        if (wait <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        }
+    }
+
+    /** One part, deflated while it streams out of the segment file. */
+    private final class PartBody extends RequestBody {
+        private final File segment;
+        private final long offset;
+        private final long length;
+
+        PartBody(File segment, long offset, long length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return PCM;
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;   // compressed size isn't known up front: chunked
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            Sink counted = new ForwardingSink(sink) {
+                @Override
+                public void write(Buffer source, long byteCount) throws IOException {
+                    super.write(source, byteCount);
+                    wireBytes += byteCount;
+                }
+            };
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (FileChannel ch = FileChannel.open(segment.toPath(), StandardOpenOption.READ);
+                 BufferedSink out = Okio.buffer(new DeflaterSink(counted, deflater))) {
+                long pos = offset;
+                long end = offset + length;
+                while (pos < end) {
+                    if (cancelled) throw new InterruptedIOException("cancelled");
+                    readBuffer.clear();
+                    readBuffer.limit((int) Math.min(READ_BYTES, end - pos));
+                    int n = ch.read(readBuffer, pos);
+                    if (n < 0) throw new EOFException(segment + " shrank under the upload");
+                    out.write(readBuffer.array(), 0, n);
+                    pos += n;
+                    pace(n);
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    public long rawBytes() {
+        return rawBytes;
+    }
+
+    public long wireBytes() {
+        return wireBytes;
+    }
+
+    public long segmentsDone() {
+        return segmentsDone;
+    }
+
+    public long parts() {
+        return parts;
+    }
+
+    public long resumes() {
+        return resumes;
+    }
+
+    /** Uploaded PCM per second of upload time, including pacing. */
+    public double throughputMBps() {
+        return wallNanos == 0 ? 0 : rawBytes / 1e6 / (wallNanos / 1e9);
+    }
+
+    /** Phone CPU spent per hour of audio uploaded (reading, deflating, HTTP). */
+    public double cpuMsPerAudioHour() {
+        return rawBytes == 0 ? 0 : cpuNanos / 1e6 / (rawBytes / (double) AUDIO_HOUR_BYTES);
+    }
+
+    public String summary() {
+        return String.format(Locale.ROOT,
+                "uploaded %d segments in %d parts (%d resumed): %.1f MB PCM as %.1f MB (%.0f%%), "
+                        + "%.2f MB/s, %.0f ms CPU per audio hour",
+                segmentsDone, parts, resumes, rawBytes / 1e6, wireBytes / 1e6,
+                100.0 * wireBytes / Math.max(1, rawBytes), throughputMBps(), cpuMsPerAudioHour());
+    }
+}
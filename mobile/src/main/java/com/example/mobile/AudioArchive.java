@@ -0,0 +1,458 @@
+package com.example.mobile;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Continuous on-disk archive of the PCM stream.
+ *
+ * The forwarding path only calls {@link #offer}, which enqueues without
+ * blocking (frames are dropped and counted if the writer falls behind). A
+ * dedicated writer thread batches frames into a large direct buffer and
+ * appends it to the current segment through a {@link FileChannel}.
+ *
+ * On disk, per segment (rotated every {@code segmentMs}):
+ *
+ *   seg-&lt;startMs&gt;.pcm   raw 16 kHz 16-bit mono PCM
+ *   seg-&lt;startMs&gt;.idx   (long timestampMs, long byteOffset) every ~{@code indexIntervalMs}
+ *
+ * The index is also kept in memory, so {@link #extract} can seek straight to
+ * any window and copy it with {@link FileChannel#transferTo}. Old segments are
+ * deleted by age and by total size after each rotation.
+ *
+ * Reads see what the writer has flushed; it flushes at least every
+ * {@link #FLUSH_INTERVAL_MS}.
+ */
+public class AudioArchive {
+
+    private static final String TAG = "AudioArchive";
+
+    public static final int BYTES_PER_MS = 32;  // 16 kHz * 2 bytes
+    static final long FLUSH_INTERVAL_MS = 1000;
+
+    private static final int WRITE_BUFFER_BYTES = 256 * 1024;
+    private static final int INDEX_ENTRY_BYTES = 16;
+    private static final String DATA_SUFFIX = ".pcm";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    public static final class Config {
+        public long segmentMs = 5 * 60_000L;
+        public long indexIntervalMs = 1000L;
+        public long maxAgeMs = 24 * 60 * 60_000L;
+        public long maxTotalBytes = 512L * 1024 * 1024;
+        public int queueFrames = 1024;
+    }
+
+    private static final class Chunk {
+        final long timestampMs;
+        final byte[] data;   // null = silence
+        final int offset;
+        final int length;
+
+        Chunk(long timestampMs, byte[] data, int offset, int length) {
+            this.timestampMs = timestampMs;
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final Chunk STOP = new Chunk(0, null, 0, 0);
+
+    /** One segment file plus its in-memory index. */
+    static final class Segment {
+        final long startMs;
+        final File dataFile;
+        final File indexFile;
+        long[] idxTimes = new long[64];
+        long[] idxOffsets = new long[64];
+        int idxCount = 0;
+        volatile long bytes = 0;
+
+        Segment(File dir, long startMs) {
+            this.startMs = startMs;
+            this.dataFile = new File(dir, "seg-" + startMs + DATA_SUFFIX);
+            this.indexFile = new File(dir, "seg-" + startMs + INDEX_SUFFIX);
+        }
+
+        void addIndex(long timestampMs, long offset) {
+            if (idxCount == idxTimes.length) {
+                idxTimes = Arrays.copyOf(idxTimes, idxCount * 2);
+                idxOffsets = Arrays.copyOf(idxOffsets, idxCount * 2);
+            }
+            idxTimes[idxCount] = timestampMs;
+            idxOffsets[idxCount] = offset;
+            idxCount++;
+        }
+
+        /** Last index entry at or before {@code t}, or 0 if {@code t} precedes the segment. */
+        int floorIndex(long t) {
+            int i = Arrays.binarySearch(idxTimes, 0, idxCount, t);
+            if (i >= 0) {
+                // first of equal timestamps
+                while (i > 0 && idxTimes[i - 1] == t) i--;
+                return i;
+            }
+            return Math.max(0, -i - 2);
+        }
+
+        /** Byte offset of time {@code t}, interpolated from the index at the PCM rate. */
+        long offsetOf(long t) {
+            if (idxCount == 0) return 0;
+            int i = floorIndex(t);
+            long next = i + 1 < idxCount ? idxOffsets[i + 1] : bytes;
+            long off = idxOffsets[i] + Math.max(0, t - idxTimes[i]) * BYTES_PER_MS;
+            off = Math.min(off, next);
+            return off & ~1L;  // sample aligned
+        }
+
+        long endMs() {
+            if (idxCount == 0) return startMs;
+            long last = idxCount - 1;
+            return idxTimes[(int) last] + (bytes - idxOffsets[(int) last]) / BYTES_PER_MS;
+        }
+    }
+
+    private final File dir;
+    private final Config config;
+    private final BlockingQueue<Chunk> queue;
+    private final List<Segment> segments = new ArrayList<>();  // guarded by itself, oldest first
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile boolean failed = false;   // the writer hit an I/O error and is gone
+
+    // writer-thread state
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+    private final ByteBuffer indexBuffer =
+            ByteBuffer.allocate(INDEX_ENTRY_BYTES * 256).order(ByteOrder.BIG_ENDIAN);
+    private Segment current;
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+    private long lastIndexMs;
+    private long pendingBytes;
+    private Thread writer;
+
+    public AudioArchive(File dir, Config config) {
+        this.dir = dir;
+        this.config = config;
+        this.queue = new ArrayBlockingQueue<>(config.queueFrames);
+    }
+
+    /** Loads existing segments and starts the writer thread. */
+    public void start() throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        recoverSegments();
+        writer = new Thread(this::writerLoop, "AudioArchiveWriter");
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+    }
+
+    /**
+     * Flushes what is queued and stops the writer. Doesn't wait on the queue
+     * once the writer has died, so it can't hang the caller (onDestroy).
+     */
+    public void stop() {
+        if (writer == null) return;
+        try {
+            while (!queue.offer(STOP, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if (!writer.isAlive()) break;
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    /**
+     * Hands a frame to the writer without blocking. The array must not be
+     * modified afterwards.
+     *
+     * @return false if the writer is behind (or has failed) and the frame was dropped
+     */
+    public boolean offer(long timestampMs, byte[] data, int offset, int length) {
+        if (failed || !queue.offer(new Chunk(timestampMs, data, offset, length))) {
+            droppedFrames.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /** Archives {@code length} bytes of silence (a concealed frame). */
+    public boolean offerSilence(long timestampMs, int length) {
+        return offer(timestampMs, null, 0, length);
+    }
+
+    public long droppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /** True once a write error has stopped archiving. */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    public long bytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public int segmentCount() {
+        synchronized (segments) {
+            return segments.size();
+        }
+    }
+
+    /**
+     * Copies the archived PCM between {@code t0} and {@code t1} (ms) to {@code out},
+     * seeking via the index rather than scanning segments.
+     *
+     * @return bytes written
+     */
+    public long extract(long t0, long t1, WritableByteChannel out) throws IOException {
+        List<Segment> overlapping = new ArrayList<>();
+        synchronized (segments) {
+            for (Segment s : segments) {
+                if (s.startMs < t1 && s.endMs() > t0) {
+                    overlapping.add(s);
+                }
+            }
+        }
+
+        long total = 0;
+        for (Segment s : overlapping) {
+            long from;
+            long to;
+            synchronized (segments) {
+                from = s.offsetOf(t0);
+                to = s.offsetOf(t1);
+            }
+            if (to <= from) continue;
+            try (FileChannel ch = FileChannel.open(s.dataFile.toPath(), StandardOpenOption.READ)) {
+                long end = Math.min(to, ch.size());
+                long pos = from;
+                while (pos < end) {
+                    long n = ch.transferTo(pos, end - pos, out);
+                    if (n <= 0) break;
+                    pos += n;
+                }
+                total += pos - from;
+            }
+        }
+        return total;
+    }
+
+    /** Convenience wrapper around {@link #extract(long, long, WritableByteChannel)}. */
+    public byte[] extract(long t0, long t1) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        extract(t0, t1, Channels.newChannel(bos));
+        return bos.toByteArray();
+    }
+
+    /**
+     * PCM files of the segments in {@code dir} that are complete, oldest first:
+     * all but the newest, which the writer may still be appending to. Reads the
+     * directory only, so it works without a running archive (e.g. from a job).
+     */
+    public static List<File> closedSegments(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("seg-") && name.endsWith(DATA_SUFFIX));
+        List<File> closed = new ArrayList<>();
+        if (files == null) return closed;
+        List<Long> starts = new ArrayList<>();
+        for (File f : files) {
+            String name = f.getName();
+            try {
+                starts.add(Long.parseLong(name.substring(4, name.length() - DATA_SUFFIX.length())));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        starts.sort(null);
+        for (int i = 0; i < starts.size() - 1; i++) {
+            closed.add(new File(dir, "seg-" + starts.get(i) + DATA_SUFFIX));
+        }
+        return closed;
+    }
+
+    // ---- writer thread ----
+
+    private void writerLoop() {
+        try {
+            while (true) {
+                Chunk c = queue.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (c == STOP) break;
+                if (c == null) {
+                    flush();
+                    continue;
+                }
+                append(c);
+                if (pendingBytes >= FLUSH_INTERVAL_MS * BYTES_PER_MS) {
+                    flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failed = true;
+            Log.e(TAG, "Archive write failed, archiving stopped", e);
+        } finally {
+            try {
+                closeCurrent();
+            } catch (IOException e) {
+                Log.e(TAG, "Archive close failed", e);
+            }
+            // nothing will write these: count them as dropped and free the memory
+            droppedFrames.addAndGet(queue.size());
+            queue.clear();
+        }
+    }
+
+    private void append(Chunk c) throws IOException {
+        if (current == null || c.timestampMs - current.startMs >= config.segmentMs) {
+            rotate(c.timestampMs);
+        }
+
+        if (current.idxCount == 0 || c.timestampMs - lastIndexMs >= config.indexIntervalMs) {
+            long offset = current.bytes + writeBuffer.position();
+            synchronized (segments) {
+                current.addIndex(c.timestampMs, offset);
+            }
+            if (indexBuffer.remaining() < INDEX_ENTRY_BYTES) {
+                flushIndex();
+            }
+            indexBuffer.putLong(c.timestampMs).putLong(offset);
+            lastIndexMs = c.timestampMs;
+        }
+
+        int remaining = c.length;
+        int off = c.offset;
+        while (remaining > 0) {
+            if (!writeBuffer.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(remaining, writeBuffer.remaining());
+            if (c.data != null) {
+                writeBuffer.put(c.data, off, n);
+            } else {
+                for (int i = 0; i < n; i++) writeBuffer.put((byte) 0);
+            }
+            off += n;
+            remaining -= n;
+        }
+        pendingBytes += c.length;
+    }
+
+    private void flush() throws IOException {
+        if (current == null) return;
+        writeBuffer.flip();
+        long written = 0;
+        while (writeBuffer.hasRemaining()) {
+            written += dataChannel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+        flushIndex();
+        current.bytes += written;
+        bytesWritten.addAndGet(written);
+        pendingBytes = 0;
+    }
+
+    private void flushIndex() throws IOException {
+        indexBuffer.flip();
+        while (indexBuffer.hasRemaining()) {
+            indexChannel.write(indexBuffer);
+        }
+        indexBuffer.clear();
+    }
+
+    private void rotate(long startMs) throws IOException {
+        closeCurrent();
+        Segment seg = new Segment(dir, startMs);
+        dataChannel = FileChannel.open(seg.dataFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        indexChannel = FileChannel.open(seg.indexFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        seg.bytes = dataChannel.size();
+        synchronized (segments) {
+            segments.add(seg);
+        }
+        current = seg;
+        applyRetention(startMs);
+    }
+
+    private void closeCurrent() throws IOException {
+        if (current == null) return;
+        flush();
+        dataChannel.close();
+        indexChannel.close();
+        current = null;
+    }
+
+    private void applyRetention(long nowMs) {
+        List<Segment> doomed = new ArrayList<>();
+        synchronized (segments) {
+            long total = 0;
+            for (Segment s : segments) total += s.bytes;
+            while (segments.size() > 1) {
+                Segment oldest = segments.get(0);
+                boolean tooOld = nowMs - oldest.endMs() > config.maxAgeMs;
+                boolean tooBig = total > config.maxTotalBytes;
+                if (!tooOld && !tooBig) break;
+                segments.remove(0);
+                total -= oldest.bytes;
+                doomed.add(oldest);
+            }
+        }
+        for (Segment s : doomed) {
+            if (!s.dataFile.delete() || !s.indexFile.delete()) {
+                Log.w(TAG, "Could not delete " + s.dataFile);
+            }
+        }
+    }
+
+    private void recoverSegments() throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("seg-") && name.endsWith(DATA_SUFFIX));
+        if (files == null) return;
+        List<Segment> found = new ArrayList<>();
+        for (File f : files) {
+            String name = f.getName();
+            long start;
+            try {
+                start = Long.parseLong(name.substring(4, name.length() - DATA_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            Segment seg = new Segment(dir, start);
+            seg.bytes = f.length();
+            if (seg.indexFile.exists()) {
+                try (RandomAccessFile idx = new RandomAccessFile(seg.indexFile, "r")) {
+                    long entries = idx.length() / INDEX_ENTRY_BYTES;
+                    for (long i = 0; i < entries; i++) {
+                        seg.addIndex(idx.readLong(), idx.readLong());
+                    }
+                }
+            }
+            found.add(seg);
+        }
+        found.sort((a, b) -> Long.compare(a.startMs, b.startMs));
+        synchronized (segments) {
+            segments.addAll(found);
+        }
+    }
+}
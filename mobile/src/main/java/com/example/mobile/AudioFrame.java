@@ -0,0 +1,64 @@
+package com.example.mobile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * One /audio_chunk frame from the watch.
+ *
+ * Wire layout (must match com.example.wearstream.AudioFrame on the watch):
+ *
+ *   [0]     magic 'W'
+ *   [1]     version
+ *   [2..3]  flags (FLAG_GAP, FLAG_SPOOLED)
+ *   [4..7]  sequence number
+ *   [8..15] capture time of the first sample (watch elapsedRealtimeNanos)
+ *   [16..]  16-bit mono PCM
+ *
+ * The payload is not copied: {@link #data} is the array handed to us by the
+ * Data Layer and the PCM lives at {@link #offset}..offset+{@link #length}.
+ */
+public final class AudioFrame {
+
+    public static final byte MAGIC = 0x57; // 'W'
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+
+    /** The watch lost samples right before this frame (capture overrun); captureNanos is still exact. */
+    public static final int FLAG_GAP = 1;
+    /** Held back on the watch while the phone was unreachable and sent late; not part of the live sequence. */
+    public static final int FLAG_SPOOLED = 2;
+
+    public final int seq;
+    public final int flags;
+    public final long captureNanos;
+    public final byte[] data;
+    public final int offset;
+    public final int length;
+
+    public AudioFrame(int seq, int flags, long captureNanos, byte[] data, int offset, int length) {
+        this.seq = seq;
+        this.flags = flags;
+        this.captureNanos = captureNanos;
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Parses a framed chunk, or returns null for legacy headerless PCM
+     * (older watch builds) so the caller can forward it as-is.
+     */
+    public static AudioFrame parse(byte[] data) {
+        if (data == null || data.length < HEADER_SIZE
+                || data[0] != MAGIC || data[1] != VERSION) {
+            return null;
+        }
+        ByteBuffer bb = ByteBuffer.wrap(data, 0, HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        bb.position(2);
+        int flags = bb.getShort() & 0xFFFF;
+        int seq = bb.getInt();
+        long captureNanos = bb.getLong();
+        return new AudioFrame(seq, flags, captureNanos, data, HEADER_SIZE, data.length - HEADER_SIZE);
+    }
+}
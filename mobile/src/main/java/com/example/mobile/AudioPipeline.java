@@ -0,0 +1,284 @@
+package com.example.mobile;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The phone's audio path without the Android service around it: raw /audio_chunk payloads
+ * in, reordered frames out to the archive and the backend.
+ *
+ * PhoneStreamService feeds it from onMessageReceived; CaptureReplayer feeds it from a
+ * capture file, so a field recording can be pushed through exactly the same code on a
+ * desk or in a unit test.
+ */
+public class AudioPipeline {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    /** Called after each frame handed to the backend. */
+    public interface Listener {
+        void onForwarded(boolean sent);
+    }
+
+    private final BackendStream backend;
+    private final AudioArchive archive;   // optional
+    private final Listener listener;
+    private final TraceRecorder trace = TraceRecorder.get();
+
+    private final JitterBuffer jitterBuffer;
+    private final ScheduledExecutorService jitterTimer;
+    private ScheduledFuture<?> jitterFlush;
+    private byte[] silence = new byte[0];
+
+    // Capture gaps reported by the watch (FLAG_GAP) are filled with concealed
+    // silence so the backend's timeline stays real-time. Guarded by the jitter
+    // buffer's lock, which its sink callbacks run under.
+    static final long MAX_GAP_FILL_MS = 2_000;
+    private int lastSeq = -1;
+    private long lastEndNanos;   // capture time just after the last released frame
+    private final LongAdder gapFrames = new LongAdder();
+    private final LongAdder gapBytes = new LongAdder();
+
+    private volatile CaptureWriter capture;   // optional, set while recording
+
+    // Local fallback detection; only runs while the backend isn't streaming.
+    // Fed from forwardChunk, i.e. the jitter buffer's ordered output.
+    private volatile OfflineDetector offlineDetector;
+    private boolean offline = false;
+
+    // Our clock for arrival times and jitter deadlines. It is also the local
+    // side of watchClock, so it must keep running while the phone sleeps as the
+    // watch's elapsedRealtimeNanos does; System.nanoTime() only suits tests.
+    private volatile LongSupplier clock = System::nanoTime;
+
+    // Watch clock (elapsedRealtimeNanos) against ours, so a frame's capture
+    // time can be compared with its arrival here
+    private volatile ClockSync watchClock;
+    private final LongAdder captureToPhoneNanos = new LongAdder();
+    private final LongAdder captureToPhoneFrames = new LongAdder();
+    private final AtomicLong captureToPhoneMaxNanos = new AtomicLong();
+
+    // Frames the watch spooled during an outage (FLAG_SPOOLED). By the time they
+    // arrive the jitter buffer has concealed their slot, so they bypass it and go
+    // straight to the backend as backfill, stamped with their capture time.
+    private final LongAdder backfillFrames = new LongAdder();
+
+    public AudioPipeline(BackendStream backend, AudioArchive archive,
+                         long jitterMaxDelayMs, int jitterCapacity, Listener listener) {
+        this.backend = backend;
+        this.archive = archive;
+        this.listener = listener;
+        this.jitterTimer = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "JitterTimer"));
+        this.jitterBuffer = new JitterBuffer(
+                TimeUnit.MILLISECONDS.toNanos(jitterMaxDelayMs),
+                jitterCapacity,
+                new JitterBuffer.Sink() {
+                    @Override
+                    public void onFrame(AudioFrame frame) {
+                        if ((frame.flags & AudioFrame.FLAG_GAP) != 0 && frame.seq == lastSeq + 1) {
+                            fillGap(frame.captureNanos - lastEndNanos);
+                        }
+                        lastSeq = frame.seq;
+                        lastEndNanos = frame.captureNanos
+                                + frame.length / 2 * 1_000_000_000L / SAMPLE_RATE;
+                        forwardChunk(frame.data, frame.offset, frame.length, 0);
+                    }
+
+                    @Override
+                    public void onLoss(int seq, int lengthHint) {
+                        trace.record(TraceRecorder.EV_FRAME_LOST, seq, lengthHint);
+                        // Silence keeps the backend's timeline aligned with real time
+                        if (lengthHint > 0) {
+                            forwardSilence(lengthHint);
+                        }
+                    }
+                });
+    }
+
+    /** Records every incoming chunk to {@code writer} until set back to null. */
+    public void setCapture(CaptureWriter writer) {
+        this.capture = writer;
+    }
+
+    /** Runs {@code detector} on the audio whenever the backend session isn't live. */
+    public void setOfflineDetector(OfflineDetector detector) {
+        this.offlineDetector = detector;
+    }
+
+    /** Sets the clock {@link #onChunk(byte[])} stamps arrivals with; call before the first chunk. */
+    public void setClock(LongSupplier nanos) {
+        this.clock = nanos;
+    }
+
+    /** Maps watch capture times into our clock for {@link #captureToPhoneMeanMs()}. */
+    public void setWatchClock(ClockSync clock) {
+        this.watchClock = clock;
+    }
+
+    /** Entry point for one /audio_chunk payload, as received from the watch. */
+    public void onChunk(byte[] data) {
+        onChunk(data, clock.getAsLong());
+    }
+
+    /** As {@link #onChunk(byte[])}, with the arrival time (on the {@link #setClock pipeline clock}) supplied. */
+    public void onChunk(byte[] data, long arrivalNanos) {
+        CaptureWriter writer = capture;
+        if (writer != null) {
+            writer.append(arrivalNanos, data);
+        }
+
+        // Reorder, then archive and send to backend over WebSocket
+        AudioFrame frame = AudioFrame.parse(data);
+        trace.record(TraceRecorder.EV_CHUNK_RECEIVED, frame != null ? frame.seq : -1, data.length);
+        if (frame == null) {
+            // legacy watch build: no header, forward as-is
+            forwardChunk(data, 0, data.length, 0);
+        } else if ((frame.flags & AudioFrame.FLAG_SPOOLED) != 0) {
+            backfill(frame, arrivalNanos);
+        } else {
+            ClockSync clock = watchClock;
+            if (clock != null && clock.isSynced()) {
+                long latency = arrivalNanos - clock.toLocal(frame.captureNanos);
+                captureToPhoneNanos.add(latency);
+                captureToPhoneFrames.increment();
+                captureToPhoneMaxNanos.accumulateAndGet(latency, Math::max);
+            }
+            jitterBuffer.offer(frame, arrivalNanos);
+            scheduleJitterFlush();
+        }
+    }
+
+    /** Gaps the watch reported in its capture, and the silence inserted for them. */
+    public long gapFrames() {
+        return gapFrames.sum();
+    }
+
+    public long gapBytes() {
+        return gapBytes.sum();
+    }
+
+    /**
+     * Watch capture of a frame's first sample to its arrival here, averaged
+     * over frames received while the watch clock was synced; 0 before that.
+     * Includes the watch's read (one frame's length) and the Data Layer hop.
+     */
+    public double captureToPhoneMeanMs() {
+        long n = captureToPhoneFrames.sum();
+        return n == 0 ? 0 : captureToPhoneNanos.sum() / 1e6 / n;
+    }
+
+    public double captureToPhoneMaxMs() {
+        return captureToPhoneMaxNanos.get() / 1e6;
+    }
+
+    /** Spooled watch frames passed to the backend as backfill. */
+    public long backfillFrames() {
+        return backfillFrames.sum();
+    }
+
+    public JitterBuffer.Stats jitterStats() {
+        return jitterBuffer.stats();
+    }
+
+    public void stop() {
+        synchronized (this) {
+            jitterTimer.shutdownNow();
+        }
+        capture = null;
+    }
+
+    /** Arms a one-shot flush at the buffer's next deadline, if one isn't already pending. */
+    private synchronized void scheduleJitterFlush() {
+        if (jitterTimer.isShutdown() || (jitterFlush != null && !jitterFlush.isDone())) {
+            return;
+        }
+        long deadline = jitterBuffer.nextDeadlineNanos();
+        if (deadline == Long.MAX_VALUE) {
+            return;
+        }
+        long delay = Math.max(0, deadline - clock.getAsLong());
+        jitterFlush = jitterTimer.schedule(() -> {
+            jitterBuffer.flushExpired(clock.getAsLong());
+            synchronized (AudioPipeline.this) {
+                jitterFlush = null;
+            }
+            scheduleJitterFlush();
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void fillGap(long gapNanos) {
+        long ms = Math.min(gapNanos / 1_000_000L, MAX_GAP_FILL_MS);
+        int bytes = (int) (ms * SAMPLE_RATE / 1000) * 2;
+        if (bytes <= 0) return;
+        gapFrames.increment();
+        gapBytes.add(bytes);
+        forwardSilence(bytes);
+    }
+
+    private void forwardSilence(int length) {
+        if (silence.length < length) {
+            silence = new byte[length];
+        }
+        forwardChunk(silence, 0, length, WireFrame.FLAG_CONCEALED);
+    }
+
+    /** Ordered output of the jitter buffer: archive locally, then forward to the backend. */
+    private void forwardChunk(byte[] data, int offset, int length, int flags) {
+        long now = System.currentTimeMillis();
+        if (archive != null) {
+            // never blocks; the archive drops and counts if its writer is behind
+            if ((flags & WireFrame.FLAG_CONCEALED) != 0) {
+                archive.offerSilence(now, length);
+            } else {
+                archive.offer(now, data, offset, length);
+            }
+        }
+        detectIfOffline(data, offset, length, flags, now);
+        // Buffered for replay if the session isn't live; reconnect is triggered inside
+        boolean sent = backend.send(data, offset, length, flags, now);
+        trace.record(TraceRecorder.EV_WS_SENT, length, sent ? 1 : 0);
+        if (listener != null) {
+            listener.onForwarded(sent);
+        }
+    }
+
+    /**
+     * Late audio from the watch's spool. Not archived (the archive is a
+     * sequential recording and already holds silence for this stretch) and not
+     * run through the offline detector, whose alerts would be stale.
+     */
+    private void backfill(AudioFrame frame, long arrivalNanos) {
+        ClockSync clock = watchClock;
+        long ageMs = clock != null && clock.isSynced()
+                ? Math.max(0, (arrivalNanos - clock.toLocal(frame.captureNanos)) / 1_000_000L)
+                : 0;   // unsynced: best we can say is "now"
+        backfillFrames.increment();
+        boolean sent = backend.send(frame.data, frame.offset, frame.length, WireFrame.FLAG_BACKFILL,
+                System.currentTimeMillis() - ageMs);
+        trace.record(TraceRecorder.EV_WS_SENT, frame.length, sent ? 1 : 0);
+        if (listener != null) {
+            listener.onForwarded(sent);
+        }
+    }
+
+    private void detectIfOffline(byte[] data, int offset, int length, int flags, long now) {
+        OfflineDetector detector = offlineDetector;
+        if (detector == null) return;
+        if (backend.isStreaming()) {
+            offline = false;
+            return;
+        }
+        if (!offline) {
+            offline = true;
+            detector.reset();   // background levels from before the outage are stale
+        }
+        if ((flags & WireFrame.FLAG_CONCEALED) == 0) {
+            detector.process(data, offset, length, now);
+        }
+    }
+}
@@ -0,0 +1,662 @@
+package com.example.mobile;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * Resumable audio stream to the backend WebSocket.
+ *
+ * Protocol 2 handshake, run on every (re)connect:
+ *
+ *   phone  → {"type":"hello","proto":2,"session":ID,"last_acked":N}
+ *   server → {"type":"welcome","session":ID,"next_seq":M}
+ *   server → {"type":"ack","seq":K}            (periodic, cumulative)
+ *
+ * While streaming the phone also pings for clock sync (see {@link ClockSync}):
+ *
+ *   phone  → {"type":"ping","t1":N}
+ *   server → {"type":"pong","t1":N,"t2":..,"t3":..}   (server's nanoTime)
+ *
+ * Every audio frame gets a per-session sequence number and stays in a bounded
+ * {@link RetransmitBuffer} until acked. After a reconnect nothing is sent
+ * until the welcome arrives; then frames from {@code next_seq} onwards are
+ * replayed in order before live frames continue, so the server sees the
+ * stream without duplicates or gaps (unless the gap outgrew the buffer).
+ *
+ * Connection lifecycle lives in a lock-free {@link ConnectionState}; the
+ * session only counts as OPEN once the welcome has been handled. Failed
+ * connects back off exponentially before the next attempt. Connecting and
+ * the socket callbacks move the state without a lock, but every
+ * {@link #send} takes the send lock and reads the state under it: the
+ * resume replays and switches to OPEN under that same lock, so a live frame
+ * can't overtake the replay.
+ *
+ * The socket is opened on demand: by {@link #send} when it finds no live
+ * session, or ahead of the first frame by {@link #markStreamStart} +
+ * {@link #connect} when the watch announces a stream. {@link #closeIfIdle}
+ * drops it again once frames stop; unacked frames stay buffered and are
+ * replayed on the next session.
+ *
+ * With {@link #setCoalescing} several frames share one WebSocket message
+ * (flushed on size or after a bounded delay), announced to the server in the
+ * hello. Replays after a resume are packed the same way.
+ *
+ * Any other server message is handed to {@link Listener#onServerMessage}.
+ */
+public class BackendStream {
+
+    private static final String TAG = "BackendStream";
+
+    public static final int PROTO_VERSION = 2;
+
+    private static final long BACKOFF_MIN_MS = 250;
+    private static final long BACKOFF_MAX_MS = 10_000;
+
+    // Slabs for frames sent on their own (not coalesced): one 40 ms chunk plus
+    // header fits easily; bigger frames get a one-off array.
+    private static final int FRAME_SLAB_BYTES = 4096;
+    private static final int FRAME_SLABS_POOLED = 64;
+
+    // Clock pings ride along with live frames; none while idle
+    private static final long CLOCK_PING_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    public interface Listener {
+        void onStatus(String status, boolean connected);
+
+        void onServerMessage(JSONObject root);
+    }
+
+    private final OkHttpClient httpClient;
+    private final String url;
+    private final Listener listener;
+    private final String sessionId = UUID.randomUUID().toString();
+
+    private final ConnectionState state = new ConnectionState();
+    private volatile WebSocket webSocket;
+    private volatile long backoffMs = BACKOFF_MIN_MS;
+
+    // Traffic counters, updated from any thread without contention
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder framesBuffered = new LongAdder();
+    private final LongAdder framesRetransmitted = new LongAdder();
+    private final LongAdder connectAttempts = new LongAdder();
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder bytesCopied = new LongAdder();
+    private final TraceRecorder trace = TraceRecorder.get();
+
+    // The retransmit buffer and sequence counter are guarded by sendLock.
+    // Holding it across WebSocket.send keeps replayed and live frames in
+    // sequence order; it is never held while connecting.
+    private final Object sendLock = new Object();
+    private final RetransmitBuffer retransmit;
+    private final BufferPool framePool = new BufferPool(FRAME_SLAB_BYTES, FRAME_SLABS_POOLED);
+    private int nextSeq = 0;
+    private int lastAckedSeq = -1;
+    private long unrecoverableFrames = 0L;
+
+    // Demand-driven lifecycle: last frame handed to send(), and time to first ack
+    private volatile long lastSendNanos = System.nanoTime();
+    private long streamStartNanos = 0L;     // guarded by sendLock; 0 = not measuring
+    private int streamStartSeq;             // first seq sent after the stream start
+    private volatile long timeToFirstAckNanos = -1L;
+
+    // Backend clock against ours; kept across sessions (it's the same server)
+    private final ClockSync backendClock = new ClockSync("backend");
+    private long lastPingNanos = 0L;        // guarded by sendLock
+
+    // Optional frame coalescing; null = one message per frame. Guarded by sendLock.
+    private FrameCoalescer coalescer;
+    private ScheduledExecutorService flushTimer;
+    private ScheduledFuture<?> pendingFlush;
+
+    public BackendStream(OkHttpClient httpClient, String url, long retransmitBytes, Listener listener) {
+        this.httpClient = httpClient;
+        this.url = url;
+        this.listener = listener;
+        this.retransmit = new RetransmitBuffer(retransmitBytes);
+    }
+
+    /**
+     * Packs live frames into messages of up to {@code maxBytes}, holding a
+     * partial batch for at most {@code maxDelayMs}. Takes effect from the next
+     * frame; the server learns of it at the next hello. 0 turns it off.
+     */
+    public void setCoalescing(int maxBytes, long maxDelayMs) {
+        synchronized (sendLock) {
+            flushLocked();
+            if (maxDelayMs <= 0 || maxBytes <= 0) {
+                coalescer = null;
+                return;
+            }
+            coalescer = new FrameCoalescer(maxBytes, TimeUnit.MILLISECONDS.toNanos(maxDelayMs));
+            if (flushTimer == null) {
+                flushTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "CoalesceTimer");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+        }
+    }
+
+    /**
+     * Opens the socket if IDLE (or BACKOFF with the delay elapsed).
+     *
+     * @return true if this call started a new connection attempt
+     */
+    public boolean connect() {
+        long gen = state.beginConnect(System.nanoTime());
+        if (gen < 0) {
+            Log.d(TAG, "WS: " + ConnectionState.name(state.state()) + ", skipping connect()");
+            return false;
+        }
+        connectAttempts.increment();
+
+        Request request = new Request.Builder()
+                .url(url)
+                .build();
+
+        Log.d(TAG, "WS: Connecting to " + url + " (session " + sessionId + ", gen " + gen + ")");
+        WebSocket ws = httpClient.newWebSocket(request, new SocketListener(gen));
+        if (state.generation() == gen) {
+            webSocket = ws;
+        }
+        return true;
+    }
+
+    public void close(String reason) {
+        synchronized (sendLock) {
+            flushLocked();   // don't hold back the tail of the stream
+        }
+        long gen = state.generation();
+        WebSocket ws = webSocket;
+        if (state.end(gen, ConnectionState.CLOSING) && ws != null) {
+            Log.d(TAG, "Closing WebSocket");
+            ws.close(1000, reason);
+        }
+    }
+
+    /**
+     * Closes the session if nothing has been sent for {@code idleNanos}. It is
+     * reopened by the next {@link #send} or {@link #connect}.
+     *
+     * @return true if the socket was closed
+     */
+    public boolean closeIfIdle(long idleNanos, long nowNanos) {
+        int s = state.state();
+        if (s != ConnectionState.OPEN && s != ConnectionState.CONNECTING) {
+            return false;
+        }
+        if (nowNanos - lastSendNanos < idleNanos) {
+            return false;
+        }
+        Log.d(TAG, "WS: idle for " + TimeUnit.NANOSECONDS.toMillis(nowNanos - lastSendNanos)
+                + " ms, closing (" + unackedFrames() + " frames kept for the next session)");
+        close("Idle");
+        listener.onStatus("Idle (backend connection closed)", false);
+        return true;
+    }
+
+    /**
+     * Marks the start of a stream (the watch's /stream_start). The next ack that
+     * covers a frame sent from now on completes the time-to-first-ack metric.
+     */
+    public void markStreamStart(long nowNanos) {
+        synchronized (sendLock) {
+            streamStartNanos = nowNanos;
+            streamStartSeq = nextSeq;
+        }
+        lastSendNanos = nowNanos;
+    }
+
+    /**
+     * Stream start to the backend acknowledging the first frame of that stream:
+     * connect, handshake, first frame and one network round trip.
+     *
+     * @return nanos, or -1 if not measured yet
+     */
+    public long timeToFirstAckNanos() {
+        return timeToFirstAckNanos;
+    }
+
+    /**
+     * Queues one frame of PCM. It is sent now if the session is OPEN, otherwise
+     * kept for replay and a reconnect is triggered.
+     *
+     * @return true if the frame went out on the socket immediately (or joined
+     *         the batch for it, when coalescing)
+     */
+    public boolean send(byte[] pcm, int offset, int length, int flags, long timestampMs) {
+        lastSendNanos = System.nanoTime();
+        int frameBytes = WireFrame.HEADER_SIZE + length;
+        synchronized (sendLock) {
+            int seq = nextSeq++;
+            WebSocket ws = webSocket;
+            boolean live = state.is(ConnectionState.OPEN) && ws != null;
+
+            // Encode once, into the slab the retransmit buffer will keep referencing
+            PooledBuffer buf;
+            int at;
+            boolean batched = live && coalescer != null && !coalescer.tooLarge(frameBytes);
+            if (batched) {
+                if (coalescer.wouldOverflow(frameBytes) && !flushLocked()) {
+                    batched = false;   // socket refused the batch; keep this frame for replay
+                    live = false;
+                }
+            }
+            if (batched) {
+                at = coalescer.reserve(frameBytes, System.nanoTime());
+                buf = coalescer.slab().retain();
+            } else {
+                flushLocked();   // a lone frame must not overtake a pending batch
+                at = 0;
+                buf = framePool.acquire(frameBytes);
+            }
+            WireFrame.writeHeader(buf.array(), at, seq, flags, timestampMs, length);
+            System.arraycopy(pcm, offset, buf.array(), at + WireFrame.HEADER_SIZE, length);
+            bytesCopied.add(length);
+            retransmit.add(seq, buf, at, frameBytes);
+            if (live && lastSendNanos - lastPingNanos >= CLOCK_PING_INTERVAL_NANOS) {
+                pingLocked(ws, lastSendNanos);
+            }
+
+            if (batched) {
+                return coalesceLocked(length);
+            }
+            if (live) {
+                bytesCopied.add(frameBytes);
+                if (ws.send(ByteString.of(buf.array(), at, frameBytes))) {
+                    bytesSent.add(length);
+                    framesSent.increment();
+                    messagesSent.increment();
+                    return true;
+                }
+                return false;
+            }
+            trace.record(TraceRecorder.EV_WS_BUFFERED, seq, retransmit.size());
+        }
+
+        framesBuffered.increment();
+        int s = state.state();
+        if (s == ConnectionState.IDLE || s == ConnectionState.BACKOFF) {
+            if (connect()) {
+                Log.d(TAG, "WS: triggered reconnect from send()");
+                listener.onStatus("Reconnecting to backend…", false);
+            }
+        }
+        return false;
+    }
+
+    /** Accounts for a frame just encoded into the batch; sends the batch once it is due. */
+    private boolean coalesceLocked(int payloadLength) {
+        long now = System.nanoTime();
+        bytesSent.add(payloadLength);
+        framesSent.increment();
+        if (coalescer.isDue(now)) {
+            return flushLocked();
+        }
+        if (pendingFlush == null) {
+            pendingFlush = flushTimer.schedule(this::flushDue,
+                    coalescer.deadlineNanos() - now, TimeUnit.NANOSECONDS);
+        }
+        return true;
+    }
+
+    /** Timer: sends the batch whose deadline has passed. */
+    private void flushDue() {
+        synchronized (sendLock) {
+            pendingFlush = null;
+            if (coalescer == null) return;
+            long now = System.nanoTime();
+            if (coalescer.isDue(now)) {
+                flushLocked();
+            } else if (!coalescer.isEmpty()) {
+                pendingFlush = flushTimer.schedule(this::flushDue,
+                        coalescer.deadlineNanos() - now, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Sends the current batch as one message. If the session is no longer
+     * open the batch is dropped: its frames are in the retransmit buffer.
+     */
+    private boolean flushLocked() {
+        if (coalescer == null || coalescer.isEmpty()) return true;
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        WebSocket ws = webSocket;
+        if (!state.is(ConnectionState.OPEN) || ws == null) {
+            coalescer.clear();
+            return false;
+        }
+        int frames = coalescer.frames();
+        bytesCopied.add(coalescer.bytes());
+        // counted before the send: the server may see the message before send() returns
+        messagesSent.increment();
+        if (ws.send(coalescer.drain())) {
+            trace.record(TraceRecorder.EV_WS_COALESCED, frames, ws.queueSize());
+            return true;
+        }
+        messagesSent.decrement();
+        return false;
+    }
+
+    public boolean isStreaming() {
+        return state.is(ConnectionState.OPEN);
+    }
+
+    public String stateName() {
+        return ConnectionState.name(state.state());
+    }
+
+    public String sessionId() {
+        return sessionId;
+    }
+
+    public long bytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long framesSent() {
+        return framesSent.sum();
+    }
+
+    /** Frames that could not go out live and waited in the retransmit buffer. */
+    public long framesBuffered() {
+        return framesBuffered.sum();
+    }
+
+    public long retransmittedFrames() {
+        return framesRetransmitted.sum();
+    }
+
+    /** WebSocket messages carrying audio; below {@link #framesSent} when coalescing. */
+    public long messagesSent() {
+        return messagesSent.sum();
+    }
+
+    /**
+     * Bytes this class copied: PCM into its slab once per frame, plus the copy
+     * OkHttp's ByteString needs per message. For measuring the frame path.
+     */
+    public long bytesCopied() {
+        return bytesCopied.sum();
+    }
+
+    /** Backend clock ({@code System.nanoTime()} on the server) against ours. */
+    public ClockSync clockSync() {
+        return backendClock;
+    }
+
+    /** Slabs for non-coalesced frames. */
+    BufferPool framePool() {
+        return framePool;
+    }
+
+    /** Slabs for coalesced batches, or null when not coalescing. */
+    BufferPool batchPool() {
+        synchronized (sendLock) {
+            return coalescer != null ? coalescer.pool() : null;
+        }
+    }
+
+    public long connectAttempts() {
+        return connectAttempts.sum();
+    }
+
+    public int lastAckedSeq() {
+        synchronized (sendLock) {
+            return lastAckedSeq;
+        }
+    }
+
+    public int unackedFrames() {
+        synchronized (sendLock) {
+            return retransmit.size();
+        }
+    }
+
+    /** Frames the server asked for that had already been evicted from the buffer. */
+    public long unrecoverableFrames() {
+        synchronized (sendLock) {
+            return unrecoverableFrames;
+        }
+    }
+
+    // ---- protocol ----
+
+    private void onWelcome(long gen, WebSocket ws, int serverNextSeq) {
+        int replayed;
+        int resumeFrom;
+        synchronized (sendLock) {
+            if (!state.is(ConnectionState.CONNECTING) || state.generation() != gen) return;
+
+            // everything before next_seq reached the server on an earlier socket
+            if (serverNextSeq - 1 - lastAckedSeq > 0) {
+                lastAckedSeq = serverNextSeq - 1;
+            }
+            retransmit.ackUpTo(serverNextSeq - 1);
+
+            int first = retransmit.firstSeq(nextSeq);
+            resumeFrom = serverNextSeq;
+            if (first - serverNextSeq > 0) {
+                unrecoverableFrames += first - serverNextSeq;
+                Log.w(TAG, "Resume gap: server wants " + serverNextSeq + ", oldest kept is " + first);
+                resumeFrom = first;
+            }
+
+            List<RetransmitBuffer.Entry> pending = retransmit.from(resumeFrom);
+            if (coalescer != null) {
+                // a stale batch belongs to the old socket; its frames are in pending
+                coalescer.clear();
+            }
+            replayed = replayLocked(ws, pending);
+            framesRetransmitted.add(replayed);
+            if (replayed < pending.size()) {
+                // the socket refused the replay, so it is closing; the rest stays
+                // buffered and the next session resumes from the server's next_seq
+                Log.w(TAG, "Replay cut short after " + replayed + " of " + pending.size() + " frames");
+                return;
+            }
+
+            // still under sendLock: no live frame can slip in between replay and OPEN
+            if (!state.transition(gen, ConnectionState.CONNECTING, ConnectionState.OPEN)) return;
+            pingLocked(ws, System.nanoTime());
+        }
+        backoffMs = BACKOFF_MIN_MS;
+        Log.d(TAG, "Session resumed at seq " + resumeFrom + ", replayed " + replayed + " frames");
+        listener.onStatus("Streaming to backend", true);
+    }
+
+    /**
+     * Resends retained frames in order. When coalescing, frames that still sit
+     * next to each other in their batch slab go out together as one message
+     * (one copy, no re-packing); otherwise one message per frame. Stops at the
+     * first message the socket refuses (it is closing); the frames stay
+     * buffered for the next session.
+     *
+     * @return how many frames went out
+     */
+    private int replayLocked(WebSocket ws, List<RetransmitBuffer.Entry> pending) {
+        int maxBytes = coalescer != null ? coalescer.maxBytes() : 0;
+        PooledBuffer runBuf = null;
+        int runStart = 0;
+        int runEnd = 0;
+        int runFrames = 0;
+        int sent = 0;
+        for (RetransmitBuffer.Entry e : pending) {
+            boolean contiguous = runBuf == e.buf && runEnd == e.offset
+                    && runEnd + e.length - runStart <= maxBytes;
+            if (!contiguous) {
+                if (runBuf != null) {
+                    if (!sendSlice(ws, runBuf, runStart, runEnd - runStart)) return sent;
+                    sent += runFrames;
+                }
+                runBuf = e.buf;
+                runStart = e.offset;
+                runFrames = 0;
+            }
+            runEnd = e.offset + e.length;
+            runFrames++;
+        }
+        if (runBuf != null && sendSlice(ws, runBuf, runStart, runEnd - runStart)) {
+            sent += runFrames;
+        }
+        return sent;
+    }
+
+    private boolean sendSlice(WebSocket ws, PooledBuffer buf, int offset, int length) {
+        bytesCopied.add(length);
+        if (!ws.send(ByteString.of(buf.array(), offset, length))) return false;
+        messagesSent.increment();
+        return true;
+    }
+
+    private void pingLocked(WebSocket ws, long nowNanos) {
+        lastPingNanos = nowNanos;
+        try {
+            ws.send(new JSONObject().put("type", "ping").put("t1", nowNanos).toString());
+        } catch (JSONException e) {
+            Log.e(TAG, "ping: JSON error", e);
+        }
+    }
+
+    private void onAck(int seq) {
+        long ttfa = -1;
+        synchronized (sendLock) {
+            if (seq - lastAckedSeq > 0) {
+                lastAckedSeq = seq;
+                retransmit.ackUpTo(seq);
+            }
+            if (streamStartNanos != 0 && seq - streamStartSeq >= 0) {
+                ttfa = System.nanoTime() - streamStartNanos;
+                streamStartNanos = 0;
+            }
+        }
+        if (ttfa >= 0) {
+            timeToFirstAckNanos = ttfa;
+            trace.record(TraceRecorder.EV_STREAM_FIRST_ACK, ttfa, seq);
+            Log.d(TAG, "Stream start → first ack: " + TimeUnit.NANOSECONDS.toMillis(ttfa) + " ms");
+        }
+    }
+
+    private class SocketListener extends WebSocketListener {
+        private final long gen;
+
+        SocketListener(long gen) {
+            this.gen = gen;
+        }
+
+        @Override
+        public void onOpen(@NonNull WebSocket ws, @NonNull Response response) {
+            if (state.generation() != gen) {
+                ws.close(1000, "Superseded");
+                return;
+            }
+            Log.d(TAG, "✅ WS OPEN");
+            webSocket = ws;
+
+            JSONObject hello = new JSONObject();
+            int acked;
+            FrameCoalescer batching;
+            synchronized (sendLock) {
+                acked = lastAckedSeq;
+                batching = coalescer;
+            }
+            try {
+                hello.put("type", "hello");
+                hello.put("proto", PROTO_VERSION);
+                hello.put("session", sessionId);
+                hello.put("last_acked", acked);
+                if (batching != null) {
+                    hello.put("coalesce", new JSONObject()
+                            .put("max_bytes", batching.maxBytes())
+                            .put("max_delay_ms",
+                                    TimeUnit.NANOSECONDS.toMillis(batching.maxDelayNanos())));
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "hello: JSON error", e);
+            }
+            ws.send(hello.toString());
+            listener.onStatus("Connected to backend", true);
+        }
+
+        @Override
+        public void onMessage(@NonNull WebSocket ws, @NonNull String text) {
+            long received = System.nanoTime();
+            JSONObject root;
+            try {
+                root = new JSONObject(text);
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to parse WS JSON", e);
+                return;
+            }
+
+            String type = root.optString("type", "");
+            if ("welcome".equals(type)) {
+                onWelcome(gen, ws, root.optInt("next_seq", 0));
+            } else if ("ack".equals(type)) {
+                onAck(root.optInt("seq", -1));
+            } else if ("pong".equals(type)) {
+                backendClock.onSample(root.optLong("t1"), root.optLong("t2"), root.optLong("t3"), received);
+            } else {
+                listener.onServerMessage(root);
+            }
+        }
+
+        @Override
+        public void onMessage(@NonNull WebSocket ws, @NonNull ByteString bytes) {
+            Log.d(TAG, "📩 WS binary from server, size=" + bytes.size());
+        }
+
+        @Override
+        public void onClosing(@NonNull WebSocket ws, int code, @NonNull String reason) {
+            Log.d(TAG, "WS CLOSING: code=" + code + ", reason=" + reason);
+            ws.close(1000, null);
+            if (state.end(gen, ConnectionState.CLOSING)) {
+                listener.onStatus("Closing connection…", false);
+            }
+        }
+
+        @Override
+        public void onClosed(@NonNull WebSocket ws, int code, @NonNull String reason) {
+            Log.d(TAG, "WS CLOSED: code=" + code + ", reason=" + reason);
+            if (state.end(gen, ConnectionState.IDLE)) {
+                listener.onStatus("Closed connection", false);
+            }
+        }
+
+        @Override
+        public void onFailure(@NonNull WebSocket ws, @NonNull Throwable t, Response response) {
+            Log.e(TAG, "❌ WS FAILURE: " + t.getMessage(), t);
+            long delay = backoffMs;
+            if (state.backoff(gen, System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(delay))) {
+                backoffMs = Math.min(delay * 2, BACKOFF_MAX_MS);
+                listener.onStatus("Backend connection failed", false);
+            }
+        }
+    }
+}
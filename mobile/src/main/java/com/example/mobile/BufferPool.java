@@ -0,0 +1,81 @@
+package com.example.mobile;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size slabs for the phone's frame path, reused instead of allocated
+ * per frame.
+ *
+ * Requests up to {@code bufferSize} get a pooled slab; larger ones get a
+ * one-off array (counted in {@link #oversize()}). At most {@code maxPooled}
+ * free slabs are kept; beyond that released slabs are left to the GC, so a
+ * burst (e.g. a long outage filling the retransmit buffer) doesn't pin its
+ * peak memory forever.
+ *
+ * The free list is a plain array stack under the pool's lock, so acquire and
+ * release don't allocate.
+ */
+public final class BufferPool {
+
+    private final int bufferSize;
+    private final PooledBuffer[] free;
+    private int freeCount = 0;   // guarded by this
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder oversize = new LongAdder();
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize must be > 0");
+        this.bufferSize = bufferSize;
+        this.free = new PooledBuffer[Math.max(0, maxPooled)];
+    }
+
+    /** A buffer of at least {@code minSize} bytes holding one reference. */
+    public PooledBuffer acquire(int minSize) {
+        acquired.increment();
+        if (minSize > bufferSize) {
+            oversize.increment();
+            return PooledBuffer.unpooled(new byte[minSize]);
+        }
+        synchronized (this) {
+            if (freeCount > 0) {
+                PooledBuffer b = free[--freeCount];
+                free[freeCount] = null;
+                b.reset();
+                return b;
+            }
+        }
+        allocated.increment();
+        return new PooledBuffer(new byte[bufferSize], this);
+    }
+
+    void recycle(PooledBuffer b) {
+        synchronized (this) {
+            if (freeCount < free.length) {
+                free[freeCount++] = b;
+            }
+        }
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    public long acquired() {
+        return acquired.sum();
+    }
+
+    /** Slabs that had to be newly allocated; acquired() minus this were reuses. */
+    public long allocated() {
+        return allocated.sum();
+    }
+
+    public long oversize() {
+        return oversize.sum();
+    }
+
+    public synchronized int pooled() {
+        return freeCount;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.mobile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sequential reader for {@link CaptureWriter} files.
+ *
+ * The file is memory-mapped a window at a time, so a multi-hour capture is
+ * paged in by the kernel ahead of the replay instead of going through read()
+ * calls, and payloads can be handed out as views without copying. A record
+ * straddling the end of a window causes the window to be re-mapped from the
+ * start of that record.
+ *
+ * Usage:
+ *
+ *   while (reader.next()) { reader.arrivalNanos(); reader.payload(); }
+ */
+public class CaptureReader implements Closeable {
+
+    static final long WINDOW_BYTES = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long windowBytes;
+    private final long startWallMs;
+
+    private MappedByteBuffer map;
+    private long mapStart;
+    private long position;       // file offset of the next record
+
+    private long arrivalNanos;
+    private int payloadPos;      // within map
+    private int payloadLength;
+
+    public CaptureReader(File file) throws IOException {
+        this(file, WINDOW_BYTES);
+    }
+
+    CaptureReader(File file, long windowBytes) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowBytes = windowBytes;
+        if (size < CaptureWriter.HEADER_SIZE) {
+            channel.close();
+            throw new IOException("Not a capture file: " + file);
+        }
+        remap(0, CaptureWriter.HEADER_SIZE);
+        int magic = map.getInt(0);
+        int version = map.getInt(4);
+        if (magic != CaptureWriter.MAGIC || version != CaptureWriter.VERSION) {
+            channel.close();
+            throw new IOException("Not a capture file (or unsupported version): " + file);
+        }
+        this.startWallMs = map.getLong(8);
+        this.position = CaptureWriter.HEADER_SIZE;
+    }
+
+    /** Wall-clock time the capture started. */
+    public long startWallMs() {
+        return startWallMs;
+    }
+
+    /**
+     * Advances to the next record.
+     *
+     * @return false at the end of the file, or at a truncated last record
+     */
+    public boolean next() throws IOException {
+        if (position + CaptureWriter.RECORD_HEADER_SIZE > size) {
+            return false;
+        }
+        ensureMapped(position, CaptureWriter.RECORD_HEADER_SIZE);
+        int at = (int) (position - mapStart);
+        long nanos = map.getLong(at);
+        int length = map.getInt(at + 8);
+        long end = position + CaptureWriter.RECORD_HEADER_SIZE + length;
+        if (length < 0 || end > size) {
+            return false;
+        }
+        ensureMapped(position, CaptureWriter.RECORD_HEADER_SIZE + length);
+        arrivalNanos = nanos;
+        payloadPos = (int) (position - mapStart) + CaptureWriter.RECORD_HEADER_SIZE;
+        payloadLength = length;
+        position = end;
+        return true;
+    }
+
+    /** Arrival time of the current record, relative to the start of the capture. */
+    public long arrivalNanos() {
+        return arrivalNanos;
+    }
+
+    public int payloadLength() {
+        return payloadLength;
+    }
+
+    /** Read-only view of the current payload; valid until the next call to {@link #next()}. */
+    public ByteBuffer payload() {
+        ByteBuffer view = map.duplicate();
+        view.position(payloadPos).limit(payloadPos + payloadLength);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    /** Copy of the current payload, for consumers that keep it. */
+    public byte[] copyPayload() {
+        byte[] out = new byte[payloadLength];
+        ByteBuffer view = map.duplicate();
+        view.position(payloadPos);
+        view.get(out);
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        map = null;
+        channel.close();
+    }
+
+    private void ensureMapped(long from, int length) throws IOException {
+        if (from >= mapStart && from + length <= mapStart + map.capacity()) {
+            return;
+        }
+        remap(from, length);
+    }
+
+    private void remap(long from, int minLength) throws IOException {
+        long len = Math.min(Math.max(windowBytes, minLength), size - from);
+        map = channel.map(FileChannel.MapMode.READ_ONLY, from, len);
+        mapStart = from;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.mobile;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a capture back with its original inter-arrival timing, scaled by a
+ * speed factor: 1 for real time, N for N times faster, {@link #MAX_SPEED} for
+ * as fast as the sink accepts.
+ *
+ * Sinks are typically {@code pipeline::onChunk} (the full phone path:
+ * parsing, jitter buffer, archive, backend) or {@link #toBackend} (frames
+ * straight to a backend, bypassing the phone's reordering).
+ */
+public final class CaptureReplayer {
+
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    public interface Sink {
+        void onChunk(byte[] data);
+    }
+
+    private final double speed;
+
+    private long records;
+    private long bytes;
+    private long maxLagNanos;
+
+    public CaptureReplayer(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be > 0: " + speed);
+        }
+        this.speed = speed;
+    }
+
+    /**
+     * Replays every record of {@code reader} into {@code sink} on the calling thread.
+     *
+     * @return number of records delivered
+     */
+    public long replay(CaptureReader reader, Sink sink) throws IOException {
+        boolean paced = speed != MAX_SPEED;
+        long start = System.nanoTime();
+        long first = -1;
+        while (reader.next()) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            if (first < 0) first = reader.arrivalNanos();
+            if (paced) {
+                long due = start + (long) ((reader.arrivalNanos() - first) / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                maxLagNanos = Math.max(maxLagNanos, -wait);
+            }
+            sink.onChunk(reader.copyPayload());
+            records++;
+            bytes += reader.payloadLength();
+        }
+        return records;
+    }
+
+    public long records() {
+        return records;
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    /** How far delivery fell behind the scaled schedule, at worst. */
+    public long maxLagNanos() {
+        return maxLagNanos;
+    }
+
+    /** Sends each recorded frame directly to {@code backend}, in capture order. */
+    public static Sink toBackend(BackendStream backend) {
+        return data -> {
+            AudioFrame frame = AudioFrame.parse(data);
+            long now = System.currentTimeMillis();
+            if (frame == null) {
+                backend.send(data, 0, data.length, 0, now);
+            } else {
+                backend.send(frame.data, frame.offset, frame.length, 0, now);
+            }
+        };
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.mobile;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the /audio_chunk stream exactly as it arrived, for replay with
+ * {@link CaptureReplayer}.
+ *
+ * File layout (big-endian):
+ *
+ *   header  int magic 'WCAP', int version, long startWallMs, long startNanos
+ *   record  long arrivalNanos (since startNanos), int length, byte[length] payload
+ *
+ * The payload is the untouched message body, watch header included, so a
+ * replay exercises parsing and the jitter buffer as well. A capture cut short
+ * by a crash is still readable up to its last complete record.
+ *
+ * Like {@link AudioArchive}, {@link #append} only enqueues; a writer thread
+ * batches records into a direct buffer and drops (and counts) when behind.
+ */
+public class CaptureWriter {
+
+    private static final String TAG = "CaptureWriter";
+
+    public static final int MAGIC = 0x57434150;  // "WCAP"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 24;
+    public static final int RECORD_HEADER_SIZE = 12;
+
+    private static final int WRITE_BUFFER_BYTES = 256 * 1024;
+    private static final int QUEUE_RECORDS = 1024;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+
+    private static final class Record {
+        final long arrivalNanos;
+        final byte[] data;
+
+        Record(long arrivalNanos, byte[] data) {
+            this.arrivalNanos = arrivalNanos;
+            this.data = data;
+        }
+    }
+
+    private static final Record STOP = new Record(0, null);
+
+    private final File file;
+    private final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_RECORDS);
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean failed = false;   // the writer hit an I/O error and is gone
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+
+    private long startNanos;
+    private FileChannel channel;
+    private Thread writer;
+
+    public CaptureWriter(File file) {
+        this.file = file;
+    }
+
+    public File file() {
+        return file;
+    }
+
+    /** As {@link #start(long)}, on {@link System#nanoTime()}. */
+    public void start() throws IOException {
+        start(System.nanoTime());
+    }
+
+    /**
+     * Creates the file, writes the header and starts the writer thread.
+     *
+     * @param nowNanos the current time on the clock later arrivals are stamped with
+     */
+    public void start(long nowNanos) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        startNanos = nowNanos;
+        writeBuffer.putInt(MAGIC).putInt(VERSION)
+                .putLong(System.currentTimeMillis()).putLong(startNanos);
+        writer = new Thread(this::writerLoop, "CaptureWriter");
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+    }
+
+    /** Flushes what is queued and closes the file; returns promptly if the writer already died. */
+    public void stop() {
+        if (writer == null) return;
+        try {
+            while (!queue.offer(STOP, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if (!writer.isAlive()) break;
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    /**
+     * Queues one message without blocking. The array must not be modified afterwards.
+     *
+     * @param arrivalNanos arrival time, on the clock given to {@link #start(long)}
+     * @return false if the writer is behind (or has failed) and the record was dropped
+     */
+    public boolean append(long arrivalNanos, byte[] data) {
+        if (failed || !queue.offer(new Record(arrivalNanos, data))) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public long records() {
+        return records.get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    // ---- writer thread ----
+
+    private void writerLoop() {
+        try {
+            while (true) {
+                Record r = queue.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (r == STOP) break;
+                if (r == null) {
+                    flush();
+                    continue;
+                }
+                write(r);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failed = true;
+            Log.e(TAG, "Capture write failed, capture stopped", e);
+        } finally {
+            try {
+                flush();
+                channel.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Capture close failed", e);
+            }
+            dropped.addAndGet(queue.size());
+            queue.clear();
+        }
+    }
+
+    private void write(Record r) throws IOException {
+        if (writeBuffer.remaining() < RECORD_HEADER_SIZE) {
+            flush();
+        }
+        writeBuffer.putLong(r.arrivalNanos - startNanos).putInt(r.data.length);
+        int off = 0;
+        while (off < r.data.length) {
+            if (!writeBuffer.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(r.data.length - off, writeBuffer.remaining());
+            writeBuffer.put(r.data, off, n);
+            off += n;
+        }
+        records.incrementAndGet();
+    }
+
+    private void flush() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.mobile;
+
+import java.util.Locale;
+
+/**
+ * Offset and drift of a remote clock against ours, from NTP-style exchanges.
+ *
+ * Each exchange gives four timestamps: t1 we send the ping, t2 the peer
+ * receives it, t3 the peer replies, t4 we receive the reply (t1/t4 on our
+ * clock, t2/t3 on the peer's). From those
+ *
+ *   rtt    = (t4 - t1) - (t3 - t2)
+ *   offset = ((t2 - t1) + (t3 - t4)) / 2        (peer minus us)
+ *
+ * The offset of one exchange is off by half the difference between the two
+ * legs' delays. Queueing only ever adds delay, so exchanges close to the
+ * smallest RTT in the window are the trustworthy ones: a line is fitted
+ * through the window weighted by that closeness, giving the offset now and
+ * the drift. A fixed asymmetry in the link (say, a slower
+ * uplink) can't be observed from either end and stays in the offset as up to
+ * half of it.
+ *
+ * Clocks are whatever the two ends pass in, but both must keep counting
+ * through suspend: the watch's elapsedRealtimeNanos against the phone's, never
+ * against {@link System#nanoTime()}, which stops while the phone sleeps. A
+ * clock that pauses or jumps steps the offset; the fit would read the step as
+ * drift, so an exchange that no queueing can explain restarts the window from
+ * that exchange instead (see {@link #steps()}). All methods are synchronized.
+ */
+public final class ClockSync {
+
+    /** Exchanges kept; at one ping every 2 s about eight minutes of history. */
+    static final int WINDOW = 256;
+    /** Timestamping noise assumed even on the fastest exchange. */
+    static final double NOISE_NANOS = 250_000;
+    /** Exchanges within this of the best RTT count as "used" in {@link #summary()}. */
+    static final long GOOD_RTT_NANOS = 2_000_000;
+    /**
+     * An exchange further from the fit than both round trips can explain, by
+     * this much, means a clock stepped.
+     */
+    static final long STEP_MARGIN_NANOS = 1_000_000;
+    /** How far the drift estimate may be off when extrapolating the fit, ppm. */
+    static final double STEP_DRIFT_SLACK_PPM = 500;
+    /** Exchanges in the window before the fit is trusted to call a step. */
+    static final int STEP_MIN_EXCHANGES = 32;
+
+    private final String name;
+
+    // ring of exchanges; times relative to the first exchange (base*) so doubles keep precision
+    private final long[] times = new long[WINDOW];     // our clock, midpoint t1..t4
+    private final long[] offsets = new long[WINDOW];
+    private final long[] rtts = new long[WINDOW];
+    private int count = 0;
+    private long baseTime;
+    private long baseOffset;
+
+    // current fit: offset = a + b * (t - fitTime)
+    private boolean synced = false;
+    private double a;
+    private double b;
+    private long fitTime;
+    private long minRtt = Long.MAX_VALUE;
+    private int used = 0;
+
+    private long samples = 0;
+    private long rejected = 0;
+    private long steps = 0;
+    // an exchange the fit can't explain, held until the next one confirms or clears it
+    private boolean suspect = false;
+    private long suspectOffset;
+    private long suspectRtt;
+
+    public ClockSync(String name) {
+        this.name = name;
+    }
+
+    /** Adds one exchange (t1, t4 ours; t2, t3 the peer's). */
+    public synchronized void onSample(long t1, long t2, long t3, long t4) {
+        long rtt = (t4 - t1) - (t3 - t2);
+        if (rtt < 0 || t4 < t1) {
+            rejected++;   // clock stepped, or a garbled reply
+            return;
+        }
+        long offset = ((t2 - t1) + (t3 - t4)) / 2;
+        long mid = t1 + (t4 - t1) / 2;
+        // This exchange is off by at most rtt/2, the fit by about minRtt/2 plus
+        // its drift error times the distance from the window. One that misses by
+        // more is held back; if the next misses too and agrees with it, a clock
+        // stepped and the window starts over from that next one.
+        long fitSlack = (long) (Math.abs(mid - baseTime - fitTime) * STEP_DRIFT_SLACK_PPM / 1e6);
+        if (count >= STEP_MIN_EXCHANGES
+                && Math.abs(offset - offsetNanos(mid)) > (rtt + minRtt) / 2 + fitSlack + STEP_MARGIN_NANOS) {
+            if (!suspect || Math.abs(offset - suspectOffset) > (rtt + suspectRtt) / 2 + STEP_MARGIN_NANOS) {
+                suspect = true;
+                suspectOffset = offset;
+                suspectRtt = rtt;
+                samples++;
+                return;
+            }
+            steps++;
+            count = 0;   // the drift estimate stays: a step doesn't change the rates
+        }
+        suspect = false;
+        if (count == 0) {
+            baseTime = mid;
+            baseOffset = offset;
+        }
+        int i = count % WINDOW;
+        times[i] = mid - baseTime;
+        offsets[i] = offset - baseOffset;
+        rtts[i] = rtt;
+        count++;
+        samples++;
+        refit();
+    }
+
+    private void refit() {
+        int n = Math.min(count, WINDOW);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < n; i++) best = Math.min(best, rtts[i]);
+
+        // Queueing on one leg shifts an exchange's offset by up to half the extra
+        // delay, so weight each exchange by how close it came to the best RTT.
+        double sumW = 0;
+        double sumT = 0;
+        double sumO = 0;
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            double w = weight(rtts[i] - best);
+            sumW += w;
+            sumT += w * times[i];
+            sumO += w * offsets[i];
+            if (rtts[i] - best <= GOOD_RTT_NANOS) k++;
+        }
+        double meanT = sumT / sumW;
+        double meanO = sumO / sumW;
+        double sxx = 0;
+        double sxy = 0;
+        for (int i = 0; i < n; i++) {
+            double w = weight(rtts[i] - best);
+            double dt = times[i] - meanT;
+            sxx += w * dt * dt;
+            sxy += w * dt * (offsets[i] - meanO);
+        }
+        // a slope needs some spread in time first (0.5 s standard deviation)
+        if (n >= 2 && sxx / sumW >= 0.25e18) {
+            b = sxy / sxx;
+        } else if (!synced) {
+            b = 0;
+        }   // else keep the last drift estimate
+        a = meanO;
+        fitTime = (long) meanT;
+        minRtt = best;
+        used = k;
+        synced = true;
+    }
+
+    private static double weight(long excessRttNanos) {
+        double err = excessRttNanos / 2.0;
+        return 1 / (NOISE_NANOS * NOISE_NANOS + err * err);
+    }
+
+    public synchronized boolean isSynced() {
+        return synced;
+    }
+
+    /** Peer clock minus ours at our time {@code localNanos}. */
+    public synchronized long offsetNanos(long localNanos) {
+        if (!synced) return 0;
+        return baseOffset + (long) (a + b * (localNanos - baseTime - fitTime));
+    }
+
+    /** Our time for a peer timestamp, e.g. a watch capture time. */
+    public synchronized long toLocal(long remoteNanos) {
+        if (!synced) return remoteNanos;
+        // solve local = remote - offset(local): start from the offset at the fit's
+        // centre; one more step leaves an error of drift x (that guess's error)
+        long guess = remoteNanos - (baseOffset + (long) a);
+        return remoteNanos - offsetNanos(guess);
+    }
+
+    /** The peer's time at our time {@code localNanos}. */
+    public synchronized long toRemote(long localNanos) {
+        return localNanos + offsetNanos(localNanos);
+    }
+
+    /** Peer clock rate relative to ours, parts per million (positive = peer runs fast). */
+    public synchronized double driftPpm() {
+        return b * 1e6;
+    }
+
+    /** Smallest round trip in the window; the offset is uncertain by up to half of it. */
+    public synchronized long minRttNanos() {
+        return minRtt;
+    }
+
+    public synchronized long samples() {
+        return samples;
+    }
+
+    public synchronized long rejected() {
+        return rejected;
+    }
+
+    /** Times a clock step was detected and the window restarted. */
+    public synchronized long steps() {
+        return steps;
+    }
+
+    public synchronized String summary() {
+        if (!synced) return name + ": not synced";
+        return String.format(Locale.ROOT, "%s: offset=%.3f ms drift=%.1f ppm minRtt=%.1f ms (%d of %d exchanges used, %d steps)",
+                name, offsetNanos(baseTime + fitTime) / 1e6, driftPpm(), minRtt / 1e6, used,
+                Math.min(count, WINDOW), steps);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.mobile;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Backend connection state held in a single atomic word.
+ *
+ *   IDLE ──connect──▶ CONNECTING ──welcome──▶ OPEN
+ *     ▲                  │   │                 │
+ *     │                  │   └──failure──▶ BACKOFF ──(delay)──▶ CONNECTING
+ *     └──closed── CLOSING ◀──closing/close─────┘
+ *
+ * The word packs {@code (generation << 3) | state}. Every connect attempt
+ * bumps the generation, and socket callbacks carry the generation they were
+ * created for, so a late callback from an old socket can never move the
+ * state of a newer one. All transitions are CAS; nothing here blocks.
+ */
+final class ConnectionState {
+
+    static final int IDLE = 0;
+    static final int CONNECTING = 1;
+    static final int OPEN = 2;
+    static final int CLOSING = 3;
+    static final int BACKOFF = 4;
+
+    private static final int STATE_BITS = 3;
+    private static final long STATE_MASK = (1 << STATE_BITS) - 1;
+
+    private final AtomicLong word = new AtomicLong(IDLE);
+    private volatile long backoffUntilNanos = 0L;
+
+    int state() {
+        return (int) (word.get() & STATE_MASK);
+    }
+
+    long generation() {
+        return word.get() >>> STATE_BITS;
+    }
+
+    boolean is(int state) {
+        return state() == state;
+    }
+
+    /**
+     * IDLE, or BACKOFF whose delay has passed, → CONNECTING under a new generation.
+     *
+     * @return the new generation, or -1 if another thread is already connecting,
+     *         the connection is up, or the backoff delay is still running
+     */
+    long beginConnect(long nowNanos) {
+        while (true) {
+            long w = word.get();
+            int s = (int) (w & STATE_MASK);
+            if (s == BACKOFF) {
+                if (nowNanos - backoffUntilNanos < 0) return -1;
+            } else if (s != IDLE) {
+                return -1;
+            }
+            long gen = (w >>> STATE_BITS) + 1;
+            if (word.compareAndSet(w, pack(gen, CONNECTING))) {
+                return gen;
+            }
+        }
+    }
+
+    /** {@code from} → {@code to}, only while {@code gen} is still the current generation. */
+    boolean transition(long gen, int from, int to) {
+        return word.compareAndSet(pack(gen, from), pack(gen, to));
+    }
+
+    /** Any of CONNECTING/OPEN/CLOSING → {@code to} for generation {@code gen}. */
+    boolean end(long gen, int to) {
+        while (true) {
+            long w = word.get();
+            int s = (int) (w & STATE_MASK);
+            if ((w >>> STATE_BITS) != gen || s == IDLE || s == BACKOFF) {
+                return false;
+            }
+            if (word.compareAndSet(w, pack(gen, to))) {
+                return true;
+            }
+        }
+    }
+
+    /** Failure of generation {@code gen}: go to BACKOFF and refuse reconnects for {@code delayNanos}. */
+    boolean backoff(long gen, long nowNanos, long delayNanos) {
+        long until = nowNanos + delayNanos;
+        long w = word.get();
+        // publish the deadline before the state so beginConnect never sees a stale one
+        if ((w >>> STATE_BITS) == gen) {
+            backoffUntilNanos = until;
+        }
+        return end(gen, BACKOFF);
+    }
+
+    static String name(int state) {
+        switch (state) {
+            case IDLE: return "IDLE";
+            case CONNECTING: return "CONNECTING";
+            case OPEN: return "OPEN";
+            case CLOSING: return "CLOSING";
+            case BACKOFF: return "BACKOFF";
+            default: return "?" + state;
+        }
+    }
+
+    private static long pack(long gen, int state) {
+        return (gen << STATE_BITS) | state;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.mobile;
+
+import okio.ByteString;
+
+/**
+ * Packs {@link WireFrame}s back to back into one WebSocket message.
+ *
+ * Every frame carries its own header and payload length, so the server walks
+ * a message frame by frame; nothing else about the protocol changes. A batch
+ * is due when adding a frame would exceed {@code maxBytes}, or once its first
+ * frame has waited {@code maxDelayNanos} (the added latency bound; the caller
+ * arms a timer for {@link #deadlineNanos()}).
+ *
+ * Frames are encoded straight into the batch's pooled slab
+ * ({@link #reserve}), and the retransmit buffer keeps referencing them there,
+ * so a frame is copied once on its way into the batch and once into the
+ * message. A batch that never goes out (socket lost) is simply dropped: its
+ * frames are replayed from the retransmit buffer on resume. Not thread-safe;
+ * {@link BackendStream} guards it with its send lock.
+ */
+final class FrameCoalescer {
+
+    private final BufferPool pool;
+    private final int maxBytes;
+    private final long maxDelayNanos;
+
+    private PooledBuffer slab;   // our reference; null until the first frame
+    private int size = 0;
+    private int frames = 0;
+    private long firstNanos = 0;
+
+    FrameCoalescer(int maxBytes, long maxDelayNanos) {
+        this.maxBytes = maxBytes;
+        this.maxDelayNanos = maxDelayNanos;
+        // a few slabs in flight (sent, waiting for acks) plus the one filling
+        this.pool = new BufferPool(maxBytes, 16);
+    }
+
+    /** True if a frame of {@code frameBytes} doesn't fit: drain the batch first. */
+    boolean wouldOverflow(int frameBytes) {
+        return frames > 0 && size + frameBytes > maxBytes;
+    }
+
+    /** True if a frame of {@code frameBytes} can never share a batch. */
+    boolean tooLarge(int frameBytes) {
+        return frameBytes > maxBytes;
+    }
+
+    /**
+     * Makes room for one frame in the current batch.
+     *
+     * @return offset of the frame in {@link #slab()}
+     */
+    int reserve(int frameBytes, long nowNanos) {
+        if (slab == null) {
+            slab = pool.acquire(maxBytes);
+        }
+        if (frames == 0) {
+            firstNanos = nowNanos;
+        }
+        int at = size;
+        size += frameBytes;
+        frames++;
+        return at;
+    }
+
+    /** Slab holding the current batch. */
+    PooledBuffer slab() {
+        return slab;
+    }
+
+    /** True once the batch is full or its first frame has waited long enough. */
+    boolean isDue(long nowNanos) {
+        return frames > 0 && (size >= maxBytes || nowNanos - firstNanos >= maxDelayNanos);
+    }
+
+    /** When the current batch must go out; {@link Long#MAX_VALUE} if empty. */
+    long deadlineNanos() {
+        return frames == 0 ? Long.MAX_VALUE : firstNanos + maxDelayNanos;
+    }
+
+    boolean isEmpty() {
+        return frames == 0;
+    }
+
+    int frames() {
+        return frames;
+    }
+
+    int bytes() {
+        return size;
+    }
+
+    /** The batch as one message (OkHttp's copy); empties the coalescer. */
+    ByteString drain() {
+        ByteString out = ByteString.of(slab.array(), 0, size);
+        clear();
+        return out;
+    }
+
+    /** Forgets the batch; the slab lives on while retransmit entries reference it. */
+    void clear() {
+        if (slab != null) {
+            slab.release();
+            slab = null;
+        }
+        size = 0;
+        frames = 0;
+    }
+
+    int maxBytes() {
+        return maxBytes;
+    }
+
+    long maxDelayNanos() {
+        return maxDelayNanos;
+    }
+
+    BufferPool pool() {
+        return pool;
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.mobile;
+
+/**
+ * Bounded reordering buffer for /audio_chunk frames.
+ *
+ * MessageClient.sendMessage calls race each other, so frames can arrive out
+ * of order or not at all. In-order frames are released immediately; a frame
+ * that arrives after a gap is held until either the gap fills or it has
+ * waited {@code maxDelayNanos}, at which point the missing sequence numbers
+ * are reported as lost. No frame is ever held longer than the configured
+ * delay (provided {@link #flushExpired(long)} is called at
+ * {@link #nextDeadlineNanos()}).
+ *
+ * A new watch recording starts over at seq 0 and is spotted from its frames
+ * alone, not from /stream_start, which is a separate message that may come
+ * late or not at all: a frame behind the expected seq but captured after
+ * every frame seen so far can't be a late one, so the sender restarted.
+ *
+ * All methods are synchronized; sink callbacks run under the lock on the
+ * calling thread.
+ */
+public class JitterBuffer {
+
+    public interface Sink {
+        void onFrame(AudioFrame frame);
+
+        /** {@code seq} will never arrive; {@code lengthHint} is the last payload size seen. */
+        void onLoss(int seq, int lengthHint);
+    }
+
+    /** Jumps larger than this many windows are treated as a sender restart. */
+    private static final int RESYNC_WINDOWS = 4;
+
+    private final long maxDelayNanos;
+    private final int capacity;
+    private final Sink sink;
+
+    private final AudioFrame[] slots;
+    private final long[] arrivals;
+    private int held = 0;
+
+    private boolean started = false;
+    private int expectedSeq;
+    private int highestSeq;
+    private int lastLength = 0;
+    private long newestCaptureNanos = Long.MIN_VALUE;
+
+    private long received;
+    private long released;
+    private long lost;
+    private long late;
+    private long duplicates;
+    private long resyncs;
+    private int maxReorderDepth;
+
+    public JitterBuffer(long maxDelayNanos, int capacity, Sink sink) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        this.maxDelayNanos = maxDelayNanos;
+        this.capacity = capacity;
+        this.sink = sink;
+        this.slots = new AudioFrame[capacity];
+        this.arrivals = new long[capacity];
+    }
+
+    public synchronized void offer(AudioFrame frame, long nowNanos) {
+        received++;
+        if (!started) {
+            started = true;
+            expectedSeq = frame.seq;
+            highestSeq = frame.seq - 1;
+        }
+
+        int diff = frame.seq - expectedSeq;
+        boolean restarted = diff < 0 && frame.captureNanos > newestCaptureNanos;
+        if (restarted || diff < -capacity || diff >= capacity * RESYNC_WINDOWS) {
+            // watch restarted recording (seq back to 0) or skipped far ahead
+            releaseAll();
+            // a restart begins at 0: wait for whatever of 0..seq the reordering held up
+            expectedSeq = frame.seq >= 0 && frame.seq < capacity ? 0 : frame.seq;
+            highestSeq = expectedSeq - 1;
+            resyncs++;
+            diff = frame.seq - expectedSeq;
+        } else if (diff < 0) {
+            // already released or declared lost
+            late++;
+            return;
+        }
+
+        while (diff >= capacity) {
+            skipOne();
+            diff = frame.seq - expectedSeq;
+        }
+
+        int idx = index(frame.seq);
+        if (slots[idx] != null) {
+            duplicates++;
+            return;
+        }
+
+        if (frame.seq - highestSeq > 0) {
+            highestSeq = frame.seq;
+        } else {
+            maxReorderDepth = Math.max(maxReorderDepth, highestSeq - frame.seq);
+        }
+
+        newestCaptureNanos = Math.max(newestCaptureNanos, frame.captureNanos);
+        slots[idx] = frame;
+        arrivals[idx] = nowNanos;
+        held++;
+        drainContiguous();
+    }
+
+    /** Declares gaps lost for any held frame that has waited {@code maxDelayNanos}. */
+    public synchronized void flushExpired(long nowNanos) {
+        while (held > 0) {
+            int oldestSeq = 0;
+            long oldestArrival = Long.MAX_VALUE;
+            for (int i = 0; i < capacity; i++) {
+                int seq = expectedSeq + i;
+                int idx = index(seq);
+                if (slots[idx] != null && arrivals[idx] < oldestArrival) {
+                    oldestArrival = arrivals[idx];
+                    oldestSeq = seq;
+                }
+            }
+            if (nowNanos - oldestArrival < maxDelayNanos) {
+                return;
+            }
+            while (oldestSeq - expectedSeq >= 0) {
+                skipOne();
+            }
+            drainContiguous();
+        }
+    }
+
+    /** When {@link #flushExpired(long)} next has work to do, or Long.MAX_VALUE if nothing is held. */
+    public synchronized long nextDeadlineNanos() {
+        if (held == 0) return Long.MAX_VALUE;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < capacity; i++) {
+            if (slots[i] != null && arrivals[i] < oldest) {
+                oldest = arrivals[i];
+            }
+        }
+        return oldest + maxDelayNanos;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(received, released, lost, late, duplicates, resyncs, maxReorderDepth, held);
+    }
+
+    // ---- internals ----
+
+    private int index(int seq) {
+        return Math.floorMod(seq, capacity);
+    }
+
+    private void drainContiguous() {
+        while (held > 0) {
+            int idx = index(expectedSeq);
+            if (slots[idx] == null) return;
+            emit(idx);
+            expectedSeq++;
+        }
+    }
+
+    /** Moves past {@code expectedSeq}, releasing it if held or declaring it lost. */
+    private void skipOne() {
+        int idx = index(expectedSeq);
+        if (slots[idx] != null) {
+            emit(idx);
+        } else {
+            lost++;
+            sink.onLoss(expectedSeq, lastLength);
+        }
+        expectedSeq++;
+    }
+
+    private void releaseAll() {
+        while (held > 0) {
+            int idx = index(expectedSeq);
+            if (slots[idx] != null) {
+                emit(idx);
+            }
+            expectedSeq++;
+        }
+    }
+
+    private void emit(int idx) {
+        AudioFrame frame = slots[idx];
+        slots[idx] = null;
+        held--;
+        released++;
+        lastLength = frame.length;
+        sink.onFrame(frame);
+    }
+
+    public static final class Stats {
+        public final long received;
+        public final long released;
+        public final long lost;
+        public final long late;
+        public final long duplicates;
+        public final long resyncs;
+        public final int maxReorderDepth;
+        public final int held;
+
+        Stats(long received, long released, long lost, long late, long duplicates,
+              long resyncs, int maxReorderDepth, int held) {
+            this.received = received;
+            this.released = released;
+            this.lost = lost;
+            this.late = late;
+            this.duplicates = duplicates;
+            this.resyncs = resyncs;
+            this.maxReorderDepth = maxReorderDepth;
+            this.held = held;
+        }
+
+        /** Fraction of sequence numbers that had to be declared lost. */
+        public double lossRate() {
+            long total = released + lost;
+            return total == 0 ? 0.0 : (double) lost / total;
+        }
+    }
+}
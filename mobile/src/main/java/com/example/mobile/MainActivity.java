@@ -10,22 +10,48 @@ import android.graphics.drawable.GradientDrawable;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
+import android.widget.Button;
 import android.widget.TextView;
+import android.widget.Toast;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.Manifest;
 
+import androidx.appcompat.widget.SwitchCompat;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
 public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = "MainActivity";
     private static final int REQ_NOTIFICATIONS = 1001;
+    private static final int HISTORY_PAGE_SIZE = 20;
+    private static final long HISTORY_WINDOW_MS = 24 * 60 * 60_000L;
     private View statusDot;
     private TextView tvStatus;
     private TextView tvDetails;
 
+    // Alert history paging (UI thread only)
+    private TextView tvHistory;
+    private TextView tvPage;
+    private Button btnNewer;
+    private Button btnOlder;
+    private AlertStore alertStore;
+    private int historyPage = 0;
+    private boolean emergencyOnly = false;
+
     private final BroadcastReceiver wsStatusReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
+            if (PhoneStreamService.ACTION_ALERTS_CHANGED.equals(intent.getAction())) {
+                loadHistoryPage();
+                return;
+            }
             if (!PhoneStreamService.ACTION_STATUS.equals(intent.getAction())) {
                 return;
             }
@@ -33,9 +59,12 @@ public class MainActivity extends AppCompatActivity {
             boolean connected = intent.getBooleanExtra(PhoneStreamService.EXTRA_CONNECTED, false);
             String status = intent.getStringExtra(PhoneStreamService.EXTRA_STATUS);
             long bytesSent = intent.getLongExtra(PhoneStreamService.EXTRA_BYTES_SENT, 0L);
+            long framesLost = intent.getLongExtra(PhoneStreamService.EXTRA_FRAMES_LOST, 0L);
+            double lossRate = intent.getDoubleExtra(PhoneStreamService.EXTRA_LOSS_RATE, 0.0);
+            long firstAckMs = intent.getLongExtra(PhoneStreamService.EXTRA_FIRST_ACK_MS, -1L);
 
             Log.d(TAG, "WS status update: " + status + ", connected=" + connected + ", bytes=" + bytesSent);
-            updateUi(connected, status, bytesSent);
+            updateUi(connected, status, bytesSent, framesLost, lossRate, firstAckMs);
         }
     };
 
@@ -48,6 +77,14 @@ public class MainActivity extends AppCompatActivity {
         tvStatus = findViewById(R.id.tvStatus);
         tvDetails = findViewById(R.id.tvDetails);
 
+        SwitchCompat swTrace = findViewById(R.id.swTrace);
+        swTrace.setChecked(TraceRecorder.get().isEnabled());
+        swTrace.setOnCheckedChangeListener((btn, checked) -> TraceRecorder.get().setEnabled(checked));
+        Button btnDumpTrace = findViewById(R.id.btnDumpTrace);
+        btnDumpTrace.setOnClickListener(v -> dumpTrace());
+
+        initHistory();
+
         // Ask for notification permission on Android 13+
         requestNotificationPermissionIfNeeded();
 
@@ -87,6 +124,7 @@ public class MainActivity extends AppCompatActivity {
     protected void onResume() {
         super.onResume();
         IntentFilter filter = new IntentFilter(PhoneStreamService.ACTION_STATUS);
+        filter.addAction(PhoneStreamService.ACTION_ALERTS_CHANGED);
 
         // For Android 13+ / targetSdk >= 33, must specify exported flag
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
@@ -96,6 +134,7 @@ public class MainActivity extends AppCompatActivity {
             // Older behavior
             registerReceiver(wsStatusReceiver, filter);
         }
+        loadHistoryPage();
     }
 
     @Override
@@ -104,20 +143,129 @@ public class MainActivity extends AppCompatActivity {
         unregisterReceiver(wsStatusReceiver);
     }
 
-    private void updateUi(boolean connected, String status, long bytesSent) {
+    private void updateUi(boolean connected, String status, long bytesSent,
+                          long framesLost, double lossRate, long firstAckMs) {
         if (status == null) status = connected ? "Connected" : "Disconnected";
 
         tvStatus.setText(status);
 
+        String loss = String.format("\nFrames lost: %d (%.1f%%)", framesLost, lossRate * 100);
+        if (firstAckMs >= 0) {
+            loss += "\nStream start → first ack: " + firstAckMs + " ms";
+        }
         if (connected) {
             setStatusDotColor(0xFF4CAF50); // green
-            tvDetails.setText("Streaming audio to backend\nTotal bytes sent: " + bytesSent);
+            tvDetails.setText("Streaming audio to backend\nTotal bytes sent: " + bytesSent + loss);
         } else {
             setStatusDotColor(0xFFF44336); // red
-            tvDetails.setText("Not connected to backend\nBytes sent so far: " + bytesSent);
+            tvDetails.setText("Not connected to backend\nBytes sent so far: " + bytesSent + loss);
         }
     }
 
+    // ---- Alert history ----
+
+    private void initHistory() {
+        tvHistory = findViewById(R.id.tvHistory);
+        tvPage = findViewById(R.id.tvPage);
+        btnNewer = findViewById(R.id.btnNewer);
+        btnOlder = findViewById(R.id.btnOlder);
+        SwitchCompat swEmergencyOnly = findViewById(R.id.swEmergencyOnly);
+
+        swEmergencyOnly.setOnCheckedChangeListener((btn, checked) -> {
+            emergencyOnly = checked;
+            historyPage = 0;
+            loadHistoryPage();
+        });
+        btnNewer.setOnClickListener(v -> {
+            historyPage--;
+            loadHistoryPage();
+        });
+        btnOlder.setOnClickListener(v -> {
+            historyPage++;
+            loadHistoryPage();
+        });
+        // opening scans the whole log: off the UI thread, like the page queries
+        File alertsDir = new File(getFilesDir(), "alerts");
+        new Thread(() -> {
+            try {
+                AlertStore store = AlertStore.open(alertsDir);
+                runOnUiThread(() -> {
+                    alertStore = store;
+                    loadHistoryPage();
+                });
+            } catch (IOException e) {
+                Log.e(TAG, "Alert history unavailable", e);
+                runOnUiThread(() -> tvHistory.setText("Alert history unavailable: " + e.getMessage()));
+            }
+        }, "AlertHistory").start();
+    }
+
+    /** Queries the current page off the UI thread (an uncached page reads the log). */
+    private void loadHistoryPage() {
+        if (alertStore == null) return;
+        final AlertStore store = alertStore;
+        final int level = emergencyOnly ? AlertEvent.LEVEL_EMERGENCY : -1;
+        final int requested = historyPage;
+
+        new Thread(() -> {
+            long now = System.currentTimeMillis();
+            long from = now - HISTORY_WINDOW_MS;
+            int total = store.count(from, Long.MAX_VALUE, level);
+            int pages = Math.max(1, (total + HISTORY_PAGE_SIZE - 1) / HISTORY_PAGE_SIZE);
+            int page = Math.max(0, Math.min(requested, pages - 1));
+
+            StringBuilder sb = new StringBuilder();
+            try {
+                List<AlertEvent> alerts = store.query(from, Long.MAX_VALUE, level,
+                        page * HISTORY_PAGE_SIZE, HISTORY_PAGE_SIZE);
+                SimpleDateFormat fmt = new SimpleDateFormat("MMM d HH:mm:ss", Locale.getDefault());
+                for (AlertEvent a : alerts) {
+                    sb.append(fmt.format(new Date(a.timestampMs)))
+                            .append("  ").append(AlertEvent.levelName(a.level).toUpperCase(Locale.ROOT))
+                            .append(a.local ? " (phone)" : "")
+                            .append('\n').append(a.message)
+                            .append('\n').append(a.summary())
+                            .append("\n\n");
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Alert history query failed", e);
+                sb.append("Failed to read history: ").append(e.getMessage());
+            }
+            if (total == 0) sb.append("No alerts in the last 24h");
+            final String text = sb.toString().trim();
+            final String pageText = "Page " + (page + 1) + " / " + pages + "  (" + total + " alerts)";
+
+            runOnUiThread(() -> {
+                historyPage = page;
+                tvHistory.setText(text);
+                tvPage.setText(pageText);
+                btnNewer.setEnabled(page > 0);
+                btnOlder.setEnabled(page < pages - 1);
+            });
+        }, "AlertHistory").start();
+    }
+
+    private void dumpTrace() {
+        File dir = getExternalFilesDir("traces");
+        if (dir == null) dir = new File(getFilesDir(), "traces");
+        File file = new File(dir, "phone-trace-" + System.currentTimeMillis() + ".bin");
+
+        // file I/O off the UI thread
+        new Thread(() -> {
+            String msg;
+            try {
+                int records = TraceRecorder.get().dump(file);
+                msg = "Trace: " + records + " records → " + file.getName();
+                Log.d(TAG, "Trace dumped to " + file.getAbsolutePath());
+            } catch (IOException e) {
+                Log.e(TAG, "Trace dump failed", e);
+                msg = "Trace dump failed: " + e.getMessage();
+            }
+            final String toast = msg;
+            runOnUiThread(() -> Toast.makeText(this, toast, Toast.LENGTH_LONG).show());
+        }, "TraceDump").start();
+    }
+
     private void setStatusDotColor(int color) {
         // Make the dot circular with given color
         GradientDrawable bg = new GradientDrawable();
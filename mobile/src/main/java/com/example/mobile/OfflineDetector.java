@@ -0,0 +1,236 @@
+package com.example.mobile;
+
+import java.util.Arrays;
+
+/**
+ * Minimal on-phone detection for when the backend can't be reached.
+ *
+ * Works on 10 ms blocks of 16 kHz PCM16 and looks for two things:
+ *
+ *  - Alarm tones: a bank of Goertzel filters over 2–4 kHz (where smoke/CO
+ *    alarms beep). A block is "tonal" when one filter holds most of the
+ *    block's energy; an alarm is declared when enough of the last second is
+ *    tonal, which also covers the on/off T3/T4 patterns.
+ *  - Impulses (gunshot/explosion-like): block energy jumping far above a
+ *    slowly tracked background, with a high absolute peak, that has died
+ *    away again 100 ms later (so the onset of a loud steady sound, such as an
+ *    alarm, doesn't count). The share of the burst's energy below ~300 Hz
+ *    separates an explosion's boom from a shot.
+ *
+ * Cost per sample is fixed (the filter bank plus a few multiply-adds), so the
+ * CPU budget is bounded by construction; {@link #processingNanos()} reports
+ * what was actually spent. No allocation after construction except for the
+ * emitted {@link AlertEvent}. Not thread-safe: feed it from one thread.
+ */
+public final class OfflineDetector {
+
+    public interface Listener {
+        void onAlert(AlertEvent alert);
+    }
+
+    static final int SAMPLE_RATE = 16000;
+    static final int BLOCK = 160;                  // 10 ms
+    static final int ALARM_WINDOW_BLOCKS = 100;    // 1 s
+    static final float ALARM_TONAL_RATIO = 0.25f;  // one filter's share of block energy
+    static final float ALARM_MIN_FRACTION = 0.4f;  // tonal share of the window
+    static final double ALARM_MIN_RMS = 300;       // ~ -40 dBFS
+    static final double IMPULSE_RISE = 100;        // 20 dB over background
+    static final int IMPULSE_MIN_PEAK = 8000;      // ~ -12 dBFS
+    static final int IMPULSE_DECAY_BLOCKS = 10;    // must have fallen ...
+    static final double IMPULSE_DECAY = 0.1;       // ... 10 dB by then
+    static final float EXPLOSION_LOW_SHARE = 0.5f;
+    static final long HOLDOFF_MS = 5_000;
+
+    private static final int FIRST_HZ = 2000;
+    private static final int LAST_HZ = 4000;
+    private static final int STEP_HZ = 100;        // = SAMPLE_RATE / BLOCK, half a bin worst case
+
+    private final Listener listener;
+    private final String session;
+
+    // Goertzel bank
+    private final float[] coeff;
+    private final float[] s1;
+    private final float[] s2;
+
+    // current block
+    private int n = 0;
+    private double energy = 0;
+    private double lowEnergy = 0;
+    private float low = 0;          // one-pole low-pass state
+    private int peak = 0;
+    private final float lowAlpha;
+    private long blockTimeMs;
+
+    // alarm window
+    private final boolean[] tonal = new boolean[ALARM_WINDOW_BLOCKS];
+    private int tonalIndex = 0;
+    private int tonalCount = 0;
+
+    // impulse background (mean block energy) and the burst being confirmed
+    private double background = -1;
+    private int pendingBlocks = -1;
+    private double pendingEnergy;
+    private double pendingLowShare;
+    private long pendingTimeMs;
+
+    private long lastAlarmMs = Long.MIN_VALUE / 2;
+    private long lastImpulseMs = Long.MIN_VALUE / 2;
+
+    private long processingNanos = 0;
+    private long samples = 0;
+    private int alerts = 0;
+
+    public OfflineDetector(String session, Listener listener) {
+        this.session = session;
+        this.listener = listener;
+        int filters = (LAST_HZ - FIRST_HZ) / STEP_HZ + 1;
+        coeff = new float[filters];
+        s1 = new float[filters];
+        s2 = new float[filters];
+        for (int f = 0; f < filters; f++) {
+            double w = 2 * Math.PI * (FIRST_HZ + f * STEP_HZ) / SAMPLE_RATE;
+            coeff[f] = (float) (2 * Math.cos(w));
+        }
+        lowAlpha = (float) (1 - Math.exp(-2 * Math.PI * 300 / SAMPLE_RATE));
+    }
+
+    /** Forgets all history, e.g. when detection resumes after a connected stretch. */
+    public void reset() {
+        n = 0;
+        energy = 0;
+        lowEnergy = 0;
+        low = 0;
+        peak = 0;
+        Arrays.fill(s1, 0);
+        Arrays.fill(s2, 0);
+        Arrays.fill(tonal, false);
+        tonalIndex = 0;
+        tonalCount = 0;
+        background = -1;
+        pendingBlocks = -1;
+    }
+
+    /**
+     * Feeds PCM16 little-endian mono samples.
+     *
+     * @param timeMs wall-clock time of the first sample, stamped on alerts
+     */
+    public void process(byte[] pcm, int offset, int length, long timeMs) {
+        long t0 = System.nanoTime();
+        int end = offset + (length & ~1);
+        long sampleIndex = 0;
+        for (int i = offset; i < end; i += 2) {
+            int sample = (short) ((pcm[i] & 0xFF) | (pcm[i + 1] << 8));
+            if (n == 0) {
+                blockTimeMs = timeMs + sampleIndex * 1000 / SAMPLE_RATE;
+            }
+            sampleIndex++;
+
+            float x = sample;
+            for (int f = 0; f < coeff.length; f++) {
+                float s = x + coeff[f] * s1[f] - s2[f];
+                s2[f] = s1[f];
+                s1[f] = s;
+            }
+            energy += x * x;
+            low += lowAlpha * (x - low);
+            lowEnergy += low * low;
+            int a = Math.abs(sample);
+            if (a > peak) peak = a;
+
+            if (++n == BLOCK) {
+                endBlock();
+            }
+        }
+        samples += (end - offset) / 2;
+        processingNanos += System.nanoTime() - t0;
+    }
+
+    private void endBlock() {
+        // strongest Goertzel bin, as a share of the block energy (1.0 for a pure tone on a bin)
+        float best = 0;
+        for (int f = 0; f < coeff.length; f++) {
+            float power = s1[f] * s1[f] + s2[f] * s2[f] - coeff[f] * s1[f] * s2[f];
+            if (power > best) best = power;
+            s1[f] = 0;
+            s2[f] = 0;
+        }
+        double ratio = energy > 0 ? 2 * best / (BLOCK * energy) : 0;
+        double meanSquare = energy / BLOCK;
+        boolean isTonal = ratio >= ALARM_TONAL_RATIO && meanSquare >= ALARM_MIN_RMS * ALARM_MIN_RMS;
+
+        if (tonal[tonalIndex]) tonalCount--;
+        tonal[tonalIndex] = isTonal;
+        if (isTonal) tonalCount++;
+        tonalIndex = (tonalIndex + 1) % ALARM_WINDOW_BLOCKS;
+
+        float tonalFraction = (float) tonalCount / ALARM_WINDOW_BLOCKS;
+        if (tonalFraction >= ALARM_MIN_FRACTION && blockTimeMs - lastAlarmMs >= HOLDOFF_MS) {
+            lastAlarmMs = blockTimeMs;
+            emit(blockTimeMs, AlertEvent.LEVEL_WARNING, new float[]{tonalFraction, 0, 0, 0},
+                    "Alarm tone detected on phone (offline)");
+        }
+
+        if (background < 0) {
+            background = meanSquare;
+        } else if (pendingBlocks >= 0) {
+            // the burst itself doesn't raise the background
+            if (++pendingBlocks == IMPULSE_DECAY_BLOCKS) {
+                pendingBlocks = -1;
+                if (meanSquare <= pendingEnergy * IMPULSE_DECAY) {
+                    onImpulse();
+                } else {
+                    background = meanSquare;   // a sustained sound, not a transient
+                }
+            }
+        } else if (meanSquare > background * IMPULSE_RISE && peak >= IMPULSE_MIN_PEAK) {
+            pendingBlocks = 0;
+            pendingEnergy = meanSquare;
+            pendingLowShare = lowEnergy / energy;
+            pendingTimeMs = blockTimeMs;
+        } else {
+            background += (meanSquare - background) * 0.02;   // ~0.5 s time constant
+        }
+
+        n = 0;
+        energy = 0;
+        lowEnergy = 0;
+        peak = 0;
+    }
+
+    private void onImpulse() {
+        if (pendingTimeMs - lastImpulseMs < HOLDOFF_MS) return;
+        lastImpulseMs = pendingTimeMs;
+        float score = (float) Math.min(1,
+                10 * Math.log10(pendingEnergy / Math.max(background, 1)) / 40);
+        if (pendingLowShare >= EXPLOSION_LOW_SHARE) {
+            emit(pendingTimeMs, AlertEvent.LEVEL_EMERGENCY, new float[]{0, 0, score, 0},
+                    "Explosion-like sound detected on phone (offline)");
+        } else {
+            emit(pendingTimeMs, AlertEvent.LEVEL_EMERGENCY, new float[]{0, score, 0, 0},
+                    "Gunshot-like sound detected on phone (offline)");
+        }
+    }
+
+    private void emit(long timeMs, int level, float[] scores, String message) {
+        alerts++;
+        if (listener != null) {
+            listener.onAlert(new AlertEvent(timeMs, level, scores, session, message, true));
+        }
+    }
+
+    /** Time spent in {@link #process}, for checking the CPU budget. */
+    public long processingNanos() {
+        return processingNanos;
+    }
+
+    /** Audio processed, in ms. */
+    public long processedMs() {
+        return samples * 1000 / SAMPLE_RATE;
+    }
+
+    public int alerts() {
+        return alerts;
+    }
+}
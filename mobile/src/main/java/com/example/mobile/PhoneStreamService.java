@@ -2,6 +2,7 @@ package com.example.mobile;  // ← keep your package name
 
 import android.content.Intent;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -17,16 +18,17 @@ import com.google.android.gms.wearable.WearableListenerService;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import okhttp3.WebSocket;
-import okhttp3.WebSocketListener;
-import okio.ByteString;
 
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
@@ -36,7 +38,12 @@ public class PhoneStreamService extends WearableListenerService {
     private static final String TAG = "PhoneStreamService";
 
     private static final String PATH_AUDIO_CHUNK = "/audio_chunk";
+    private static final String PATH_STREAM_START = "/stream_start";
+    private static final String PATH_STREAM_STOP = "/stream_stop";
     private static final String PATH_ALERT = "/alert";
+    // clock sync with the watch: we send t1, it answers t1, t2, t3 (see ClockSync)
+    private static final String PATH_CLOCK_PING = "/clock_ping";
+    private static final String PATH_CLOCK_PONG = "/clock_pong";
 
     // WebSocket URL: emulator -> host
     private static final String WS_URL = "ws://10.0.2.2:8000/ws";
@@ -46,183 +53,287 @@ public class PhoneStreamService extends WearableListenerService {
     public static final String EXTRA_STATUS = "status";
     public static final String EXTRA_CONNECTED = "connected";
     public static final String EXTRA_BYTES_SENT = "bytes_sent";
+    public static final String EXTRA_FRAMES_LOST = "frames_lost";
+    public static final String EXTRA_LOSS_RATE = "loss_rate";
+    public static final String EXTRA_FIRST_ACK_MS = "first_ack_ms";
+
+    // Broadcast when a new alert has been added to the history
+    public static final String ACTION_ALERTS_CHANGED = "com.example.mobile.ALERTS_CHANGED";
 
     // Phone notification channel for alerts
     private static final String ALERT_CHANNEL_ID = "server_alerts";
 
-    // For debug only (not saving locally)
-    private final Object lock = new Object();
-    private ByteArrayOutputStream currentBuffer = null;
+    // Reordering window for /audio_chunk frames (max added latency)
+    private static final long JITTER_MAX_DELAY_MS = 120;
+    private static final int JITTER_CAPACITY = 64;
+
+    // Optional on-disk archive of everything forwarded (see AudioArchive)
+    private static final boolean ARCHIVE_ENABLED = true;
+    private static final long ARCHIVE_SEGMENT_MS = 5 * 60_000L;
+    private static final long ARCHIVE_MAX_AGE_MS = 24 * 60 * 60_000L;
+    private static final long ARCHIVE_MAX_BYTES = 512L * 1024 * 1024;
+
+    // Un-acked frames kept for replay after a reconnect (~30 s of 16 kHz PCM)
+    private static final long RETRANSMIT_BUFFER_BYTES = 1024 * 1024;
+
+    // Several frames per WebSocket message: flushed at this size or after this
+    // much added latency, whichever comes first (0 ms = one message per frame)
+    private static final int COALESCE_MAX_BYTES = 16 * 1024;
+    private static final long COALESCE_MAX_DELAY_MS = 100;
+
+    // Record incoming /audio_chunk messages for later replay (see CaptureWriter)
+    private static final boolean CAPTURE_ENABLED = false;
+
+    // The backend socket is opened on /stream_start (or the first chunk) and
+    // closed again after this long without frames; sooner once the watch says stop
+    private static final long IDLE_CLOSE_MS = 60_000;
+    private static final long STOP_LINGER_MS = 5_000;
+    private static final long IDLE_CHECK_MS = 1_000;
+
+    // Watch clock pings while the watch streams
+    private static final long CLOCK_PING_INTERVAL_MS = 2_000;
 
     // WebSocket related fields
     private OkHttpClient httpClient;
-    private WebSocket webSocket;
-    private boolean wsConnected = false;
-    private boolean wsConnecting = false;
-    private long totalBytesSent = 0L;
+    private BackendStream backend;
+
+    private AudioArchive archive;
+    private CaptureWriter capture;
+
+    // Alert history; shared with MainActivity, so it stays open for the process lifetime.
+    // Opened off the main thread (it scans the log); alerts until then wait in earlyAlerts.
+    private final List<AlertEvent> earlyAlerts = new ArrayList<>();
+    private AlertStore alertStore;          // guarded by earlyAlerts
+    private boolean alertStoreOpened;       // guarded by earlyAlerts
+
+    // Reorder, archive and forward (everything between the watch and the socket)
+    private AudioPipeline pipeline;
+
+    private ScheduledExecutorService idleTimer;
+    // static so ArchiveUploadJob can hold back while the live stream is up
+    private static volatile boolean watchStreaming = false;
+
+    // The watch's elapsedRealtimeNanos against ours; kept across recordings. Both
+    // ends must use a clock that runs through suspend, or every phone sleep
+    // steps the offset, so the phone side is elapsedRealtimeNanos too.
+    private final ClockSync watchClock = new ClockSync("watch");
+    private volatile String watchNodeId;
 
     @Override
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "PhoneStreamService created");
         initAlertNotificationChannel();
-        initWebSocket();  // initial attempt
-        broadcastStatus("Starting (connecting…)", false);
+        initAlertStore();
+        initArchive();
+        initBackendStream();  // connects on demand
+        initPipeline();
+        initIdleTimer();
+        // closed archive segments go up in bulk while charging on Wi-Fi
+        if (archive != null) ArchiveUploadJob.schedule(this);
+        broadcastStatus("Idle (waiting for watch)", false);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
         Log.d(TAG, "PhoneStreamService destroyed");
+        watchStreaming = false;
 
-        if (webSocket != null) {
-            Log.d(TAG, "Closing WebSocket");
-            webSocket.close(1000, "Service destroyed");
-            webSocket = null;
+        if (idleTimer != null) {
+            idleTimer.shutdownNow();
+            idleTimer = null;
+        }
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+        if (capture != null) {
+            capture.stop();
+            Log.d(TAG, "Capture saved: " + capture.file() + " (" + capture.records()
+                    + " records, " + capture.dropped() + " dropped)");
+            capture = null;
+        }
+        if (backend != null) {
+            backend.close("Service destroyed");
+            backend = null;
         }
         if (httpClient != null) {
             httpClient.dispatcher().executorService().shutdown();
             httpClient = null;
         }
+        if (archive != null) {
+            archive.stop();
+            archive = null;
+        }
 
         broadcastStatus("Service stopped", false);
+        pipeline = null;
     }
 
-    // ---- WebSocket setup ----
+    /** True between the watch's /stream_start and /stream_stop. */
+    static boolean isWatchStreaming() {
+        return watchStreaming;
+    }
 
-    private void initWebSocket() {
-        if (wsConnecting) {
-            Log.d(TAG, "WS: already connecting, skipping initWebSocket()");
-            return;
-        }
-        wsConnecting = true;
+    // ---- Audio pipeline (jitter buffer, archive, backend) ----
 
-        if (httpClient == null) {
-            httpClient = new OkHttpClient();
+    private void initPipeline() {
+        pipeline = new AudioPipeline(backend, archive, JITTER_MAX_DELAY_MS, JITTER_CAPACITY,
+                sent -> {
+                    if (sent) {
+                        broadcastStatus("Streaming to backend", true);
+                    }
+                });
+        // Backend unreachable: fall back to on-phone detection until it is back
+        pipeline.setOfflineDetector(new OfflineDetector("phone-local", this::onLocalAlert));
+        pipeline.setClock(SystemClock::elapsedRealtimeNanos);
+        pipeline.setWatchClock(watchClock);
+        if (CAPTURE_ENABLED) {
+            File file = new File(new File(getFilesDir(), "captures"),
+                    "capture-" + System.currentTimeMillis() + ".wcap");
+            capture = new CaptureWriter(file);
+            try {
+                capture.start(SystemClock.elapsedRealtimeNanos());
+                pipeline.setCapture(capture);
+            } catch (IOException e) {
+                Log.e(TAG, "Capture disabled: " + e.getMessage(), e);
+                capture = null;
+            }
         }
+    }
 
-        Request request = new Request.Builder()
-                .url(WS_URL)
-                .build();
+    // ---- Local archive ----
 
-        Log.d(TAG, "WS: Connecting to " + WS_URL);
+    private void initArchive() {
+        if (!ARCHIVE_ENABLED) return;
+        AudioArchive.Config cfg = new AudioArchive.Config();
+        cfg.segmentMs = ARCHIVE_SEGMENT_MS;
+        cfg.maxAgeMs = ARCHIVE_MAX_AGE_MS;
+        cfg.maxTotalBytes = ARCHIVE_MAX_BYTES;
+        archive = new AudioArchive(new File(getFilesDir(), "archive"), cfg);
+        try {
+            archive.start();
+        } catch (IOException e) {
+            Log.e(TAG, "Archive disabled: " + e.getMessage(), e);
+            archive = null;
+        }
+    }
 
-        webSocket = httpClient.newWebSocket(request, new WebSocketListener() {
-            @Override
-            public void onOpen(@NonNull WebSocket ws, @NonNull Response response) {
-                Log.d(TAG, "✅ WS OPEN");
-                wsConnected = true;
-                wsConnecting = false;
-                broadcastStatus("Connected to backend", true);
-            }
+    // ---- WebSocket setup ----
 
-            @Override
-            public void onMessage(@NonNull WebSocket ws, @NonNull String text) {
-                Log.d(TAG, "📩 WS text from server: " + text);
-
-                try {
-                    JSONObject root = new JSONObject(text);
-                    String type = root.optString("type", "");
-                    if ("alert".equals(type)) {
-                        JSONObject event = root.optJSONObject("event");
-                        if (event != null) {
-                            String level = event.optString("level", "alert").toUpperCase();
-                            String msg   = event.optString("message", "");
-
-                            // Parse rolling scores for nicer summary
-                            JSONObject rolling = event.optJSONObject("rolling");
-                            double alarm    = rolling != null ? rolling.optDouble("alarm", 0)    : 0;
-                            double gunshot  = rolling != null ? rolling.optDouble("gunshot", 0)  : 0;
-                            double explosion= rolling != null ? rolling.optDouble("explosion",0) : 0;
-                            double vocal    = rolling != null ? rolling.optDouble("vocal", 0)    : 0;
-
-                            String summary = String.format(
-                                    "alarm=%.2f | gunshot=%.2f | explosion=%.2f | vocal=%.2f",
-                                    alarm, gunshot, explosion, vocal
-                            );
-
-                            Log.d(TAG, "⚠️ ALERT from server: level=" + level + ", msg=" + msg);
-
-                            showPhoneAlertNotification(level, msg, summary);
-                            forwardAlertToWatch(root);
-                        }
+    private void initBackendStream() {
+        httpClient = new OkHttpClient();
+        backend = new BackendStream(httpClient, WS_URL, RETRANSMIT_BUFFER_BYTES,
+                new BackendStream.Listener() {
+                    @Override
+                    public void onStatus(String status, boolean connected) {
+                        broadcastStatus(status, connected);
                     }
 
+                    @Override
+                    public void onServerMessage(JSONObject root) {
+                        handleServerMessage(root);
+                    }
+                });
+        backend.setCoalescing(COALESCE_MAX_BYTES, COALESCE_MAX_DELAY_MS);
+    }
 
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to parse WS alert JSON", e);
-                }
-            }
+    /** Drops the backend socket once the watch has stopped sending. */
+    private void initIdleTimer() {
+        idleTimer = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "IdleTimer"));
+        idleTimer.scheduleWithFixedDelay(() -> {
+            long limit = watchStreaming ? IDLE_CLOSE_MS : STOP_LINGER_MS;
+            backend.closeIfIdle(TimeUnit.MILLISECONDS.toNanos(limit), System.nanoTime());
+        }, IDLE_CHECK_MS, IDLE_CHECK_MS, TimeUnit.MILLISECONDS);
+        idleTimer.scheduleWithFixedDelay(this::pingWatch,
+                CLOCK_PING_INTERVAL_MS, CLOCK_PING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
 
-            @Override
-            public void onMessage(@NonNull WebSocket ws, @NonNull ByteString bytes) {
-                Log.d(TAG, "📩 WS binary from server, size=" + bytes.size());
-            }
+    private void pingWatch() {
+        String node = watchNodeId;
+        if (!watchStreaming || node == null) return;
+        byte[] ping = ByteBuffer.allocate(8).putLong(SystemClock.elapsedRealtimeNanos()).array();
+        Wearable.getMessageClient(this).sendMessage(node, PATH_CLOCK_PING, ping);
+    }
 
-            @Override
-            public void onClosing(@NonNull WebSocket ws, int code, @NonNull String reason) {
-                Log.d(TAG, "WS CLOSING: code=" + code + ", reason=" + reason);
-                ws.close(1000, null);
-                wsConnected = false;
-                wsConnecting = false;
-                broadcastStatus("Closing connection…", false);
-            }
+    private void onClockPong(byte[] data) {
+        long received = SystemClock.elapsedRealtimeNanos();
+        if (data.length < 24) return;
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        watchClock.onSample(bb.getLong(), bb.getLong(), bb.getLong(), received);
+    }
 
-            @Override
-            public void onClosed(@NonNull WebSocket ws, int code, @NonNull String reason) {
-                Log.d(TAG, "WS CLOSED: code=" + code + ", reason=" + reason);
-                wsConnected = false;
-                wsConnecting = false;
-                broadcastStatus("Closed connection", false);
-            }
+    // ---- Handle messages coming from backend ----
 
-            @Override
-            public void onFailure(@NonNull WebSocket ws, @NonNull Throwable t, Response response) {
-                Log.e(TAG, "❌ WS FAILURE: " + t.getMessage(), t);
-                wsConnected = false;
-                wsConnecting = false;
-                broadcastStatus("Backend connection failed", false);
-            }
-        });
-    }
+    private void handleServerMessage(JSONObject root) {
+        Log.d(TAG, "📩 WS text from server: " + root);
 
-    private void handleWebSocketText(String text) {
         try {
-            JSONObject root = new JSONObject(text);
             String type = root.optString("type", "");
-
             if ("alert".equals(type)) {
-                JSONObject event = root.optJSONObject("event");
-                if (event != null) {
-                    handleAlertFromServer(event);
-                } else {
-                    Log.w(TAG, "WS alert with no 'event' field");
+                AlertEvent alert = AlertEvent.fromServer(root, System.currentTimeMillis());
+                if (alert != null) {
+                    String level = AlertEvent.levelName(alert.level).toUpperCase();
+                    Log.d(TAG, "⚠️ ALERT from server: level=" + level + ", msg=" + alert.message);
+
+                    recordAlert(alert);
+                    showPhoneAlertNotification(level, alert.message, alert.summary());
+                    forwardAlertToWatch(root);
                 }
             } else {
                 Log.d(TAG, "WS message type=" + type + " (ignored)");
             }
-        } catch (JSONException e) {
-            Log.e(TAG, "Failed to parse WS JSON", e);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to parse WS alert JSON", e);
         }
     }
 
-    // ---- Handle alert coming from backend ----
-
-    private void handleAlertFromServer(JSONObject event) {
-        String level = event.optString("level", "unknown");
-        String msg = event.optString("message", "(no message)");
-        String summary = event.optString("summary", "(no summary)");
-
-        Log.d(TAG, "⚠️ ALERT from server: level=" + level + ", msg=" + msg);
-
-        // 1) Update status for MainActivity
-        broadcastStatus("ALERT: " + msg, wsConnected);
+    /** Alert from the offline detector; handled like a server alert, marked local. */
+    private void onLocalAlert(AlertEvent alert) {
+        String level = AlertEvent.levelName(alert.level).toUpperCase();
+        Log.w(TAG, "⚠️ LOCAL ALERT (backend offline): level=" + level + ", msg=" + alert.message);
+        recordAlert(alert);
+        showPhoneAlertNotification(level, alert.message, alert.summary());
+        try {
+            forwardAlertToWatch(alert.toJson());
+        } catch (JSONException e) {
+            Log.e(TAG, "onLocalAlert: JSON error", e);
+        }
+    }
 
-        // 2) Show notification on phone
-        showPhoneAlertNotification(level, msg, summary);
+    /** Queues the alert for the history log (written off this thread) and tells the UI. */
+    private void recordAlert(AlertEvent alert) {
+        synchronized (earlyAlerts) {
+            if (!alertStoreOpened) {
+                earlyAlerts.add(alert);
+            } else if (alertStore != null) {
+                alertStore.append(alert);
+            }
+        }
+        sendBroadcast(new Intent(ACTION_ALERTS_CHANGED));
+    }
 
-        // 3) Forward to watch
-        forwardAlertToWatch(event);
+    private void initAlertStore() {
+        File dir = new File(getFilesDir(), "alerts");
+        new Thread(() -> {
+            AlertStore store = null;
+            try {
+                store = AlertStore.open(dir);
+            } catch (IOException e) {
+                Log.e(TAG, "Alert history disabled: " + e.getMessage(), e);
+            }
+            boolean flushed;
+            synchronized (earlyAlerts) {
+                alertStore = store;
+                alertStoreOpened = true;
+                flushed = store != null && !earlyAlerts.isEmpty();
+                if (store != null) {
+                    for (AlertEvent a : earlyAlerts) store.append(a);
+                }
+                earlyAlerts.clear();
+            }
+            if (flushed) sendBroadcast(new Intent(ACTION_ALERTS_CHANGED));
+        }, "AlertStoreOpen").start();
     }
 
     private void initAlertNotificationChannel() {
@@ -271,13 +382,16 @@ public class PhoneStreamService extends WearableListenerService {
 
 
 
-    private void forwardAlertToWatch(JSONObject event) {
+    /** Sends {@code root} ({"type":"alert","event":{...}}) to the watch as is. */
+    private void forwardAlertToWatch(JSONObject root) {
         try {
-            JSONObject wrapper = new JSONObject();
-            wrapper.put("type", "alert");
-            wrapper.put("event", event);
+            JSONObject event = root.optJSONObject("event");
+            if (event != null && watchClock.isSynced()) {
+                // lets the watch measure the phone → wrist hop on its own clock
+                event.put("watch_sent_ns", watchClock.toRemote(SystemClock.elapsedRealtimeNanos()));
+            }
 
-            final byte[] payload = wrapper.toString().getBytes(StandardCharsets.UTF_8);
+            final byte[] payload = root.toString().getBytes(StandardCharsets.UTF_8);
 
             Wearable.getNodeClient(this).getConnectedNodes()
                     .addOnSuccessListener(nodes -> {
@@ -311,56 +425,34 @@ public class PhoneStreamService extends WearableListenerService {
     @Override
     public void onMessageReceived(@NonNull MessageEvent messageEvent) {
         String path = messageEvent.getPath();
-        Log.d(TAG, "📩 onMessageReceived: path=" + path);
 
-        if (!PATH_AUDIO_CHUNK.equals(path)) {
-            super.onMessageReceived(messageEvent);
+        if (PATH_STREAM_START.equals(path)) {
+            // Prewarm: connect + handshake while the watch is still starting its mic
+            Log.d(TAG, "Watch stream starting, prewarming backend connection");
+            watchStreaming = true;
+            watchNodeId = messageEvent.getSourceNodeId();
+            backend.markStreamStart(System.nanoTime());
+            backend.connect();
             return;
         }
-
-        byte[] data = messageEvent.getData();
-        Log.d(TAG, "📥 Received chunk size = " + data.length + " bytes");
-
-        // 1) Send to backend over WebSocket
-        sendChunkOverWebSocket(data);
-
-        // 2) Debug-only local buffer (no WAV saving)
-        synchronized (lock) {
-            if (currentBuffer == null) {
-                currentBuffer = new ByteArrayOutputStream();
-            }
-
-            try {
-                currentBuffer.write(data);
-            } catch (IOException e) {
-                Log.e(TAG, "❌ Failed to write to buffer", e);
-                return;
-            }
-
-            int size = currentBuffer.size();
-            Log.d(TAG, "Buffer so far (debug only) = " + size + " bytes");
+        if (PATH_STREAM_STOP.equals(path)) {
+            Log.d(TAG, "Watch stream stopped, closing backend after " + STOP_LINGER_MS + " ms idle");
+            watchStreaming = false;
+            Log.d(TAG, watchClock.summary() + String.format(", capture→phone mean %.0f ms, max %.0f ms, backfill %d frames",
+                    pipeline.captureToPhoneMeanMs(), pipeline.captureToPhoneMaxMs(), pipeline.backfillFrames()));
+            return;
         }
-    }
-
-    private void sendChunkOverWebSocket(byte[] data) {
-        if (webSocket == null || !wsConnected) {
-            Log.w(TAG, "⚠ WS not connected (ws=" + webSocket + ", connected=" + wsConnected + ")");
-            // Trigger (re)connect once if needed
-            if (!wsConnecting) {
-                Log.d(TAG, "WS: triggering reconnect...");
-                initWebSocket();
-                broadcastStatus("Reconnecting to backend…", false);
-            }
+        if (PATH_CLOCK_PONG.equals(path)) {
+            onClockPong(messageEvent.getData());
             return;
         }
-
-        ByteString payload = ByteString.of(data, 0, data.length);
-        boolean enqueued = webSocket.send(payload);
-        if (enqueued) {
-            totalBytesSent += data.length;
+        if (!PATH_AUDIO_CHUNK.equals(path)) {
+            Log.d(TAG, "📩 onMessageReceived: path=" + path);
+            super.onMessageReceived(messageEvent);
+            return;
         }
-        Log.d(TAG, "📤 Sent chunk over WS: bytes=" + data.length + ", enqueued=" + enqueued);
-        broadcastStatus(wsConnected ? "Streaming to backend" : "Not connected", wsConnected);
+
+        pipeline.onChunk(messageEvent.getData(), SystemClock.elapsedRealtimeNanos());
     }
 
     // ---- Broadcast status to MainActivity ----
@@ -369,7 +461,15 @@ public class PhoneStreamService extends WearableListenerService {
         Intent intent = new Intent(ACTION_STATUS);
         intent.putExtra(EXTRA_STATUS, status);
         intent.putExtra(EXTRA_CONNECTED, connected);
-        intent.putExtra(EXTRA_BYTES_SENT, totalBytesSent);
+        intent.putExtra(EXTRA_BYTES_SENT, backend != null ? backend.bytesSent() : 0L);
+        if (pipeline != null) {
+            JitterBuffer.Stats stats = pipeline.jitterStats();
+            intent.putExtra(EXTRA_FRAMES_LOST, stats.lost);
+            intent.putExtra(EXTRA_LOSS_RATE, stats.lossRate());
+        }
+        if (backend != null && backend.timeToFirstAckNanos() >= 0) {
+            intent.putExtra(EXTRA_FIRST_ACK_MS, TimeUnit.NANOSECONDS.toMillis(backend.timeToFirstAckNanos()));
+        }
         sendBroadcast(intent);
     }
 }
@@ -0,0 +1,64 @@
+package com.example.mobile;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A byte[] shared by several consumers of the same frame (send batch,
+ * retransmit ring, ...), returned to its {@link BufferPool} when the last one
+ * calls {@link #release()}.
+ *
+ * Starts with one reference, owned by whoever acquired it. Every consumer
+ * that keeps the buffer beyond the call that handed it over must
+ * {@link #retain()} it and release it exactly once when done.
+ */
+public final class PooledBuffer {
+
+    private final byte[] array;
+    private final BufferPool pool;   // null = plain allocation, left to the GC
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    PooledBuffer(byte[] array, BufferPool pool) {
+        this.array = array;
+        this.pool = pool;
+    }
+
+    /** Wraps an array that isn't pooled; release() just drops the reference. */
+    public static PooledBuffer unpooled(byte[] array) {
+        return new PooledBuffer(array, null);
+    }
+
+    public byte[] array() {
+        return array;
+    }
+
+    public int capacity() {
+        return array.length;
+    }
+
+    public PooledBuffer retain() {
+        int r;
+        do {
+            r = refs.get();
+            if (r <= 0) throw new IllegalStateException("retain() after final release");
+        } while (!refs.compareAndSet(r, r + 1));
+        return this;
+    }
+
+    /** @return true if this was the last reference and the buffer went back to the pool */
+    public boolean release() {
+        int r = refs.decrementAndGet();
+        if (r > 0) return false;
+        if (r < 0) throw new IllegalStateException("release() without a reference");
+        if (pool != null) pool.recycle(this);
+        return true;
+    }
+
+    int refCount() {
+        return refs.get();
+    }
+
+    /** Called by the pool when handing the buffer out again. */
+    void reset() {
+        refs.set(1);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.mobile;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encoded wire frames the backend has not acknowledged yet, oldest first.
+ *
+ * Bounded by total bytes: when full, the oldest un-acked frame is evicted
+ * and counted, since a resume can no longer cover it. Not thread-safe;
+ * {@link BackendStream} guards it with its send lock.
+ *
+ * Entries are slices of {@link PooledBuffer}s (several frames may share one
+ * slab when coalescing); the buffer holds a reference per entry, released on
+ * ack or eviction.
+ */
+final class RetransmitBuffer {
+
+    static final class Entry {
+        final int seq;
+        final PooledBuffer buf;
+        final int offset;
+        final int length;
+
+        Entry(int seq, PooledBuffer buf, int offset, int length) {
+            this.seq = seq;
+            this.buf = buf;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final long maxBytes;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private long bytes = 0;
+    private long evicted = 0;
+
+    RetransmitBuffer(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** Adds a frame; takes over one reference to {@code buf}. */
+    void add(int seq, PooledBuffer buf, int offset, int length) {
+        entries.addLast(new Entry(seq, buf, offset, length));
+        bytes += length;
+        while (bytes > maxBytes && entries.size() > 1) {
+            drop(entries.removeFirst());
+            evicted++;
+        }
+    }
+
+    /** Drops everything up to and including {@code seq} (cumulative ack). */
+    void ackUpTo(int seq) {
+        while (!entries.isEmpty() && entries.peekFirst().seq - seq <= 0) {
+            drop(entries.removeFirst());
+        }
+    }
+
+    private void drop(Entry e) {
+        bytes -= e.length;
+        e.buf.release();
+    }
+
+    /** Frames with sequence number {@code >= seq}, in order. */
+    List<Entry> from(int seq) {
+        List<Entry> out = new ArrayList<>();
+        for (Entry e : entries) {
+            if (e.seq - seq >= 0) {
+                out.add(e);
+            }
+        }
+        return out;
+    }
+
+    /** Oldest retained sequence number, or {@code fallback} when empty. */
+    int firstSeq(int fallback) {
+        return entries.isEmpty() ? fallback : entries.peekFirst().seq;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    long evicted() {
+        return evicted;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.mobile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary frame sent to the backend over the WebSocket (protocol 2).
+ *
+ *   [0..3]   stream sequence number (assigned by the phone, per session)
+ *   [4..5]   flags
+ *   [6..7]   reserved
+ *   [8..15]  timestamp of the first sample, ms
+ *   [16..19] payload length
+ *   [20..]   16-bit mono PCM
+ *
+ * The explicit length lets several frames share one WebSocket message.
+ */
+public final class WireFrame {
+
+    public static final int HEADER_SIZE = 20;
+
+    /** Payload is silence inserted for a frame the watch never delivered. */
+    public static final int FLAG_CONCEALED = 1;
+    /**
+     * Audio the watch spooled while the phone was unreachable, sent after the
+     * live stream had already moved on; the timestamp is its capture time.
+     */
+    public static final int FLAG_BACKFILL = 2;
+
+    public final int seq;
+    public final int flags;
+    public final long timestampMs;
+    public final byte[] buf;
+    public final int payloadOffset;
+    public final int payloadLength;
+
+    private WireFrame(int seq, int flags, long timestampMs, byte[] buf, int payloadOffset, int payloadLength) {
+        this.seq = seq;
+        this.flags = flags;
+        this.timestampMs = timestampMs;
+        this.buf = buf;
+        this.payloadOffset = payloadOffset;
+        this.payloadLength = payloadLength;
+    }
+
+    public static byte[] encode(int seq, int flags, long timestampMs, byte[] pcm, int off, int len) {
+        byte[] out = new byte[HEADER_SIZE + len];
+        writeHeader(out, 0, seq, flags, timestampMs, len);
+        System.arraycopy(pcm, off, out, HEADER_SIZE, len);
+        return out;
+    }
+
+    public static void writeHeader(byte[] out, int at, int seq, int flags, long timestampMs, int len) {
+        ByteBuffer.wrap(out, at, HEADER_SIZE)
+                .order(ByteOrder.BIG_ENDIAN)
+                .putInt(seq)
+                .putShort((short) flags)
+                .putShort((short) 0)
+                .putLong(timestampMs)
+                .putInt(len);
+    }
+
+    /** Reads the frame starting at {@code at}; the payload is not copied. */
+    public static WireFrame parse(byte[] buf, int at) {
+        ByteBuffer bb = ByteBuffer.wrap(buf, at, HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        int seq = bb.getInt();
+        int flags = bb.getShort() & 0xFFFF;
+        bb.getShort();
+        long ts = bb.getLong();
+        int len = bb.getInt();
+        if (len < 0 || at + HEADER_SIZE + len > buf.length) {
+            throw new IllegalArgumentException("Truncated wire frame at " + at);
+        }
+        return new WireFrame(seq, flags, ts, buf, at + HEADER_SIZE, len);
+    }
+
+    /** Offset just past this frame, where the next coalesced frame (if any) starts. */
+    public int end() {
+        return payloadOffset + payloadLength;
+    }
+}
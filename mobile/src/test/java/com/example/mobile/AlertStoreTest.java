@@ -0,0 +1,147 @@
+package com.example.mobile;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AlertStoreTest {
+
+    private static final long HOUR = 60 * 60_000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static AlertEvent alert(long ts, int level, String message) {
+        return new AlertEvent(ts, level, new float[]{0.9f, 0.1f, 0f, 0.25f}, "s-1", message, false);
+    }
+
+    @Test
+    public void parsesServerAlertIntoEvent() throws Exception {
+        JSONObject root = new JSONObject("{\"type\":\"alert\",\"event\":{\"level\":\"EMERGENCY\","
+                + "\"message\":\"Alarm\",\"session\":\"abc\",\"server_ts\":1234,"
+                + "\"rolling\":{\"alarm\":0.9,\"gunshot\":0.05,\"explosion\":0,\"vocal\":0.3}}}");
+        AlertEvent e = AlertEvent.fromServer(root, 99);
+        assertNotNull(e);
+        assertEquals(AlertEvent.LEVEL_EMERGENCY, e.level);
+        assertEquals(1234, e.timestampMs);
+        assertEquals("abc", e.session);
+        assertEquals(0.9f, e.scores[0], 1e-6);
+        assertEquals("alarm=0.90 | gunshot=0.05 | explosion=0.00 | vocal=0.30", e.summary());
+
+        assertNull(AlertEvent.fromServer(new JSONObject("{\"type\":\"welcome\"}"), 99));
+    }
+
+    @Test
+    public void queriesAreNewestFirstAndSurviveReopen() throws Exception {
+        File dir = tmp.getRoot();
+        AlertStore store = new AlertStore(dir);
+        for (int i = 0; i < 10; i++) {
+            store.append(alert(1000 + i, i % AlertEvent.LEVEL_COUNT, "m" + i));
+        }
+        // visible before the writer has caught up
+        assertEquals("m9", store.query(0, Long.MAX_VALUE, -1, 0, 1).get(0).message);
+        store.close();
+
+        store = new AlertStore(dir);
+        assertEquals(10, store.size());
+        List<AlertEvent> page = store.query(0, Long.MAX_VALUE, -1, 2, 3);
+        assertEquals(3, page.size());
+        assertEquals("m7", page.get(0).message);
+        assertEquals("m5", page.get(2).message);
+        assertEquals(0.25f, page.get(0).scores[3], 1e-6);
+
+        List<AlertEvent> emergencies = store.query(0, Long.MAX_VALUE, AlertEvent.LEVEL_EMERGENCY, 0, 10);
+        assertEquals(3, emergencies.size());   // 2, 5, 8
+        assertEquals("m8", emergencies.get(0).message);
+        assertEquals(2, store.count(1003, 1009, AlertEvent.LEVEL_EMERGENCY));
+        store.close();
+    }
+
+    @Test
+    public void tornTailIsDroppedOnOpen() throws Exception {
+        File dir = tmp.getRoot();
+        AlertStore store = new AlertStore(dir);
+        store.append(alert(1, AlertEvent.LEVEL_WARNING, "kept"));
+        store.append(alert(2, AlertEvent.LEVEL_WARNING, "torn"));
+        store.close();
+
+        File log = new File(dir, "alerts.log");
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        store = new AlertStore(dir);
+        assertEquals(1, store.size());
+        store.append(alert(3, AlertEvent.LEVEL_WARNING, "after"));
+        store.close();
+
+        store = new AlertStore(dir);
+        List<AlertEvent> all = store.query(0, Long.MAX_VALUE, -1, 0, 10);
+        assertEquals(2, all.size());
+        assertEquals("after", all.get(0).message);
+        assertEquals("kept", all.get(1).message);
+        store.close();
+    }
+
+    @Test
+    public void zeroFilledHoleIsCutOffNotIndexed() throws Exception {
+        File dir = tmp.getRoot();
+        AlertStore store = new AlertStore(dir);
+        store.append(alert(1, AlertEvent.LEVEL_WARNING, "kept"));
+        store.close();
+
+        // what a lost batch followed by a later write used to leave behind
+        File log = new File(dir, "alerts.log");
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.seek(raf.length() + 200);
+            raf.write(AlertStore.encode(alert(3, AlertEvent.LEVEL_WARNING, "beyond")).array());
+        }
+        store = new AlertStore(dir);
+        assertEquals(1, store.size());
+        assertEquals("kept", store.query(0, Long.MAX_VALUE, -1, 0, 10).get(0).message);
+        store.close();
+    }
+
+    @Test
+    public void lastDayOfEmergenciesIsFastOnTensOfThousands() throws Exception {
+        File dir = tmp.getRoot();
+        AlertStore store = new AlertStore(dir);
+        int n = 50_000;
+        long now = 30 * 24 * HOUR;
+        for (int i = 0; i < n; i++) {
+            // a month of alerts, one in ten an emergency
+            long ts = now - (long) (n - i) * (30 * 24 * HOUR / n);
+            int level = i % 10 == 0 ? AlertEvent.LEVEL_EMERGENCY : AlertEvent.LEVEL_WARNING;
+            store.append(alert(ts, level, "alert " + i));
+        }
+        store.close();
+
+        long t0 = System.nanoTime();
+        store = new AlertStore(dir);
+        long openMs = (System.nanoTime() - t0) / 1_000_000;
+        assertEquals(n, store.size());
+
+        t0 = System.nanoTime();
+        int total = store.count(now - 24 * HOUR, now, AlertEvent.LEVEL_EMERGENCY);
+        List<AlertEvent> page = store.query(now - 24 * HOUR, now, AlertEvent.LEVEL_EMERGENCY, 0, 20);
+        long queryMs = (System.nanoTime() - t0) / 1_000_000;
+        store.close();
+
+        System.out.println("AlertStore: open " + n + " records " + openMs + " ms, 24h emergency page "
+                + queryMs + " ms (" + total + " matches)");
+        assertTrue(total > 100 && total < 200);
+        assertEquals(20, page.size());
+        for (AlertEvent e : page) {
+            assertEquals(AlertEvent.LEVEL_EMERGENCY, e.level);
+        }
+        assertTrue(page.get(0).timestampMs > page.get(19).timestampMs);
+        assertTrue("query took " + queryMs + " ms", queryMs < 50);
+        assertTrue("open took " + openMs + " ms", openMs < 2000);
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.mobile;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.InflaterInputStream;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+public class ArchiveUploaderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private MockWebServer server;
+    private StandInUploads stand;
+    private OkHttpClient client;
+    private File archiveDir;
+    private File stateDir;
+
+    /** The backend's /upload contract: per-segment committed offsets, deflated bodies. */
+    private static final class StandInUploads extends Dispatcher {
+        final Map<String, ByteArrayOutputStream> files = new HashMap<>();
+        final List<Long> putOffsets = new ArrayList<>();
+        int requests;
+        int cutPut = -1;   // this PUT (0-based) only half arrives, then the connection drops
+
+        @Override
+        public synchronized MockResponse dispatch(RecordedRequest request) {
+            requests++;
+            HttpUrl url = request.getRequestUrl();
+            ByteArrayOutputStream file = files.computeIfAbsent(url.encodedPath(), k -> new ByteArrayOutputStream());
+            if ("PUT".equals(request.getMethod())) {
+                long offset = Long.parseLong(url.queryParameter("offset"));
+                if (offset != file.size()) {
+                    return reply(409, file.size());
+                }
+                putOffsets.add(offset);
+                assertEquals("deflate", request.getHeader("Content-Encoding"));
+                byte[] part;
+                try (InputStream in = new InflaterInputStream(request.getBody().inputStream())) {
+                    part = readAll(in);
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+                if (putOffsets.size() - 1 == cutPut) {
+                    // like the real server: what was inflated before the cut is kept
+                    file.write(part, 0, part.length / 2);
+                    return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+                }
+                file.write(part, 0, part.length);
+            }
+            return reply(200, file.size());
+        }
+
+        private static byte[] readAll(InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+            return out.toByteArray();
+        }
+
+        private static MockResponse reply(int code, long offset) {
+            return new MockResponse().setResponseCode(code)
+                    .setBody(new JSONObject().put("offset", offset).toString());
+        }
+
+        synchronized byte[] file(String device, File segment) {
+            ByteArrayOutputStream f = files.get("/upload/" + device + "/" + segment.getName());
+            return f != null ? f.toByteArray() : new byte[0];
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        stand = new StandInUploads();
+        server.setDispatcher(stand);
+        server.start();
+        // resumption is ours to do, not OkHttp's
+        client = new OkHttpClient.Builder().retryOnConnectionFailure(false).build();
+        archiveDir = tmp.newFolder("archive");
+        stateDir = tmp.newFolder("upload-state");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.dispatcher().executorService().shutdownNow();
+        server.shutdown();
+    }
+
+    private ArchiveUploader uploader(ArchiveUploader.Config config, boolean live) {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        return new ArchiveUploader(client, server.url("/upload").toString(), "phone-1",
+                archiveDir, stateDir, config, () -> live, mx::getCurrentThreadCpuTime);
+    }
+
+    private static ArchiveUploader.Config fast() {
+        ArchiveUploader.Config cfg = new ArchiveUploader.Config();
+        cfg.partBytes = 256 * 1024;
+        cfg.idleBytesPerSec = 1L << 40;
+        return cfg;
+    }
+
+    /** A segment of {@code seconds} of archived audio: a quiet tone over background noise, as PCM16. */
+    private File segment(long startMs, int seconds) throws IOException {
+        byte[] pcm = new byte[seconds * 1000 * AudioArchive.BYTES_PER_MS];
+        Random rnd = new Random(startMs);
+        for (int i = 0; i < pcm.length / 2; i++) {
+            short s = (short) (800 * Math.sin(2 * Math.PI * 440 * i / 16000.0) + rnd.nextGaussian() * 20);
+            pcm[2 * i] = (byte) s;
+            pcm[2 * i + 1] = (byte) (s >> 8);
+        }
+        File f = new File(archiveDir, "seg-" + startMs + ".pcm");
+        Files.write(f.toPath(), pcm);
+        return f;
+    }
+
+    @Test
+    public void uploadsClosedSegmentsCompressedAndOnlyOnce() throws Exception {
+        File a = segment(1000, 20);
+        File b = segment(301_000, 20);
+        File open = segment(601_000, 5);   // newest: the archive may still be writing it
+        ArchiveUploader up = uploader(fast(), false);
+
+        assertTrue(up.runOnce());
+        assertArrayEquals(Files.readAllBytes(a.toPath()), stand.file("phone-1", a));
+        assertArrayEquals(Files.readAllBytes(b.toPath()), stand.file("phone-1", b));
+        assertEquals(0, stand.file("phone-1", open).length);
+        assertEquals(2, up.segmentsDone());
+        assertEquals(a.length() + b.length(), up.rawBytes());
+        assertEquals(2 * 3, up.parts());   // 640 KB each in 256 KB parts
+        assertTrue("wire " + up.wireBytes(), up.wireBytes() < up.rawBytes());
+
+        int requests = stand.requests;
+        assertTrue(up.runOnce());
+        assertEquals("already uploaded segments are not even asked about", requests, stand.requests);
+    }
+
+    @Test
+    public void resumesAtTheServersOffsetAfterAnInterruption() throws Exception {
+        File a = segment(1000, 20);
+        segment(301_000, 1);
+        // the second part's connection drops halfway through
+        stand.cutPut = 1;
+        assertFalse(uploader(fast(), false).runOnce());
+        assertEquals(384 * 1024, stand.file("phone-1", a).length);
+
+        ArchiveUploader second = uploader(fast(), false);
+        assertTrue(second.runOnce());
+        assertEquals(1, second.resumes());
+        assertEquals(a.length() - 384 * 1024, second.rawBytes());
+        assertArrayEquals(Files.readAllBytes(a.toPath()), stand.file("phone-1", a));
+        assertEquals(Arrays.asList(0L, 256L * 1024, 384L * 1024), stand.putOffsets);
+    }
+
+    @Test
+    public void slowsDownWhileTheLiveStreamIsUp() throws Exception {
+        segment(1000, 10);   // 320 KB
+        segment(301_000, 1);
+        ArchiveUploader.Config cfg = fast();
+        cfg.liveBytesPerSec = 1024 * 1024;
+
+        long t0 = System.nanoTime();
+        assertTrue(uploader(cfg, true).runOnce());
+        double secs = (System.nanoTime() - t0) / 1e9;
+        assertTrue("took " + secs + " s", secs >= 0.25);
+    }
+
+    @Test
+    public void cancelStopsTheUploadAndLaterRunsResume() throws Exception {
+        File a = segment(1000, 60);   // 1.9 MB
+        segment(301_000, 1);
+        ArchiveUploader.Config cfg = fast();
+        cfg.idleBytesPerSec = 1024 * 1024;
+        ArchiveUploader up = uploader(cfg, false);
+
+        Thread worker = new Thread(up::runOnce);
+        worker.start();
+        Thread.sleep(300);
+        up.cancel();
+        worker.join(5000);
+        assertFalse(worker.isAlive());
+        assertTrue(stand.file("phone-1", a).length < a.length());
+
+        assertTrue(uploader(fast(), false).runOnce());
+        assertArrayEquals(Files.readAllBytes(a.toPath()), stand.file("phone-1", a));
+    }
+
+    /** Throughput, compression and phone CPU per hour of audio for a 15-minute backlog. */
+    @Test
+    public void costPerUploadedHourBenchmark() throws Exception {
+        for (int i = 0; i < 3; i++) segment(1000 + i * 300_000L, 300);
+        segment(10_000_000, 1);
+        ArchiveUploader.Config cfg = new ArchiveUploader.Config();
+        cfg.idleBytesPerSec = 1L << 40;
+        ArchiveUploader up = uploader(cfg, false);
+
+        assertTrue(up.runOnce());
+        System.out.println("ArchiveUploader: " + up.summary());
+        assertEquals(3 * 300 * 1000L * AudioArchive.BYTES_PER_MS, up.rawBytes());
+        assertTrue(up.cpuMsPerAudioHour() > 0);
+        // the on-device budget: well under a minute of CPU per hour uploaded
+        assertTrue(up.summary(), up.cpuMsPerAudioHour() < 10_000);
+    }
+}
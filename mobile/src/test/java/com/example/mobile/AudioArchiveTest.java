@@ -0,0 +1,129 @@
+package com.example.mobile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class AudioArchiveTest {
+
+    private static final int FRAME_MS = 20;
+    private static final int FRAME_BYTES = FRAME_MS * AudioArchive.BYTES_PER_MS;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static AudioArchive.Config config() {
+        AudioArchive.Config cfg = new AudioArchive.Config();
+        cfg.segmentMs = 1000;
+        cfg.indexIntervalMs = 100;
+        return cfg;
+    }
+
+    /** Frame whose samples encode their own timestamp, so extracts can be checked. */
+    private static byte[] frame(long t) {
+        byte[] b = new byte[FRAME_BYTES];
+        for (int i = 0; i < b.length; i += 2) {
+            long ms = t + i / AudioArchive.BYTES_PER_MS;
+            b[i] = (byte) (ms >> 8);
+            b[i + 1] = (byte) ms;
+        }
+        return b;
+    }
+
+    private static void writeStream(AudioArchive archive, long from, long to) throws InterruptedException {
+        for (long t = from; t < to; t += FRAME_MS) {
+            while (!archive.offer(t, frame(t), 0, FRAME_BYTES)) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    @Test
+    public void extractsWindowAcrossSegments() throws Exception {
+        File dir = tmp.newFolder("archive");
+        AudioArchive archive = new AudioArchive(dir, config());
+        archive.start();
+        writeStream(archive, 10_000, 13_000);
+        archive.stop();
+
+        assertEquals(3, archive.segmentCount());
+        assertEquals(0, archive.droppedFrames());
+
+        byte[] window = archive.extract(10_950, 11_250);
+        assertEquals(300 * AudioArchive.BYTES_PER_MS, window.length);
+        int firstMs = ((window[0] & 0xFF) << 8) | (window[1] & 0xFF);
+        assertEquals(10_950 & 0xFFFF, firstMs);
+        int lastMs = ((window[window.length - 2] & 0xFF) << 8) | (window[window.length - 1] & 0xFF);
+        assertEquals(11_249 & 0xFFFF, lastMs);
+    }
+
+    @Test
+    public void reloadsIndexAfterRestart() throws Exception {
+        File dir = tmp.newFolder("archive");
+        AudioArchive first = new AudioArchive(dir, config());
+        first.start();
+        writeStream(first, 0, 2_000);
+        first.stop();
+
+        AudioArchive second = new AudioArchive(dir, config());
+        second.start();
+        assertEquals(2, second.segmentCount());
+        assertEquals(100 * AudioArchive.BYTES_PER_MS, second.extract(1_500, 1_600).length);
+        second.stop();
+    }
+
+    @Test
+    public void retentionDropsOldestSegmentsBySize() throws Exception {
+        File dir = tmp.newFolder("archive");
+        AudioArchive.Config cfg = config();
+        cfg.maxTotalBytes = 2 * 1000 * AudioArchive.BYTES_PER_MS;
+        AudioArchive archive = new AudioArchive(dir, cfg);
+        archive.start();
+        writeStream(archive, 0, 6_000);
+        archive.stop();
+
+        assertTrue(archive.segmentCount() <= 3);
+        assertEquals(0, archive.extract(0, 1_000).length);
+        assertEquals(1000 * AudioArchive.BYTES_PER_MS, archive.extract(5_000, 6_000).length);
+        assertEquals(archive.segmentCount() * 2, dir.list().length);
+    }
+
+    @Test
+    public void retentionDropsSegmentsByAge() throws Exception {
+        File dir = tmp.newFolder("archive");
+        AudioArchive.Config cfg = config();
+        cfg.maxAgeMs = 1_500;
+        AudioArchive archive = new AudioArchive(dir, cfg);
+        archive.start();
+        writeStream(archive, 0, 1_000);
+        writeStream(archive, 10_000, 10_100);
+        archive.stop();
+
+        assertEquals(1, archive.segmentCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void stopReturnsAfterTheWriterFailed() throws Exception {
+        File dir = tmp.newFolder("archive");
+        AudioArchive.Config cfg = config();
+        cfg.queueFrames = 16;
+        AudioArchive archive = new AudioArchive(dir, cfg);
+        archive.start();
+        writeStream(archive, 0, 500);
+        // the next segment can't be created: the writer dies on rotation
+        for (File f : dir.listFiles()) assertTrue(f.delete());
+        assertTrue(dir.delete());
+        for (long t = 1_000; !archive.hasFailed(); t += FRAME_MS) {
+            archive.offer(t, frame(t), 0, FRAME_BYTES);
+            Thread.sleep(1);
+        }
+
+        assertFalse("nothing queues behind a dead writer", archive.offer(5_000, frame(5_000), 0, FRAME_BYTES));
+        archive.stop();
+        assertTrue(archive.droppedFrames() > 0);
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.mobile;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+public class AudioPipelineTest {
+
+    private static final long MS = 1_000_000L;
+
+    private MockWebServer server;
+    private StandInBackend stand;
+    private OkHttpClient client;
+    private BackendStream backend;
+    private AudioPipeline pipeline;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        stand = new StandInBackend();
+        server.enqueue(new MockResponse().withWebSocketUpgrade(stand));
+        server.start();
+        client = new OkHttpClient();
+        backend = new BackendStream(client, server.url("/ws").toString(), 1 << 20,
+                new BackendStream.Listener() {
+                    @Override
+                    public void onStatus(String status, boolean connected) {
+                    }
+
+                    @Override
+                    public void onServerMessage(JSONObject root) {
+                    }
+                });
+        pipeline = new AudioPipeline(backend, null, 120, 64, null);
+        backend.connect();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pipeline.stop();
+        backend.close("test done");
+        client.dispatcher().executorService().shutdownNow();
+        server.shutdown();
+    }
+
+    /** 40 ms of PCM (1280 bytes) captured at {@code captureMs}. */
+    private static byte[] chunk(int seq, int flags, long captureMs) {
+        ByteBuffer bb = ByteBuffer.allocate(AudioFrame.HEADER_SIZE + 1280);
+        bb.put(AudioFrame.MAGIC).put(AudioFrame.VERSION).putShort((short) flags)
+                .putInt(seq).putLong(captureMs * MS);
+        return bb.array();
+    }
+
+    private List<byte[]> awaitPayloads(int count) throws InterruptedException {
+        for (int i = 0; i < 300 && stand.receivedCount() < count; i++) {
+            Thread.sleep(10);
+        }
+        return stand.payloads();
+    }
+
+    @Test
+    public void capturedGapIsFilledWithSilenceOfTheRightLength() throws Exception {
+        pipeline.onChunk(chunk(0, 0, 1000));
+        pipeline.onChunk(chunk(1, 0, 1040));
+        // watch overran: 500 ms missing between frame 1 (ends at 1080) and frame 2
+        pipeline.onChunk(chunk(2, AudioFrame.FLAG_GAP, 1580));
+        pipeline.onChunk(chunk(3, 0, 1620));
+
+        List<byte[]> payloads = awaitPayloads(5);
+        assertEquals(5, payloads.size());
+        assertEquals(1280, payloads.get(1).length);
+        assertEquals(500 * 32, payloads.get(2).length);
+        assertEquals(1280, payloads.get(3).length);
+        assertEquals(1, pipeline.gapFrames());
+        assertEquals(500 * 32, pipeline.gapBytes());
+    }
+
+    @Test
+    public void gapFillIsCapped() throws Exception {
+        pipeline.onChunk(chunk(0, 0, 0));
+        pipeline.onChunk(chunk(1, AudioFrame.FLAG_GAP, 60_000));
+
+        List<byte[]> payloads = awaitPayloads(3);
+        assertEquals(3, payloads.size());
+        assertEquals(AudioPipeline.MAX_GAP_FILL_MS * 32, payloads.get(1).length);
+    }
+
+    @Test
+    public void captureLatencyUsesTheWatchClock() {
+        // watch clock is 3 s behind ours; one exchange with a 10 ms round trip
+        ClockSync watch = new ClockSync("watch");
+        long offset = -3_000 * MS;
+        watch.onSample(0, 5 * MS + offset, 5 * MS + offset, 10 * MS);
+        pipeline.setWatchClock(watch);
+
+        // captured at watch time 1000 ms, i.e. our 4000 ms; arrives 60 and 80 ms later
+        pipeline.onChunk(chunk(0, 0, 1000), 4060 * MS);
+        pipeline.onChunk(chunk(1, 0, 1040), 4120 * MS);
+        assertEquals(70, pipeline.captureToPhoneMeanMs(), 0.01);
+        assertEquals(80, pipeline.captureToPhoneMaxMs(), 0.01);
+    }
+
+    @Test
+    public void spooledFramesBypassTheJitterBufferAsBackfill() throws Exception {
+        ClockSync watch = new ClockSync("watch");
+        watch.onSample(0, 0, 0, 0);   // same clock as ours
+        pipeline.setWatchClock(watch);
+        long now = System.nanoTime();
+        long nowMs = now / MS;
+
+        pipeline.onChunk(chunk(0, 0, nowMs - 40), now);
+        // seq 1 was spooled on the watch 30 s ago and arrives now, after seq 2
+        pipeline.onChunk(chunk(2, 0, nowMs), now);
+        pipeline.onChunk(chunk(1, AudioFrame.FLAG_SPOOLED, nowMs - 30_000), now);
+
+        awaitPayloads(4);
+        List<Integer> flags = stand.flags();
+        List<Long> timestamps = stand.timestamps();
+        assertEquals(1, pipeline.backfillFrames());
+        int backfill = flags.indexOf(WireFrame.FLAG_BACKFILL);
+        assertTrue(flags.toString(), backfill >= 0);
+        long ageMs = System.currentTimeMillis() - timestamps.get(backfill);
+        assertTrue("backfill stamped " + ageMs + " ms ago", ageMs >= 30_000 && ageMs < 31_000);
+        // the live stream still conceals the hole the watch never filled in time
+        assertEquals(1, flags.stream().filter(f -> f == WireFrame.FLAG_CONCEALED).count());
+        // and its age stays out of the live capture latency
+        assertEquals(40, pipeline.captureToPhoneMaxMs(), 1);
+    }
+}
@@ -0,0 +1,367 @@
+package com.example.mobile;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+public class BackendStreamTest {
+
+    private MockWebServer server;
+    private StandInBackend backend;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        backend = new StandInBackend();
+        for (int i = 0; i < 20; i++) {
+            server.enqueue(new MockResponse().withWebSocketUpgrade(backend));
+        }
+        server.start();
+        client = new OkHttpClient();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.dispatcher().executorService().shutdownNow();
+        server.shutdown();
+    }
+
+    private BackendStream newStream(long retransmitBytes) {
+        return new BackendStream(client, server.url("/ws").toString(), retransmitBytes,
+                new BackendStream.Listener() {
+                    @Override
+                    public void onStatus(String status, boolean connected) {
+                    }
+
+                    @Override
+                    public void onServerMessage(JSONObject root) {
+                    }
+                });
+    }
+
+    @Test
+    public void resumesAfterDroppedConnectionsWithoutGapsOrDuplicates() throws Exception {
+        backend.dropAfter.add(30);
+        backend.dropAfter.add(70);
+        BackendStream stream = newStream(1 << 20);
+        stream.connect();
+        awaitStreaming(stream);
+
+        byte[] pcm = new byte[640];
+        for (int i = 0; i < 100; i++) {
+            pcm[0] = (byte) i;
+            stream.send(pcm, 0, pcm.length, 0, i);
+            Thread.sleep(2);
+        }
+        // make sure a final reconnect happens if the last drop hit the tail
+        for (int i = 0; i < 200 && backend.receivedCount() < 100; i++) {
+            if (!stream.isStreaming()) stream.connect();
+            Thread.sleep(20);
+        }
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) expected.add(i);
+        assertEquals(expected, backend.received());
+        assertEquals(0, backend.duplicates);
+        assertEquals(0, backend.gaps);
+        assertTrue("expected reconnects, got " + backend.connections, backend.connections >= 3);
+        assertEquals(1, backend.sessions.size());
+        assertEquals(0, stream.unrecoverableFrames());
+    }
+
+    @Test
+    public void concurrentSendersShareOneConnection() throws Exception {
+        BackendStream stream = newStream(1 << 22);
+        int threads = 8;
+        int perThread = 250;
+        Thread[] senders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            senders[t] = new Thread(() -> {
+                byte[] pcm = new byte[64];
+                for (int i = 0; i < perThread; i++) {
+                    stream.send(pcm, 0, pcm.length, 0, i);
+                }
+            });
+        }
+        for (Thread t : senders) t.start();
+        for (Thread t : senders) t.join();
+
+        for (int i = 0; i < 200 && backend.receivedCount() < threads * perThread; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals("racing senders must not double-connect", 1, backend.connections);
+        assertEquals(1, stream.connectAttempts());
+        assertEquals(threads * perThread, backend.receivedCount());
+        assertEquals(0, backend.duplicates);
+        assertEquals(0, backend.gaps);
+        assertEquals(threads * perThread, stream.framesSent() + stream.retransmittedFrames());
+    }
+
+    @Test
+    public void ackedFramesLeaveTheRetransmitBuffer() throws Exception {
+        BackendStream stream = newStream(1 << 20);
+        stream.connect();
+        awaitStreaming(stream);
+
+        byte[] pcm = new byte[100];
+        for (int i = 0; i < 20; i++) {
+            stream.send(pcm, 0, pcm.length, 0, i);
+        }
+        for (int i = 0; i < 100 && stream.lastAckedSeq() < 19; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(19, stream.lastAckedSeq());
+        assertEquals(0, stream.unackedFrames());
+    }
+
+    @Test
+    public void idleSessionClosesAndResumesOnNextSend() throws Exception {
+        BackendStream stream = newStream(1 << 20);
+        stream.markStreamStart(System.nanoTime());
+        stream.connect();   // prewarm before any audio
+        awaitStreaming(stream);
+
+        byte[] pcm = new byte[100];
+        for (int i = 0; i < 7; i++) {
+            stream.send(pcm, 0, pcm.length, 0, i);
+        }
+        for (int i = 0; i < 200 && stream.timeToFirstAckNanos() < 0; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue("first ack not timed", stream.timeToFirstAckNanos() > 0);
+
+        long now = System.nanoTime();
+        assertFalse(stream.closeIfIdle(TimeUnit.SECONDS.toNanos(10), now));
+        assertTrue(stream.closeIfIdle(0, now));
+        for (int i = 0; i < 200 && !"IDLE".equals(stream.stateName()); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals("IDLE", stream.stateName());
+
+        // frames 5 and 6 were never acked; the next send reopens and replays them
+        for (int i = 7; i < 10; i++) {
+            stream.send(pcm, 0, pcm.length, 0, i);
+        }
+        for (int i = 0; i < 200 && backend.receivedCount() < 10; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, backend.connections);
+        assertEquals(10, backend.receivedCount());
+        assertEquals(0, backend.duplicates);
+        assertEquals(0, backend.gaps);
+    }
+
+    @Test
+    public void coalescedFramesKeepOrderInFewerMessages() throws Exception {
+        BackendStream stream = newStream(1 << 20);
+        stream.setCoalescing(5 * (WireFrame.HEADER_SIZE + 100), 50);
+        stream.connect();
+        awaitStreaming(stream);
+        assertEquals(50, backend.lastHello.getJSONObject("coalesce").getLong("max_delay_ms"));
+
+        byte[] pcm = new byte[100];
+        for (int i = 0; i < 23; i++) {
+            stream.send(pcm, 0, pcm.length, 0, i);
+        }
+        // the last 3 frames only go out when the 50 ms deadline passes
+        for (int i = 0; i < 200 && backend.receivedCount() < 23; i++) {
+            Thread.sleep(10);
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 23; i++) expected.add(i);
+        assertEquals(expected, backend.received());
+        assertEquals(5, backend.messages);
+        assertEquals(5, stream.messagesSent());
+        assertEquals(23, stream.framesSent());
+    }
+
+    @Test
+    public void coalescedStreamResumesWithoutGapsOrDuplicates() throws Exception {
+        backend.dropAfter.add(12);
+        BackendStream stream = newStream(1 << 20);
+        stream.setCoalescing(4 * (WireFrame.HEADER_SIZE + 64), 20);
+        stream.connect();
+        awaitStreaming(stream);
+
+        byte[] pcm = new byte[64];
+        for (int i = 0; i < 40; i++) {
+            stream.send(pcm, 0, pcm.length, 0, i);
+            Thread.sleep(2);
+        }
+        for (int i = 0; i < 200 && backend.receivedCount() < 40; i++) {
+            if (!stream.isStreaming()) stream.connect();
+            Thread.sleep(20);
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i++) expected.add(i);
+        assertEquals(expected, backend.received());
+        assertEquals(0, backend.gaps);
+        assertTrue(backend.connections >= 2);
+    }
+
+    /**
+     * One message per 40 ms chunk vs. 16 KB / 100 ms batches, pushed as fast as
+     * the socket takes them. Process CPU covers both the phone side (framing,
+     * masking, writes) and the stand-in server's per-message dispatch.
+     */
+    @Test
+    public void coalescingBenchmark() throws Exception {
+        int frames = 5000;
+        double[] single = pushFrames(frames, 0);
+        tearDown();
+        setUp();
+        double[] batched = pushFrames(frames, 100);
+
+        System.out.printf("Coalescing, %d x 1280 B frames:%n", frames);
+        System.out.printf("  one per message: %5.0f msgs  %8.0f msgs/s  %6.2f MB/s  %6.0f ms CPU%n",
+                single[0], single[0] / single[1], frames * 1280 / single[1] / 1e6, single[2]);
+        System.out.printf("  coalesced:       %5.0f msgs  %8.0f msgs/s  %6.2f MB/s  %6.0f ms CPU%n",
+                batched[0], batched[0] / batched[1], frames * 1280 / batched[1] / 1e6, batched[2]);
+        assertEquals(frames, single[0], 0);
+        assertTrue("expected >= 10 frames per message, got " + frames / batched[0],
+                batched[0] * 10 <= frames);
+    }
+
+    /** @return {messages, seconds, process CPU ms} until the server has every frame */
+    private double[] pushFrames(int frames, long coalesceMs) throws Exception {
+        BackendStream stream = newStream(1 << 24);
+        stream.setCoalescing(16 * 1024, coalesceMs);
+        stream.connect();
+        awaitStreaming(stream);
+
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        byte[] pcm = new byte[1280];
+        long cpu0 = os.getProcessCpuTime();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            stream.send(pcm, 0, pcm.length, 0, i);
+        }
+        for (int i = 0; i < 3000 && backend.receivedCount() < frames; i++) {
+            Thread.sleep(1);
+        }
+        double secs = (System.nanoTime() - t0) / 1e9;
+        double cpuMs = (os.getProcessCpuTime() - cpu0) / 1e6;
+        assertEquals(frames, backend.receivedCount());
+        return new double[]{stream.messagesSent(), secs, cpuMs};
+    }
+
+    @Test
+    public void ackedFramesReturnTheirSlabsToThePool() throws Exception {
+        BackendStream stream = newStream(1 << 20);
+        stream.connect();
+        awaitStreaming(stream);
+        byte[] pcm = new byte[1280];
+        for (int i = 0; i < 2000; i++) {
+            stream.send(pcm, 0, pcm.length, 0, i);
+        }
+        for (int i = 0; i < 3000 && stream.lastAckedSeq() < 1999; i++) {
+            Thread.sleep(1);
+        }
+        assertEquals(1999, stream.lastAckedSeq());
+        BufferPool pool = stream.framePool();
+        assertEquals(2000, pool.acquired());
+        assertTrue("allocated " + pool.allocated() + " slabs for 2000 frames",
+                pool.allocated() < 2000);
+        assertEquals(2000L * 1280 + 2000L * (WireFrame.HEADER_SIZE + 1280), stream.bytesCopied());
+    }
+
+    /**
+     * Bytes allocated on the sending thread per 1280 B frame. Before frames
+     * were pooled this was ~2.7 KB in both modes (encode + batch + OkHttp copy).
+     */
+    @Test
+    public void sendPathAllocationBenchmark() throws Exception {
+        double single = allocationPerFrame(0);
+        tearDown();
+        setUp();
+        double batched = allocationPerFrame(100);
+        System.out.printf("Send path allocation per 1280 B frame: one per message %.0f B, coalesced %.0f B%n",
+                single, batched);
+        // what remains is mostly OkHttp's copy of each message (~1.3 KB per frame)
+        assertTrue("one per message: " + single + " B/frame", single < 2000);
+        assertTrue("coalesced: " + batched + " B/frame", batched < 1700);
+    }
+
+    private double allocationPerFrame(long coalesceMs) throws Exception {
+        BackendStream stream = newStream(1 << 20);
+        stream.setCoalescing(16 * 1024, coalesceMs);
+        stream.connect();
+        awaitStreaming(stream);
+        com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        byte[] pcm = new byte[1280];
+        int warmup = 2000;
+        int frames = 8000;   // stays under OkHttp's 16 MB outgoing queue
+        for (int i = 0; i < warmup; i++) {
+            stream.send(pcm, 0, pcm.length, 0, i);
+        }
+        for (int i = 0; i < 3000 && backend.receivedCount() < warmup; i++) {
+            Thread.sleep(1);
+        }
+        long a0 = mx.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < frames; i++) {
+            stream.send(pcm, 0, pcm.length, 0, i);
+        }
+        long a1 = mx.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 5000 && backend.receivedCount() < warmup + frames; i++) {
+            Thread.sleep(1);
+        }
+        assertEquals(warmup + frames, backend.receivedCount());
+        return (a1 - a0) / (double) frames;
+    }
+
+    @Test
+    public void estimatesTheBackendClockWhileStreaming() throws Exception {
+        backend.clockOffsetNanos = 7_500_000_000L;
+        BackendStream stream = newStream(1 << 20);
+        stream.connect();
+        awaitStreaming(stream);
+        // the first ping goes out with the welcome; no more while idle
+        for (int i = 0; i < 200 && !stream.clockSync().isSynced(); i++) {
+            Thread.sleep(10);
+        }
+        ClockSync clock = stream.clockSync();
+        assertTrue(clock.isSynced());
+        assertEquals(1, backend.pings);
+        long now = System.nanoTime();
+        // loopback: a few ms of round trip at most
+        assertEquals(7_500_000_000L, clock.offsetNanos(now), 5_000_000);
+        assertEquals(now + 7_500_000_000L, clock.toRemote(now), 5_000_000);
+    }
+
+    @Test
+    public void retransmitBufferEvictsOldestWhenFull() {
+        RetransmitBuffer buf = new RetransmitBuffer(300);
+        for (int i = 0; i < 5; i++) {
+            buf.add(i, PooledBuffer.unpooled(new byte[100]), 0, 100);
+        }
+        assertEquals(3, buf.size());
+        assertEquals(2, buf.evicted());
+        assertEquals(2, buf.firstSeq(-1));
+
+        buf.ackUpTo(3);
+        assertEquals(1, buf.size());
+        assertEquals(4, buf.from(0).get(0).seq);
+    }
+
+    private static void awaitStreaming(BackendStream stream) throws InterruptedException {
+        for (int i = 0; i < 200 && !stream.isStreaming(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue("session never became live", stream.isStreaming());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.mobile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+
+    @Test
+    public void releasedSlabIsReused() {
+        BufferPool pool = new BufferPool(1024, 4);
+        PooledBuffer a = pool.acquire(100);
+        assertEquals(1024, a.capacity());
+        assertTrue(a.release());
+        assertEquals(1, pool.pooled());
+
+        PooledBuffer b = pool.acquire(1024);
+        assertSame(a, b);
+        assertEquals(1, b.refCount());
+        assertEquals(2, pool.acquired());
+        assertEquals(1, pool.allocated());
+    }
+
+    @Test
+    public void slabStaysOutUntilLastReferenceIsReleased() {
+        BufferPool pool = new BufferPool(1024, 4);
+        PooledBuffer a = pool.acquire(100).retain().retain();
+        assertFalse(a.release());
+        assertFalse(a.release());
+        assertEquals(0, pool.pooled());
+        assertTrue(a.release());
+        assertEquals(1, pool.pooled());
+    }
+
+    @Test
+    public void misuseIsCaught() {
+        PooledBuffer a = new BufferPool(16, 1).acquire(16);
+        a.release();
+        try {
+            a.release();
+            fail("double release");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            a.retain();
+            fail("retain after release");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void oversizeRequestsAndSurplusSlabsAreLeftToTheGc() {
+        BufferPool pool = new BufferPool(1024, 2);
+        PooledBuffer big = pool.acquire(4096);
+        assertEquals(4096, big.capacity());
+        assertTrue(big.release());
+        assertEquals(0, pool.pooled());
+        assertEquals(1, pool.oversize());
+
+        PooledBuffer[] out = new PooledBuffer[5];
+        for (int i = 0; i < out.length; i++) out[i] = pool.acquire(1);
+        for (PooledBuffer b : out) b.release();
+        assertEquals(2, pool.pooled());
+    }
+
+    @Test
+    public void retransmitEntriesShareOneSlab() {
+        BufferPool pool = new BufferPool(300, 4);
+        PooledBuffer slab = pool.acquire(300);
+        RetransmitBuffer buf = new RetransmitBuffer(1 << 20);
+        for (int i = 0; i < 3; i++) {
+            buf.add(i, slab.retain(), i * 100, 100);
+        }
+        slab.release();   // the batch went out
+        buf.ackUpTo(1);
+        assertEquals(0, pool.pooled());
+        assertEquals(200, buf.from(2).get(0).offset);
+        buf.ackUpTo(2);
+        assertEquals(1, pool.pooled());
+    }
+}
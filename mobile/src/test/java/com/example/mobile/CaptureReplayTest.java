@@ -0,0 +1,155 @@
+package com.example.mobile;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+public class CaptureReplayTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** A watch-framed chunk whose PCM bytes are all {@code seq}. */
+    private static byte[] chunk(int seq, int pcmBytes) {
+        ByteBuffer bb = ByteBuffer.allocate(AudioFrame.HEADER_SIZE + pcmBytes);
+        bb.put(AudioFrame.MAGIC).put(AudioFrame.VERSION).putShort((short) 0)
+                .putInt(seq).putLong(seq * 40 * MS);
+        byte[] out = bb.array();
+        Arrays.fill(out, AudioFrame.HEADER_SIZE, out.length, (byte) seq);
+        return out;
+    }
+
+    /** Writes {@code count} chunks arriving {@code spacingMs} apart, in the given seq order. */
+    private File record(int[] order, int pcmBytes, long spacingMs) throws Exception {
+        File file = new File(tmp.getRoot(), "c.wcap");
+        CaptureWriter writer = new CaptureWriter(file);
+        writer.start();
+        long t = System.nanoTime();
+        for (int i = 0; i < order.length; i++) {
+            assertTrue(writer.append(t + i * spacingMs * MS, chunk(order[i], pcmBytes)));
+        }
+        writer.stop();
+        assertEquals(order.length, writer.records());
+        return file;
+    }
+
+    @Test
+    public void recordsRoundTripAcrossMappingWindows() throws Exception {
+        int[] order = new int[200];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        File file = record(order, 1280, 40);
+
+        // window smaller than a few records forces re-mapping, including mid-record
+        try (CaptureReader reader = new CaptureReader(file, 3000)) {
+            int n = 0;
+            long first = 0;
+            while (reader.next()) {
+                if (n == 0) first = reader.arrivalNanos();
+                assertEquals(n * 40 * MS, reader.arrivalNanos() - first);
+                byte[] data = reader.copyPayload();
+                assertArrayEquals(chunk(n, 1280), data);
+                assertEquals(data.length, reader.payload().remaining());
+                n++;
+            }
+            assertEquals(order.length, n);
+        }
+    }
+
+    @Test
+    public void truncatedCaptureStopsAtLastCompleteRecord() throws Exception {
+        File file = record(new int[]{0, 1, 2}, 100, 1);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+        try (CaptureReader reader = new CaptureReader(file)) {
+            int n = 0;
+            while (reader.next()) n++;
+            assertEquals(2, n);
+        }
+    }
+
+    @Test
+    public void pacesReplayByTheSpeedFactor() throws Exception {
+        int[] order = new int[11];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        File file = record(order, 10, 100);   // 1 s of capture
+
+        long start = System.nanoTime();
+        try (CaptureReader reader = new CaptureReader(file)) {
+            new CaptureReplayer(5).replay(reader, data -> { });
+        }
+        long elapsedMs = (System.nanoTime() - start) / MS;
+        assertTrue("elapsed " + elapsedMs, elapsedMs >= 195 && elapsedMs < 1000);
+
+        List<byte[]> seen = new ArrayList<>();
+        try (CaptureReader reader = new CaptureReader(file)) {
+            CaptureReplayer max = new CaptureReplayer(CaptureReplayer.MAX_SPEED);
+            assertEquals(order.length, max.replay(reader, seen::add));
+            assertEquals(seen.size() * (long) chunk(0, 10).length, max.bytes());
+        }
+    }
+
+    @Test
+    public void replayThroughPipelineReordersIntoBackend() throws Exception {
+        // out-of-order arrival as recorded in the field
+        int[] order = {0, 2, 1, 3, 5, 4, 6, 7, 9, 8};
+        File file = record(order, 640, 5);
+
+        MockWebServer server = new MockWebServer();
+        StandInBackend stand = new StandInBackend();
+        server.enqueue(new MockResponse().withWebSocketUpgrade(stand));
+        server.start();
+        OkHttpClient client = new OkHttpClient();
+        BackendStream backend = new BackendStream(client, server.url("/ws").toString(), 1 << 20,
+                new BackendStream.Listener() {
+                    @Override
+                    public void onStatus(String status, boolean connected) {
+                    }
+
+                    @Override
+                    public void onServerMessage(JSONObject root) {
+                    }
+                });
+        AudioPipeline pipeline = new AudioPipeline(backend, null, 120, 64, null);
+        try {
+            backend.connect();
+            try (CaptureReader reader = new CaptureReader(file)) {
+                new CaptureReplayer(CaptureReplayer.MAX_SPEED).replay(reader, pipeline::onChunk);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (stand.receivedCount() < order.length && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            List<byte[]> payloads = stand.payloads();
+            assertEquals(order.length, payloads.size());
+            for (int i = 0; i < payloads.size(); i++) {
+                assertEquals(640, payloads.get(i).length);
+                assertEquals("payload " + i, (byte) i, payloads.get(i)[0]);
+            }
+            assertEquals(0, pipeline.jitterStats().lost);
+        } finally {
+            pipeline.stop();
+            backend.close("test done");
+            client.dispatcher().executorService().shutdownNow();
+            server.shutdown();
+        }
+    }
+}
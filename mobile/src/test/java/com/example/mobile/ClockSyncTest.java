@@ -0,0 +1,147 @@
+package com.example.mobile;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs ClockSync against a simulated link: a peer clock with an offset and a
+ * drift, and two legs with their own base delay plus random queueing.
+ */
+public class ClockSyncTest {
+
+    private static final long MS = 1_000_000L;
+
+    /** A peer whose clock reads {@code offset + t * (1 + drift)} at our time t. */
+    private static final class SimLink {
+        final long offsetNanos;
+        final double drift;
+        final long upNanos;      // our → peer base delay
+        final long downNanos;    // peer → our base delay
+        final double queueMeanNanos;
+        final Random rnd;
+
+        SimLink(long offsetNanos, double driftPpm, long upNanos, long downNanos,
+                double queueMeanNanos, long seed) {
+            this.offsetNanos = offsetNanos;
+            this.drift = driftPpm / 1e6;
+            this.upNanos = upNanos;
+            this.downNanos = downNanos;
+            this.queueMeanNanos = queueMeanNanos;
+            this.rnd = new Random(seed);
+        }
+
+        long peerClock(long t) {
+            return offsetNanos + t + (long) (t * drift);
+        }
+
+        long queue() {
+            return (long) (-Math.log(1 - rnd.nextDouble()) * queueMeanNanos);
+        }
+
+        /** One exchange started at our time {@code t1}. */
+        void exchange(ClockSync sync, long t1) {
+            long arrive = t1 + upNanos + queue();
+            long reply = arrive + 200_000;   // peer's turnaround
+            long t4 = reply + downNanos + queue();
+            sync.onSample(t1, peerClock(arrive), peerClock(reply), t4);
+        }
+
+        /** Pings every {@code intervalNanos} from {@code start} for {@code count} exchanges. */
+        long run(ClockSync sync, long start, long intervalNanos, int count) {
+            long t = start;
+            for (int i = 0; i < count; i++) {
+                exchange(sync, t);
+                t += intervalNanos;
+            }
+            return t;
+        }
+    }
+
+    @Test
+    public void symmetricLinkConvergesToTheTrueOffsetAndDrift() {
+        // watch elapsedRealtime vs phone nanoTime: unrelated bases, 80 ppm apart
+        SimLink link = new SimLink(-3_217_000 * MS, 80, 6 * MS, 6 * MS, 15 * MS, 1);
+        ClockSync sync = new ClockSync("watch");
+        long start = 5_000_000 * MS;
+        long end = link.run(sync, start, 2_000 * MS, 300);   // 10 minutes
+
+        long trueOffset = link.peerClock(end) - end;
+        assertEquals(trueOffset, sync.offsetNanos(end), 1 * MS);
+        assertEquals(80, sync.driftPpm(), 5);
+        assertTrue(sync.minRttNanos() >= 12 * MS);
+    }
+
+    @Test
+    public void asymmetricLinkIsOffByAtMostHalfTheAsymmetry() {
+        // slow uplink (e.g. Bluetooth send queue) vs fast downlink, fast peer clock
+        SimLink link = new SimLink(42_000 * MS, 150, 14 * MS, 2 * MS, 25 * MS, 2);
+        ClockSync sync = new ClockSync("watch");
+        long end = link.run(sync, 0, 2_000 * MS, 300);
+
+        long trueOffset = link.peerClock(end) - end;
+        long error = sync.offsetNanos(end) - trueOffset;
+        System.out.printf("Asymmetric link (14 ms up / 2 ms down): offset error %.2f ms, drift %.1f ppm (true 150)%n",
+                error / 1e6, sync.driftPpm());
+        // (up - down) / 2 = 6 ms is unobservable; anything beyond that is the filter's fault
+        assertEquals(6 * MS, error, 1 * MS);
+        assertEquals(150, sync.driftPpm(), 10);
+    }
+
+    @Test
+    public void mapsPeerTimestampsIntoOurClock() {
+        SimLink link = new SimLink(-987_654 * MS, -120, 3 * MS, 3 * MS, 5 * MS, 3);
+        ClockSync sync = new ClockSync("watch");
+        long end = link.run(sync, 1_000 * MS, 2_000 * MS, 120);
+
+        // a capture stamped on the peer a moment ago, and a bit into the future
+        for (long t : new long[]{end - 150 * MS, end + 30_000 * MS}) {
+            assertEquals(t, sync.toLocal(link.peerClock(t)), 1 * MS);
+            assertEquals(link.peerClock(t), sync.toRemote(t), 1 * MS);
+        }
+    }
+
+    @Test
+    public void followsARouteChangeOnceTheWindowRollsOver() {
+        ClockSync sync = new ClockSync("backend");
+        SimLink fast = new SimLink(10 * MS, 0, 1 * MS, 1 * MS, 2 * MS, 4);
+        long t = fast.run(sync, 0, 2_000 * MS, 100);
+        // slower path now, and the peer's clock was stepped by 5 ms
+        SimLink slow = new SimLink(15 * MS, 0, 20 * MS, 20 * MS, 2 * MS, 5);
+        t = slow.run(sync, t, 2_000 * MS, ClockSync.WINDOW);
+        assertEquals(15 * MS, sync.offsetNanos(t), 1 * MS);
+    }
+
+    @Test
+    public void localClockPausingRestartsTheFitInsteadOfBendingIt() {
+        // a phone clock that stops in suspend (nanoTime) against the watch's elapsedRealtime
+        SimLink awake = new SimLink(-3_217_000 * MS, 80, 6 * MS, 6 * MS, 15 * MS, 6);
+        ClockSync sync = new ClockSync("watch");
+        long t = awake.run(sync, 0, 2_000 * MS, 150);
+        // 30 s asleep: the watch moved on, our clock didn't, so the offset steps by 30 s
+        SimLink resumed = new SimLink(awake.offsetNanos + 30_000 * MS, 80, 6 * MS, 6 * MS, 15 * MS, 7);
+        t = resumed.run(sync, t, 2_000 * MS, 150);
+
+        assertEquals(1, sync.steps());
+        assertEquals(resumed.peerClock(t) - t, sync.offsetNanos(t), 1 * MS);
+        assertEquals(80, sync.driftPpm(), 5);
+        assertEquals(t - 150 * MS, sync.toLocal(resumed.peerClock(t - 150 * MS)), 1 * MS);
+    }
+
+    @Test
+    public void rejectsImpossibleExchanges() {
+        ClockSync sync = new ClockSync("watch");
+        assertFalse(sync.isSynced());
+        assertEquals(123, sync.toLocal(123));
+        // peer claims it spent longer than the whole round trip
+        sync.onSample(0, 100, 10 * MS, 1 * MS);
+        assertEquals(1, sync.rejected());
+        assertFalse(sync.isSynced());
+
+        sync.onSample(0, 500 * MS + 1 * MS, 500 * MS + 1 * MS, 2 * MS);
+        assertTrue(sync.isSynced());
+        assertEquals(500 * MS, sync.offsetNanos(0));
+    }
+}
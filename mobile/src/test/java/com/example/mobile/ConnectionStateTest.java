@@ -0,0 +1,103 @@
+package com.example.mobile;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Multithreaded stress for the connection state word: many threads race to
+ * connect, open, fail and close, and the bookkeeping must come out exact.
+ */
+public class ConnectionStateTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 200_000;
+
+    @Test
+    public void singleThreadedLifecycle() {
+        ConnectionState s = new ConnectionState();
+        long gen = s.beginConnect(0);
+        assertEquals(1, gen);
+        assertEquals(-1, s.beginConnect(0));
+        assertTrue(s.transition(gen, ConnectionState.CONNECTING, ConnectionState.OPEN));
+        assertTrue(s.backoff(gen, 0, 100));
+        assertEquals(ConnectionState.BACKOFF, s.state());
+
+        assertEquals("still backing off", -1, s.beginConnect(99));
+        long gen2 = s.beginConnect(100);
+        assertEquals(2, gen2);
+
+        // late callbacks from the first socket must not touch the second
+        assertFalse(s.end(gen, ConnectionState.IDLE));
+        assertFalse(s.transition(gen, ConnectionState.CONNECTING, ConnectionState.OPEN));
+        assertEquals(ConnectionState.CONNECTING, s.state());
+
+        assertTrue(s.end(gen2, ConnectionState.CLOSING));
+        assertTrue(s.end(gen2, ConnectionState.IDLE));
+        assertFalse(s.end(gen2, ConnectionState.IDLE));
+    }
+
+    @Test
+    public void noLostTransitionsUnderContention() throws Exception {
+        ConnectionState s = new ConnectionState();
+        LongAdder connects = new LongAdder();
+        LongAdder opens = new LongAdder();
+        LongAdder ends = new LongAdder();
+        LongAdder staleAccepted = new LongAdder();
+        AtomicLong maxGenSeen = new AtomicLong();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < ITERATIONS; i++) {
+                    long gen = s.beginConnect(0);
+                    if (gen > 0) {
+                        connects.increment();
+                        maxGenSeen.accumulateAndGet(gen, Math::max);
+                        // only the winner owns gen; nobody else can open it
+                        if (s.transition(gen, ConnectionState.CONNECTING, ConnectionState.OPEN)) {
+                            opens.increment();
+                        }
+                        // alternate between clean close and failure
+                        boolean ended = (i + id) % 2 == 0
+                                ? s.end(gen, ConnectionState.IDLE)
+                                : s.backoff(gen, 0, 0);
+                        if (ended) ends.increment();
+                    } else {
+                        // a stale callback for a generation that is long gone
+                        long old = s.generation() - 1;
+                        if (old > 0 && s.end(old, ConnectionState.IDLE)) {
+                            staleAccepted.increment();
+                        }
+                    }
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertEquals("every successful connect bumped the generation exactly once",
+                connects.sum(), s.generation());
+        assertEquals(connects.sum(), maxGenSeen.get());
+        assertEquals("winner always opened its own generation", connects.sum(), opens.sum());
+        assertEquals("winner always ended its own generation", connects.sum(), ends.sum());
+        assertEquals(0, staleAccepted.sum());
+        int end = s.state();
+        assertTrue(end == ConnectionState.IDLE || end == ConnectionState.BACKOFF);
+    }
+}
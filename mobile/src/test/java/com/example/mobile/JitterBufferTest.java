@@ -0,0 +1,177 @@
+package com.example.mobile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JitterBufferTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final List<Integer> out = new ArrayList<>();
+    private JitterBuffer jb;
+
+    @Before
+    public void setUp() {
+        jb = new JitterBuffer(100 * MS, 16, new JitterBuffer.Sink() {
+            @Override
+            public void onFrame(AudioFrame frame) {
+                out.add(frame.seq);
+            }
+
+            @Override
+            public void onLoss(int seq, int lengthHint) {
+                out.add(-seq - 1000);
+            }
+        });
+    }
+
+    private static AudioFrame frame(int seq) {
+        return frame(seq, 0L);
+    }
+
+    private static AudioFrame frame(int seq, long captureNanos) {
+        return new AudioFrame(seq, 0, captureNanos, new byte[4], 0, 4);
+    }
+
+    @Test
+    public void inOrderFramesPassThroughImmediately() {
+        for (int i = 0; i < 5; i++) {
+            jb.offer(frame(i), 0);
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), out);
+        assertEquals(Long.MAX_VALUE, jb.nextDeadlineNanos());
+    }
+
+    @Test
+    public void reordersWithinWindow() {
+        jb.offer(frame(0), 0);
+        jb.offer(frame(2), 1 * MS);
+        jb.offer(frame(3), 2 * MS);
+        assertEquals(Arrays.asList(0), out);
+
+        jb.offer(frame(1), 5 * MS);
+        assertEquals(Arrays.asList(0, 1, 2, 3), out);
+        assertEquals(2, jb.stats().maxReorderDepth);
+        assertEquals(0, jb.stats().lost);
+    }
+
+    @Test
+    public void declaresLossOnlyAfterMaxDelay() {
+        jb.offer(frame(0), 0);
+        jb.offer(frame(2), 10 * MS);
+
+        jb.flushExpired(109 * MS);
+        assertEquals(Arrays.asList(0), out);
+        assertEquals(110 * MS, jb.nextDeadlineNanos());
+
+        jb.flushExpired(110 * MS);
+        assertEquals(Arrays.asList(0, -1001, 2), out);
+
+        // the missing frame finally shows up: too late
+        jb.offer(frame(1), 120 * MS);
+        assertEquals(Arrays.asList(0, -1001, 2), out);
+        JitterBuffer.Stats stats = jb.stats();
+        assertEquals(1, stats.lost);
+        assertEquals(1, stats.late);
+        assertEquals(1.0 / 3, stats.lossRate(), 1e-9);
+    }
+
+    @Test
+    public void dropsDuplicates() {
+        jb.offer(frame(0), 0);
+        jb.offer(frame(2), 0);
+        jb.offer(frame(2), 0);
+        jb.offer(frame(0), 0);
+        assertEquals(1, jb.stats().duplicates);
+        assertEquals(1, jb.stats().late);
+    }
+
+    @Test
+    public void forcesOutOldestWhenWindowOverflows() {
+        jb.offer(frame(0), 0);
+        // seq 1 never arrives; 2..17 fill the window and 18 pushes 1 out
+        for (int i = 2; i <= 18; i++) {
+            jb.offer(frame(i), 0);
+        }
+        assertEquals(Integer.valueOf(-1001), out.get(1));
+        assertEquals(18, out.size() - 1);
+        assertEquals(0, jb.stats().held);
+    }
+
+    @Test
+    public void resyncsWhenSenderRestarts() {
+        for (int i = 500; i < 503; i++) {
+            jb.offer(frame(i), 0);
+        }
+        jb.offer(frame(0), 0);
+        jb.offer(frame(1), 0);
+        assertEquals(Arrays.asList(500, 501, 502, 0, 1), out);
+        assertEquals(1, jb.stats().resyncs);
+    }
+
+    @Test
+    public void restartIsSpottedWithoutStreamStart() {
+        // a short recording, then a new one whose /stream_start never arrived
+        for (int i = 0; i < 10; i++) {
+            jb.offer(frame(i, 1_000 * MS + i * 40 * MS), 0);
+        }
+        for (int i = 0; i < 3; i++) {
+            jb.offer(frame(i, 9_000 * MS + i * 40 * MS), 0);
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 0, 1, 2), out);
+        assertEquals(1, jb.stats().resyncs);
+        assertEquals(0, jb.stats().late);
+
+        // while a frame of the new recording that really is late is still dropped
+        jb.offer(frame(1, 9_040 * MS), 0);
+        assertEquals(1, jb.stats().late);
+    }
+
+    @Test
+    public void reorderedStartOfANewRecordingIsHeldNotDropped() {
+        for (int i = 0; i < 10; i++) {
+            jb.offer(frame(i, 1_000 * MS + i * 40 * MS), 0);
+        }
+        // the new recording's seq 0 is overtaken by 1 and 2 (and /stream_start
+        // only turns up afterwards; it no longer touches the buffer)
+        jb.offer(frame(1, 9_040 * MS), 1 * MS);
+        jb.offer(frame(2, 9_080 * MS), 2 * MS);
+        assertEquals(2, jb.stats().held);
+        jb.offer(frame(0, 9_000 * MS), 3 * MS);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 0, 1, 2), out);
+        assertEquals(0, jb.stats().lost);
+        assertEquals(0, jb.stats().late);
+    }
+
+    @Test
+    public void lateFrameOfTheSameRecordingIsNotARestart() {
+        jb.offer(frame(0, 1_000 * MS), 0);
+        jb.offer(frame(2, 1_080 * MS), 0);
+        jb.flushExpired(100 * MS);
+        jb.offer(frame(1, 1_040 * MS), 120 * MS);
+        assertEquals(Arrays.asList(0, -1001, 2), out);
+        assertEquals(1, jb.stats().late);
+        assertEquals(0, jb.stats().resyncs);
+    }
+
+    @Test
+    public void parsesFramedChunksAndRejectsLegacyPcm() {
+        byte[] framed = new byte[AudioFrame.HEADER_SIZE + 6];
+        framed[0] = AudioFrame.MAGIC;
+        framed[1] = AudioFrame.VERSION;
+        framed[7] = 42;
+        AudioFrame f = AudioFrame.parse(framed);
+        assertNotNull(f);
+        assertEquals(42, f.seq);
+        assertEquals(AudioFrame.HEADER_SIZE, f.offset);
+        assertEquals(6, f.length);
+
+        assertNull(AudioFrame.parse(new byte[640]));
+    }
+}
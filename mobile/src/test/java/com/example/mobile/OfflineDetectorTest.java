@@ -0,0 +1,130 @@
+package com.example.mobile;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fixtures (test resources, 16 kHz mono PCM16, 3 s each) are synthetic: a T3
+ * smoke alarm at 3150 Hz, a bright decaying burst, a low-frequency boom, and
+ * voiced speech-like babble over background noise.
+ */
+public class OfflineDetectorTest {
+
+    /** PCM16 samples of a fixture WAV (the bytes after the "data" chunk header). */
+    static byte[] loadWav(String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = OfflineDetectorTest.class.getResourceAsStream("/fixtures/" + name)) {
+            assertNotNull("missing fixture " + name, in);
+            byte[] buf = new byte[8192];
+            int r;
+            while ((r = in.read(buf)) > 0) out.write(buf, 0, r);
+        }
+        ByteBuffer bb = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        bb.position(12);   // RIFF, size, WAVE
+        while (bb.remaining() >= 8) {
+            int id = bb.getInt();
+            int size = bb.getInt();
+            if (id == 0x61746164) {   // "data"
+                byte[] pcm = new byte[Math.min(size, bb.remaining())];
+                bb.get(pcm);
+                return pcm;
+            }
+            bb.position(bb.position() + size);
+        }
+        throw new IOException("no data chunk in " + name);
+    }
+
+    /** Runs the detector over {@code pcm} in 40 ms chunks, as the phone receives it. */
+    private static List<AlertEvent> detect(byte[] pcm) {
+        List<AlertEvent> alerts = new ArrayList<>();
+        OfflineDetector detector = new OfflineDetector("test", alerts::add);
+        int chunk = 1280;
+        for (int off = 0; off < pcm.length; off += chunk) {
+            detector.process(pcm, off, Math.min(chunk, pcm.length - off), off / 32);
+        }
+        return alerts;
+    }
+
+    @Test
+    public void smokeAlarmRaisesOneLocalWarning() throws Exception {
+        List<AlertEvent> alerts = detect(loadWav("smoke_alarm_t3.wav"));
+        assertEquals(alerts.toString(), 1, alerts.size());
+        AlertEvent a = alerts.get(0);
+        assertTrue(a.local);
+        assertEquals(AlertEvent.LEVEL_WARNING, a.level);
+        assertTrue(a.scores[0] >= OfflineDetector.ALARM_MIN_FRACTION);
+    }
+
+    @Test
+    public void gunshotIsAnImpulseEmergency() throws Exception {
+        List<AlertEvent> alerts = detect(loadWav("gunshot.wav"));
+        assertEquals(alerts.toString(), 1, alerts.size());
+        AlertEvent a = alerts.get(0);
+        assertEquals(AlertEvent.LEVEL_EMERGENCY, a.level);
+        assertTrue(a.scores[1] > 0);
+        assertEquals(0f, a.scores[2], 0);
+        assertEquals(1000, a.timestampMs, 20);
+    }
+
+    @Test
+    public void explosionIsToldApartByItsLowFrequencies() throws Exception {
+        List<AlertEvent> alerts = detect(loadWav("explosion.wav"));
+        assertEquals(alerts.toString(), 1, alerts.size());
+        assertEquals(AlertEvent.LEVEL_EMERGENCY, alerts.get(0).level);
+        assertTrue(alerts.get(0).scores[2] > 0);
+    }
+
+    @Test
+    public void speechDoesNotAlert() throws Exception {
+        assertEquals(0, detect(loadWav("speech.wav")).size());
+    }
+
+    @Test
+    public void loudSteadyOnsetIsNotAnImpulse() {
+        // 1 s of quiet, then 2 s of loud broadband noise that keeps going
+        byte[] pcm = new byte[3 * OfflineDetector.SAMPLE_RATE * 2];
+        Random rnd = new Random(1);
+        for (int i = 0; i < pcm.length / 2; i++) {
+            double amp = i < OfflineDetector.SAMPLE_RATE ? 50 : 12000;
+            short s = (short) Math.max(-32768, Math.min(32767, rnd.nextGaussian() * amp));
+            pcm[2 * i] = (byte) s;
+            pcm[2 * i + 1] = (byte) (s >> 8);
+        }
+        assertEquals(0, detect(pcm).size());
+    }
+
+    @Test
+    public void keepsWellAheadOfRealTime() throws Exception {
+        byte[][] fixtures = {
+                loadWav("smoke_alarm_t3.wav"), loadWav("gunshot.wav"),
+                loadWav("explosion.wav"), loadWav("speech.wav")};
+        OfflineDetector detector = new OfflineDetector("bench", null);
+        // warm up, then 10 minutes of audio
+        for (int round = 0; round < 250; round++) {
+            byte[] pcm = fixtures[round % fixtures.length];
+            for (int off = 0; off < pcm.length; off += 1280) {
+                detector.process(pcm, off, Math.min(1280, pcm.length - off), 0);
+            }
+            if (round == 49) {
+                detector = new OfflineDetector("bench", null);
+            }
+        }
+        double audioSec = detector.processedMs() / 1000.0;
+        double cpuSec = detector.processingNanos() / 1e9;
+        double load = cpuSec / audioSec;
+        System.out.printf("OfflineDetector: %.0f s of audio in %.3f s CPU (%.2f%% of one core, %.0fx real time)%n",
+                audioSec, cpuSec, load * 100, 1 / load);
+        // budget: 5% of a core on this machine leaves room for a slow phone
+        assertTrue("CPU load " + load, load < 0.05);
+    }
+}
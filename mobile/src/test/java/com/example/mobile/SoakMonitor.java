@@ -0,0 +1,136 @@
+package com.example.mobile;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * JVM-wide gauges for {@link SoakTest}: heap, bytes allocated by all threads,
+ * GC pauses and live threads.
+ *
+ * Allocation is summed per thread from the ThreadMXBean counters, so a thread
+ * that dies between two {@link #allocatedBytes()} calls loses only what it
+ * allocated since the last one. Pauses come from GC notifications; concurrent
+ * cycles (not pauses) and the collections {@link #settledHeapBytes()} forces
+ * are left out.
+ */
+final class SoakMonitor implements AutoCloseable {
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final Map<Long, Long> allocatedByThread = new HashMap<>();
+    private long allocated = 0;
+
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener gcListener = this::onGc;
+    private long pauses = 0;
+    private long pauseTotalMs = 0;
+    private long pauseMaxMs = 0;
+
+    SoakMonitor() {
+        // what threads alive now allocated before we started doesn't count
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) allocatedByThread.put(ids[i], bytes[i]);
+        }
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) gc;
+                emitter.addNotificationListener(gcListener, null, null);
+                emitters.add(emitter);
+            }
+        }
+    }
+
+    private synchronized void onGc(Notification n, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) return;
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+        if ("System.gc()".equals(info.getGcCause())
+                || info.getGcAction().toLowerCase().contains("concurrent")
+                || info.getGcName().contains("Concurrent")) {
+            return;
+        }
+        long ms = info.getGcInfo().getDuration();
+        pauses++;
+        pauseTotalMs += ms;
+        pauseMaxMs = Math.max(pauseMaxMs, ms);
+    }
+
+    /** Bytes allocated by every thread since this monitor started (approximately, see above). */
+    synchronized long allocatedBytes() {
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] < 0) continue;   // thread already gone
+            Long before = allocatedByThread.put(ids[i], bytes[i]);
+            allocated += bytes[i] - (before != null ? before : 0);   // new thread: all of it
+        }
+        return allocated;
+    }
+
+    /** Heap in use after full collections, i.e. what is actually retained. */
+    long settledHeapBytes() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    long heapUsedBytes() {
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    int threadCount() {
+        return threads.getThreadCount();
+    }
+
+    int peakThreadCount() {
+        return threads.getPeakThreadCount();
+    }
+
+    synchronized long pauses() {
+        return pauses;
+    }
+
+    synchronized long pauseMaxMs() {
+        return pauseMaxMs;
+    }
+
+    synchronized long pauseTotalMs() {
+        return pauseTotalMs;
+    }
+
+    /** Starts the pause statistics over, e.g. after warm-up. */
+    synchronized void resetPauses() {
+        pauses = 0;
+        pauseTotalMs = 0;
+        pauseMaxMs = 0;
+    }
+
+    @Override
+    public void close() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(gcListener);
+            } catch (ListenerNotFoundException ignored) {
+            }
+        }
+    }
+}
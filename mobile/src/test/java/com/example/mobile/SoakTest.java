@@ -0,0 +1,239 @@
+package com.example.mobile;
+
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hours of watch audio through the phone pipeline (jitter buffer, archive,
+ * offline detector, coalescing BackendStream) against StandInBackend, at
+ * {@code soak.speed} times real time. The stand-in drops the socket every
+ * {@code soak.churnMinutes}, and the simulated watch reorders, loses and
+ * gaps frames now and then.
+ *
+ * After a warm-up, {@link SoakMonitor} tracks retained heap, allocation per
+ * second of audio, GC pauses and threads; the run fails if any ends up over
+ * its budget. Too slow for every build, so it only runs when asked:
+ *
+ *   ./gradlew :mobile:testDebugUnitTest --tests '*SoakTest' -Dsoak.minutes=240
+ *
+ * Every setting below is a {@code -Dsoak.NAME} property.
+ */
+public class SoakTest {
+
+    private static final int FRAME_MS = 40;
+    private static final int FRAME_BYTES = FRAME_MS * AudioArchive.BYTES_PER_MS;
+    private static final long MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static long prop(String name, long def) {
+        return Long.getLong("soak." + name, def);
+    }
+
+    @Test
+    public void pipelineStaysWithinBudgetForHours() throws Exception {
+        long minutes = prop("minutes", 0);
+        Assume.assumeTrue("soak run: set -Dsoak.minutes", minutes > 0);
+        long speed = prop("speed", 20);
+        long churnMinutes = prop("churnMinutes", 10);
+        long reportMinutes = prop("reportMinutes", 10);
+        long warmupMinutes = prop("warmupMinutes", Math.max(1, Math.min(5, minutes / 10)));
+        long maxHeapGrowthMb = prop("maxHeapGrowthMb", 8);
+        long maxAllocKbPerAudioSec = prop("maxAllocKbPerAudioSec", 400);
+        long maxGcPauseMs = prop("maxGcPauseMs", 100);
+        long maxThreadGrowth = prop("maxThreadGrowth", 4);
+
+        // ---- the stand-in and the phone side, wired as PhoneStreamService does ----
+        StandInBackend stand = new StandInBackend();
+        stand.retain = false;
+        long framesPerMinute = 60_000 / FRAME_MS;
+        for (long m = churnMinutes; churnMinutes > 0 && m < minutes; m += churnMinutes) {
+            stand.dropAfter.add((int) (m * framesPerMinute));
+        }
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().withWebSocketUpgrade(stand);
+            }
+        });
+        server.start();
+
+        OkHttpClient client = new OkHttpClient();
+        BackendStream backend = new BackendStream(client, server.url("/ws").toString(), MB,
+                new BackendStream.Listener() {
+                    @Override
+                    public void onStatus(String status, boolean connected) {
+                    }
+
+                    @Override
+                    public void onServerMessage(JSONObject root) {
+                    }
+                });
+        backend.setCoalescing(16 * 1024, 100);
+
+        // real-time segments, so rotation and retention run many times per soak
+        AudioArchive.Config cfg = new AudioArchive.Config();
+        cfg.segmentMs = 15_000;
+        cfg.maxTotalBytes = 16 * MB;
+        AudioArchive archive = new AudioArchive(tmp.newFolder("archive"), cfg);
+        archive.start();
+
+        AtomicLong offlineAlerts = new AtomicLong();
+        AudioPipeline pipeline = new AudioPipeline(backend, archive, 120, 64, null);
+        pipeline.setOfflineDetector(new OfflineDetector("soak", alert -> offlineAlerts.incrementAndGet()));
+        ClockSync watchClock = new ClockSync("watch");
+        watchClock.onSample(0, 0, 0, 0);
+        pipeline.setWatchClock(watchClock);
+        backend.connect();
+
+        // ---- the watch: fixture audio on a loop, with the odd reorder, loss and gap ----
+        byte[] audio = fixtureLoop();
+        Random rnd = new Random(prop("seed", 1));
+        long totalFrames = minutes * framesPerMinute;
+        long warmupFrames = warmupMinutes * framesPerMinute;
+        long reportFrames = reportMinutes * framesPerMinute;
+        long frameRealNanos = TimeUnit.MILLISECONDS.toNanos(FRAME_MS) / speed;
+
+        SoakMonitor monitor = new SoakMonitor();
+        long baseHeap = 0;
+        long baseAlloc = 0;
+        int baseThreads = 0;
+        long lastAlloc = 0;
+        long captureNanos = 0;
+        byte[] held = null;   // a frame held back to arrive after its successor
+        int lost = 0;
+
+        System.out.printf("Soak: %d simulated minutes at %dx (%.1f real minutes)%n",
+                minutes, speed, minutes / (double) speed);
+        long t0 = System.nanoTime();
+        long start = t0;
+        for (long i = 0; i < totalFrames; i++) {
+            LockSupport.parkNanos(start + i * frameRealNanos - System.nanoTime());
+
+            int flags = 0;
+            double r = rnd.nextDouble();
+            if (r < 0.001) {
+                flags = AudioFrame.FLAG_GAP;   // watch overran: 200 ms of capture missing
+                captureNanos += TimeUnit.MILLISECONDS.toNanos(200);
+            }
+            byte[] chunk = chunk((int) i, flags, captureNanos, audio, (int) (i * FRAME_BYTES % audio.length));
+            captureNanos += TimeUnit.MILLISECONDS.toNanos(FRAME_MS);
+
+            if (r > 0.998) {
+                lost++;                        // never reaches the phone
+            } else if (r > 0.99 && held == null) {
+                held = chunk;                  // overtaken by the next frame
+            } else {
+                pipeline.onChunk(chunk);
+                if (held != null) {
+                    pipeline.onChunk(held);
+                    held = null;
+                }
+            }
+
+            if (i + 1 == warmupFrames) {
+                baseHeap = monitor.settledHeapBytes();
+                baseThreads = monitor.threadCount();
+                baseAlloc = lastAlloc = monitor.allocatedBytes();
+                monitor.resetPauses();
+                start = System.nanoTime() - (i + 1) * frameRealNanos;   // no burst to catch up on the GCs
+            } else if (i >= warmupFrames && (i + 1 - warmupFrames) % reportFrames == 0) {
+                long alloc = monitor.allocatedBytes();
+                System.out.printf("  t=%4d min heap=%5.1f MB alloc=%5.0f KB/audio-s threads=%d "
+                                + "gc max=%d ms (%d pauses) frames=%d conns=%d lost=%d archive_dropped=%d%n",
+                        (i + 1) / framesPerMinute, monitor.heapUsedBytes() / (double) MB,
+                        (alloc - lastAlloc) / 1024.0 / (reportFrames * FRAME_MS / 1000.0),
+                        monitor.threadCount(), monitor.pauseMaxMs(), monitor.pauses(),
+                        stand.receivedCount(), stand.connections, pipeline.jitterStats().lost,
+                        archive.droppedFrames());
+                lastAlloc = alloc;
+            }
+        }
+        double realMinutes = (System.nanoTime() - t0) / 60e9;
+
+        // let the jitter buffer, coalescer and archive writer drain before the final readings
+        Thread.sleep(1_000);
+        long endAlloc = monitor.allocatedBytes();
+        long endHeap = monitor.settledHeapBytes();
+        int endThreads = monitor.threadCount();
+        int received = stand.receivedCount();
+        long pauseMax = monitor.pauseMaxMs();
+
+        pipeline.stop();
+        backend.close("soak done");
+        archive.stop();
+        client.dispatcher().executorService().shutdownNow();
+        server.shutdown();
+        monitor.close();
+
+        double audioSecs = (totalFrames - warmupFrames) * FRAME_MS / 1000.0;
+        double allocKbPerAudioSec = (endAlloc - baseAlloc) / 1024.0 / audioSecs;
+        double heapGrowthMb = (endHeap - baseHeap) / (double) MB;
+        System.out.printf("Soak done in %.1f real minutes: heap %+.2f MB (settled %.1f -> %.1f MB), "
+                        + "%.0f KB allocated per audio-s, GC max %d ms over %d pauses (%d ms total), "
+                        + "threads %d -> %d (peak %d), %d/%d frames at the backend, %d offline alerts%n",
+                realMinutes, heapGrowthMb, baseHeap / (double) MB, endHeap / (double) MB,
+                allocKbPerAudioSec, pauseMax, monitor.pauses(), monitor.pauseTotalMs(),
+                baseThreads, endThreads, monitor.peakThreadCount(), received, totalFrames,
+                offlineAlerts.get());
+
+        List<String> over = new ArrayList<>();
+        if (heapGrowthMb > maxHeapGrowthMb) {
+            over.add(String.format("retained heap grew %.1f MB (budget %d)", heapGrowthMb, maxHeapGrowthMb));
+        }
+        if (allocKbPerAudioSec > maxAllocKbPerAudioSec) {
+            over.add(String.format("allocated %.0f KB per audio-s (budget %d)", allocKbPerAudioSec, maxAllocKbPerAudioSec));
+        }
+        if (pauseMax > maxGcPauseMs) {
+            over.add(String.format("GC pause of %d ms (budget %d)", pauseMax, maxGcPauseMs));
+        }
+        if (endThreads - baseThreads > maxThreadGrowth) {
+            over.add(String.format("threads %d -> %d (budget +%d)", baseThreads, endThreads, maxThreadGrowth));
+        }
+        assertTrue("over budget: " + over, over.isEmpty());
+        // and it still did its job: everything but the frames the watch lost, plus concealment
+        assertTrue("backend got " + received + " of " + totalFrames, received >= totalFrames - lost);
+    }
+
+    /** The fixtures back to back, as one loop of 16 kHz PCM. */
+    private static byte[] fixtureLoop() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String name : new String[]{"speech.wav", "smoke_alarm_t3.wav", "gunshot.wav", "explosion.wav"}) {
+            out.write(OfflineDetectorTest.loadWav(name));
+        }
+        byte[] pcm = out.toByteArray();
+        return Arrays.copyOf(pcm, pcm.length / FRAME_BYTES * FRAME_BYTES);
+    }
+
+    /** A watch /audio_chunk: fresh array per frame, as the Data Layer hands them over. */
+    private static byte[] chunk(int seq, int flags, long captureNanos, byte[] audio, int offset) {
+        ByteBuffer bb = ByteBuffer.allocate(AudioFrame.HEADER_SIZE + FRAME_BYTES);
+        bb.put(AudioFrame.MAGIC).put(AudioFrame.VERSION).putShort((short) flags)
+                .putInt(seq).putLong(captureNanos)
+                .put(audio, offset, FRAME_BYTES);
+        return bb.array();
+    }
+}
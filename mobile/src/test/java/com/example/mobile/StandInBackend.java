@@ -0,0 +1,141 @@
+package com.example.mobile;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * Minimal protocol-2 server: welcome with next_seq, cumulative ack every
+ * 5 frames, and a server-side drop after the configured frame counts.
+ * Accepts several frames per message, as a coalescing phone sends them.
+ * Answers clock pings on a clock {@code clockOffsetNanos} ahead of ours.
+ * With {@code retain} off it only counts frames, for runs too long to keep them.
+ */
+class StandInBackend extends WebSocketListener {
+    final Set<String> sessions = new HashSet<>();
+    final List<Integer> dropAfter = new ArrayList<>();
+    volatile boolean retain = true;
+    private int count;
+    private final Map<String, Integer> nextSeq = new HashMap<>();
+    private final List<Integer> received = new ArrayList<>();
+    private final List<byte[]> payloads = new ArrayList<>();
+    private final List<Integer> flags = new ArrayList<>();
+    private final List<Long> timestamps = new ArrayList<>();
+    private final Map<WebSocket, String> sessionOf = new HashMap<>();
+    volatile JSONObject lastHello;
+    volatile long clockOffsetNanos;
+    int pings;
+    int connections;
+    int messages;
+    int duplicates;
+    int gaps;
+
+    synchronized int receivedCount() {
+        return count;
+    }
+
+    synchronized List<Integer> received() {
+        return new ArrayList<>(received);
+    }
+
+    synchronized List<byte[]> payloads() {
+        return new ArrayList<>(payloads);
+    }
+
+    synchronized List<Integer> flags() {
+        return new ArrayList<>(flags);
+    }
+
+    synchronized List<Long> timestamps() {
+        return new ArrayList<>(timestamps);
+    }
+
+    @Override
+    public synchronized void onOpen(@NonNull WebSocket ws, @NonNull Response response) {
+        connections++;
+    }
+
+    @Override
+    public synchronized void onMessage(@NonNull WebSocket ws, @NonNull String text) {
+        long received = System.nanoTime() + clockOffsetNanos;
+        try {
+            JSONObject hello = new JSONObject(text);
+            if ("ping".equals(hello.optString("type"))) {
+                pings++;
+                ws.send(new JSONObject().put("type", "pong").put("t1", hello.getLong("t1"))
+                        .put("t2", received).put("t3", System.nanoTime() + clockOffsetNanos).toString());
+                return;
+            }
+            lastHello = hello;
+            String session = hello.getString("session");
+            sessions.add(session);
+            sessionOf.put(ws, session);
+            JSONObject welcome = new JSONObject()
+                    .put("type", "welcome")
+                    .put("session", session)
+                    .put("next_seq", nextSeq.getOrDefault(session, 0));
+            ws.send(welcome.toString());
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public synchronized void onMessage(@NonNull WebSocket ws, @NonNull ByteString bytes) {
+        messages++;
+        String session = sessionOf.get(ws);
+        byte[] buf = bytes.toByteArray();
+        for (int at = 0; at < buf.length; ) {
+            WireFrame frame = WireFrame.parse(buf, at);
+            at = frame.end();
+            int expected = nextSeq.getOrDefault(session, 0);
+            if (frame.seq < expected) {
+                duplicates++;
+                continue;
+            }
+            if (frame.seq > expected) {
+                gaps++;
+            }
+            count++;
+            if (retain) {
+                received.add(frame.seq);
+                payloads.add(Arrays.copyOfRange(frame.buf, frame.payloadOffset,
+                        frame.payloadOffset + frame.payloadLength));
+                flags.add(frame.flags);
+                timestamps.add(frame.timestampMs);
+            }
+            nextSeq.put(session, frame.seq + 1);
+
+            if (frame.seq % 5 == 4) {
+                ws.send("{\"type\":\"ack\",\"seq\":" + frame.seq + "}");
+            }
+            if (!dropAfter.isEmpty() && count == dropAfter.get(0)) {
+                dropAfter.remove(0);
+                ws.close(1001, "stand-in drop");
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onClosing(@NonNull WebSocket ws, int code, @NonNull String reason) {
+        ws.close(1000, null);
+    }
+
+    @Override
+    public void onFailure(@NonNull WebSocket ws, @NonNull Throwable t, Response response) {
+    }
+}
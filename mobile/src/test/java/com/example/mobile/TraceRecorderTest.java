@@ -0,0 +1,125 @@
+package com.example.mobile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class TraceRecorderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void dumpKeepsNewestRecordsOldestFirst() throws IOException {
+        TraceRecorder rec = new TraceRecorder(8);
+        for (int i = 0; i < 20; i++) {
+            rec.record(TraceRecorder.EV_CHUNK_RECEIVED, i, i * 10);
+        }
+        File file = tmp.newFile("trace.bin");
+        assertEquals(8, rec.dump(file));
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            assertEquals("WTRC", new String(magic, "US-ASCII"));
+            assertEquals(1, in.readInt());
+            assertEquals(8, in.readInt());
+            in.readLong();
+            in.readLong();
+
+            long lastTs = Long.MIN_VALUE;
+            for (int i = 12; i < 20; i++) {
+                assertEquals(TraceRecorder.EV_CHUNK_RECEIVED, in.readInt());
+                long ts = in.readLong();
+                assertTrue(ts >= lastTs);
+                lastTs = ts;
+                assertEquals(i, in.readLong());
+                assertEquals(i * 10, in.readLong());
+            }
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void dumpNeverEmitsTornRecordsWhileWritersLap() throws Exception {
+        TraceRecorder rec = new TraceRecorder(64);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread[] writers = new Thread[3];
+        for (int w = 0; w < writers.length; w++) {
+            writers[w] = new Thread(() -> {
+                for (long x = 0; running.get(); x++) {
+                    rec.record(TraceRecorder.EV_CHUNK_RECEIVED, x, ~x);   // b always pairs with a
+                }
+            });
+            writers[w].start();
+        }
+        File file = tmp.newFile("trace.bin");
+        int dumped = 0;
+        try {
+            for (int d = 0; d < 200; d++) {
+                int n = rec.dump(file);
+                dumped += n;
+                try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(file)))) {
+                    in.skipBytes(4 + 4 + 4 + 8 + 8);
+                    for (int i = 0; i < n; i++) {
+                        assertEquals(TraceRecorder.EV_CHUNK_RECEIVED, in.readInt());
+                        in.readLong();
+                        long a = in.readLong();
+                        assertEquals("torn record", ~a, in.readLong());
+                    }
+                }
+            }
+        } finally {
+            running.set(false);
+            for (Thread t : writers) t.join();
+        }
+        assertTrue(dumped > 0);
+    }
+
+    @Test
+    public void disabledAndSampledRecordsAreSkipped() {
+        TraceRecorder rec = new TraceRecorder(1024);
+        rec.setEnabled(false);
+        rec.record(1, 0, 0);
+        assertEquals(0, rec.recorded());
+
+        rec.setEnabled(true);
+        rec.setSampling(4);
+        for (int i = 0; i < 400; i++) {
+            rec.record(1, i, 0);
+        }
+        assertEquals(100, rec.recorded());
+    }
+
+    @Test
+    public void recordDoesNotAllocate() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean) mx;
+        long tid = Thread.currentThread().getId();
+
+        TraceRecorder rec = new TraceRecorder(4096);
+        for (int i = 0; i < 100_000; i++) {
+            rec.record(3, i, i);   // warm up / JIT
+        }
+        long before = tmx.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < 1_000_000; i++) {
+            rec.record(3, i, i);
+        }
+        long allocated = tmx.getThreadAllocatedBytes(tid) - before;
+        // a handful of bytes of noise from the MXBean call itself is fine
+        assertTrue("record() allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
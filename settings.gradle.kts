@@ -23,3 +23,5 @@ rootProject.name = "WearStreamMVP"
 include(":app")
 include(":wear")
 include(":mobile")
+include(":backend")
+include(":loadgen")
@@ -41,4 +41,5 @@ dependencies {
     implementation("com.google.android.gms:play-services-wearable:18.2.0")
     implementation("androidx.appcompat:appcompat:1.6.1")
     implementation("androidx.activity:activity:1.8.2")
+    testImplementation(libs.junit)
 }
\ No newline at end of file
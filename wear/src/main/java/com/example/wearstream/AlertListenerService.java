@@ -3,6 +3,7 @@ package com.example.wearstream;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -73,6 +74,22 @@ public class AlertListenerService extends WearableListenerService {
                 vocal     = rolling.optDouble("vocal", 0);
             }
 
+            // phone → wrist hop, when the phone knows our clock (ClockSync on the phone)
+            long sentNs = event.optLong("watch_sent_ns", 0);
+            if (sentNs != 0) {
+                Log.d(TAG, String.format("Alert phone → watch: %.1f ms",
+                        (SystemClock.elapsedRealtimeNanos() - sentNs) / 1e6));
+            }
+
+            // the backend's verdict on a pending on-watch pre-alert (backfill alerts
+            // are about audio from an earlier outage, not this one)
+            if (!event.optBoolean("backfill", false)
+                    && PreAlertTracker.get().onVerdict(SystemClock.elapsedRealtime(),
+                    "EMERGENCY".equals(level))) {
+                NotificationManagerCompat.from(this).cancel(AudioRecordService.PRE_ALERT_NOTIF_ID);
+                Log.d(TAG, "Pre-alert confirmed by the backend");
+            }
+
             String summary = String.format(
                     "Looks like you are in an Emergency Situation! SOS Message will be triggered!"
             );
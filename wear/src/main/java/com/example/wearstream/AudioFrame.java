@@ -0,0 +1,53 @@
+package com.example.wearstream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Framing for /audio_chunk messages sent to the phone.
+ *
+ * MessageClient gives no ordering guarantee, so every chunk carries a small
+ * header the phone uses to put frames back in order and spot gaps:
+ *
+ *   [0]     magic 'W'
+ *   [1]     version
+ *   [2..3]  flags (FLAG_GAP, FLAG_SPOOLED)
+ *   [4..7]  sequence number (per recording session, starts at 0)
+ *   [8..15] capture time of the first sample (elapsedRealtimeNanos)
+ *   [16..]  16-bit mono PCM
+ *
+ * Must stay in sync with com.example.mobile.AudioFrame on the phone.
+ */
+final class AudioFrame {
+
+    static final byte MAGIC = 0x57; // 'W'
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    // samples were lost right before this frame; captureNanos still gives its true time
+    static final int FLAG_GAP = 1;
+    // sent late out of WatchSpool; the phone keeps it out of the live jitter buffer
+    static final int FLAG_SPOOLED = 2;
+
+    private AudioFrame() {
+    }
+
+    /** Sets FLAG_SPOOLED on an encoded frame in place. */
+    static void markSpooled(byte[] frame) {
+        frame[3] |= FLAG_SPOOLED;   // low byte of the big-endian flags
+    }
+
+    /** Builds header + PCM in a single array so the payload is copied exactly once. */
+    static byte[] encode(int seq, int flags, long captureNanos, byte[] pcm, int off, int len) {
+        byte[] out = new byte[HEADER_SIZE + len];
+        ByteBuffer.wrap(out, 0, HEADER_SIZE)
+                .order(ByteOrder.BIG_ENDIAN)
+                .put(MAGIC)
+                .put(VERSION)
+                .putShort((short) flags)
+                .putInt(seq)
+                .putLong(captureNanos);
+        System.arraycopy(pcm, off, out, HEADER_SIZE, len);
+        return out;
+    }
+}
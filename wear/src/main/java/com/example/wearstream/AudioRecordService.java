@@ -7,9 +7,17 @@ import android.app.Service;
 import android.content.Intent;
 import android.media.AudioFormat;
 import android.media.AudioRecord;
+import android.media.AudioTimestamp;
 import android.media.MediaRecorder;
 import android.os.Build;
+import android.os.Debug;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -17,21 +25,143 @@ import androidx.core.app.NotificationCompat;
 
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.wearable.MessageClient;
 import com.google.android.gms.wearable.Node;
 import com.google.android.gms.wearable.Wearable;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class AudioRecordService extends Service {
 
     private static final String TAG = "AudioRecordService";
     private static final String CHANNEL_ID = "audio_record_channel";
     private static final int NOTIF_ID = 1;
+    private static final String PRE_ALERT_CHANNEL_ID = "watch_pre_alerts";
+    static final int PRE_ALERT_NOTIF_ID = 2002;
+    // three short hard buzzes: unmistakable, and different from a notification
+    private static final long[] PRE_ALERT_VIBRATION = {0, 120, 80, 120, 80, 120};
     private static final String PATH_AUDIO_CHUNK = "/audio_chunk";
+    // tell the phone to open (prewarm) / release its backend connection
+    private static final String PATH_STREAM_START = "/stream_start";
+    private static final String PATH_STREAM_STOP = "/stream_stop";
+    // phone's clock sync: it sends t1, we answer t1, t2 (received), t3 (sent)
+    // on elapsedRealtimeNanos, the clock capture times are stamped with
+    private static final String PATH_CLOCK_PING = "/clock_ping";
+    private static final String PATH_CLOCK_PONG = "/clock_pong";
+
+    // AudioRecord buffer = this multiple of getMinBufferSize: headroom before
+    // samples are dropped while the capture thread is held up.
+    // Override with EXTRA_BUFFER_MULTIPLE on the start intent.
+    public static final String EXTRA_BUFFER_MULTIPLE = "buffer_multiple";
+    private static final int DEFAULT_BUFFER_MULTIPLE = 4;
+    private static final int OVERRUN_SLACK_MS = 20;
+    private static final long STATS_INTERVAL_MS = 5_000;
+
+    // Efficiency profile: the capture thread wakes once per EFFICIENT_READ_MS
+    // and sends one frame per wakeup, so the CPU and radio come up in bursts
+    // instead of every few tens of ms. Costs that much extra latency; the
+    // AudioRecord buffer holds EFFICIENT_BUFFER_READS reads so a late wakeup
+    // doesn't drop samples. 320 ms = 10 KB, which still fits one phone→backend
+    // batch. Choose per deployment with EXTRA_EFFICIENCY_MODE (and optionally
+    // EXTRA_READ_MS) on the start intent.
+    public static final String EXTRA_EFFICIENCY_MODE = "efficiency_mode";
+    public static final String EXTRA_READ_MS = "read_ms";
+    private static final int EFFICIENT_READ_MS = 320;
+    private static final int EFFICIENT_BUFFER_READS = 4;
+
+    // Frames the phone can't take (no node, or the send failed) go to a
+    // WatchSpool: RAM first, spilling to flash, oldest dropped once both are
+    // full. 512 KB is ~16 s of audio, 16 MB of flash ~8 min. The backlog is
+    // sent back alongside live frames at real-time rate, i.e. the link carries
+    // up to twice the live rate until it has caught up.
+    private static final int SPOOL_RAM_BYTES = 512 * 1024;
+    private static final long SPOOL_FLASH_BYTES = 16L * 1024 * 1024;
+    private static final int SPOOL_SEGMENT_BYTES = 1024 * 1024;
+    private static final long SPOOL_DRAIN_BYTES_PER_SEC = SAMPLE_RATE * 2;
+    // while spooling, look for the phone again at most this often
+    private static final long SPOOL_RESOLVE_INTERVAL_MS = 1_000;
+    // onDestroy waits this long for the spool to move its RAM to flash
+    private static final long SPOOL_CLOSE_TIMEOUT_MS = 2_000;
 
     private AudioRecord audioRecord;
     private Thread recordingThread;
-    private boolean isRecording = false;
+    private volatile boolean isRecording = false;
+    private int bufferMultiple = DEFAULT_BUFFER_MULTIPLE;
+    private boolean efficiencyMode = false;
+    private int readMs = EFFICIENT_READ_MS;
+
+    // CPU per audio-second and wakeups/messages per minute (per recording)
+    private volatile EfficiencyStats efficiency;
+
+    // Phone node, resolved once instead of getConnectedNodes per chunk;
+    // cleared when a send to it fails so the next chunk looks it up again.
+    private volatile String phoneNodeId;
+    private volatile long lastResolveMs = 0;
+
+    // Confined to spoolExecutor so flash I/O stays off the capture thread. Lives
+    // as long as the service (and on flash beyond it), not per recording, so a
+    // backlog left at stop goes out once the next recording reaches the phone.
+    private volatile WatchSpool spool;
+    private volatile ExecutorService spoolExecutor;
+
+    // overrun detection, glitch counters and capture→send latency (per recording)
+    private volatile CaptureMonitor monitor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable statsUpdater = new Runnable() {
+        @Override
+        public void run() {
+            CaptureMonitor m = monitor;
+            EfficiencyStats e = efficiency;
+            if (!isRecording || m == null || e == null) return;
+            WatchSpool sp = spool;
+            String spooled = sp != null && (sp.bufferedBytes() > 0 || sp.framesDropped() > 0)
+                    ? String.format(" · %.0f%% spooled, %d dropped", sp.fill() * 100, sp.framesDropped()) : "";
+            updateNotification(String.format("Recording · %d glitches · %.0f ms to phone · %.1f ms CPU/s%s",
+                    m.overruns() + m.readErrors(), m.latencyPercentileMs(50),
+                    e.processCpuMsPerAudioSecond(Process.getElapsedCpuTime()), spooled));
+            mainHandler.postDelayed(this, STATS_INTERVAL_MS);
+        }
+    };
+
+    // sequence number stamped on every /audio_chunk frame (reset per recording)
+    private int nextSeq = 0;
+
+    private final MessageClient.OnMessageReceivedListener clockPingListener = event -> {
+        if (!PATH_CLOCK_PING.equals(event.getPath())) return;
+        long received = SystemClock.elapsedRealtimeNanos();
+        byte[] ping = event.getData();
+        if (ping.length < 8) return;
+        byte[] pong = ByteBuffer.allocate(24)
+                .putLong(ByteBuffer.wrap(ping).getLong())
+                .putLong(received)
+                .putLong(SystemClock.elapsedRealtimeNanos())
+                .array();
+        Wearable.getMessageClient(this).sendMessage(event.getSourceNodeId(), PATH_CLOCK_PONG, pong);
+    };
+
+    // Hot-path events go here instead of Log.d (see TraceRecorder)
+    private final TraceRecorder trace = TraceRecorder.get();
+
+    // On-watch transient detection: buzz at once, let the backend confirm or cancel
+    private final PreAlertTracker preAlerts = PreAlertTracker.get();
+    private final Runnable preAlertExpiry = new Runnable() {
+        @Override
+        public void run() {
+            if (preAlerts.expire(SystemClock.elapsedRealtime())) {
+                NotificationManager nm = getSystemService(NotificationManager.class);
+                if (nm != null) nm.cancel(PRE_ALERT_NOTIF_ID);
+                Log.d(TAG, "Pre-alert cancelled: no verdict from the backend");
+            }
+        }
+    };
 
     // audio config – keep it simple
     private static final int SAMPLE_RATE = 16000;
@@ -43,20 +173,16 @@ public class AudioRecordService extends Service {
         super.onCreate();
         createNotificationChannel();
         startForeground(NOTIF_ID, buildNotification("Idle"));
-
-        int minBuf = AudioRecord.getMinBufferSize(
-                SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT);
-        audioRecord = new AudioRecord(
-                MediaRecorder.AudioSource.MIC,
-                SAMPLE_RATE,
-                CHANNEL_CONFIG,
-                AUDIO_FORMAT,
-                minBuf
-        );
+        openSpool();
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null) {
+            bufferMultiple = Math.max(1, intent.getIntExtra(EXTRA_BUFFER_MULTIPLE, DEFAULT_BUFFER_MULTIPLE));
+            efficiencyMode = intent.getBooleanExtra(EXTRA_EFFICIENCY_MODE, false);
+            readMs = Math.max(10, intent.getIntExtra(EXTRA_READ_MS, EFFICIENT_READ_MS));
+        }
         if (!isRecording) {
             startRecording();
         }
@@ -66,6 +192,7 @@ public class AudioRecordService extends Service {
     @Override
     public void onDestroy() {
         stopRecording();
+        closeSpool();
         super.onDestroy();
     }
 
@@ -83,11 +210,26 @@ public class AudioRecordService extends Service {
                             "WearStream Recording",
                             NotificationManager.IMPORTANCE_LOW
                     );
+            NotificationChannel preAlerts =
+                    new NotificationChannel(
+                            PRE_ALERT_CHANNEL_ID,
+                            "Possible emergency (unconfirmed)",
+                            NotificationManager.IMPORTANCE_HIGH
+                    );
+            preAlerts.enableVibration(false);   // onImpulse buzzes itself, without delay
             NotificationManager nm = getSystemService(NotificationManager.class);
-            if (nm != null) nm.createNotificationChannel(channel);
+            if (nm != null) {
+                nm.createNotificationChannel(channel);
+                nm.createNotificationChannel(preAlerts);
+            }
         }
     }
 
+    private void updateNotification(String text) {
+        NotificationManager nm = getSystemService(NotificationManager.class);
+        if (nm != null) nm.notify(NOTIF_ID, buildNotification(text));
+    }
+
     private Notification buildNotification(String text) {
         return new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle("WearStream")
@@ -97,31 +239,117 @@ public class AudioRecordService extends Service {
                 .build();
     }
 
+    private AudioRecord createAudioRecord(int bufferBytes) {
+        AudioRecord record = new AudioRecord(
+                MediaRecorder.AudioSource.MIC,
+                SAMPLE_RATE,
+                CHANNEL_CONFIG,
+                AUDIO_FORMAT,
+                bufferBytes
+        );
+        if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+            Log.e(TAG, "AudioRecord init failed");
+            record.release();
+            return null;
+        }
+        return record;
+    }
+
     private void startRecording() {
-        if (audioRecord == null) return;
+        // Phone starts connecting to the backend while the mic comes up
+        sendControlToPhone(PATH_STREAM_START);
+        Wearable.getMessageClient(this).addListener(clockPingListener);
+
+        int minBuf = AudioRecord.getMinBufferSize(
+                SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT);
+        // realtime: reads stay at minBuf (chunk cadence unchanged), the extra
+        // buffer is headroom; efficient: one read per send window
+        int readBytes = efficiencyMode ? Math.max(minBuf, readMs * SAMPLE_RATE / 1000 * 2) : minBuf;
+        int bufferBytes = efficiencyMode
+                ? Math.max(minBuf * bufferMultiple, readBytes * EFFICIENT_BUFFER_READS)
+                : minBuf * bufferMultiple;
+        audioRecord = createAudioRecord(bufferBytes);
+        if (audioRecord == null) {
+            sendControlToPhone(PATH_STREAM_STOP);
+            return;
+        }
+        resolvePhoneNode(null);
+
+        int bufferFrames = audioRecord.getBufferSizeInFrames();
+        monitor = new CaptureMonitor(SAMPLE_RATE, bufferFrames, OVERRUN_SLACK_MS);
+        efficiency = new EfficiencyStats(efficiencyMode ? "efficient" : "realtime", SAMPLE_RATE,
+                SystemClock.elapsedRealtimeNanos(), Process.getElapsedCpuTime());
 
         isRecording = true;
         audioRecord.startRecording();
-        Log.d(TAG, "Recording started");
+        Log.d(TAG, "Recording started (" + efficiency.profile() + ", buffer " + bufferFrames
+                + " frames, reads of " + readBytes + " bytes)");
 
         Notification notif = buildNotification("Recording audio…");
         startForeground(NOTIF_ID, notif);
+        mainHandler.postDelayed(statsUpdater, STATS_INTERVAL_MS);
 
         recordingThread = new Thread(() -> {
-            int minBuf = AudioRecord.getMinBufferSize(
-                    SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT);
-            byte[] buffer = new byte[minBuf];
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            CaptureMonitor m = monitor;
+            EfficiencyStats stats = efficiency;
+            ImpulseDetector impulses = new ImpulseDetector(this::onImpulse);
+            long cpuStart = Debug.threadCpuTimeNanos();
+            AudioTimestamp ts = new AudioTimestamp();
+            byte[] buffer = new byte[readBytes];
+            nextSeq = 0;
 
             while (isRecording) {
                 int read = audioRecord.read(buffer, 0, buffer.length);
-                if (read > 0) {
-                    // copy exact bytes into a fresh array
-                    byte[] chunk = new byte[read];
-                    System.arraycopy(buffer, 0, chunk, 0, read);
+                if (read < 0) {
+                    m.onReadError();
+                    trace.record(TraceRecorder.EV_READ_ERROR, read, 0);
+                    if (read == AudioRecord.ERROR_DEAD_OBJECT) {
+                        // audio server restarted: the recorder must be rebuilt
+                        Log.e(TAG, "AudioRecord died, re-creating");
+                        audioRecord.release();
+                        audioRecord = createAudioRecord(bufferBytes);
+                        if (audioRecord == null) {
+                            // no microphone to be had: end the stream properly so a later start can retry
+                            isRecording = false;
+                            mainHandler.post(this::stopRecording);
+                            break;
+                        }
+                        audioRecord.startRecording();
+                        m.onRestart(SystemClock.elapsedRealtimeNanos());
+                    } else {
+                        SystemClock.sleep(5);   // don't spin on a persistent error
+                    }
+                    continue;
+                }
 
-                    // 🔹 send this chunk to the paired phone
-                    sendChunkToPhone(chunk);
+                long now = SystemClock.elapsedRealtimeNanos();
+                boolean haveTs = audioRecord.getTimestamp(ts, AudioTimestamp.TIMEBASE_BOOTTIME)
+                        == AudioRecord.SUCCESS;
+                // a gap found after the previous read lies just before this one
+                boolean gap = m.takeGap();
+                long captureNanos = m.onRead(read / 2, buffer.length / 2, now,
+                        haveTs ? ts.framePosition : -1, ts.nanoTime);
+                if (read == 0) {
+                    stats.onRead(0, Debug.threadCpuTimeNanos() - cpuStart);
+                    continue;
                 }
+                impulses.process(buffer, 0, read, captureNanos);
+                stats.onRead(read / 2, Debug.threadCpuTimeNanos() - cpuStart);
+
+                int seq = nextSeq++;
+                int flags = 0;
+                if (gap) {
+                    flags |= AudioFrame.FLAG_GAP;
+                    trace.record(TraceRecorder.EV_OVERRUN, seq, m.framesLost());
+                }
+
+                // header + exact bytes in one fresh array
+                byte[] chunk = AudioFrame.encode(seq, flags, captureNanos, buffer, 0, read);
+                trace.record(TraceRecorder.EV_CHUNK_READ, seq, read);
+
+                // 🔹 send this chunk to the paired phone
+                sendChunkToPhone(chunk, seq, captureNanos);
             }
 
             Log.d(TAG, "Recording loop exited");
@@ -131,7 +359,10 @@ public class AudioRecordService extends Service {
     }
 
     private void stopRecording() {
+        // a capture thread means the phone was told /stream_start, even if the recorder is gone
+        boolean streaming = recordingThread != null;
         isRecording = false;
+        Wearable.getMessageClient(this).removeListener(clockPingListener);
         if (recordingThread != null) {
             try {
                 recordingThread.join();
@@ -139,39 +370,235 @@ public class AudioRecordService extends Service {
             }
             recordingThread = null;
         }
+        mainHandler.removeCallbacks(statsUpdater);
+        Log.d(TAG, preAlerts.summary());
+        // what is still spooled stays, and drains behind the next recording's live frames
+        onSpoolThread(sp -> Log.d(TAG, "Spool: " + sp.summary()));
         if (audioRecord != null) {
             audioRecord.stop();
+            audioRecord.release();
+            audioRecord = null;
+        }
+        if (streaming) {
+            sendControlToPhone(PATH_STREAM_STOP);
+        }
+        CaptureMonitor m = monitor;
+        Log.d(TAG, "Recording stopped" + (m != null ? ": " + m.summary() : ""));
+        EfficiencyStats e = efficiency;
+        if (e != null) {
+            Log.d(TAG, "Cost: " + e.summary(SystemClock.elapsedRealtimeNanos(), Process.getElapsedCpuTime()));
         }
-        Log.d(TAG, "Recording stopped");
         stopForeground(true);
+        dumpTrace();
     }
 
-    // -------- Wear Data Layer: send /audio_chunk to phone --------
+    /**
+     * Capture thread: the detector saw a transient. Buzz straight away, then
+     * give the backend {@link PreAlertTracker#CONFIRM_WINDOW_MS} to confirm;
+     * AlertListenerService replaces the notification if it does.
+     */
+    private void onImpulse(long onsetNanos, float peakToRmsDb, float onsetDb) {
+        trace.record(TraceRecorder.EV_IMPULSE, (long) (peakToRmsDb * 10), (long) (onsetDb * 10));
+        if (!preAlerts.onImpulse(SystemClock.elapsedRealtime())) return;
+
+        // binder calls stay off the capture thread
+        mainHandler.post(() -> {
+            Vibrator vibrator = getSystemService(Vibrator.class);
+            if (vibrator != null && vibrator.hasVibrator()) {
+                vibrator.vibrate(VibrationEffect.createWaveform(PRE_ALERT_VIBRATION, -1));
+            }
+            NotificationManager nm = getSystemService(NotificationManager.class);
+            if (nm != null) {
+                nm.notify(PRE_ALERT_NOTIF_ID, new NotificationCompat.Builder(this, PRE_ALERT_CHANNEL_ID)
+                        .setContentTitle("Loud bang detected")
+                        .setContentText("Checking with the server…")
+                        .setSmallIcon(android.R.drawable.ic_dialog_alert)
+                        .setPriority(NotificationCompat.PRIORITY_HIGH)
+                        .setTimeoutAfter(PreAlertTracker.CONFIRM_WINDOW_MS)
+                        .build());
+            }
+            mainHandler.removeCallbacks(preAlertExpiry);
+            mainHandler.postDelayed(preAlertExpiry, PreAlertTracker.CONFIRM_WINDOW_MS);
+        });
+    }
 
-    private void sendChunkToPhone(byte[] data) {
-        Log.d(TAG, "Preparing to send chunk of size: " + data.length);
+    /** Writes the hot-path trace to files/traces so it can be pulled with adb. */
+    private void dumpTrace() {
+        File file = new File(new File(getFilesDir(), "traces"),
+                "watch-trace-" + System.currentTimeMillis() + ".bin");
+        try {
+            int records = trace.dump(file);
+            Log.d(TAG, "Trace: " + records + " records → " + file.getAbsolutePath());
+        } catch (IOException e) {
+            Log.e(TAG, "Trace dump failed", e);
+        }
+    }
+
+    // -------- Wear Data Layer: send /audio_chunk to phone --------
 
+    private void sendControlToPhone(String path) {
         Wearable.getNodeClient(this).getConnectedNodes()
                 .addOnSuccessListener(nodes -> {
-                    Log.d(TAG, "Connected nodes found: " + nodes.size());
-                    if (nodes.isEmpty()) {
-                        Log.e(TAG, "❌ No nodes connected! Phone not reachable.");
+                    for (Node node : nodes) {
+                        Wearable.getMessageClient(AudioRecordService.this)
+                                .sendMessage(node.getId(), path, new byte[0])
+                                .addOnFailureListener(e -> Log.e(TAG, "❌ Failed to send " + path, e));
                     }
+                })
+                .addOnFailureListener(e ->
+                        Log.e(TAG, "❌ getConnectedNodes FAILED", e));
+    }
 
+    /**
+     * Looks up the phone (preferring a nearby node) and caches its id, then
+     * hands it to {@code then} if given. Without a connected node the chunk
+     * is dropped, as before; the phone fills the hole.
+     */
+    private void resolvePhoneNode(@Nullable Consumer<String> then) {
+        Wearable.getNodeClient(this).getConnectedNodes()
+                .addOnSuccessListener(nodes -> {
+                    String id = null;
                     for (Node node : nodes) {
-                        Log.d(TAG, "Sending to node: " + node.getDisplayName() +
-                                " (" + node.getId() + ")");
-
-                        Wearable.getMessageClient(AudioRecordService.this)
-                                .sendMessage(node.getId(), PATH_AUDIO_CHUNK, data)
-                                .addOnSuccessListener(aVoid ->
-                                        Log.d(TAG, "✅ Chunk sent (" + data.length + " bytes)"))
-                                .addOnFailureListener(e ->
-                                        Log.e(TAG, "❌ Failed to send chunk", e));
+                        if (id == null || node.isNearby()) id = node.getId();
                     }
+                    phoneNodeId = id;
+                    if (id == null) {
+                        Log.e(TAG, "❌ No nodes connected! Phone not reachable.");
+                    }
+                    if (then != null) then.accept(id);
                 })
                 .addOnFailureListener(e ->
                         Log.e(TAG, "❌ getConnectedNodes FAILED", e));
     }
 
+    private void sendChunkToPhone(byte[] data, int seq, long captureNanos) {
+        String nodeId = phoneNodeId;
+        if (nodeId != null) {
+            sendChunkToNode(nodeId, data, seq, captureNanos);
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastResolveMs < SPOOL_RESOLVE_INTERVAL_MS) {
+            trace.record(TraceRecorder.EV_NO_NODES, seq, 0);
+            spoolChunk(data, seq);
+            return;
+        }
+        lastResolveMs = now;
+        resolvePhoneNode(id -> {
+            if (id != null) {
+                sendChunkToNode(id, data, seq, captureNanos);
+            } else {
+                trace.record(TraceRecorder.EV_NO_NODES, seq, 0);
+                spoolChunk(data, seq);
+            }
+        });
+    }
+
+    private void sendChunkToNode(String nodeId, byte[] data, int seq, long captureNanos) {
+        trace.record(TraceRecorder.EV_SEND_START, seq, data.length);
+        EfficiencyStats stats = efficiency;
+        if (stats != null) stats.onMessage();
+        Wearable.getMessageClient(this)
+                .sendMessage(nodeId, PATH_AUDIO_CHUNK, data)
+                .addOnSuccessListener(aVoid -> {
+                    long latency = SystemClock.elapsedRealtimeNanos() - captureNanos;
+                    trace.record(TraceRecorder.EV_SEND_OK, seq, latency);
+                    CaptureMonitor m = monitor;
+                    if (m != null) m.onSent(latency);
+                    drainSpool(nodeId);
+                })
+                .addOnFailureListener(e -> {
+                    trace.record(TraceRecorder.EV_SEND_FAILED, seq, 0);
+                    // the phone may have gone away or changed node; look it up next time
+                    if (nodeId.equals(phoneNodeId)) {
+                        phoneNodeId = null;
+                        Log.e(TAG, "❌ Failed to send chunk", e);
+                    }
+                    spoolChunk(data, seq);
+                });
+    }
+
+    // -------- spool: hold chunks while the phone is unreachable --------
+
+    /** Keeps a chunk the phone didn't get; it goes out later as FLAG_SPOOLED. */
+    private void spoolChunk(byte[] data, int seq) {
+        AudioFrame.markSpooled(data);
+        onSpoolThread(sp -> {
+            long dropped = sp.framesDropped();
+            sp.offer(data);
+            trace.record(TraceRecorder.EV_SPOOLED, seq, sp.bufferedBytes());
+            if (sp.framesDropped() != dropped) {
+                trace.record(TraceRecorder.EV_SPOOL_DROP, sp.framesDropped(), sp.flashBytes());
+            }
+        });
+    }
+
+    /**
+     * The phone took a live chunk: send it whatever backlog the drain rate
+     * allows right now. Runs after every successful send, so the backlog
+     * keeps pace with the live stream.
+     */
+    private void drainSpool(String nodeId) {
+        WatchSpool current = spool;
+        if (current == null || current.bufferedBytes() == 0) return;
+        onSpoolThread(sp -> {
+            EfficiencyStats stats = efficiency;
+            byte[] frame;
+            while ((frame = sp.poll(SystemClock.elapsedRealtimeNanos())) != null) {
+                byte[] f = frame;
+                if (stats != null) stats.onMessage();
+                Wearable.getMessageClient(this)
+                        .sendMessage(nodeId, PATH_AUDIO_CHUNK, f)
+                        .addOnFailureListener(e -> onSpoolThread(s -> s.requeue(f)));   // first in line again
+            }
+        });
+    }
+
+    /** Opens the spool on its thread, picking up whatever an earlier run left on flash. */
+    private void openSpool() {
+        File dir = new File(getNoBackupFilesDir(), "spool");
+        spoolExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "WatchSpool"));
+        spoolExecutor.execute(() -> {
+            WatchSpool sp = new WatchSpool(SPOOL_RAM_BYTES, dir,
+                    SPOOL_FLASH_BYTES, SPOOL_SEGMENT_BYTES, SPOOL_DRAIN_BYTES_PER_SEC);
+            if (!sp.isEmpty()) Log.d(TAG, "Spool recovered from flash: " + sp.summary());
+            spool = sp;
+        });
+    }
+
+    /** Moves the spool's RAM to flash for the next run; waits briefly, as the service is going away. */
+    private void closeSpool() {
+        ExecutorService executor = spoolExecutor;
+        if (executor == null) return;
+        spoolExecutor = null;
+        executor.execute(() -> {
+            WatchSpool sp = spool;
+            spool = null;
+            if (sp == null) return;
+            sp.close();
+            Log.d(TAG, "Spool kept on flash: " + sp.summary());
+        });
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SPOOL_CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Spool still closing");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void onSpoolThread(Consumer<WatchSpool> task) {
+        ExecutorService executor = spoolExecutor;
+        if (executor == null) return;
+        try {
+            executor.execute(() -> {
+                WatchSpool sp = spool;   // set by openSpool's task, which runs first
+                if (sp != null) task.accept(sp);
+            });
+        } catch (RejectedExecutionException e) {
+            // service is going away; the spool is being closed
+        }
+    }
+
 }
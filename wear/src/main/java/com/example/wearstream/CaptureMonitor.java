@@ -0,0 +1,179 @@
+package com.example.wearstream;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the capture stream honest about time.
+ *
+ * AudioRecord drops samples silently when the reader falls behind by more
+ * than its buffer. After every read we compare the samples the device has
+ * produced (from {@code AudioRecord.getTimestamp}, or elapsed time when no
+ * timestamp is available; that fallback drifts against the mic clock on long
+ * recordings) with the samples we have read. If, before a read, more was
+ * waiting than the buffer can hold, the buffer overran: the excess was lost.
+ * It is added to the timeline so later frames keep true capture times, and
+ * the next frame is flagged {@link AudioFrame#FLAG_GAP} so the phone can fill
+ * the hole. The gap is found only after the read that ran into it, so that
+ * one read is stamped (and the gap placed) up to one buffer early.
+ *
+ * Also counts read errors and short reads, and keeps capture-to-send latency.
+ * Only the capture thread calls the {@code on*} methods; the counters may be
+ * read from anywhere.
+ */
+final class CaptureMonitor {
+
+    private static final int LATENCY_WINDOW = 256;
+
+    private final int sampleRate;
+    private final long bufferFrames;
+    private final long slackFrames;
+
+    // capture thread
+    private long originNanos = -1;     // capture time of sample 0
+    private long tsOffset = 0;         // timeline position minus AudioTimestamp position
+    private boolean tsCalibrated = false;
+    private long framesRead = 0;
+    private boolean gapPending = false;
+
+    private volatile long framesLost = 0;
+    private volatile int overruns = 0;
+    private volatile int readErrors = 0;
+    private volatile int shortReads = 0;
+
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int latencyCount = 0;
+    private long maxLatencyNanos = 0;
+
+    /**
+     * @param bufferFrames AudioRecord buffer size in frames: how far behind the
+     *                     reader may be without losing anything
+     * @param slackMs      tolerance for timestamp jitter
+     */
+    CaptureMonitor(int sampleRate, int bufferFrames, int slackMs) {
+        this.sampleRate = sampleRate;
+        this.bufferFrames = bufferFrames;
+        this.slackFrames = (long) slackMs * sampleRate / 1000;
+    }
+
+    /**
+     * Accounts for one successful read and checks for lost samples.
+     *
+     * @param frames            frames just read
+     * @param requested         frames asked for
+     * @param nowNanos          clock reading taken right after the read
+     * @param tsFramePosition   AudioTimestamp framePosition, or -1 if unavailable
+     * @param tsNanos           AudioTimestamp nanoTime (same clock as {@code nowNanos})
+     * @return capture time of the first sample of this read
+     */
+    long onRead(int frames, int requested, long nowNanos, long tsFramePosition, long tsNanos) {
+        if (originNanos < 0) {
+            originNanos = nowNanos - framesToNanos(frames);
+        }
+        if (frames < requested) {
+            shortReads++;
+        }
+        long firstSampleNanos = originNanos + framesToNanos(framesRead + framesLost);
+        framesRead += frames;
+
+        long produced;
+        if (tsFramePosition >= 0) {
+            long position = tsFramePosition + nanosToFrames(nowNanos - tsNanos);
+            if (!tsCalibrated) {
+                // assume nothing is buffered right after the first read of a recorder
+                tsOffset = framesRead + framesLost - position;
+                tsCalibrated = true;
+            }
+            produced = tsOffset + position;
+        } else {
+            produced = nanosToFrames(nowNanos - originNanos);
+        }
+        // what was waiting before this read; the read itself drained the newest part of a full buffer
+        long behind = produced - (framesRead - frames + framesLost);
+        if (behind > bufferFrames + slackFrames) {
+            framesLost += behind - bufferFrames;
+            overruns++;
+            gapPending = true;
+        }
+        return firstSampleNanos;
+    }
+
+    /** A read returned an error code. */
+    void onReadError() {
+        readErrors++;
+    }
+
+    /**
+     * The recorder was re-created (e.g. after ERROR_DEAD_OBJECT): everything
+     * between the last sample read and {@code nowNanos} is lost, and the new
+     * recorder's timestamps are calibrated afresh.
+     */
+    void onRestart(long nowNanos) {
+        if (originNanos < 0) return;
+        long lost = nanosToFrames(nowNanos - originNanos) - (framesRead + framesLost);
+        if (lost > 0) {
+            framesLost += lost;
+            overruns++;
+            gapPending = true;
+        }
+        tsCalibrated = false;
+    }
+
+    /** True once per detected gap: the next frame should carry {@link AudioFrame#FLAG_GAP}. */
+    boolean takeGap() {
+        boolean g = gapPending;
+        gapPending = false;
+        return g;
+    }
+
+    /** Capture of the first sample to the phone accepting the message. */
+    synchronized void onSent(long latencyNanos) {
+        latencies[latencyCount % LATENCY_WINDOW] = latencyNanos;
+        latencyCount++;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+    }
+
+    long framesLost() {
+        return framesLost;
+    }
+
+    int overruns() {
+        return overruns;
+    }
+
+    int readErrors() {
+        return readErrors;
+    }
+
+    int shortReads() {
+        return shortReads;
+    }
+
+    /** Capture-to-send latency percentile over the last {@value #LATENCY_WINDOW} sends, ms. */
+    synchronized double latencyPercentileMs(double p) {
+        int n = Math.min(latencyCount, LATENCY_WINDOW);
+        if (n == 0) return 0;
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        int i = (int) Math.min(n - 1, Math.max(0, Math.ceil(p / 100.0 * n) - 1));
+        return sorted[i] / 1e6;
+    }
+
+    synchronized double maxLatencyMs() {
+        return maxLatencyNanos / 1e6;
+    }
+
+    String summary() {
+        return String.format("overruns=%d lost=%.0fms readErrors=%d shortReads=%d "
+                        + "capture→send p50=%.0fms p95=%.0fms max=%.0fms",
+                overruns(), framesLost() * 1000.0 / sampleRate, readErrors(), shortReads(),
+                latencyPercentileMs(50), latencyPercentileMs(95), maxLatencyMs());
+    }
+
+    private long framesToNanos(long frames) {
+        return frames * 1_000_000_000L / sampleRate;
+    }
+
+    private long nanosToFrames(long nanos) {
+        return nanos * sampleRate / 1_000_000_000L;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.wearstream;
+
+/**
+ * What one second of captured audio costs the watch, so capture profiles can
+ * be compared on the wrist.
+ *
+ * Two CPU figures per audio-second: the whole process
+ * ({@code Process.getElapsedCpuTime}, which includes the Data Layer
+ * callbacks), and the capture thread alone ({@code Debug.threadCpuTimeNanos},
+ * which the capture thread reports after each read since it can only be
+ * measured from that thread). Also counts wakeups (reads) and messages per
+ * minute of wall time, which are what keep the CPU and radio up.
+ *
+ * The capture thread calls {@link #onRead}; {@link #onMessage} may come from
+ * any thread; the getters may be read from anywhere.
+ */
+final class EfficiencyStats {
+
+    private final String profile;
+    private final int sampleRate;
+    private final long startNanos;
+    private final long startProcessCpuMs;
+
+    private volatile long framesCaptured = 0;
+    private volatile long reads = 0;
+    private volatile long threadCpuNanos = 0;
+    private volatile long messages = 0;
+
+    /**
+     * @param nowNanos         elapsedRealtimeNanos at the start of recording
+     * @param processCpuMs     Process.getElapsedCpuTime at the same moment
+     */
+    EfficiencyStats(String profile, int sampleRate, long nowNanos, long processCpuMs) {
+        this.profile = profile;
+        this.sampleRate = sampleRate;
+        this.startNanos = nowNanos;
+        this.startProcessCpuMs = processCpuMs;
+    }
+
+    /**
+     * One read returned {@code frames} frames.
+     *
+     * @param captureThreadCpuNanos CPU time of the capture thread since recording started
+     */
+    void onRead(int frames, long captureThreadCpuNanos) {
+        framesCaptured += frames;
+        reads++;
+        threadCpuNanos = captureThreadCpuNanos;
+    }
+
+    /** A message went to the phone. */
+    synchronized void onMessage() {
+        messages++;
+    }
+
+    double audioSeconds() {
+        return framesCaptured / (double) sampleRate;
+    }
+
+    /** Process CPU ms per second of captured audio. */
+    double processCpuMsPerAudioSecond(long processCpuMs) {
+        double audio = audioSeconds();
+        return audio > 0 ? (processCpuMs - startProcessCpuMs) / audio : 0;
+    }
+
+    /** Capture thread CPU ms per second of captured audio. */
+    double captureCpuMsPerAudioSecond() {
+        double audio = audioSeconds();
+        return audio > 0 ? threadCpuNanos / 1e6 / audio : 0;
+    }
+
+    double messagesPerMinute(long nowNanos) {
+        return perMinute(messages, nowNanos);
+    }
+
+    double readsPerMinute(long nowNanos) {
+        return perMinute(reads, nowNanos);
+    }
+
+    private double perMinute(long count, long nowNanos) {
+        long elapsed = nowNanos - startNanos;
+        return elapsed > 0 ? count * 60e9 / elapsed : 0;
+    }
+
+    String profile() {
+        return profile;
+    }
+
+    String summary(long nowNanos, long processCpuMs) {
+        return String.format("profile=%s audio=%.0fs cpu/audio-s: process=%.1fms capture=%.1fms "
+                        + "reads/min=%.0f msgs/min=%.0f",
+                profile, audioSeconds(), processCpuMsPerAudioSecond(processCpuMs),
+                captureCpuMsPerAudioSecond(), readsPerMinute(nowNanos), messagesPerMinute(nowNanos));
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.wearstream;
+
+/**
+ * Streaming transient detector run on the capture buffer, so a gunshot or
+ * blast can buzz the wrist before the backend has even seen the audio.
+ *
+ * Works on 5 ms blocks of 16-bit mono PCM. A block opens a candidate when
+ * <ul>
+ *   <li>its peak is loud in absolute terms ({@link #MIN_PEAK}),</li>
+ *   <li>its peak is far above the background RMS, a slow average of block
+ *       power ({@link #PEAK_TO_RMS_DB}), and</li>
+ *   <li>its power rose steeply from the previous block, i.e. the onset slope
+ *       ({@link #ONSET_DB} within one block).</li>
+ * </ul>
+ * The candidate fires once the power has fallen {@link #DECAY_DB} below its
+ * maximum within {@link #DECAY_BLOCKS} blocks; a loud sound that just starts
+ * and keeps going (traffic, a tap running) never decays and is dropped. That
+ * costs at most 40 ms, against the seconds of a backend round trip. It is
+ * only a pre-alert: the backend's verdict confirms or cancels it (see
+ * {@link PreAlertTracker}).
+ *
+ * Allocation-free and cheap (one multiply-add and a compare per sample).
+ * Not thread-safe: the capture thread owns it.
+ */
+final class ImpulseDetector {
+
+    interface Listener {
+        /**
+         * @param onsetNanos   capture time of the block that opened the candidate
+         * @param peakToRmsDb  onset peak over background RMS
+         * @param onsetDb      power rise into the onset block
+         */
+        void onImpulse(long onsetNanos, float peakToRmsDb, float onsetDb);
+    }
+
+    static final int SAMPLE_RATE = 16000;
+    static final int BLOCK = SAMPLE_RATE / 200;          // 5 ms
+    static final int MIN_PEAK = 8000;
+    static final float PEAK_TO_RMS_DB = 26f;
+    static final float ONSET_DB = 20f;
+    static final float DECAY_DB = 6f;
+    static final int DECAY_BLOCKS = 8;
+    static final long HOLDOFF_NANOS = 2_000_000_000L;
+
+    private static final long BLOCK_NANOS = 1_000_000_000L / 200;
+    private static final float BG_ALPHA = 1f / 64;         // ~320 ms
+    private static final double PEAK_TO_RMS_SQ = Math.pow(10, PEAK_TO_RMS_DB / 10);
+    private static final double ONSET_RATIO = Math.pow(10, ONSET_DB / 10);
+    private static final double DECAY_RATIO = Math.pow(10, -DECAY_DB / 10);
+
+    private final Listener listener;
+
+    // block accumulator (may span reads)
+    private long blockSumSq = 0;
+    private int blockPeak = 0;
+    private int blockFill = 0;
+    private long blockStartNanos = 0;
+
+    private double bgPower = -1;     // < 0 until the first block
+    private double prevPower = 0;
+
+    // open candidate
+    private int candidateBlocks = 0;  // blocks left to decay; 0 = none
+    private double candidateMax = 0;
+    private long candidateNanos = 0;
+    private float candidatePeakToRms = 0;
+    private float candidateOnset = 0;
+    private long holdoffUntil = Long.MIN_VALUE;
+
+    private long processingNanos = 0;
+    private long samples = 0;
+    private long detections = 0;
+
+    ImpulseDetector(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Feeds one read of PCM.
+     *
+     * @param captureNanos capture time of the first sample of this read
+     */
+    void process(byte[] pcm, int offset, int length, long captureNanos) {
+        long t0 = System.nanoTime();
+        int n = length / 2;
+        for (int i = 0; i < n; i++) {
+            if (blockFill == 0) {
+                blockStartNanos = captureNanos + i * 1_000_000_000L / SAMPLE_RATE;
+            }
+            int at = offset + 2 * i;
+            int s = (short) ((pcm[at] & 0xff) | (pcm[at + 1] << 8));
+            blockSumSq += (long) s * s;
+            int a = s < 0 ? -s : s;
+            if (a > blockPeak) blockPeak = a;
+            if (++blockFill == BLOCK) {
+                onBlock((double) blockSumSq / BLOCK, blockPeak, blockStartNanos);
+                blockSumSq = 0;
+                blockPeak = 0;
+                blockFill = 0;
+            }
+        }
+        samples += n;
+        processingNanos += System.nanoTime() - t0;
+    }
+
+    private void onBlock(double power, int peak, long startNanos) {
+        if (bgPower < 0) {
+            bgPower = power;
+            prevPower = power;
+            return;
+        }
+        if (candidateBlocks > 0) {
+            candidateMax = Math.max(candidateMax, power);
+            if (power <= candidateMax * DECAY_RATIO) {
+                candidateBlocks = 0;
+                holdoffUntil = candidateNanos + HOLDOFF_NANOS;
+                detections++;
+                if (listener != null) {
+                    listener.onImpulse(candidateNanos, candidatePeakToRms, candidateOnset);
+                }
+            } else if (--candidateBlocks == 0) {
+                // sustained, not a transient: let the background catch up
+                bgPower = power;
+            }
+        } else if (peak >= MIN_PEAK
+                && startNanos >= holdoffUntil
+                && (double) peak * peak >= PEAK_TO_RMS_SQ * bgPower
+                && power >= ONSET_RATIO * prevPower) {
+            candidateBlocks = DECAY_BLOCKS;
+            candidateMax = power;
+            candidateNanos = startNanos;
+            candidatePeakToRms = (float) (10 * Math.log10((double) peak * peak / Math.max(bgPower, 1)));
+            candidateOnset = (float) (10 * Math.log10(power / Math.max(prevPower, 1)));
+        } else {
+            bgPower += BG_ALPHA * (power - bgPower);
+        }
+        prevPower = power;
+    }
+
+    /** Forgets the background, e.g. when a new recording starts. */
+    void reset() {
+        blockSumSq = 0;
+        blockPeak = 0;
+        blockFill = 0;
+        bgPower = -1;
+        prevPower = 0;
+        candidateBlocks = 0;
+        holdoffUntil = Long.MIN_VALUE;
+    }
+
+    /** Wall time spent in {@link #process}, for the CPU budget. */
+    long processingNanos() {
+        return processingNanos;
+    }
+
+    long samplesProcessed() {
+        return samples;
+    }
+
+    long detections() {
+        return detections;
+    }
+}
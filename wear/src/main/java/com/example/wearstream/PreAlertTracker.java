@@ -0,0 +1,75 @@
+package com.example.wearstream;
+
+/**
+ * The state of the watch's own impulse pre-alert until the backend rules on it.
+ *
+ * {@link ImpulseDetector} fires on the watch at once; the backend's verdict
+ * comes back through the phone as an /alert much later. An emergency verdict
+ * within {@link #CONFIRM_WINDOW_MS} confirms the pre-alert; if none comes it
+ * is cancelled. At most one pre-alert is pending at a time; further impulses
+ * while it is pending are only counted as repeats.
+ *
+ * Shared by AudioRecordService (which raises it) and AlertListenerService
+ * (which receives the verdict), so it is a process-wide instance; all methods
+ * are synchronized.
+ */
+final class PreAlertTracker {
+
+    static final long CONFIRM_WINDOW_MS = 6_000;
+
+    private static final PreAlertTracker INSTANCE = new PreAlertTracker();
+
+    private long pendingSinceMs = -1;
+    private long raised = 0;
+    private long confirmed = 0;
+    private long cancelled = 0;
+    private long repeats = 0;
+
+    static PreAlertTracker get() {
+        return INSTANCE;
+    }
+
+    /** @return true if this impulse raised a new pre-alert (buzz now) */
+    synchronized boolean onImpulse(long nowMs) {
+        if (pendingSinceMs >= 0) {
+            repeats++;
+            return false;
+        }
+        pendingSinceMs = nowMs;
+        raised++;
+        return true;
+    }
+
+    /**
+     * An alert arrived from the backend (or the phone's offline detector).
+     *
+     * @return true if it confirmed the pending pre-alert
+     */
+    synchronized boolean onVerdict(long nowMs, boolean emergency) {
+        if (pendingSinceMs < 0 || !emergency || nowMs - pendingSinceMs > CONFIRM_WINDOW_MS) {
+            return false;
+        }
+        pendingSinceMs = -1;
+        confirmed++;
+        return true;
+    }
+
+    /** @return true if the pending pre-alert ran out of time and is now cancelled */
+    synchronized boolean expire(long nowMs) {
+        if (pendingSinceMs < 0 || nowMs - pendingSinceMs < CONFIRM_WINDOW_MS) {
+            return false;
+        }
+        pendingSinceMs = -1;
+        cancelled++;
+        return true;
+    }
+
+    synchronized boolean isPending() {
+        return pendingSinceMs >= 0;
+    }
+
+    synchronized String summary() {
+        return String.format("pre-alerts raised=%d confirmed=%d cancelled=%d repeats=%d",
+                raised, confirmed, cancelled, repeats);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.wearstream;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Allocation-free recorder for hot-path events, replacing per-chunk Log.d.
+ *
+ * Each record is four longs in a preallocated ring:
+ *
+ *   [0] (record index << 16) | event id   (the header)
+ *   [1] System.nanoTime()
+ *   [2] arg a
+ *   [3] arg b
+ *
+ * {@link #record(int, long, long)} only does an atomic increment and five
+ * array stores, so it is safe to call per chunk from any thread. When the
+ * ring wraps the oldest records are overwritten.
+ *
+ * Slots work like a seqlock: a writer invalidates the header, stores the
+ * payload, then publishes the header (release). {@link #dump} reads header,
+ * payload, header again and keeps the record only if both headers name it,
+ * so it never emits a payload half-overwritten by a later lap of the ring.
+ *
+ * {@link #dump(File)} writes a big-endian file for offline analysis:
+ *
+ *   "WTRC" | int version | int record count | long dump nanoTime | long dump wall ms
+ *   then per record: int event | long nanoTime | long a | long b   (oldest first)
+ *
+ * Must stay in sync with com.example.mobile.TraceRecorder on the phone.
+ */
+public final class TraceRecorder {
+
+    // ---- watch event ids ----
+    public static final int EV_CHUNK_READ = 101;     // a = seq, b = bytes
+    public static final int EV_SEND_START = 102;     // a = seq, b = message bytes
+    public static final int EV_SEND_OK = 103;        // a = seq, b = nanos since capture of first sample
+    public static final int EV_SEND_FAILED = 104;    // a = seq, b = 0
+    public static final int EV_NO_NODES = 105;       // a = seq, b = 0
+    public static final int EV_READ_ERROR = 106;     // a = AudioRecord error code, b = 0
+    public static final int EV_OVERRUN = 107;        // a = seq of the frame after the gap, b = total frames lost
+    public static final int EV_IMPULSE = 108;        // a = peak-to-RMS dB x10, b = onset dB x10
+    public static final int EV_SPOOLED = 109;        // a = seq, b = bytes now spooled
+    public static final int EV_SPOOL_DROP = 110;     // a = total frames dropped from the spool, b = flash bytes
+
+    private static final int FILE_VERSION = 1;
+    private static final int SLOT_LONGS = 4;
+    private static final int DEFAULT_CAPACITY = 1 << 12; // 4k records, 128 KB
+
+    private static final TraceRecorder INSTANCE = new TraceRecorder(DEFAULT_CAPACITY);
+
+    private static final long INVALID = -1L;
+
+    private final AtomicLongArray ring;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLong sampleTicker = new AtomicLong();
+    private volatile boolean enabled = true;
+    private volatile int sampleMask = 0;
+
+    /** Process-wide recorder for the watch services. */
+    public static TraceRecorder get() {
+        return INSTANCE;
+    }
+
+    /** @param capacity number of records, rounded up to a power of two */
+    public TraceRecorder(int capacity) {
+        int cap = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.ring = new AtomicLongArray(cap * SLOT_LONGS);
+        this.mask = cap - 1;
+    }
+
+    public void record(int event, long a, long b) {
+        if (!enabled) return;
+        int sm = sampleMask;
+        if (sm != 0 && (sampleTicker.getAndIncrement() & sm) != 0) return;
+
+        long idx = cursor.getAndIncrement();
+        int base = (int) (idx & mask) * SLOT_LONGS;
+        ring.set(base, INVALID);   // volatile: ordered before the payload stores
+        ring.lazySet(base + 1, System.nanoTime());
+        ring.lazySet(base + 2, a);
+        ring.lazySet(base + 3, b);
+        ring.lazySet(base, (idx << 16) | (event & 0xFFFF));
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Keep roughly one in {@code everyN} records (rounded up to a power of two); 1 keeps all. */
+    public void setSampling(int everyN) {
+        sampleMask = everyN <= 1 ? 0 : (Integer.highestOneBit(everyN - 1) << 1) - 1;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /** Records written since start-up, including overwritten ones. */
+    public long recorded() {
+        return cursor.get();
+    }
+
+    /**
+     * Writes the records currently in the ring, oldest first. Records being
+     * written concurrently (or already overwritten) are skipped.
+     *
+     * @return number of records written
+     */
+    public int dump(File file) throws IOException {
+        long end = cursor.get();
+        long start = Math.max(0, end - capacity());
+        long[] copy = new long[(int) (end - start) * SLOT_LONGS];
+
+        int count = 0;
+        for (long i = start; i < end; i++) {
+            int base = (int) (i & mask) * SLOT_LONGS;
+            long header = ring.get(base);
+            if (!isHeaderOf(header, i)) continue;
+            long t = ring.get(base + 1);
+            long a = ring.get(base + 2);
+            long b = ring.get(base + 3);
+            if (ring.get(base) != header) continue;   // overwritten while we read it
+            int at = count++ * SLOT_LONGS;
+            copy[at] = header;
+            copy[at + 1] = t;
+            copy[at + 2] = a;
+            copy[at + 3] = b;
+        }
+
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+            out.writeBytes("WTRC");
+            out.writeInt(FILE_VERSION);
+            out.writeInt(count);
+            out.writeLong(System.nanoTime());
+            out.writeLong(System.currentTimeMillis());
+            for (int r = 0; r < count; r++) {
+                int at = r * SLOT_LONGS;
+                out.writeInt((int) (copy[at] & 0xFFFF));
+                out.writeLong(copy[at + 1]);
+                out.writeLong(copy[at + 2]);
+                out.writeLong(copy[at + 3]);
+            }
+        }
+        return count;
+    }
+
+    private static boolean isHeaderOf(long header, long idx) {
+        return header != INVALID && (header >>> 16) == (idx & (-1L >>> 16));
+    }
+}
@@ -0,0 +1,506 @@
+package com.example.wearstream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bounded FIFO of encoded /audio_chunk frames the phone could not take.
+ *
+ * Frames go into a preallocated RAM ring first. When it is full the oldest
+ * frames spill to flash segments ({@code spool-N.bin}, at most
+ * {@code segmentBytes} each) if a directory is configured; the flash budget
+ * is strict, so once it is used up the oldest segment is deleted and its
+ * frames are counted as dropped. Without flash, the oldest RAM frame is
+ * dropped instead. Either way the newest audio survives.
+ *
+ * Flash always holds older frames than RAM, so {@link #poll} reads flash
+ * first. It is rate limited (token bucket of {@code drainBytesPerSec}, one
+ * quarter second of burst): the caller polls alongside live frames and the
+ * backlog trickles out without starving them.
+ *
+ * Spooled audio outlives the spool: {@link #close} moves what is in RAM to
+ * flash, and a new spool on the same directory picks the segments up again,
+ * so a backlog left when recording (or the service) stops still drains on
+ * the next connection.
+ *
+ * A polled frame that then fails to send goes back with {@link #requeue}
+ * and comes out again ahead of the rest of the backlog, so the phone gets
+ * backfill in capture order. Requeued frames are the few in flight and are
+ * kept outside the RAM ring and the flash budget.
+ *
+ * Records are {@code int length + bytes} in both RAM and flash. Not
+ * thread-safe: AudioRecordService confines it to one executor thread. The
+ * counters are volatile so they can be read from anywhere.
+ */
+final class WatchSpool {
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+
+    private static final class Segment {
+        final File file;
+        final RandomAccessFile raf;
+        long writePos = 0;
+        long readPos = 0;
+        int records = 0;   // not yet read
+
+        Segment(File file) throws IOException {
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+        }
+
+        /** Reopens a segment left by an earlier spool, cutting off a torn last record. */
+        static Segment recover(File file) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            Segment seg = new Segment(file, raf);
+            try {
+                long size = raf.length();
+                while (seg.writePos + 4 <= size) {
+                    raf.seek(seg.writePos);
+                    int len = raf.readInt();
+                    if (len < 0 || seg.writePos + 4 + len > size) break;
+                    seg.writePos += 4 + len;
+                    seg.records++;
+                }
+                raf.setLength(seg.writePos);
+            } catch (IOException e) {
+                seg.close();
+                throw e;
+            }
+            return seg;
+        }
+
+        private Segment(File file, RandomAccessFile raf) {
+            this.file = file;
+            this.raf = raf;
+        }
+
+        void close() {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        void delete() {
+            close();
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private final ArrayDeque<byte[]> requeued = new ArrayDeque<>();   // oldest of all
+
+    private final byte[] ram;
+    private int ramHead = 0;      // oldest record
+    private int ramUsed = 0;      // bytes, including length prefixes
+    private int ramRecords = 0;
+
+    private final File flashDir;  // null = RAM only
+    private final long flashBudget;
+    private final int segmentBytes;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long flashBytes = 0;  // size of all segment files
+    private int nextSegment = 0;
+    private final byte[] lenBuf = new byte[4];
+
+    private final double drainBytesPerNano;
+    private final double burstBytes;
+    private double tokens;
+    private long lastRefillNanos = -1;
+
+    private volatile long framesSpooled = 0;
+    private volatile long framesDrained = 0;
+    private volatile long framesDropped = 0;
+    private volatile long flashErrors = 0;
+    private volatile long bufferedBytes = 0;
+
+    /**
+     * @param flashDir     where spill segments go, or null for RAM only;
+     *                     segments an earlier spool left there are queued first
+     * @param flashBudget  total bytes of all segment files
+     */
+    WatchSpool(int ramBytes, File flashDir, long flashBudget, int segmentBytes, long drainBytesPerSec) {
+        if (flashDir != null && flashBudget < segmentBytes) {
+            throw new IllegalArgumentException("flash budget must hold at least one segment");
+        }
+        this.ram = new byte[ramBytes];
+        this.flashDir = flashDir;
+        this.flashBudget = flashBudget;
+        this.segmentBytes = segmentBytes;
+        this.drainBytesPerNano = drainBytesPerSec / 1e9;
+        this.burstBytes = drainBytesPerSec / 4.0;
+        this.tokens = burstBytes;
+        if (flashDir != null) {
+            //noinspection ResultOfMethodCallIgnored
+            flashDir.mkdirs();
+            recoverSegments();
+        }
+    }
+
+    /** Keeps {@code frame} for later; may drop the oldest spooled audio to make room. */
+    void offer(byte[] frame) {
+        int need = 4 + frame.length;
+        if (need > ram.length) {
+            framesDropped++;
+            return;
+        }
+        while (ram.length - ramUsed < need) {
+            if (!spillOldest()) {
+                skipRam();   // no flash (or it failed): lose the oldest frame
+                framesDropped++;
+            }
+        }
+        putInt(frame.length);
+        put(frame, 0, frame.length);
+        ramRecords++;
+        framesSpooled++;
+        bufferedBytes += frame.length;
+    }
+
+    /** The oldest frame if the drain rate allows one now, else null. */
+    byte[] poll(long nowNanos) {
+        if (isEmpty()) return null;
+        refill(nowNanos);
+        byte[] retry = requeued.peekFirst();
+        int len = retry != null ? retry.length : peekLength();
+        if (len < 0) return null;
+        if (tokens < Math.min(len, burstBytes)) return null;
+        byte[] frame = retry != null ? requeued.removeFirst() : take(len);
+        if (frame == null) return null;
+        tokens -= len;
+        framesDrained++;
+        bufferedBytes -= len;
+        return frame;
+    }
+
+    /**
+     * Hands back a frame {@link #poll} returned that could not be sent. It
+     * comes out before anything still spooled; frames requeued one after the
+     * other keep that order.
+     */
+    void requeue(byte[] frame) {
+        requeued.addLast(frame);
+        framesDrained--;
+        bufferedBytes += frame.length;
+    }
+
+    boolean isEmpty() {
+        return requeued.isEmpty() && ramRecords == 0 && segments.isEmpty();
+    }
+
+    /** Fraction of RAM plus flash budget in use. */
+    double fill() {
+        double capacity = ram.length + (flashDir != null ? flashBudget : 0);
+        return (ramUsed + flashBytes) / capacity;
+    }
+
+    long bufferedBytes() {
+        return bufferedBytes;
+    }
+
+    long framesSpooled() {
+        return framesSpooled;
+    }
+
+    long framesDrained() {
+        return framesDrained;
+    }
+
+    long framesDropped() {
+        return framesDropped;
+    }
+
+    long flashErrors() {
+        return flashErrors;
+    }
+
+    long flashBytes() {
+        return flashBytes;
+    }
+
+    /**
+     * Moves the requeued and RAM frames to flash (dropping the oldest if the
+     * budget is short) and closes the segment files for a later spool on the
+     * same directory. Without usable flash those frames are lost. The spool
+     * can't be used afterwards.
+     */
+    void close() {
+        if (segments.isEmpty()) {
+            // nothing on flash yet: the requeued frames open the first segment
+            while (!requeued.isEmpty()) {
+                byte[] frame = requeued.peekFirst();
+                if (!appendToFlash(frame)) break;
+                requeued.removeFirst();
+            }
+        }
+        while (ramRecords > 0) {
+            if (!spillOldest()) {
+                while (ramRecords > 0) {
+                    skipRam();
+                    framesDropped++;
+                }
+                break;
+            }
+        }
+        Segment head = segments.peekFirst();
+        if (head != null && (head.readPos > 0 || !requeued.isEmpty())) {
+            compact(head);   // puts the requeued frames in front
+        }
+        framesDropped += requeued.size();
+        requeued.clear();
+        for (Segment seg : segments) {
+            seg.close();
+        }
+    }
+
+    /** Drops everything and deletes the segments. */
+    void clear() {
+        requeued.clear();
+        while (!segments.isEmpty()) {
+            segments.removeFirst().delete();
+        }
+        flashBytes = 0;
+        ramHead = 0;
+        ramUsed = 0;
+        ramRecords = 0;
+        bufferedBytes = 0;
+    }
+
+    String summary() {
+        return String.format("spool fill=%.0f%% spooled=%d drained=%d dropped=%d flash=%dKB",
+                fill() * 100, framesSpooled, framesDrained, framesDropped, flashBytes / 1024);
+    }
+
+    // ---- RAM ring ----
+
+    private void putInt(int v) {
+        lenBuf[0] = (byte) (v >>> 24);
+        lenBuf[1] = (byte) (v >>> 16);
+        lenBuf[2] = (byte) (v >>> 8);
+        lenBuf[3] = (byte) v;
+        put(lenBuf, 0, 4);
+    }
+
+    private void put(byte[] src, int off, int len) {
+        int tail = (ramHead + ramUsed) % ram.length;
+        int first = Math.min(len, ram.length - tail);
+        System.arraycopy(src, off, ram, tail, first);
+        System.arraycopy(src, off + first, ram, 0, len - first);
+        ramUsed += len;
+    }
+
+    private int ramPeekLength() {
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            v = (v << 8) | (ram[(ramHead + i) % ram.length] & 0xff);
+        }
+        return v;
+    }
+
+    /** A copy of the oldest RAM frame, left in place. */
+    private byte[] peekRam(int len) {
+        byte[] frame = new byte[len];
+        int from = (ramHead + 4) % ram.length;
+        int first = Math.min(len, ram.length - from);
+        System.arraycopy(ram, from, frame, 0, first);
+        System.arraycopy(ram, 0, frame, first, len - first);
+        return frame;
+    }
+
+    /** Forgets the oldest RAM frame; @return its length */
+    private int removeRam() {
+        int len = ramPeekLength();
+        ramHead = (ramHead + 4 + len) % ram.length;
+        ramUsed -= 4 + len;
+        ramRecords--;
+        return len;
+    }
+
+    private byte[] takeRam() {
+        byte[] frame = peekRam(ramPeekLength());
+        removeRam();
+        return frame;
+    }
+
+    private void skipRam() {
+        bufferedBytes -= removeRam();
+    }
+
+    // ---- flash ----
+
+    /**
+     * Moves the oldest RAM frame to flash. It leaves RAM only once it is
+     * written, so a failed write loses nothing.
+     *
+     * @return false if there is no usable flash
+     */
+    private boolean spillOldest() {
+        if (ramRecords == 0) return false;
+        if (!appendToFlash(peekRam(ramPeekLength()))) return false;
+        removeRam();
+        return true;
+    }
+
+    /** Appends one record to the newest segment, opening one if needed. @return false if flash failed or is off */
+    private boolean appendToFlash(byte[] frame) {
+        int need = 4 + frame.length;
+        if (flashDir == null || need > flashBudget) return false;
+        Segment seg = segments.peekLast();
+        try {
+            if (seg == null || seg.writePos + need > segmentBytes) {
+                while (flashBytes + segmentBytes > flashBudget && !segments.isEmpty()) {
+                    dropOldestSegment();
+                }
+                seg = new Segment(new File(flashDir, SEGMENT_PREFIX + (nextSegment++) + SEGMENT_SUFFIX));
+                segments.addLast(seg);
+                flashBytes += segmentBytes;   // budget by allotment, so a segment can't overrun it
+            }
+            seg.raf.seek(seg.writePos);
+            seg.raf.writeInt(frame.length);
+            seg.raf.write(frame);
+            seg.writePos += need;
+            seg.records++;
+            return true;
+        } catch (IOException e) {
+            flashErrors++;
+            if (seg != null && seg.records == 0 && seg == segments.peekLast()) {
+                segments.removeLast();   // opened for this record and never used
+                flashBytes -= segmentBytes;
+                seg.delete();
+            } else if (seg != null) {
+                try {
+                    seg.raf.setLength(seg.writePos);   // no half record for a recovery to trip on
+                } catch (IOException ignored) {
+                }
+            }
+            return false;
+        }
+    }
+
+    private void recoverSegments() {
+        File[] files = flashDir.listFiles((d, name) ->
+                name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) return;
+        TreeMap<Integer, File> byNumber = new TreeMap<>();
+        for (File f : files) {
+            String name = f.getName();
+            try {
+                byNumber.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())), f);
+            } catch (NumberFormatException e) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+        for (Map.Entry<Integer, File> e : byNumber.entrySet()) {
+            nextSegment = e.getKey() + 1;
+            Segment seg;
+            try {
+                seg = Segment.recover(e.getValue());
+            } catch (IOException ex) {
+                flashErrors++;
+                //noinspection ResultOfMethodCallIgnored
+                e.getValue().delete();
+                continue;
+            }
+            if (seg.records == 0) {
+                seg.delete();
+                continue;
+            }
+            while (flashBytes + segmentBytes > flashBudget && !segments.isEmpty()) {
+                dropOldestSegment();   // the budget shrank: keep the newest
+            }
+            segments.addLast(seg);
+            flashBytes += segmentBytes;
+            bufferedBytes += unreadBytes(seg);
+        }
+    }
+
+    /**
+     * Rewrites a segment without its read part, so a recovery doesn't resend
+     * it, and with the requeued frames in front of the rest.
+     */
+    private void compact(Segment seg) {
+        int front = 0;
+        for (byte[] frame : requeued) front += 4 + frame.length;
+        try {
+            byte[] rest = new byte[front + (int) (seg.writePos - seg.readPos)];
+            ByteBuffer bb = ByteBuffer.wrap(rest);
+            for (byte[] frame : requeued) bb.putInt(frame.length).put(frame);
+            seg.raf.seek(seg.readPos);
+            seg.raf.readFully(rest, front, rest.length - front);
+            seg.raf.seek(0);
+            seg.raf.write(rest);
+            seg.raf.setLength(rest.length);
+            seg.writePos = rest.length;
+            seg.readPos = 0;
+            seg.records += requeued.size();
+            requeued.clear();
+        } catch (IOException e) {
+            flashErrors++;
+        }
+    }
+
+    private void dropOldestSegment() {
+        Segment seg = segments.removeFirst();
+        framesDropped += seg.records;
+        bufferedBytes -= unreadBytes(seg);
+        flashBytes -= segmentBytes;
+        seg.delete();
+    }
+
+    private long unreadBytes(Segment seg) {
+        // payload bytes only, to match bufferedBytes
+        return seg.writePos - seg.readPos - 4L * seg.records;
+    }
+
+    private int peekLength() {
+        Segment seg = segments.peekFirst();
+        if (seg == null) return ramRecords > 0 ? ramPeekLength() : -1;
+        try {
+            seg.raf.seek(seg.readPos);
+            return seg.raf.readInt();
+        } catch (IOException e) {
+            flashErrors++;
+            dropOldestSegment();
+            return -1;
+        }
+    }
+
+    private byte[] take(int len) {
+        Segment seg = segments.peekFirst();
+        if (seg == null) return takeRam();
+        try {
+            byte[] frame = new byte[len];
+            seg.raf.seek(seg.readPos + 4);
+            seg.raf.readFully(frame);
+            seg.readPos += 4 + len;
+            seg.records--;
+            if (seg.records == 0) {
+                // read out (if it was the write segment too, the next spill opens a new one)
+                segments.removeFirst();
+                flashBytes -= segmentBytes;
+                seg.delete();
+            }
+            return frame;
+        } catch (IOException e) {
+            flashErrors++;
+            dropOldestSegment();
+            return null;
+        }
+    }
+
+    private void refill(long nowNanos) {
+        if (lastRefillNanos >= 0) {
+            tokens = Math.min(burstBytes, tokens + (nowNanos - lastRefillNanos) * drainBytesPerNano);
+        }
+        lastRefillNanos = nowNanos;
+    }
+}
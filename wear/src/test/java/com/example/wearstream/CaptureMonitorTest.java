@@ -0,0 +1,116 @@
+package com.example.wearstream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CaptureMonitorTest {
+
+    private static final int RATE = 16000;
+    private static final long NANOS_PER_FRAME = 1_000_000_000L / RATE;
+    private static final int BUFFER = 3200;      // 200 ms
+    private static final int READ = 640;         // 40 ms
+    private static final int SLACK_MS = 20;
+    private static final long T0 = 5_000_000_000L;
+
+    /**
+     * AudioRecord as the monitor sees it: a clock producing frames from
+     * {@code startNanos}, a buffer of {@link #BUFFER} frames that overruns
+     * by dropping the oldest, and a frame position for getTimestamp.
+     */
+    private static final class Mic {
+        final long startNanos;
+        long consumed;          // position of the next frame a read returns
+        long dropped;
+        long lastReadNanos;     // true capture time of the first frame of the last read
+
+        Mic(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        long position(long now) {
+            return (now - startNanos) / NANOS_PER_FRAME;
+        }
+
+        /** Blocking read of {@link #READ} frames no earlier than {@code now}; returns when it completed. */
+        long read(long now) {
+            now = Math.max(now, startNanos + (consumed + READ) * NANOS_PER_FRAME);
+            long waiting = position(now) - consumed;
+            if (waiting > BUFFER) {
+                dropped += waiting - BUFFER;
+                consumed += waiting - BUFFER;
+            }
+            lastReadNanos = startNanos + consumed * NANOS_PER_FRAME;
+            consumed += READ;
+            return now;
+        }
+    }
+
+    @Test
+    public void stallLongerThanTheBufferIsCountedFlaggedOnceAndKeepsTheTimeline() {
+        CaptureMonitor m = new CaptureMonitor(RATE, BUFFER, SLACK_MS);
+        Mic mic = new Mic(T0);
+        long now = T0;
+        int gaps = 0;
+        int gapAt = -1;
+        for (int i = 0; i < 60; i++) {
+            if (i == 20) now += 1_000_000_000L;   // capture thread stalls for a second
+            now = mic.read(now);
+            boolean gap = m.takeGap();
+            long capture = m.onRead(READ, READ, now, mic.position(now), now);
+            if (gap) {
+                gaps++;
+                gapAt = i;
+            }
+            if (i != 20) {
+                assertEquals("read " + i, mic.lastReadNanos, capture);
+            }
+        }
+        assertEquals(1, gaps);
+        assertEquals("flagged on the frame after the overrun", 21, gapAt);
+        assertEquals(1, m.overruns());
+        assertTrue(mic.dropped > 0);
+        assertEquals(mic.dropped, m.framesLost());
+    }
+
+    @Test
+    public void readsThatKeepUpLoseNothing() {
+        CaptureMonitor m = new CaptureMonitor(RATE, BUFFER, SLACK_MS);
+        Mic mic = new Mic(T0);
+        long now = T0;
+        for (int i = 0; i < 200; i++) {
+            // late by up to a buffer's worth, never beyond
+            now = mic.read(now + (i % 10 == 5 ? 150_000_000L : 0));
+            assertEquals(mic.lastReadNanos, m.onRead(READ, READ, now, mic.position(now), now));
+        }
+        assertEquals(0, mic.dropped);
+        assertEquals(0, m.framesLost());
+        assertFalse(m.takeGap());
+    }
+
+    @Test
+    public void restartCountsTheDeadTimeAndRecalibrates() {
+        CaptureMonitor m = new CaptureMonitor(RATE, BUFFER, SLACK_MS);
+        Mic mic = new Mic(T0);
+        long now = T0;
+        for (int i = 0; i < 10; i++) {
+            now = mic.read(now);
+            m.onRead(READ, READ, now, mic.position(now), now);
+        }
+        m.onReadError();
+        now += 300_000_000L;                  // audio server restart
+        m.onRestart(now);
+        Mic second = new Mic(now);            // positions start over at 0
+
+        int gaps = 0;
+        for (int i = 0; i < 20; i++) {
+            now = second.read(now);
+            if (m.takeGap()) gaps++;
+            long capture = m.onRead(READ, READ, now, second.position(now), now);
+            assertEquals("read " + i + " after restart", second.lastReadNanos, capture);
+        }
+        assertEquals(1, gaps);
+        assertEquals(300 * RATE / 1000, m.framesLost());
+        assertEquals(1, m.readErrors());
+    }
+}
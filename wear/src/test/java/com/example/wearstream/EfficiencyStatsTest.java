@@ -0,0 +1,52 @@
+package com.example.wearstream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EfficiencyStatsTest {
+
+    private static final int RATE = 16000;
+    private static final long T0 = 7_000_000_000L;
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void costsArePerAudioSecondAndRatesPerWallMinute() {
+        EfficiencyStats stats = new EfficiencyStats("efficient", RATE, T0, 12_000);
+        // 30 s of audio in 200 ms reads, the capture thread using 1.5 ms CPU per read
+        for (int i = 1; i <= 150; i++) {
+            stats.onRead(RATE / 5, i * 1_500_000L);
+        }
+        for (int i = 0; i < 30; i++) {
+            stats.onMessage();
+        }
+
+        assertEquals(30.0, stats.audioSeconds(), 1e-9);
+        assertEquals(7.5, stats.captureCpuMsPerAudioSecond(), 1e-9);      // 225 ms / 30 s
+        assertEquals(20.0, stats.processCpuMsPerAudioSecond(12_600), 1e-9);  // 600 ms / 30 s
+        long now = T0 + 30 * SECOND;
+        assertEquals(300.0, stats.readsPerMinute(now), 1e-9);
+        assertEquals(60.0, stats.messagesPerMinute(now), 1e-9);
+        assertEquals("efficient", stats.profile());
+    }
+
+    @Test
+    public void emptyReadsCountAsWakeupsButNotAudio() {
+        EfficiencyStats stats = new EfficiencyStats("realtime", RATE, T0, 0);
+        stats.onRead(0, 100_000);
+        stats.onRead(640, 200_000);
+
+        assertEquals(0.04, stats.audioSeconds(), 1e-9);
+        assertEquals(5.0, stats.captureCpuMsPerAudioSecond(), 1e-9);
+        assertEquals(120.0, stats.readsPerMinute(T0 + SECOND), 1e-9);
+    }
+
+    @Test
+    public void nothingCapturedYetReportsZeroRatherThanDividingByIt() {
+        EfficiencyStats stats = new EfficiencyStats("realtime", RATE, T0, 500);
+        assertEquals(0.0, stats.captureCpuMsPerAudioSecond(), 0);
+        assertEquals(0.0, stats.processCpuMsPerAudioSecond(900), 0);
+        assertEquals(0.0, stats.readsPerMinute(T0), 0);
+        assertTrue(stats.summary(T0, 500).startsWith("profile=realtime audio=0s"));
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.wearstream;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fixtures (test resources, 16 kHz mono PCM16, 3 s each) are the phone's
+ * synthetic set: a T3 smoke alarm, a bright decaying burst at 1 s, a
+ * low-frequency boom at 1 s, and speech-like babble over background noise.
+ */
+public class ImpulseDetectorTest {
+
+    /** Samples per read in the realtime profile (~40 ms). */
+    private static final int READ_BYTES = 1280;
+
+    static byte[] loadWav(String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = ImpulseDetectorTest.class.getResourceAsStream("/fixtures/" + name)) {
+            assertNotNull("missing fixture " + name, in);
+            byte[] buf = new byte[8192];
+            int r;
+            while ((r = in.read(buf)) > 0) out.write(buf, 0, r);
+        }
+        ByteBuffer bb = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        bb.position(12);   // RIFF, size, WAVE
+        while (bb.remaining() >= 8) {
+            int id = bb.getInt();
+            int size = bb.getInt();
+            if (id == 0x61746164) {   // "data"
+                byte[] pcm = new byte[Math.min(size, bb.remaining())];
+                bb.get(pcm);
+                return pcm;
+            }
+            bb.position(bb.position() + size);
+        }
+        throw new IOException("no data chunk in " + name);
+    }
+
+    /** Onset times (ms from the start of {@code pcm}) the detector fires on. */
+    private static List<Long> detect(byte[] pcm, int readBytes) {
+        List<Long> onsets = new ArrayList<>();
+        ImpulseDetector detector = new ImpulseDetector(
+                (onsetNanos, peakToRmsDb, onsetDb) -> onsets.add(onsetNanos / 1_000_000));
+        for (int off = 0; off < pcm.length; off += readBytes) {
+            detector.process(pcm, off, Math.min(readBytes, pcm.length - off), off * 1_000_000_000L / 32_000);
+        }
+        return onsets;
+    }
+
+    @Test
+    public void gunshotFiresAtItsOnset() throws Exception {
+        List<Long> onsets = detect(loadWav("gunshot.wav"), READ_BYTES);
+        assertEquals(onsets.toString(), 1, onsets.size());
+        assertEquals(1000, onsets.get(0), 5);
+    }
+
+    @Test
+    public void explosionFires() throws Exception {
+        List<Long> onsets = detect(loadWav("explosion.wav"), READ_BYTES);
+        assertEquals(onsets.toString(), 1, onsets.size());
+        assertEquals(1000, onsets.get(0), 5);
+    }
+
+    @Test
+    public void readSizeDoesNotMatter() throws Exception {
+        byte[] pcm = loadWav("gunshot.wav");
+        // efficiency profile reads 320 ms at a time; odd sizes split blocks
+        assertEquals(detect(pcm, READ_BYTES), detect(pcm, 10240));
+        assertEquals(detect(pcm, READ_BYTES), detect(pcm, 202));
+    }
+
+    @Test
+    public void alarmAndSpeechDoNotFire() throws Exception {
+        assertEquals(0, detect(loadWav("smoke_alarm_t3.wav"), READ_BYTES).size());
+        assertEquals(0, detect(loadWav("speech.wav"), READ_BYTES).size());
+    }
+
+    @Test
+    public void loudSustainedOnsetIsNotAnImpulse() {
+        assertEquals(0, detect(noiseOnset(new Random(1)), READ_BYTES).size());
+    }
+
+    @Test
+    public void processDoesNotAllocate() throws Exception {
+        byte[] pcm = loadWav("gunshot.wav");
+        ImpulseDetector detector = new ImpulseDetector((onsetNanos, peakToRmsDb, onsetDb) -> { });
+        for (int round = 0; round < 200; round++) {   // warm up / JIT
+            feed(detector, pcm, round);
+        }
+        com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = mx.getCurrentThreadAllocatedBytes();
+        for (int round = 0; round < 20; round++) {
+            feed(detector, pcm, round);
+        }
+        long allocated = mx.getCurrentThreadAllocatedBytes() - before;
+        // a few bytes of slack for the MXBean call itself
+        assertTrue("allocated " + allocated + " bytes", allocated < 256);
+    }
+
+    /**
+     * CPU per 40 ms read and false positives over an hour of fixtures that
+     * should never fire (alarm, speech, loud noise onsets), plus the hit rate
+     * on the impulse fixtures.
+     */
+    @Test
+    public void costAndFalsePositiveBenchmark() throws Exception {
+        byte[][] quiet = {loadWav("smoke_alarm_t3.wav"), loadWav("speech.wav"), null};
+        byte[][] impulses = {loadWav("gunshot.wav"), loadWav("explosion.wav")};
+        Random rnd = new Random(7);
+
+        ImpulseDetector detector = new ImpulseDetector(null);
+        int rounds = 1200;   // 3 s each: 1 hour
+        long reads = 0;
+        for (int round = 0; round < rounds; round++) {
+            byte[] pcm = quiet[round % quiet.length];
+            if (pcm == null) pcm = noiseOnset(rnd);
+            reads += feed(detector, pcm, round);
+        }
+        long falsePositives = detector.detections();
+        double nsPerRead = detector.processingNanos() / (double) reads;
+        double load = detector.processingNanos() / 1e9 / (detector.samplesProcessed() / 16000.0);
+
+        int hits = 0;
+        for (int round = 0; round < 100; round++) {
+            ImpulseDetector d = new ImpulseDetector(null);
+            feed(d, impulses[round % impulses.length], round);
+            hits += d.detections() == 1 ? 1 : 0;
+        }
+        System.out.printf("ImpulseDetector: %.0f ns per 40 ms read (%.3f%% of one core), "
+                        + "%d false positives in 1 h, %d/100 impulses caught%n",
+                nsPerRead, load * 100, falsePositives, hits);
+        assertEquals(0, falsePositives);
+        assertEquals(100, hits);
+        // a watch core is ~10x slower than this machine; stay well under 1% there
+        assertTrue("CPU load " + load, load < 0.001);
+    }
+
+    /** Runs {@code pcm} through in realtime-profile reads; returns the number of reads. */
+    private static int feed(ImpulseDetector detector, byte[] pcm, int round) {
+        int reads = 0;
+        long base = round * 3_000_000_000L;
+        for (int off = 0; off < pcm.length; off += READ_BYTES) {
+            detector.process(pcm, off, Math.min(READ_BYTES, pcm.length - off), base + off * 1_000_000_000L / 32_000);
+            reads++;
+        }
+        return reads;
+    }
+
+    /** 1 s of near silence, then 2 s of loud broadband noise that keeps going. */
+    private static byte[] noiseOnset(Random rnd) {
+        byte[] pcm = new byte[3 * 16000 * 2];
+        for (int i = 0; i < pcm.length / 2; i++) {
+            double amp = i < 16000 ? 50 : 12000;
+            short s = (short) Math.max(-32768, Math.min(32767, rnd.nextGaussian() * amp));
+            pcm[2 * i] = (byte) s;
+            pcm[2 * i + 1] = (byte) (s >> 8);
+        }
+        return pcm;
+    }
+}
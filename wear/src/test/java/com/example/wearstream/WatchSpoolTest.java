@@ -0,0 +1,206 @@
+package com.example.wearstream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class WatchSpoolTest {
+
+    /** Drain rate high enough that poll never waits. */
+    private static final long UNLIMITED = 1L << 40;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("spool").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+
+    private static byte[] frame(int seq, int len) {
+        byte[] f = new byte[len];
+        for (int i = 0; i < len; i++) f[i] = (byte) (seq + i);
+        f[0] = (byte) (seq >>> 8);
+        f[1] = (byte) seq;
+        return f;
+    }
+
+    private static int seqOf(byte[] f) {
+        return ((f[0] & 0xff) << 8) | (f[1] & 0xff);
+    }
+
+    @Test
+    public void ramOnlyKeepsTheNewestFrames() {
+        // 10 records of 4 + 96 bytes fit
+        WatchSpool spool = new WatchSpool(1000, null, 0, 0, UNLIMITED);
+        for (int seq = 0; seq < 25; seq++) spool.offer(frame(seq, 96));
+        assertEquals(15, spool.framesDropped());
+        assertEquals(10 * 96, spool.bufferedBytes());
+
+        for (int seq = 15; seq < 25; seq++) {
+            byte[] f = spool.poll(0);
+            assertArrayEquals(frame(seq, 96), f);
+        }
+        assertNull(spool.poll(0));
+        assertTrue(spool.isEmpty());
+        assertEquals(0, spool.bufferedBytes());
+    }
+
+    @Test
+    public void spillsToFlashInOrder() {
+        WatchSpool spool = new WatchSpool(1000, dir, 100_000, 10_000, UNLIMITED);
+        for (int seq = 0; seq < 500; seq++) spool.offer(frame(seq, 96 + seq % 7));
+        assertEquals(0, spool.framesDropped());
+        assertTrue(spool.flashBytes() > 0);
+        assertTrue(dir.listFiles().length > 1);
+
+        // interleave: drain some, spool more, drain the rest
+        int next = 0;
+        for (int i = 0; i < 200; i++) assertEquals(next++, seqOf(spool.poll(0)));
+        for (int seq = 500; seq < 600; seq++) spool.offer(frame(seq, 96 + seq % 7));
+        byte[] f;
+        while ((f = spool.poll(0)) != null) {
+            assertArrayEquals(frame(next, 96 + next % 7), f);
+            next++;
+        }
+        assertEquals(600, next);
+        assertEquals(0, spool.flashBytes());
+        assertEquals(0, dir.listFiles().length);
+        assertEquals(0, spool.flashErrors());
+    }
+
+    @Test
+    public void flashBudgetDropsTheOldestSegment() {
+        // 100 records per segment, three segments of budget, 1000 frames in
+        WatchSpool spool = new WatchSpool(1000, dir, 30_000, 10_000, UNLIMITED);
+        for (int seq = 0; seq < 1000; seq++) spool.offer(frame(seq, 96));
+        assertTrue(spool.flashBytes() <= 30_000);
+        assertTrue(spool.framesDropped() > 0);
+        assertTrue(spool.fill() > 0.9);
+
+        int first = seqOf(spool.poll(0));
+        assertEquals(first, spool.framesDropped());   // a contiguous prefix was lost
+        int next = first + 1;
+        byte[] f;
+        while ((f = spool.poll(0)) != null) assertEquals(next++, seqOf(f));
+        assertEquals(1000, next);
+        assertEquals(1000, spool.framesDrained() + spool.framesDropped());
+    }
+
+    @Test
+    public void drainIsRateLimited() {
+        // 10 KB/s, 2.5 KB burst; 1 KB frames
+        WatchSpool spool = new WatchSpool(100_000, null, 0, 0, 10_000);
+        for (int seq = 0; seq < 50; seq++) spool.offer(frame(seq, 1000));
+
+        long now = 0;
+        int drained = 0;
+        while (spool.poll(now) != null) drained++;
+        assertEquals(2, drained);   // the burst
+
+        for (int step = 0; step < 100; step++) {   // 1 s in 10 ms steps
+            now += 10_000_000;
+            while (spool.poll(now) != null) drained++;
+        }
+        assertEquals(12, drained, 1);
+    }
+
+    @Test
+    public void clearDeletesSegmentsAndEmptyLeftoversAreRemoved() throws IOException {
+        assertTrue(new File(dir, "spool-7.bin").createNewFile());
+        WatchSpool spool = new WatchSpool(1000, dir, 100_000, 10_000, UNLIMITED);
+        assertEquals(0, dir.listFiles().length);
+
+        for (int seq = 0; seq < 100; seq++) spool.offer(frame(seq, 96));
+        assertFalse(spool.isEmpty());
+        spool.clear();
+        assertTrue(spool.isEmpty());
+        assertEquals(0, spool.fill(), 0);
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void closedSpoolIsPickedUpInOrderByTheNextOne() {
+        WatchSpool first = new WatchSpool(1000, dir, 100_000, 10_000, UNLIMITED);
+        for (int seq = 0; seq < 200; seq++) first.offer(frame(seq, 96));   // most of it on flash
+        for (int seq = 0; seq < 30; seq++) assertEquals(seq, seqOf(first.poll(0)));   // partly drained
+        first.close();
+
+        WatchSpool second = new WatchSpool(1000, dir, 100_000, 10_000, UNLIMITED);
+        assertEquals(170L * 96, second.bufferedBytes());
+        second.offer(frame(500, 96));
+        for (int seq = 30; seq < 200; seq++) assertEquals(seq, seqOf(second.poll(0)));
+        assertEquals(500, seqOf(second.poll(0)));
+        assertTrue(second.isEmpty());
+        assertNull(second.poll(0));
+    }
+
+    @Test
+    public void failedSpillKeepsTheFrameAndTheCounts() {
+        WatchSpool spool = new WatchSpool(1000, dir, 100_000, 10_000, UNLIMITED);
+        assertTrue(dir.delete());   // flash goes away: every spill fails
+        for (int seq = 0; seq < 25; seq++) spool.offer(frame(seq, 96));
+        assertTrue(spool.flashErrors() > 0);
+        assertEquals(15, spool.framesDropped());
+        assertEquals(10 * 96, spool.bufferedBytes());
+        assertEquals(1000, spool.fill() * (1000 + 100_000), 1);   // the RAM ring, full
+
+        for (int seq = 15; seq < 25; seq++) assertEquals(seq, seqOf(spool.poll(0)));
+        assertTrue(spool.isEmpty());
+        assertEquals(0, spool.bufferedBytes());
+        assertTrue(dir.mkdir());
+    }
+
+    @Test
+    public void requeuedFramesGoOutFirstInTheirOrderAndSurviveClose() {
+        WatchSpool first = new WatchSpool(1000, dir, 100_000, 10_000, UNLIMITED);
+        for (int seq = 0; seq < 100; seq++) first.offer(frame(seq, 96));
+        byte[] a = first.poll(0);
+        byte[] b = first.poll(0);
+        first.poll(0);                // seq 2 went through
+        first.requeue(a);             // 0 and 1 didn't
+        first.requeue(b);
+        assertEquals(99L * 96, first.bufferedBytes());
+        assertEquals(1, first.framesDrained());
+        assertEquals(0, seqOf(first.poll(0)));
+        first.requeue(frame(0, 96));  // and failed again
+        first.close();
+
+        WatchSpool second = new WatchSpool(1000, dir, 100_000, 10_000, UNLIMITED);
+        assertEquals(99L * 96, second.bufferedBytes());
+        assertEquals(1, seqOf(second.poll(0)));
+        assertEquals(0, seqOf(second.poll(0)));
+        for (int seq = 3; seq < 100; seq++) assertEquals(seq, seqOf(second.poll(0)));
+        assertTrue(second.isEmpty());
+    }
+
+    @Test
+    public void tornLastRecordIsCutOffOnRecovery() throws IOException {
+        WatchSpool first = new WatchSpool(1000, dir, 100_000, 10_000, UNLIMITED);
+        for (int seq = 0; seq < 5; seq++) first.offer(frame(seq, 96));
+        first.close();
+        File seg = dir.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(seg, "rw")) {
+            raf.setLength(raf.length() - 10);   // died mid-write
+        }
+
+        WatchSpool second = new WatchSpool(1000, dir, 100_000, 10_000, UNLIMITED);
+        for (int seq = 0; seq < 4; seq++) assertEquals(seq, seqOf(second.poll(0)));
+        assertTrue(second.isEmpty());
+    }
+}